@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import uk.ac.leedsmet.bibliosight.model.QueryModel;
+import uk.ac.leedsmet.bibliosight.stub.StubWsLiteServer;
+import uk.ac.leedsmet.bibliosight.transformer.CountingOutputStream;
+import uk.ac.leedsmet.bibliosight.wslite.RateLimiter;
+import uk.ac.leedsmet.bibliosight.wslite.SearchResultsCache;
+import uk.ac.leedsmet.bibliosight.wslite.WsLiteServices;
+
+/**
+ * Load tests the client by running searches from several clients at once
+ * against the stub Web Services Lite server, and reports the latency of the
+ * searches and the throughput.
+ *
+ * Each client runs its searches one after another with a model, session and
+ * pool of search ports of its own, just as separate runs of HeadlessMain
+ * would. The stub server rejects requests that do not carry the Id of an
+ * open session, so a search sent under another client's session fails. The searches are
+ * configured with the HeadlessMain options, which can be given as arguments
+ * as well as the load test options. The stub server is started unless a
+ * search endpoint address has been set, in which case the searches are sent
+ * there instead. The result caches and the rate limit are turned off unless
+ * they have been set, so that every search reaches the server.
+ *
+ * @author Mike Taylor
+ */
+public class LoadTestMain
+{
+    private static final String USAGE =
+        "Usage: java uk.ac.leedsmet.bibliosight.LoadTestMain [--clients N] [--searches N] [search options]\n" +
+        "\n" +
+        "  --clients N           Clients searching at once (default 4)\n" +
+        "  --searches N          Searches run by each client (default 5)\n" +
+        "\n" +
+        "Search options are those of HeadlessMain, except --output. By default every\n" +
+        "page of the query TS=(stub) is retrieved.";
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        System.exit(run(args, System.err));
+    }
+
+    /**
+     * Runs the load test with the supplied arguments and returns the exit code
+     * @param args
+     * @param messageStream Stream that the report is written to
+     * @return
+     * @throws InterruptedException
+     */
+    public static int run(String[] args, PrintStream messageStream) throws InterruptedException
+    {
+        List<String> searchArgs = new ArrayList<String>();
+        Properties searchOptions = null;
+        int clientCount = 4;
+        int searchCount = 5;
+
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                if (args[i].equals("--clients") && i + 1 < args.length)
+                {
+                    clientCount = Integer.parseInt(args[++i]);
+                }
+                else if (args[i].equals("--searches") && i + 1 < args.length)
+                {
+                    searchCount = Integer.parseInt(args[++i]);
+                }
+                else
+                {
+                    searchArgs.add(args[i]);
+                }
+            }
+
+            searchOptions = HeadlessMain.parseArguments(searchArgs.toArray(new String[searchArgs.size()]));
+
+            if (!searchOptions.containsKey("query"))
+            {
+                searchOptions.setProperty("query", "TS=(stub)");
+                searchOptions.setProperty("all", "true");
+            }
+
+            // Checks the options before any search is run
+            HeadlessMain.configureModel(new QueryModel(), searchOptions);
+        }
+        catch (NumberFormatException ex)
+        {
+            messageStream.println("Error: " + ex.getMessage());
+            messageStream.println(USAGE);
+            return HeadlessMain.EXIT_USAGE;
+        }
+        catch (IllegalArgumentException ex)
+        {
+            messageStream.println("Error: " + ex.getMessage());
+            messageStream.println(USAGE);
+            return HeadlessMain.EXIT_USAGE;
+        }
+
+        setDefaultProperty(SearchResultsCache.ENABLED_PROPERTY, "false");
+        setDefaultProperty(QueryModel.OUTPUT_CACHE_SIZE_PROPERTY, "0");
+        setDefaultProperty(RateLimiter.REQUESTS_PER_SECOND_PROPERTY, "0");
+
+        StubWsLiteServer server = null;
+
+        if (System.getProperty(WsLiteServices.SEARCH_ADDRESS_PROPERTY) == null)
+        {
+            server = new StubWsLiteServer();
+            server.start();
+
+            System.setProperty(WsLiteServices.AUTH_WSDL_PROPERTY, server.getAuthenticationAddress() + "?wsdl");
+            System.setProperty(WsLiteServices.SEARCH_WSDL_PROPERTY, server.getSearchAddress() + "?wsdl");
+            System.setProperty(WsLiteServices.AUTH_ADDRESS_PROPERTY, server.getAuthenticationAddress());
+            System.setProperty(WsLiteServices.SEARCH_ADDRESS_PROPERTY, server.getSearchAddress());
+
+            messageStream.println("Stub server: " + server.getSettings());
+        }
+
+        try
+        {
+            // The services are built before the clock starts, as they are
+            // built once per run of the client
+            WsLiteServices.preload();
+
+            messageStream.println("Running " + searchCount + " search(es) from each of " + clientCount + " client(s)...");
+
+            return runSearches(searchOptions, clientCount, searchCount, server, messageStream);
+        }
+        finally
+        {
+            if (server != null)
+            {
+                server.stop();
+            }
+        }
+    }
+
+    private static int runSearches(
+        final Properties searchOptions,
+        int clientCount,
+        final int searchCount,
+        StubWsLiteServer server,
+        PrintStream messageStream)
+        throws InterruptedException
+    {
+        final long[] latencies = new long[clientCount * searchCount];
+        final AtomicInteger completedSearches = new AtomicInteger();
+        final AtomicInteger failedSearches = new AtomicInteger();
+        final PrintStream errorStream = messageStream;
+
+        ExecutorService clients = Executors.newFixedThreadPool(clientCount);
+        long startTime = System.nanoTime();
+
+        for (int client = 0; client < clientCount; client++)
+        {
+            clients.execute(new Runnable()
+            {
+                public void run()
+                {
+                    QueryModel queryModel = new QueryModel();
+                    HeadlessMain.configureModel(queryModel, searchOptions);
+
+                    try
+                    {
+                        for (int search = 0; search < searchCount; search++)
+                        {
+                            long searchStartTime = System.nanoTime();
+
+                            try
+                            {
+                                queryModel.runWsLiteQuery(new CountingOutputStream());
+                                latencies[completedSearches.getAndIncrement()] = System.nanoTime() - searchStartTime;
+                            }
+                            catch (BibliosightAuthenticationException ex)
+                            {
+                                reportFailure(ex);
+                            }
+                            catch (BibliosightSearchException ex)
+                            {
+                                reportFailure(ex);
+                            }
+                            catch (BibliosightClientException ex)
+                            {
+                                reportFailure(ex);
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        queryModel.closeWsLiteSession();
+                    }
+                }
+
+                private void reportFailure(Exception ex)
+                {
+                    failedSearches.incrementAndGet();
+                    errorStream.println("Search failed: " + ex.getMessage());
+                }
+            });
+        }
+
+        clients.shutdown();
+        clients.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        long[] completedLatencies = Arrays.copyOf(latencies, completedSearches.get());
+        Arrays.sort(completedLatencies);
+
+        messageStream.println(String.format("Searches: %d completed, %d failed in %.1f seconds",
+            completedLatencies.length, failedSearches.get(), elapsedSeconds));
+
+        if (completedLatencies.length > 0)
+        {
+            messageStream.println(String.format("Search latency (ms): min %.0f, p50 %.0f, p90 %.0f, p99 %.0f, max %.0f",
+                completedLatencies[0] / 1e6,
+                getPercentile(completedLatencies, 50) / 1e6,
+                getPercentile(completedLatencies, 90) / 1e6,
+                getPercentile(completedLatencies, 99) / 1e6,
+                completedLatencies[completedLatencies.length - 1] / 1e6));
+        }
+
+        messageStream.println(String.format("Throughput: %.2f searches/s", completedLatencies.length / elapsedSeconds));
+
+        if (server != null)
+        {
+            messageStream.println(String.format("Server: %.1f requests/s, %.0f records/s; %d search and %d authentication request(s), %d fault(s) injected, %d request(s) with an unknown or closed session",
+                server.getSearchCount() / elapsedSeconds,
+                server.getRecordsServed() / elapsedSeconds,
+                server.getSearchCount(),
+                server.getAuthenticationCount(),
+                server.getFaultCount(),
+                server.getSessionRejectedCount()));
+        }
+
+        return failedSearches.get() == 0 ? HeadlessMain.EXIT_SUCCESS : HeadlessMain.EXIT_SEARCH_FAILED;
+    }
+
+    /**
+     * Returns a percentile of sorted values by the nearest rank method
+     */
+    private static long getPercentile(long[] sortedValues, int percentile)
+    {
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedValues.length);
+
+        return sortedValues[Math.max(0, rank - 1)];
+    }
+
+    private static void setDefaultProperty(String name, String value)
+    {
+        if (System.getProperty(name) == null)
+        {
+            System.setProperty(name, value);
+        }
+    }
+}
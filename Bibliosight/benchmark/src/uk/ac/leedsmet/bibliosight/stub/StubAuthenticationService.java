@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.stub;
+
+import com.thomsonreuters.wokmws.cxf.auth.AuthenticationException_Exception;
+import com.thomsonreuters.wokmws.cxf.auth.ESTIWSException_Exception;
+import com.thomsonreuters.wokmws.cxf.auth.InternalServerException_Exception;
+import com.thomsonreuters.wokmws.cxf.auth.InvalidInputException_Exception;
+import com.thomsonreuters.wokmws.cxf.auth.QueryException_Exception;
+import com.thomsonreuters.wokmws.cxf.auth.SessionException_Exception;
+import com.thomsonreuters.wokmws.cxf.auth.WOKMWSAuthenticate;
+import javax.annotation.Resource;
+import javax.jws.WebService;
+import javax.xml.ws.WebServiceContext;
+
+/**
+ * The authentication service of the stub server, which opens a new session
+ * for every request and closes the session whose Id is sent in the SID cookie
+ *
+ * @author Mike Taylor
+ */
+@WebService(
+    serviceName = "WOKMWSAuthenticateService",
+    portName = "WOKMWSAuthenticatePort",
+    targetNamespace = "http://auth.cxf.wokmws.thomsonreuters.com",
+    endpointInterface = "com.thomsonreuters.wokmws.cxf.auth.WOKMWSAuthenticate"
+)
+public class StubAuthenticationService implements WOKMWSAuthenticate
+{
+    private final StubWsLiteServer server_;
+
+    @Resource
+    private WebServiceContext context_;
+
+    StubAuthenticationService(StubWsLiteServer server)
+    {
+        this.server_ = server;
+    }
+
+    public String authenticate()
+        throws QueryException_Exception, SessionException_Exception, AuthenticationException_Exception,
+        InvalidInputException_Exception, ESTIWSException_Exception, InternalServerException_Exception
+    {
+        server_.beginAuthentication();
+
+        if (server_.nextRequestFails())
+        {
+            throw new InternalServerException_Exception("Stub internal server fault");
+        }
+
+        return server_.openSession();
+    }
+
+    public void closeSession()
+        throws QueryException_Exception, SessionException_Exception, AuthenticationException_Exception,
+        InvalidInputException_Exception, ESTIWSException_Exception, InternalServerException_Exception
+    {
+        if (!server_.closeSession(context_))
+        {
+            throw new SessionException_Exception("There is no open session with the Id sent");
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.stub;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.AuthenticationException_Exception;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.ESTIWSException_Exception;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.InternalServerException_Exception;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.InvalidInputException_Exception;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryException_Exception;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.RetrieveParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.SearchResults;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.SessionException_Exception;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.WokSearchLite;
+import javax.annotation.Resource;
+import javax.jws.WebService;
+import javax.xml.ws.WebServiceContext;
+import uk.ac.leedsmet.bibliosight.transformer.SyntheticSearchResults;
+
+/**
+ * The search service of the stub server. Every query finds the same number
+ * of records, and each page is generated from the positions of its records,
+ * so the same page is the same whenever it is requested. A search is only
+ * answered if it carries the SID cookie of an open session.
+ *
+ * @author Mike Taylor
+ */
+@WebService(
+    serviceName = "WokSearchLiteService",
+    portName = "WokSearchLitePort",
+    targetNamespace = "http://woksearchlite.cxf.wokmws.thomsonreuters.com",
+    endpointInterface = "com.thomsonreuters.wokmws.cxf.woksearchlite.WokSearchLite"
+)
+public class StubSearchService implements WokSearchLite
+{
+    private static final long RECORDS_SEARCHED = 48000000L;
+
+    private static final long SEED = 42L;
+
+    private final StubWsLiteServer server_;
+
+    @Resource
+    private WebServiceContext context_;
+
+    StubSearchService(StubWsLiteServer server)
+    {
+        this.server_ = server;
+    }
+
+    public SearchResults search(QueryParameters queryParameters, RetrieveParameters retrieveParameters)
+        throws QueryException_Exception, SessionException_Exception, AuthenticationException_Exception,
+        InvalidInputException_Exception, ESTIWSException_Exception, InternalServerException_Exception
+    {
+        server_.beginSearch();
+
+        if (server_.nextRequestFails())
+        {
+            throw new InternalServerException_Exception("Stub internal server fault");
+        }
+
+        if (!server_.acceptSession(context_))
+        {
+            throw new SessionException_Exception("There is no open session with the Id sent");
+        }
+
+        int firstRecord = retrieveParameters.getFirstRecord();
+        int count = retrieveParameters.getCount();
+
+        if (firstRecord < 1 || count < 1 || count > server_.getMaxPageSize())
+        {
+            throw new InvalidInputException_Exception("The first record must be at least 1 and the count from 1 to " + server_.getMaxPageSize());
+        }
+
+        SearchResults searchResults = new SearchResults();
+        searchResults.setQueryID("1");
+        searchResults.setRecordsFound(server_.getRecordsFound());
+        searchResults.setRecordsSearched(RECORDS_SEARCHED);
+
+        int lastRecord = Math.min(firstRecord + count - 1, server_.getRecordsFound());
+
+        for (int record = firstRecord; record <= lastRecord; record++)
+        {
+            searchResults.getRecords().add(SyntheticSearchResults.createRecord(record - 1, SEED));
+        }
+
+        server_.addRecordsServed(searchResults.getRecords().size());
+
+        return searchResults;
+    }
+}
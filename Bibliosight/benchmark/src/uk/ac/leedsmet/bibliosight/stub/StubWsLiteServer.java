@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.stub;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.ws.Endpoint;
+import javax.xml.ws.WebServiceContext;
+import javax.xml.ws.handler.MessageContext;
+import uk.ac.leedsmet.bibliosight.BibliosightProperties;
+
+/**
+ * A local stand-in for the Web Services Lite authentication and search
+ * services, so that the client can be load tested without the real service.
+ *
+ * The services are published on an embedded CXF endpoint and answer every
+ * search with generated records. The number of records found, the largest
+ * page that may be requested, the time taken to answer and the share of
+ * requests that fail can be set with the following system properties. As with
+ * the real service, a search or session closure is only accepted with the SID
+ * cookie of a session that is open, so that requests sent under the wrong
+ * session are seen as faults.
+ * The settings are read from these system properties:
+ * <ul>
+ * <li>bibliosight.stub.port - port the services are published on (default 8765)</li>
+ * <li>bibliosight.stub.recordsFound - records found by every search (default 1000)</li>
+ * <li>bibliosight.stub.maxPageSize - largest page that may be requested (default 100)</li>
+ * <li>bibliosight.stub.latency - time in milliseconds taken to answer (default 50)</li>
+ * <li>bibliosight.stub.latencyJitter - random time in milliseconds added to the latency (default 50)</li>
+ * <li>bibliosight.stub.faultRate - share of requests answered with an internal server fault (default 0)</li>
+ * </ul>
+ *
+ * @author Mike Taylor
+ */
+public class StubWsLiteServer
+{
+    public static final String PORT_PROPERTY = "bibliosight.stub.port";
+    public static final String RECORDS_FOUND_PROPERTY = "bibliosight.stub.recordsFound";
+    public static final String MAX_PAGE_SIZE_PROPERTY = "bibliosight.stub.maxPageSize";
+    public static final String LATENCY_PROPERTY = "bibliosight.stub.latency";
+    public static final String LATENCY_JITTER_PROPERTY = "bibliosight.stub.latencyJitter";
+    public static final String FAULT_RATE_PROPERTY = "bibliosight.stub.faultRate";
+
+    private static final String AUTH_PATH = "/esti/wokmws/ws/WOKMWSAuthenticate";
+    private static final String SEARCH_PATH = "/esti/wokmws/ws/WokSearchLite";
+
+    private final int port_;
+
+    private final int recordsFound_;
+
+    private final int maxPageSize_;
+
+    private final long latency_;
+
+    private final long latencyJitter_;
+
+    private final double faultRate_;
+
+    private final Random random_ = new Random();
+
+    private final AtomicLong authenticationCount_ = new AtomicLong();
+
+    private final AtomicLong searchCount_ = new AtomicLong();
+
+    private final AtomicLong recordsServed_ = new AtomicLong();
+
+    private final AtomicLong faultCount_ = new AtomicLong();
+
+    private final AtomicLong sessionRejectedCount_ = new AtomicLong();
+
+    private final AtomicLong nextSessionId_ = new AtomicLong(1);
+
+    /**
+     * Session Ids that have been handed out and not closed
+     */
+    private final Set<String> openSessionIds_ = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private Endpoint authEndpoint_;
+
+    private Endpoint searchEndpoint_;
+
+    /**
+     * Create a server configured by system properties
+     */
+    public StubWsLiteServer()
+    {
+        this(
+            BibliosightProperties.getInt(PORT_PROPERTY, 8765),
+            BibliosightProperties.getInt(RECORDS_FOUND_PROPERTY, 1000),
+            BibliosightProperties.getInt(MAX_PAGE_SIZE_PROPERTY, 100),
+            BibliosightProperties.getLong(LATENCY_PROPERTY, 50L),
+            BibliosightProperties.getLong(LATENCY_JITTER_PROPERTY, 50L),
+            BibliosightProperties.getDouble(FAULT_RATE_PROPERTY, 0.0)
+        );
+    }
+
+    /**
+     * Create a server
+     * @param port Port the services are published on
+     * @param recordsFound Records found by every search
+     * @param maxPageSize Largest page that may be requested
+     * @param latency Time in milliseconds taken to answer
+     * @param latencyJitter Random time in milliseconds added to the latency
+     * @param faultRate Share of requests answered with a fault, from 0 to 1
+     */
+    public StubWsLiteServer(int port, int recordsFound, int maxPageSize, long latency, long latencyJitter, double faultRate)
+    {
+        this.port_ = port;
+        this.recordsFound_ = recordsFound;
+        this.maxPageSize_ = maxPageSize;
+        this.latency_ = latency;
+        this.latencyJitter_ = latencyJitter;
+        this.faultRate_ = faultRate;
+    }
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        StubWsLiteServer server = new StubWsLiteServer();
+        server.start();
+
+        System.err.println("Authentication service: " + server.getAuthenticationAddress());
+        System.err.println("Search service: " + server.getSearchAddress());
+        System.err.println(server.getSettings());
+
+        Thread.sleep(Long.MAX_VALUE);
+    }
+
+    /**
+     * Publishes the services
+     */
+    public synchronized void start()
+    {
+        authEndpoint_ = Endpoint.publish(getAuthenticationAddress(), new StubAuthenticationService(this));
+        searchEndpoint_ = Endpoint.publish(getSearchAddress(), new StubSearchService(this));
+    }
+
+    /**
+     * Stops publishing the services
+     */
+    public synchronized void stop()
+    {
+        if (authEndpoint_ != null)
+        {
+            authEndpoint_.stop();
+            authEndpoint_ = null;
+        }
+
+        if (searchEndpoint_ != null)
+        {
+            searchEndpoint_.stop();
+            searchEndpoint_ = null;
+        }
+    }
+
+    public String getAuthenticationAddress()
+    {
+        return "http://localhost:" + port_ + AUTH_PATH;
+    }
+
+    public String getSearchAddress()
+    {
+        return "http://localhost:" + port_ + SEARCH_PATH;
+    }
+
+    /**
+     * Returns a description of the settings of the server
+     * @return
+     */
+    public String getSettings()
+    {
+        return "Records found " + recordsFound_ + ", maximum page size " + maxPageSize_ + ", latency " + latency_
+            + " ms + up to " + latencyJitter_ + " ms, fault rate " + faultRate_;
+    }
+
+    public int getRecordsFound()
+    {
+        return recordsFound_;
+    }
+
+    public int getMaxPageSize()
+    {
+        return maxPageSize_;
+    }
+
+    public long getAuthenticationCount()
+    {
+        return authenticationCount_.get();
+    }
+
+    public long getSearchCount()
+    {
+        return searchCount_.get();
+    }
+
+    public long getRecordsServed()
+    {
+        return recordsServed_.get();
+    }
+
+    public long getFaultCount()
+    {
+        return faultCount_.get();
+    }
+
+    /**
+     * Returns the number of requests rejected because they did not carry the
+     * Id of an open session
+     * @return
+     */
+    public long getSessionRejectedCount()
+    {
+        return sessionRejectedCount_.get();
+    }
+
+    /**
+     * Returns the number of sessions that are open
+     * @return
+     */
+    public int getOpenSessionCount()
+    {
+        return openSessionIds_.size();
+    }
+
+    /**
+     * Opens a session
+     * @return The Id of the session
+     */
+    String openSession()
+    {
+        String sessionId = "STUB" + nextSessionId_.getAndIncrement();
+        openSessionIds_.add(sessionId);
+
+        return sessionId;
+    }
+
+    /**
+     * Returns true if the request carries the Id of an open session, and
+     * records the rejection if it does not
+     * @param context The context of the request
+     * @return
+     */
+    boolean acceptSession(WebServiceContext context)
+    {
+        String sessionId = getSessionId(context);
+
+        if (sessionId == null || !openSessionIds_.contains(sessionId))
+        {
+            sessionRejectedCount_.incrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Closes the session whose Id the request carries
+     * @param context The context of the request
+     * @return False if the request does not carry the Id of an open session
+     */
+    boolean closeSession(WebServiceContext context)
+    {
+        String sessionId = getSessionId(context);
+
+        if (sessionId == null || !openSessionIds_.remove(sessionId))
+        {
+            sessionRejectedCount_.incrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Records an authentication request and waits for the latency
+     */
+    void beginAuthentication()
+    {
+        authenticationCount_.incrementAndGet();
+        waitForLatency();
+    }
+
+    /**
+     * Records a search request and waits for the latency
+     */
+    void beginSearch()
+    {
+        searchCount_.incrementAndGet();
+        waitForLatency();
+    }
+
+    /**
+     * Records records being served
+     * @param recordCount
+     */
+    void addRecordsServed(int recordCount)
+    {
+        recordsServed_.addAndGet(recordCount);
+    }
+
+    /**
+     * Returns true if the current request should fail, recording the fault
+     * @return
+     */
+    boolean nextRequestFails()
+    {
+        boolean fails;
+
+        synchronized (random_)
+        {
+            fails = random_.nextDouble() < faultRate_;
+        }
+
+        if (fails)
+        {
+            faultCount_.incrementAndGet();
+        }
+
+        return fails;
+    }
+
+    /**
+     * Returns the session Id sent in the SID cookie of a request, or null if
+     * there is none
+     * @param context
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static String getSessionId(WebServiceContext context)
+    {
+        Map<String, List<String>> headers = (Map<String, List<String>>) context.getMessageContext().get(MessageContext.HTTP_REQUEST_HEADERS);
+
+        if (headers == null)
+        {
+            return null;
+        }
+
+        for (Map.Entry<String, List<String>> header : headers.entrySet())
+        {
+            if (!"Cookie".equalsIgnoreCase(header.getKey()))
+            {
+                continue;
+            }
+
+            for (String value : header.getValue())
+            {
+                for (String cookie : value.split(";"))
+                {
+                    String[] nameValue = cookie.trim().split("=", 2);
+
+                    if (nameValue.length == 2 && nameValue[0].equals("SID"))
+                    {
+                        return nameValue[1].replace("\"", "");
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private void waitForLatency()
+    {
+        long delay = latency_;
+
+        if (latencyJitter_ > 0)
+        {
+            synchronized (random_)
+            {
+                delay += (long) (random_.nextDouble() * latencyJitter_);
+            }
+        }
+
+        try
+        {
+            Thread.sleep(delay);
+        }
+        catch (InterruptedException ex)
+        {
+            Logger.getLogger(StubWsLiteServer.class.getName()).log(Level.FINE, "The stub request was interrupted", ex);
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.transformer;
+
+import java.io.OutputStream;
+
+/**
+ * An output stream that discards its output, counting the bytes written, so
+ * that writing results can be measured without the cost of storing them
+ *
+ * @author Mike Taylor
+ */
+public class CountingOutputStream extends OutputStream
+{
+    private long count_;
+
+    @Override
+    public void write(int b)
+    {
+        count_++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+    {
+        count_ += len;
+    }
+
+    /**
+     * Returns the number of bytes written
+     * @return
+     */
+    public long getCount()
+    {
+        return count_;
+    }
+}
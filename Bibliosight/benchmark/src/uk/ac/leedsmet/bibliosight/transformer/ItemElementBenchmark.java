@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.transformer;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.LiteRecord;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+import uk.ac.leedsmet.bibliosight.BibliosightClientException;
+
+/**
+ * Benchmarks the cost of a single record, as a DOM element and as streamed
+ * output. The records are taken in turn from a set of synthetic records so
+ * that their fields vary as they would in a real page.
+ *
+ * @author Mike Taylor
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ItemElementBenchmark
+{
+    private static final int RECORD_COUNT = 1024;
+
+    private LiteRecord[] records_;
+
+    private int nextRecord_;
+
+    private SearchResultsTransformer resultsTransformer_;
+
+    private StreamingSearchResultsTransformer streamingTransformer_;
+
+    @Setup(Level.Trial)
+    public void createRecords()
+    {
+        records_ = SyntheticSearchResults.createRecords(RECORD_COUNT, 42L);
+    }
+
+    @Setup(Level.Iteration)
+    public void createTransformers() throws BibliosightClientException
+    {
+        // Elements are created in the transformer's document without being
+        // added to it, so a new document each iteration is enough
+        resultsTransformer_ = new SearchResultsTransformer();
+
+        streamingTransformer_ = new StreamingSearchResultsTransformer(new CountingOutputStream());
+        streamingTransformer_.setExecutionDate("2010-06-01T12:00:00");
+        streamingTransformer_.startDocument(SyntheticSearchResults.createSearchResults(0, 42L), 0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void endDocument() throws BibliosightClientException
+    {
+        streamingTransformer_.setQueryParameters(SyntheticSearchResults.createQueryParameters());
+        streamingTransformer_.setRetrieveParameters(SyntheticSearchResults.createRetrieveParameters(RECORD_COUNT));
+        streamingTransformer_.endDocument();
+    }
+
+    @Benchmark
+    public Element getItemElement()
+    {
+        return resultsTransformer_.getItemElement(nextRecord());
+    }
+
+    @Benchmark
+    public int writeItem() throws BibliosightClientException
+    {
+        streamingTransformer_.writeItem(nextRecord());
+
+        return streamingTransformer_.getItemsWritten();
+    }
+
+    private LiteRecord nextRecord()
+    {
+        LiteRecord record = records_[nextRecord_];
+        nextRecord_ = (nextRecord_ + 1) % RECORD_COUNT;
+
+        return record;
+    }
+}
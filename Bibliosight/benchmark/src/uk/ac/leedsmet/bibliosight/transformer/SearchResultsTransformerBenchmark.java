@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.transformer;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.SearchResults;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import uk.ac.leedsmet.bibliosight.BibliosightClientException;
+
+/**
+ * Benchmarks turning a page of search results into the output document: by
+ * building a DOM, by building a DOM and serialising it to a string as the
+ * client once did for every search, and by streaming it as the client does
+ * now.
+ *
+ * Run with the gc profiler to see the allocation rate as well as the
+ * throughput, for example "ant run-benchmarks".
+ *
+ * @author Mike Taylor
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class SearchResultsTransformerBenchmark
+{
+    @Param({"100", "1000", "10000", "100000"})
+    public int recordCount;
+
+    private SearchResults searchResults_;
+
+    private SearchResultsTransformer resultsTransformer_;
+
+    private Transformer serialiser_;
+
+    @Setup(Level.Trial)
+    public void createSearchResults() throws Exception
+    {
+        searchResults_ = SyntheticSearchResults.createSearchResults(recordCount, 42L);
+
+        resultsTransformer_ = new SearchResultsTransformer();
+        resultsTransformer_.setExecutionDate("2010-06-01T12:00:00");
+        resultsTransformer_.setQueryParameters(SyntheticSearchResults.createQueryParameters());
+        resultsTransformer_.setRetrieveParameters(SyntheticSearchResults.createRetrieveParameters(recordCount));
+        resultsTransformer_.setSearchResults(searchResults_);
+
+        // The same output properties as the client used before results
+        // were streamed
+        serialiser_ = TransformerFactory.newInstance().newTransformer();
+        serialiser_.setOutputProperty(OutputKeys.METHOD, "xml");
+        serialiser_.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        serialiser_.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+        serialiser_.setOutputProperty(OutputKeys.INDENT, "yes");
+    }
+
+    @Benchmark
+    public Document buildDocument() throws BibliosightClientException
+    {
+        return resultsTransformer_.getResultsAsDocument();
+    }
+
+    @Benchmark
+    public String buildAndSerialiseDocument() throws BibliosightClientException, TransformerException
+    {
+        StringWriter stringWriter = new StringWriter();
+        serialiser_.transform(new DOMSource(resultsTransformer_.getResultsAsDocument()), new StreamResult(stringWriter));
+
+        return stringWriter.toString();
+    }
+
+    @Benchmark
+    public long streamDocument() throws BibliosightClientException
+    {
+        CountingOutputStream outputStream = new CountingOutputStream();
+
+        StreamingSearchResultsTransformer resultsTransformer = new StreamingSearchResultsTransformer(outputStream);
+        resultsTransformer.setExecutionDate("2010-06-01T12:00:00");
+        resultsTransformer.setQueryParameters(SyntheticSearchResults.createQueryParameters());
+        resultsTransformer.setRetrieveParameters(SyntheticSearchResults.createRetrieveParameters(recordCount));
+        resultsTransformer.writeSearchResults(searchResults_);
+
+        return outputStream.getCount();
+    }
+}
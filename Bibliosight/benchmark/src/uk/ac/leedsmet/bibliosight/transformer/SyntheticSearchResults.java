@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.transformer;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.EditionDesc;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.LabelValuesPair;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.LiteRecord;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.RetrieveParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.SearchResults;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.TimeSpan;
+import java.util.Random;
+
+/**
+ * Generates search results for the benchmarks, with fields of about the same
+ * number and width as those returned by Web Services Lite for Web of Science
+ * records. The same seed always gives the same results.
+ *
+ * @author Mike Taylor
+ */
+public class SyntheticSearchResults
+{
+    private static final String[] WORDS = {
+        "analysis", "model", "evaluation", "learning", "health", "social",
+        "network", "performance", "system", "students", "higher", "education",
+        "impact", "sport", "physical", "activity", "design", "management",
+        "information", "research", "study", "practice", "community", "policy",
+        "approach", "framework", "development", "assessment", "quality", "care"
+    };
+
+    private static final String[] SURNAMES = {
+        "Smith", "Jones", "Taylor", "Brown", "Williams", "Wilson", "Johnson",
+        "Davies", "Robinson", "Wright", "Thompson", "Evans", "Walker", "White",
+        "Roberts", "Green", "Hall", "Wood", "Jackson", "Clarke", "Nakamura",
+        "Muller", "Garcia", "Rossi", "Kowalski", "Oconnor", "Van der Berg"
+    };
+
+    private static final String[] SOURCE_TITLES = {
+        "JOURNAL OF SPORTS SCIENCES",
+        "BRITISH JOURNAL OF EDUCATIONAL TECHNOLOGY",
+        "INTERNATIONAL JOURNAL OF HOSPITALITY MANAGEMENT",
+        "SOCIAL SCIENCE & MEDICINE",
+        "JOURNAL OF THE AMERICAN SOCIETY FOR INFORMATION SCIENCE AND TECHNOLOGY",
+        "EUROPEAN JOURNAL OF APPLIED PHYSIOLOGY",
+        "LECTURE NOTES IN COMPUTER SCIENCE"
+    };
+
+    private static final String[] MONTHS = {
+        "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"
+    };
+
+    private SyntheticSearchResults()
+    {
+    }
+
+    /**
+     * Returns search results holding the specified number of records
+     * @param recordCount
+     * @param seed
+     * @return
+     */
+    public static SearchResults createSearchResults(int recordCount, long seed)
+    {
+        Random random = new Random(seed);
+        SearchResults searchResults = new SearchResults();
+
+        searchResults.setQueryID("1");
+        searchResults.setRecordsFound(recordCount);
+        searchResults.setRecordsSearched(48000000L);
+
+        for (int i = 0; i < recordCount; i++)
+        {
+            searchResults.getRecords().add(createRecord(random, i));
+        }
+
+        return searchResults;
+    }
+
+    /**
+     * Returns records for the benchmarks of single records
+     * @param recordCount
+     * @param seed
+     * @return
+     */
+    public static LiteRecord[] createRecords(int recordCount, long seed)
+    {
+        Random random = new Random(seed);
+        LiteRecord[] records = new LiteRecord[recordCount];
+
+        for (int i = 0; i < recordCount; i++)
+        {
+            records[i] = createRecord(random, i);
+        }
+
+        return records;
+    }
+
+    /**
+     * Returns a single record. The same index and seed always give the same
+     * record, so that pages can be generated independently of each other.
+     * @param index The position of the record in the results, from zero
+     * @param seed
+     * @return
+     */
+    public static LiteRecord createRecord(int index, long seed)
+    {
+        return createRecord(new Random(seed * 31 + index), index);
+    }
+
+    /**
+     * Returns query parameters like those of an organisation search
+     * @return
+     */
+    public static QueryParameters createQueryParameters()
+    {
+        QueryParameters queryParameters = new QueryParameters();
+        queryParameters.setDatabaseID("WOS");
+        queryParameters.setQueryLanguage("en");
+        queryParameters.setUserQuery("OG=(Leeds Beckett University OR Leeds Metropolitan University)");
+
+        for (String edition : new String[] {"SCI", "SSCI", "AHCI"})
+        {
+            EditionDesc editionDesc = new EditionDesc();
+            editionDesc.setCollection("WOS");
+            editionDesc.setEdition(edition);
+            queryParameters.getEditions().add(editionDesc);
+        }
+
+        TimeSpan timeSpan = new TimeSpan();
+        timeSpan.setBegin("2009-01-01");
+        timeSpan.setEnd("2009-12-31");
+        queryParameters.setTimeSpan(timeSpan);
+
+        return queryParameters;
+    }
+
+    /**
+     * Returns retrieve parameters for a page of the specified size
+     * @param count
+     * @return
+     */
+    public static RetrieveParameters createRetrieveParameters(int count)
+    {
+        RetrieveParameters retrieveParameters = new RetrieveParameters();
+        retrieveParameters.setFirstRecord(1);
+        retrieveParameters.setCount(count);
+
+        return retrieveParameters;
+    }
+
+    private static LiteRecord createRecord(Random random, int index)
+    {
+        LiteRecord record = new LiteRecord();
+
+        // Titles are typically 10 to 20 words, about 120 characters
+        record.getTitle().add(createPair("Title", createWords(random, 10 + random.nextInt(11))));
+
+        // Most records have a handful of authors, and a few have dozens
+        LabelValuesPair authors = new LabelValuesPair();
+        authors.setLabel("Authors");
+        int authorCount = random.nextInt(10) == 0 ? 20 + random.nextInt(40) : 1 + random.nextInt(6);
+
+        for (int i = 0; i < authorCount; i++)
+        {
+            authors.getValues().add(SURNAMES[random.nextInt(SURNAMES.length)] + ", " + (char) ('A' + random.nextInt(26)) + (char) ('A' + random.nextInt(26)));
+        }
+
+        record.getAuthors().add(authors);
+
+        int year = 2000 + random.nextInt(10);
+        int firstPage = 1 + random.nextInt(2000);
+
+        record.getSource().add(createPair("SourceTitle", SOURCE_TITLES[random.nextInt(SOURCE_TITLES.length)]));
+        record.getSource().add(createPair("Volume", String.valueOf(1 + random.nextInt(120))));
+        record.getSource().add(createPair("Issue", String.valueOf(1 + random.nextInt(12))));
+        record.getSource().add(createPair("Pages", firstPage + "-" + (firstPage + 5 + random.nextInt(20))));
+        record.getSource().add(createPair("Published.BiblioDate", MONTHS[random.nextInt(MONTHS.length)]));
+        record.getSource().add(createPair("Published.BiblioYear", String.valueOf(year)));
+
+        LabelValuesPair keywords = new LabelValuesPair();
+        keywords.setLabel("Keywords");
+        int keywordCount = random.nextInt(8);
+
+        for (int i = 0; i < keywordCount; i++)
+        {
+            keywords.getValues().add(createWords(random, 1 + random.nextInt(3)).toUpperCase());
+        }
+
+        record.getKeywords().add(keywords);
+
+        record.setUT(String.format("%015d", 260000000000000L + index * 7919L));
+
+        return record;
+    }
+
+    private static LabelValuesPair createPair(String label, String value)
+    {
+        LabelValuesPair pair = new LabelValuesPair();
+        pair.setLabel(label);
+        pair.getValues().add(value);
+
+        return pair;
+    }
+
+    private static String createWords(Random random, int wordCount)
+    {
+        StringBuilder words = new StringBuilder();
+
+        for (int i = 0; i < wordCount; i++)
+        {
+            if (i > 0)
+            {
+                words.append(' ');
+            }
+
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+
+        return words.toString();
+    }
+}
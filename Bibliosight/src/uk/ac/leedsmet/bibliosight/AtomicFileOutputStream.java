@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An output stream that writes to a temporary file through a buffered file
+ * channel and only replaces the target file once all of the output has been
+ * written.
+ *
+ * The temporary file is created in the same directory as the target so that
+ * it can be renamed into place. If the stream is closed without being
+ * committed, the temporary file is deleted and the target is left untouched.
+ *
+ * @author Mike Taylor
+ */
+public class AtomicFileOutputStream extends OutputStream
+{
+    /**
+     * Size of the buffer used to collect writes to the file channel
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The file that is replaced on commit
+     */
+    private final File targetFile_;
+
+    /**
+     * The file that output is written to until commit
+     */
+    private final File tempFile_;
+
+    private final FileOutputStream fileOutputStream_;
+
+    private final FileChannel channel_;
+
+    private final ByteBuffer buffer_;
+
+    /**
+     * Number of bytes written to the stream
+     */
+    private long bytesWritten_;
+
+    private boolean committed_;
+
+    private boolean closed_;
+
+    /**
+     * Whether the temporary file is kept on close because the target could
+     * not be restored after a failed commit
+     */
+    private boolean tempFileKept_;
+
+    /**
+     * Create a stream that will replace the specified file on commit
+     * @param targetFile
+     * @throws IOException
+     */
+    public AtomicFileOutputStream(File targetFile) throws IOException
+    {
+        targetFile_ = targetFile.getAbsoluteFile();
+        tempFile_ = File.createTempFile(targetFile_.getName() + ".", ".tmp", targetFile_.getParentFile());
+        fileOutputStream_ = new FileOutputStream(tempFile_);
+        channel_ = fileOutputStream_.getChannel();
+        buffer_ = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the file that is replaced on commit
+     * @return
+     */
+    public File getTargetFile()
+    {
+        return targetFile_;
+    }
+
+    /**
+     * Returns the number of bytes written to the stream
+     * @return
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten_;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        ensureOpen();
+
+        if (!buffer_.hasRemaining())
+        {
+            flushBuffer();
+        }
+
+        buffer_.put((byte) b);
+        bytesWritten_++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        ensureOpen();
+
+        while (len > 0)
+        {
+            if (!buffer_.hasRemaining())
+            {
+                flushBuffer();
+            }
+
+            int chunk = Math.min(len, buffer_.remaining());
+            buffer_.put(b, off, chunk);
+
+            off += chunk;
+            len -= chunk;
+            bytesWritten_ += chunk;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        ensureOpen();
+        flushBuffer();
+    }
+
+    /**
+     * Writes any buffered output, forces it to disk and moves the temporary
+     * file over the target file
+     * @throws IOException
+     */
+    public void commit() throws IOException
+    {
+        ensureOpen();
+
+        flushBuffer();
+        channel_.force(false);
+        closed_ = true;
+        fileOutputStream_.close();
+
+        // File.renameTo() will not replace an existing file on every platform,
+        // so the target is moved aside and only removed once the new file is
+        // in place
+        if (!tempFile_.renameTo(targetFile_))
+        {
+            if (!targetFile_.exists())
+            {
+                throw new IOException("The results file could not be moved into place: " + targetFile_);
+            }
+
+            File backupFile = moveAside(targetFile_);
+
+            if (!tempFile_.renameTo(targetFile_))
+            {
+                if (!backupFile.renameTo(targetFile_))
+                {
+                    // Neither file is in place, so both are kept
+                    tempFileKept_ = true;
+                    throw new IOException("The results file could not be moved into place: " + targetFile_ + ". The previous results are in " + backupFile + " and the new results are in " + tempFile_);
+                }
+
+                throw new IOException("The results file could not be moved into place: " + targetFile_);
+            }
+
+            backupFile.delete();
+        }
+
+        committed_ = true;
+    }
+
+    /**
+     * Closes the stream. If the stream has not been committed, the temporary
+     * file is deleted.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (committed_)
+        {
+            return;
+        }
+
+        if (!closed_)
+        {
+            closed_ = true;
+            fileOutputStream_.close();
+        }
+
+        if (!tempFileKept_)
+        {
+            tempFile_.delete();
+        }
+    }
+
+    /**
+     * Renames a file to a new name in the same directory
+     * @param file
+     * @return The renamed file
+     * @throws IOException
+     */
+    private static File moveAside(File file) throws IOException
+    {
+        File backupFile = File.createTempFile(file.getName() + ".", ".bak", file.getParentFile());
+
+        // The file is only created to reserve the name
+        if (!backupFile.delete() || !file.renameTo(backupFile))
+        {
+            backupFile.delete();
+            throw new IOException("The results file could not be replaced: " + file);
+        }
+
+        return backupFile;
+    }
+
+    /**
+     * Writes the contents of the buffer to the file channel
+     * @throws IOException
+     */
+    private void flushBuffer() throws IOException
+    {
+        buffer_.flip();
+
+        while (buffer_.hasRemaining())
+        {
+            channel_.write(buffer_);
+        }
+
+        buffer_.clear();
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (closed_)
+        {
+            throw new IOException("The results file has been closed");
+        }
+    }
+}
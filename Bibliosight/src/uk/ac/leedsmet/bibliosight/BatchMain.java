@@ -0,0 +1,685 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.ws.WebServiceException;
+import uk.ac.leedsmet.bibliosight.controller.DefaultController;
+import uk.ac.leedsmet.bibliosight.model.QueryModel;
+import uk.ac.leedsmet.bibliosight.wslite.SearchPortPool;
+import uk.ac.leedsmet.bibliosight.wslite.WsLiteServices;
+import uk.ac.leedsmet.bibliosight.wslite.WsLiteSessionManager;
+
+/**
+ * Runs a batch of searches from a query file without the Swing interface.
+ *
+ * The searches run concurrently under one Web Services Lite session and share
+ * a pool of search ports. Each search writes its results to its own file and a
+ * summary of the timings, record counts and failures is reported at the end.
+ *
+ * The query file is a properties file. Search options that apply to every
+ * query use the HeadlessMain option names as keys. Each query is given as
+ * query.NAME=USER QUERY, and options for a single query as query.NAME.OPTION.
+ * For example:
+ *
+ * <pre>
+ * symbolic=4week
+ * all=true
+ * query.business=AD=(Leeds Met* Univ*) AND TI=(Business)
+ * query.health=AD=(Leeds Met* Univ*) AND OG=(Leeds Metropolitan University)
+ * query.health.editions=SCI,SSCI
+ * </pre>
+ *
+ * @author Mike Taylor
+ */
+public class BatchMain
+{
+    /**
+     * Prefix of the keys that define the queries in a query file
+     */
+    private static final String QUERY_PREFIX = "query.";
+
+    /**
+     * Session idle timeout in seconds for the shared session
+     */
+    private static final int SESSION_IDLE_TIMEOUT = 600;
+
+    private static final String USAGE =
+        "Usage: java -cp Bibliosight1.jar uk.ac.leedsmet.bibliosight.BatchMain --queries FILE [options]\n" +
+        "\n" +
+        "  --queries FILE        Properties file defining the queries (required)\n" +
+        "  --parallel N          Number of queries run at once (default 4)\n" +
+        "  --output-dir DIR      Directory the results files are written to (default .)\n" +
+        "  --report FILE         File the summary report is also written to\n" +
+        "  --verbose             Write the search logs to standard error\n" +
+        "  --help                Show this message\n" +
+        "\n" +
+        "In the query file, query.NAME=QUERY defines a query whose results are written\n" +
+        "to NAME.xml, and query.NAME.OPTION sets a HeadlessMain option for that query\n" +
+        "alone. Other keys set HeadlessMain options for every query.\n" +
+        "\n" +
+        "Exit codes: 0 every query completed, 2 invalid options, otherwise the\n" +
+        "highest HeadlessMain exit code of the queries that failed";
+
+    public static void main(String[] args)
+    {
+        System.exit(run(args, System.err));
+    }
+
+    /**
+     * Runs the batch with the supplied arguments and returns the exit code
+     * @param args
+     * @param messageStream Stream that the report, errors and logs are written to
+     * @return
+     */
+    public static int run(String[] args, PrintStream messageStream)
+    {
+        String queriesPath = null;
+        String reportPath = null;
+        File outputDirectory = new File(".");
+        int parallel = 4;
+        boolean verbose = false;
+
+        Map<String, Properties> queries = null;
+
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                String arg = args[i];
+
+                if (arg.equals("--help"))
+                {
+                    messageStream.println(USAGE);
+                    return HeadlessMain.EXIT_SUCCESS;
+                }
+                else if (arg.equals("--verbose"))
+                {
+                    verbose = true;
+                }
+                else if (arg.equals("--queries") || arg.equals("--parallel") || arg.equals("--output-dir") || arg.equals("--report"))
+                {
+                    if (i + 1 >= args.length)
+                    {
+                        throw new IllegalArgumentException("Option " + arg + " requires a value");
+                    }
+
+                    String value = args[++i];
+
+                    if (arg.equals("--queries"))
+                    {
+                        queriesPath = value;
+                    }
+                    else if (arg.equals("--parallel"))
+                    {
+                        parallel = parsePositiveInteger(arg, value);
+                    }
+                    else if (arg.equals("--output-dir"))
+                    {
+                        outputDirectory = new File(value);
+                    }
+                    else
+                    {
+                        reportPath = value;
+                    }
+                }
+                else
+                {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+
+            if (queriesPath == null)
+            {
+                throw new IllegalArgumentException("A query file must be given with --queries");
+            }
+
+            queries = readQueries(queriesPath, outputDirectory);
+
+            // Check every query before any of them is run
+            for (Map.Entry<String, Properties> query : queries.entrySet())
+            {
+                try
+                {
+                    HeadlessMain.configureModel(new QueryModel(), query.getValue());
+                }
+                catch (IllegalArgumentException ex)
+                {
+                    throw new IllegalArgumentException("Query " + query.getKey() + ": " + ex.getMessage());
+                }
+            }
+        }
+        catch (IllegalArgumentException ex)
+        {
+            messageStream.println("Error: " + ex.getMessage());
+            messageStream.println(USAGE);
+            return HeadlessMain.EXIT_USAGE;
+        }
+
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs())
+        {
+            messageStream.println("Error: The output directory " + outputDirectory + " could not be created");
+            return HeadlessMain.EXIT_OUTPUT_FAILED;
+        }
+
+        WsLiteSessionManager sessionManager = null;
+        SearchPortPool searchPortPool = null;
+
+        try
+        {
+            sessionManager = new WsLiteSessionManager(WsLiteServices.createAuthenticationPort(), SESSION_IDLE_TIMEOUT * 1000L);
+            searchPortPool = WsLiteServices.getSearchPortPool(sessionManager, parallel * getPortsPerQuery(queries));
+        }
+        catch (WebServiceException ex)
+        {
+            messageStream.println("Error: The Web Services Lite services could not be created: " + ex.getMessage());
+            return HeadlessMain.EXIT_SEARCH_FAILED;
+        }
+
+        long startTime = System.nanoTime();
+        List<QueryResult> results = null;
+
+        try
+        {
+            results = runQueries(queries, sessionManager, searchPortPool, parallel, verbose ? messageStream : null);
+        }
+        finally
+        {
+            try
+            {
+                sessionManager.close();
+            }
+            catch (BibliosightAuthenticationException ex)
+            {
+                messageStream.println("Warning: The Web Services Lite session could not be closed: " + ex.getMessage());
+            }
+        }
+
+        String report = getReport(results, System.nanoTime() - startTime);
+
+        messageStream.print(report);
+
+        if (reportPath != null)
+        {
+            try
+            {
+                writeReport(reportPath, report);
+            }
+            catch (IOException ex)
+            {
+                messageStream.println("Error: The report could not be written to " + reportPath + ": " + ex.getMessage());
+                return HeadlessMain.EXIT_OUTPUT_FAILED;
+            }
+        }
+
+        int exitCode = HeadlessMain.EXIT_SUCCESS;
+
+        for (QueryResult result : results)
+        {
+            if (result.getExitCode() != HeadlessMain.EXIT_NO_RECORDS)
+            {
+                exitCode = Math.max(exitCode, result.getExitCode());
+            }
+        }
+
+        return exitCode;
+    }
+
+    /**
+     * Reads the queries from a query file, keyed by query name. The options
+     * of each query include those shared by every query and the path of its
+     * results file.
+     * @param path
+     * @param outputDirectory
+     * @return
+     * @throws IllegalArgumentException
+     */
+    private static Map<String, Properties> readQueries(String path, File outputDirectory) throws IllegalArgumentException
+    {
+        Properties properties = HeadlessMain.readProperties(path);
+        Properties sharedOptions = new Properties();
+        Map<String, Properties> queries = new TreeMap<String, Properties>();
+
+        // Queries are defined first so that their options can be attached to them
+        for (String key : properties.stringPropertyNames())
+        {
+            if (key.startsWith(QUERY_PREFIX) && key.indexOf('.', QUERY_PREFIX.length()) < 0)
+            {
+                String name = key.substring(QUERY_PREFIX.length());
+
+                if (name.length() == 0)
+                {
+                    throw new IllegalArgumentException("A query name is missing from " + key + " in " + path);
+                }
+
+                Properties options = new Properties();
+                options.setProperty("query", properties.getProperty(key));
+                options.setProperty("output", new File(outputDirectory, name + ".xml").getPath());
+
+                queries.put(name, options);
+            }
+        }
+
+        if (queries.isEmpty())
+        {
+            throw new IllegalArgumentException("No queries are defined in " + path);
+        }
+
+        for (String key : properties.stringPropertyNames())
+        {
+            String value = properties.getProperty(key);
+
+            if (key.startsWith(QUERY_PREFIX))
+            {
+                int separator = key.indexOf('.', QUERY_PREFIX.length());
+
+                if (separator < 0)
+                {
+                    continue;
+                }
+
+                String name = key.substring(QUERY_PREFIX.length(), separator);
+                String option = key.substring(separator + 1);
+
+                if (!queries.containsKey(name))
+                {
+                    throw new IllegalArgumentException("Option " + key + " is given for a query that is not defined in " + path);
+                }
+
+                if (!isQueryOption(option))
+                {
+                    throw new IllegalArgumentException("Unknown option " + key + " in " + path);
+                }
+
+                queries.get(name).setProperty(option, value);
+            }
+            else if (isQueryOption(key) && !key.equals("query") && !key.equals("output"))
+            {
+                sharedOptions.setProperty(key, value);
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown option " + key + " in " + path);
+            }
+        }
+
+        for (Map.Entry<String, Properties> query : queries.entrySet())
+        {
+            Properties options = query.getValue();
+
+            // A query's own time span replaces the shared one of either kind
+            boolean hasTimeSpan = options.containsKey("begin") || options.containsKey("end") || options.containsKey("symbolic");
+
+            for (String key : sharedOptions.stringPropertyNames())
+            {
+                boolean isTimeSpan = key.equals("begin") || key.equals("end") || key.equals("symbolic");
+
+                if (!options.containsKey(key) && !(isTimeSpan && hasTimeSpan))
+                {
+                    options.setProperty(key, sharedOptions.getProperty(key));
+                }
+            }
+
+            if (options.getProperty("output").equals("-"))
+            {
+                throw new IllegalArgumentException("Query " + query.getKey() + " must be written to a file rather than standard output");
+            }
+
+            HeadlessMain.removeUnsetFlags(options);
+        }
+
+        return queries;
+    }
+
+    /**
+     * Returns true if the name is a HeadlessMain option that can be given
+     * for a query
+     * @param name
+     * @return
+     */
+    private static boolean isQueryOption(String name)
+    {
+        return HeadlessMain.isOption(name) && !name.equals("config") && !name.equals("verbose") && !name.equals("help");
+    }
+
+    /**
+     * Returns the largest number of search ports used by any one query
+     * @param queries
+     * @return
+     */
+    private static int getPortsPerQuery(Map<String, Properties> queries)
+    {
+        int portsPerQuery = 1;
+
+        for (Properties options : queries.values())
+        {
+            if (options.containsKey("all"))
+            {
+                int concurrentPageRequests = HeadlessMain.parseInteger(options, "concurrency", 4);
+
+                concurrentPageRequests = Math.max(concurrentPageRequests, QueryModel.getMinConcurrentPageRequests());
+                concurrentPageRequests = Math.min(concurrentPageRequests, QueryModel.getMaxConcurrentPageRequests());
+
+                portsPerQuery = Math.max(portsPerQuery, concurrentPageRequests);
+            }
+        }
+
+        return portsPerQuery;
+    }
+
+    /**
+     * Runs the queries, up to the specified number at once, and returns their
+     * results in query name order
+     * @param queries
+     * @param sessionManager Manager for the shared session
+     * @param searchPortPool Pool of search ports shared by the queries
+     * @param parallel Number of queries run at once
+     * @param logStream Stream the search logs are written to, or null
+     * @return
+     */
+    private static List<QueryResult> runQueries(
+        Map<String, Properties> queries,
+        final WsLiteSessionManager sessionManager,
+        final SearchPortPool searchPortPool,
+        int parallel,
+        final PrintStream logStream)
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallel, queries.size()));
+        List<Future<QueryResult>> futures = new ArrayList<Future<QueryResult>>();
+        List<QueryResult> results = new ArrayList<QueryResult>();
+
+        try
+        {
+            for (Map.Entry<String, Properties> query : queries.entrySet())
+            {
+                final String name = query.getKey();
+                final Properties options = query.getValue();
+
+                futures.add(executor.submit(new Callable<QueryResult>()
+                {
+                    public QueryResult call()
+                    {
+                        return runQuery(name, options, sessionManager, searchPortPool, logStream);
+                    }
+                }));
+            }
+
+            for (Future<QueryResult> future : futures)
+            {
+                try
+                {
+                    results.add(future.get());
+                }
+                catch (ExecutionException ex)
+                {
+                    // runQuery() reports its failures in the result, so this
+                    // is only reached for an unexpected error
+                    throw new IllegalStateException("A query could not be run", ex.getCause());
+                }
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        return results;
+    }
+
+    /**
+     * Runs a single query and returns its result
+     * @param name
+     * @param options
+     * @param sessionManager
+     * @param searchPortPool
+     * @param logStream Stream the search log is written to, or null
+     * @return
+     */
+    private static QueryResult runQuery(
+        final String name,
+        Properties options,
+        WsLiteSessionManager sessionManager,
+        SearchPortPool searchPortPool,
+        final PrintStream logStream)
+    {
+        QueryModel queryModel = new QueryModel(sessionManager, searchPortPool);
+
+        if (logStream != null)
+        {
+            queryModel.addPropertyChangeListener(new PropertyChangeListener()
+            {
+                public void propertyChange(PropertyChangeEvent evt)
+                {
+                    if (evt.getPropertyName().equals(DefaultController.WS_LITE_SEARCH_LOG_APPEND_PROPERTY))
+                    {
+                        logStream.println("[" + name + "] " + evt.getNewValue());
+                    }
+                }
+            });
+        }
+
+        HeadlessMain.configureModel(queryModel, options);
+
+        String outputPath = options.getProperty("output");
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        long startTime = System.nanoTime();
+
+        int exitCode = HeadlessMain.runSearch(queryModel, options, new PrintStream(messages, true));
+
+        long elapsedTime = System.nanoTime() - startTime;
+        int records = exitCode == HeadlessMain.EXIT_SUCCESS ? queryModel.getSearchProgress().getRecordsTransformed() : 0;
+
+        return new QueryResult(name, outputPath, exitCode, records, elapsedTime, messages.toString().trim());
+    }
+
+    /**
+     * Returns the summary report of a batch
+     * @param results
+     * @param elapsedTime Time taken by the batch in nanoseconds
+     * @return
+     */
+    private static String getReport(List<QueryResult> results, long elapsedTime)
+    {
+        StringBuilder report = new StringBuilder();
+        String newLine = System.getProperty("line.separator");
+
+        int completed = 0;
+        int empty = 0;
+        int failed = 0;
+        long records = 0;
+
+        report.append(String.format("%-24s %-14s %9s %9s  %s", "Query", "Status", "Records", "Seconds", "Output")).append(newLine);
+
+        for (QueryResult result : results)
+        {
+            String detail = result.getExitCode() == HeadlessMain.EXIT_SUCCESS ? result.getOutputPath() : result.getMessage().replaceAll("\\s*[\r\n]+\\s*", "; ");
+
+            report.append(String.format("%-24s %-14s %9d %9.1f  %s", result.getName(), getStatus(result.getExitCode()), result.getRecords(), result.getElapsedTime() / 1e9, detail)).append(newLine);
+
+            if (result.getExitCode() == HeadlessMain.EXIT_SUCCESS)
+            {
+                completed++;
+            }
+            else if (result.getExitCode() == HeadlessMain.EXIT_NO_RECORDS)
+            {
+                empty++;
+            }
+            else
+            {
+                failed++;
+            }
+
+            records += result.getRecords();
+        }
+
+        report.append(newLine);
+        report.append(String.format("%d queries: %d completed, %d found no records, %d failed. %d records in %.1f seconds", results.size(), completed, empty, failed, records, elapsedTime / 1e9)).append(newLine);
+
+        return report.toString();
+    }
+
+    /**
+     * Returns the report status for a HeadlessMain exit code
+     * @param exitCode
+     * @return
+     */
+    private static String getStatus(int exitCode)
+    {
+        switch (exitCode)
+        {
+            case HeadlessMain.EXIT_SUCCESS:
+                return "OK";
+
+            case HeadlessMain.EXIT_NO_RECORDS:
+                return "NO RECORDS";
+
+            case HeadlessMain.EXIT_AUTHENTICATION_FAILED:
+                return "AUTH FAILED";
+
+            case HeadlessMain.EXIT_OUTPUT_FAILED:
+                return "OUTPUT FAILED";
+
+            default:
+                return "FAILED";
+        }
+    }
+
+    private static void writeReport(String path, String report) throws IOException
+    {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), "UTF-8"));
+
+        try
+        {
+            writer.write(report);
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private static int parsePositiveInteger(String option, String value) throws IllegalArgumentException
+    {
+        try
+        {
+            int number = Integer.parseInt(value.trim());
+
+            if (number > 0)
+            {
+                return number;
+            }
+        }
+        catch (NumberFormatException ex)
+        {
+            // Reported below
+        }
+
+        throw new IllegalArgumentException("Option " + option + " must be a whole number greater than zero: " + value);
+    }
+
+    /**
+     * The outcome of a query in a batch
+     */
+    private static class QueryResult
+    {
+        private final String name_;
+        private final String outputPath_;
+        private final int exitCode_;
+        private final int records_;
+        private final long elapsedTime_;
+        private final String message_;
+
+        QueryResult(String name, String outputPath, int exitCode, int records, long elapsedTime, String message)
+        {
+            name_ = name;
+            outputPath_ = outputPath;
+            exitCode_ = exitCode;
+            records_ = records;
+            elapsedTime_ = elapsedTime;
+            message_ = message;
+        }
+
+        String getName()
+        {
+            return name_;
+        }
+
+        String getOutputPath()
+        {
+            return outputPath_;
+        }
+
+        /**
+         * Returns the HeadlessMain exit code of the query
+         * @return
+         */
+        int getExitCode()
+        {
+            return exitCode_;
+        }
+
+        int getRecords()
+        {
+            return records_;
+        }
+
+        /**
+         * Returns the time taken by the query in nanoseconds
+         * @return
+         */
+        long getElapsedTime()
+        {
+            return elapsedTime_;
+        }
+
+        /**
+         * Returns the messages reported by the query
+         * @return
+         */
+        String getMessage()
+        {
+            return message_;
+        }
+    }
+}
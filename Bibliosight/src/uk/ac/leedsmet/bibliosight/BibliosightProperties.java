@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the bibliosight.* system properties that configure the application.
+ *
+ * A property that is not set, or is empty, takes its default value. A value
+ * that cannot be parsed is logged and the default is used instead.
+ *
+ * @author Mike Taylor
+ */
+public final class BibliosightProperties
+{
+    private BibliosightProperties()
+    {
+    }
+
+    /**
+     * Returns the trimmed value of a property, or null if it is not set or
+     * is empty
+     * @param name
+     * @return
+     */
+    public static String getString(String name)
+    {
+        String value = System.getProperty(name);
+
+        if (value == null || value.trim().length() == 0)
+        {
+            return null;
+        }
+
+        return value.trim();
+    }
+
+    /**
+     * Returns the value of a property as a whole number
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public static long getLong(String name, long defaultValue)
+    {
+        String value = getString(name);
+
+        if (value != null)
+        {
+            try
+            {
+                return Long.parseLong(value);
+            }
+            catch (NumberFormatException ex)
+            {
+                warn(name, value, "a whole number");
+            }
+        }
+
+        return defaultValue;
+    }
+
+    /**
+     * Returns the value of a property as a whole number
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public static int getInt(String name, int defaultValue)
+    {
+        String value = getString(name);
+
+        if (value != null)
+        {
+            try
+            {
+                return Integer.parseInt(value);
+            }
+            catch (NumberFormatException ex)
+            {
+                warn(name, value, "a whole number");
+            }
+        }
+
+        return defaultValue;
+    }
+
+    /**
+     * Returns the value of a property as a number
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public static double getDouble(String name, double defaultValue)
+    {
+        String value = getString(name);
+
+        if (value != null)
+        {
+            try
+            {
+                return Double.parseDouble(value);
+            }
+            catch (NumberFormatException ex)
+            {
+                warn(name, value, "a number");
+            }
+        }
+
+        return defaultValue;
+    }
+
+    /**
+     * Returns the value of a property as true or false
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public static boolean getBoolean(String name, boolean defaultValue)
+    {
+        String value = getString(name);
+
+        if (value != null)
+        {
+            if ("true".equalsIgnoreCase(value))
+            {
+                return true;
+            }
+
+            if ("false".equalsIgnoreCase(value))
+            {
+                return false;
+            }
+
+            warn(name, value, "true or false");
+        }
+
+        return defaultValue;
+    }
+
+    /**
+     * Returns the value of a property as a file, or the named file in the
+     * .bibliosight directory of the user's home directory if it is not set
+     * @param name
+     * @param defaultName
+     * @return
+     */
+    public static File getFile(String name, String defaultName)
+    {
+        String value = getString(name);
+
+        if (value != null)
+        {
+            return new File(value);
+        }
+
+        return new File(getUserDirectory(), defaultName);
+    }
+
+    /**
+     * Returns the .bibliosight directory of the user's home directory, where
+     * files kept between runs are stored by default
+     * @return
+     */
+    public static File getUserDirectory()
+    {
+        return new File(System.getProperty("user.home"), ".bibliosight");
+    }
+
+    private static void warn(String name, String value, String expected)
+    {
+        Logger.getLogger(BibliosightProperties.class.getName()).log(Level.WARNING, "Ignoring " + name + " as it is not " + expected + ": " + value);
+    }
+}
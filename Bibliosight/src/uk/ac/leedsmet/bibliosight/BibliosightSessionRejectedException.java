@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight;
+
+/**
+ * Thrown when the WS Lite search service rejects the session used for a search
+ *
+ * @author Mike Taylor
+ */
+public class BibliosightSessionRejectedException extends BibliosightSearchException {
+
+    /**
+     * The session Id that was rejected
+     */
+    private final String sessionId_;
+
+    public BibliosightSessionRejectedException(String sessionId, Exception cause)
+    {
+        super("The search session was rejected by the service", cause);
+        this.sessionId_ = sessionId;
+    }
+
+    /**
+     * Returns the session Id that was rejected
+     * @return
+     */
+    public String getSessionId()
+    {
+        return sessionId_;
+    }
+}
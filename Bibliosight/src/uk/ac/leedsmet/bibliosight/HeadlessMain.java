@@ -0,0 +1,825 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.EditionDesc;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryField;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.TimeSpan;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Properties;
+import java.util.TimeZone;
+import uk.ac.leedsmet.bibliosight.controller.DefaultController;
+import uk.ac.leedsmet.bibliosight.model.QueryModel;
+import uk.ac.leedsmet.bibliosight.transformer.SeenRecordIndex;
+import uk.ac.leedsmet.bibliosight.wslite.HighWaterMarkStore;
+import uk.ac.leedsmet.bibliosight.wslite.TimeSpanPlanner;
+
+/**
+ * Runs a single search from the command line without the Swing interface and
+ * writes the results as XML to a file or to standard output.
+ *
+ * Search options can be given as arguments or read from a properties file
+ * with the --config option. The properties file uses the option names without
+ * the leading dashes as keys, and arguments override the values in the file.
+ *
+ * @author Mike Taylor
+ */
+public class HeadlessMain
+{
+    /**
+     * The search completed and the results were written
+     */
+    public static final int EXIT_SUCCESS = 0;
+
+    /**
+     * The search completed but found no records
+     */
+    public static final int EXIT_NO_RECORDS = 1;
+
+    /**
+     * The arguments or configuration file were not valid
+     */
+    public static final int EXIT_USAGE = 2;
+
+    /**
+     * Authentication with Web Services Lite failed
+     */
+    public static final int EXIT_AUTHENTICATION_FAILED = 3;
+
+    /**
+     * The search could not be completed
+     */
+    public static final int EXIT_SEARCH_FAILED = 4;
+
+    /**
+     * The results could not be written
+     */
+    public static final int EXIT_OUTPUT_FAILED = 5;
+
+    /**
+     * Output path used to write the results to standard output
+     */
+    private static final String STANDARD_OUTPUT = "-";
+
+    private static final String[] VALUE_OPTIONS =
+    {
+        "config", "database", "editions", "begin", "end", "symbolic", "sort",
+        "query", "first", "count", "concurrency", "output", "proxy-host",
+        "proxy-port", "state", "duplicates", "record-index", "split"
+    };
+
+    private static final String[] FLAG_OPTIONS =
+    {
+        "all", "checkpoint", "fan-out", "incremental", "verbose", "help"
+    };
+
+    private static final String USAGE =
+        "Usage: java -cp Bibliosight1.jar uk.ac.leedsmet.bibliosight.HeadlessMain [options]\n" +
+        "\n" +
+        "  --config FILE         Read options from a properties file\n" +
+        "  --database ID         Database Id (default WOS)\n" +
+        "  --editions LIST       Comma separated editions, as EDITION or COLLECTION:EDITION\n" +
+        "                        (default AHCI,ISTP,SCI,SSCI)\n" +
+        "  --begin DATE          Start of the time span (yyyy-mm-dd)\n" +
+        "  --end DATE            End of the time span (yyyy-mm-dd)\n" +
+        "  --symbolic SPAN       Recent time span: 1week, 2week or 4week (default 4week)\n" +
+        "  --sort LIST           Comma separated sort fields, as NAME:A or NAME:D (default Date:D)\n" +
+        "  --query QUERY         User query, e.g. \"TI=(Business)\" (required)\n" +
+        "  --first N             First record to retrieve (default 1)\n" +
+        "  --count N             Records per page (default 100)\n" +
+        "  --all                 Retrieve every page of the result\n" +
+        "  --checkpoint          Save each page retrieved so that a failed harvest can be\n" +
+        "                        resumed by running it again\n" +
+        "  --concurrency N       Concurrent page requests when retrieving every page (default 4)\n" +
+        "  --fan-out             Harvest each edition with a search of its own, concurrently\n" +
+        "  --split N             Split the time span of a harvest that finds more than N\n" +
+        "                        records, or 0 never to split (default 100000)\n" +
+        "  --output FILE         File the results are written to, or - for standard output (default -)\n" +
+        "  --incremental         Only search the records added since the last successful\n" +
+        "                        run of the same query. Implies --all. The day of the last\n" +
+        "                        run is searched again, so --duplicates defaults to skip,\n" +
+        "                        checked against the records written by this query only\n" +
+        "  --state FILE          File the last run dates are kept in for --incremental\n" +
+        "                        (default ~/.bibliosight/highwatermarks.properties)\n" +
+        "  --duplicates MODE     Records already written by an earlier search: include,\n" +
+        "                        flag or skip (default include, or skip with --incremental)\n" +
+        "  --record-index FILE   File the UTs of the records written are kept in for\n" +
+        "                        --duplicates (default ~/.bibliosight/records.idx, or a file\n" +
+        "                        for each query next to the --state file with --incremental)\n" +
+        "  --proxy-host HOST     HTTP proxy host\n" +
+        "  --proxy-port PORT     HTTP proxy port\n" +
+        "  --verbose             Write the search log to standard error\n" +
+        "  --help                Show this message\n" +
+        "\n" +
+        "Exit codes: 0 results written, 1 no records found, 2 invalid options,\n" +
+        "3 authentication failed, 4 search failed, 5 results could not be written";
+
+    public static void main(String[] args)
+    {
+        System.exit(run(args, System.err));
+    }
+
+    /**
+     * Runs a search with the supplied arguments and returns the exit code
+     * @param args
+     * @param messageStream Stream that errors and the log are written to
+     * @return
+     */
+    public static int run(String[] args, PrintStream messageStream)
+    {
+        Properties options = null;
+
+        try
+        {
+            options = parseArguments(args);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            messageStream.println("Error: " + ex.getMessage());
+            messageStream.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        if (options.containsKey("help"))
+        {
+            messageStream.println(USAGE);
+            return EXIT_SUCCESS;
+        }
+
+        final QueryModel queryModel = new QueryModel();
+
+        if (options.containsKey("verbose"))
+        {
+            final PrintStream logStream = messageStream;
+
+            queryModel.addPropertyChangeListener(new PropertyChangeListener()
+            {
+                public void propertyChange(PropertyChangeEvent evt)
+                {
+                    if (evt.getPropertyName().equals(DefaultController.WS_LITE_SEARCH_LOG_APPEND_PROPERTY))
+                    {
+                        logStream.println(evt.getNewValue());
+                    }
+                }
+            });
+        }
+
+        try
+        {
+            configureModel(queryModel, options);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            messageStream.println("Error: " + ex.getMessage());
+            messageStream.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        try
+        {
+            return runSearch(queryModel, options, messageStream);
+        }
+        finally
+        {
+            queryModel.closeWsLiteSession();
+        }
+    }
+
+    /**
+     * Runs the search configured by a set of options. In incremental mode,
+     * the time span is replaced with one that starts on the date of the last
+     * successful run of the query, and the date is updated once the search
+     * has completed and written every record found. The records of that day
+     * are found again, and are skipped unless the duplicates option says
+     * otherwise. Unless a record index is named, they are recognised using
+     * an index of the records written by this query alone.
+     * @param queryModel A model configured with the options
+     * @param options
+     * @param messageStream
+     * @return The exit code
+     */
+    static int runSearch(QueryModel queryModel, Properties options, PrintStream messageStream)
+    {
+        String outputPath = options.getProperty("output", STANDARD_OUTPUT);
+
+        if (!options.containsKey("incremental"))
+        {
+            return runSearch(queryModel, outputPath, messageStream);
+        }
+
+        String state = options.getProperty("state");
+        HighWaterMarkStore highWaterMarkStore = new HighWaterMarkStore(state != null ? new File(state) : HighWaterMarkStore.getDefaultFile());
+
+        // The records recognised as written already are those written by
+        // earlier runs of this query, not by every query, unless an index is
+        // named
+        if (!options.containsKey("record-index"))
+        {
+            File recordIndexFile = highWaterMarkStore.getRecordIndexFile(queryModel.getQueryParameters());
+
+            try
+            {
+                queryModel.setSeenRecordIndex(SeenRecordIndex.getIndex(recordIndexFile));
+            }
+            catch (IOException ex)
+            {
+                messageStream.println("Error: The record index could not be read from " + recordIndexFile + ": " + ex.getMessage());
+                return EXIT_USAGE;
+            }
+        }
+
+        // The date is taken before the search so that records added while it
+        // runs are found by the next run. It is taken in UTC so that the same
+        // day is recorded wherever the harvest runs.
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String runDate = dateFormat.format(new Date());
+        String lastRunDate = null;
+
+        try
+        {
+            lastRunDate = highWaterMarkStore.getLastRunDate(queryModel.getQueryParameters());
+        }
+        catch (IOException ex)
+        {
+            messageStream.println("Error: The last run dates could not be read from " + highWaterMarkStore.getFile() + ": " + ex.getMessage());
+            return EXIT_USAGE;
+        }
+
+        if (lastRunDate != null)
+        {
+            // The time span includes the day of the last run, as records may
+            // have been added after the last run on that day
+            TimeSpan timeSpan = new TimeSpan();
+            timeSpan.setBegin(lastRunDate);
+            timeSpan.setEnd(runDate);
+
+            queryModel.appendToLog("Searching for records added since the last run on " + lastRunDate);
+            queryModel.setTimeSpan(timeSpan);
+            queryModel.setDateMode(DefaultController.DateMode.RANGE);
+        }
+        else
+        {
+            queryModel.appendToLog("The query has not been run before, so the whole time span will be searched");
+        }
+
+        int exitCode = runSearch(queryModel, outputPath, messageStream);
+
+        if (exitCode == EXIT_SUCCESS && !queryModel.isAllRecordsWritten())
+        {
+            messageStream.println("Warning: Not every record found was written, so the last run date has not been updated");
+        }
+        else if (exitCode == EXIT_SUCCESS || exitCode == EXIT_NO_RECORDS)
+        {
+            try
+            {
+                highWaterMarkStore.setLastRunDate(queryModel.getQueryParameters(), runDate);
+            }
+            catch (IOException ex)
+            {
+                messageStream.println("Error: The last run date could not be saved to " + highWaterMarkStore.getFile() + ": " + ex.getMessage());
+                return EXIT_OUTPUT_FAILED;
+            }
+        }
+
+        return exitCode;
+    }
+
+    /**
+     * Runs the search and writes the results to the output path
+     * @param queryModel
+     * @param outputPath
+     * @param messageStream
+     * @return The exit code
+     */
+    static int runSearch(QueryModel queryModel, String outputPath, PrintStream messageStream)
+    {
+        AtomicFileOutputStream fileOutputStream = null;
+        OutputStream outputStream = null;
+
+        try
+        {
+            if (outputPath.equals(STANDARD_OUTPUT))
+            {
+                outputStream = new BufferedOutputStream(System.out);
+            }
+            else
+            {
+                fileOutputStream = new AtomicFileOutputStream(new File(outputPath));
+                outputStream = fileOutputStream;
+            }
+
+            if (!queryModel.runWsLiteQuery(outputStream))
+            {
+                messageStream.println("No records were found");
+                return EXIT_NO_RECORDS;
+            }
+
+            if (fileOutputStream != null)
+            {
+                fileOutputStream.commit();
+            }
+            else
+            {
+                outputStream.flush();
+            }
+
+            queryModel.indexWrittenRecords();
+
+            return EXIT_SUCCESS;
+        }
+        catch (BibliosightAuthenticationException ex)
+        {
+            messageStream.println("Error: Authentication with the Web Services Lite service has failed: " + getMessage(ex));
+            return EXIT_AUTHENTICATION_FAILED;
+        }
+        catch (BibliosightSearchException ex)
+        {
+            messageStream.println("Error: The search operation could not be completed: " + getMessage(ex));
+            return EXIT_SEARCH_FAILED;
+        }
+        catch (BibliosightClientException ex)
+        {
+            messageStream.println("Error: The search results could not be written: " + getMessage(ex));
+            return EXIT_OUTPUT_FAILED;
+        }
+        catch (IOException ex)
+        {
+            messageStream.println("Error: The search results could not be written to " + outputPath + ": " + ex.getMessage());
+            return EXIT_OUTPUT_FAILED;
+        }
+        finally
+        {
+            if (fileOutputStream != null)
+            {
+                try
+                {
+                    // Discards the partly written file if the output was not committed
+                    fileOutputStream.close();
+                }
+                catch (IOException ex)
+                {
+                    messageStream.println("Warning: The temporary results file could not be removed: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses the command line arguments into a set of options. Options read
+     * from a configuration file are overridden by those on the command line.
+     * @param args
+     * @return
+     * @throws IllegalArgumentException
+     */
+    static Properties parseArguments(String[] args) throws IllegalArgumentException
+    {
+        Properties arguments = new Properties();
+
+        for (int i = 0; i < args.length; i++)
+        {
+            String arg = args[i];
+
+            if (!arg.startsWith("--"))
+            {
+                throw new IllegalArgumentException("Unexpected argument " + arg);
+            }
+
+            String name = arg.substring(2);
+
+            if (contains(FLAG_OPTIONS, name))
+            {
+                arguments.setProperty(name, "true");
+            }
+            else if (contains(VALUE_OPTIONS, name))
+            {
+                if (i + 1 >= args.length)
+                {
+                    throw new IllegalArgumentException("Option " + arg + " requires a value");
+                }
+
+                arguments.setProperty(name, args[++i]);
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        Properties options = new Properties();
+
+        if (arguments.containsKey("config"))
+        {
+            options.putAll(loadConfiguration(arguments.getProperty("config")));
+        }
+
+        options.putAll(arguments);
+
+        removeUnsetFlags(options);
+
+        return options;
+    }
+
+    /**
+     * Removes flags that are not set to true. Flags read from a file are
+     * only set when their value is true.
+     * @param options
+     */
+    static void removeUnsetFlags(Properties options)
+    {
+        for (String flag : FLAG_OPTIONS)
+        {
+            if (options.containsKey(flag) && !Boolean.parseBoolean(options.getProperty(flag).trim()))
+            {
+                options.remove(flag);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the name is one of the search options
+     * @param name
+     * @return
+     */
+    static boolean isOption(String name)
+    {
+        return contains(VALUE_OPTIONS, name) || contains(FLAG_OPTIONS, name);
+    }
+
+    /**
+     * Reads options from a properties file
+     * @param path
+     * @return
+     * @throws IllegalArgumentException
+     */
+    private static Properties loadConfiguration(String path) throws IllegalArgumentException
+    {
+        Properties configuration = readProperties(path);
+
+        for (String name : configuration.stringPropertyNames())
+        {
+            if (!isOption(name))
+            {
+                throw new IllegalArgumentException("Unknown option " + name + " in configuration file " + path);
+            }
+        }
+
+        return configuration;
+    }
+
+    /**
+     * Reads a properties file
+     * @param path
+     * @return
+     * @throws IllegalArgumentException
+     */
+    static Properties readProperties(String path) throws IllegalArgumentException
+    {
+        Properties configuration = new Properties();
+        InputStream inputStream = null;
+
+        try
+        {
+            inputStream = new FileInputStream(path);
+            configuration.load(inputStream);
+        }
+        catch (IOException ex)
+        {
+            throw new IllegalArgumentException("The configuration file " + path + " could not be read: " + ex.getMessage());
+        }
+        finally
+        {
+            if (inputStream != null)
+            {
+                try
+                {
+                    inputStream.close();
+                }
+                catch (IOException ex)
+                {
+                    // Nothing
+                }
+            }
+        }
+
+        return configuration;
+    }
+
+    /**
+     * Sets the properties of the model from a set of options, using the same
+     * defaults as the Swing interface where an option is not given
+     * @param queryModel
+     * @param options
+     * @throws IllegalArgumentException
+     */
+    static void configureModel(QueryModel queryModel, Properties options) throws IllegalArgumentException
+    {
+        String userQuery = options.getProperty("query", "").trim();
+
+        if (userQuery.length() == 0)
+        {
+            throw new IllegalArgumentException("A user query must be given with --query");
+        }
+
+        queryModel.setDatabaseId(options.getProperty("database", "WOS").trim());
+        queryModel.setEditions(parseEditions(options.getProperty("editions", "AHCI,ISTP,SCI,SSCI")));
+
+        String begin = options.getProperty("begin");
+        String end = options.getProperty("end");
+
+        if (begin != null || end != null)
+        {
+            if (begin == null || end == null)
+            {
+                throw new IllegalArgumentException("Both --begin and --end must be given for a time span");
+            }
+
+            if (options.containsKey("symbolic"))
+            {
+                throw new IllegalArgumentException("A time span and a symbolic time span cannot both be given");
+            }
+
+            TimeSpan timeSpan = new TimeSpan();
+            timeSpan.setBegin(parseDate(begin));
+            timeSpan.setEnd(parseDate(end));
+
+            queryModel.setTimeSpan(timeSpan);
+            queryModel.setDateMode(DefaultController.DateMode.RANGE);
+        }
+        else
+        {
+            queryModel.setSymbolicTimeSpan(parseSymbolicTimeSpan(options.getProperty("symbolic", "4week")));
+            queryModel.setDateMode(DefaultController.DateMode.RECENT);
+        }
+
+        queryModel.setSortFields(parseSortFields(options.getProperty("sort", "Date:D")));
+        queryModel.setUserQuery(userQuery);
+        queryModel.setFirstRecord(parseInteger(options, "first", 1));
+        queryModel.setMaxResultCount(parseInteger(options, "count", 100));
+        // Only a harvest of every page can bring an incremental search up to
+        // date, as the last run date moves past any records not retrieved
+        queryModel.setHarvestAllPages(options.containsKey("all") || options.containsKey("incremental"));
+        queryModel.setCheckpointHarvests(options.containsKey("checkpoint"));
+        queryModel.setConcurrentPageRequests(parseInteger(options, "concurrency", 4));
+        queryModel.setFanOutEditions(options.containsKey("fan-out"));
+        queryModel.setMaxRecordsPerSearch(parseInteger(options, "split", TimeSpanPlanner.DEFAULT_MAX_RECORDS));
+        // An incremental search overlaps the last run by a day, so the records
+        // written by the last run are skipped unless asked for
+        queryModel.setDuplicateRecords(parseDuplicateRecords(options.getProperty("duplicates", options.containsKey("incremental") ? "skip" : "include")));
+
+        String recordIndex = options.getProperty("record-index");
+
+        if (recordIndex != null)
+        {
+            try
+            {
+                queryModel.setSeenRecordIndex(SeenRecordIndex.getIndex(new File(recordIndex.trim())));
+            }
+            catch (IOException ex)
+            {
+                throw new IllegalArgumentException("The record index " + recordIndex + " could not be read: " + ex.getMessage());
+            }
+        }
+        queryModel.setSessionIdleTimeout(600);
+
+        String proxyHost = options.getProperty("proxy-host");
+
+        if (proxyHost != null)
+        {
+            queryModel.setProxyHost(proxyHost.trim());
+            queryModel.setProxyPort(parseInteger(options, "proxy-port", 8080));
+        }
+    }
+
+    /**
+     * Parses the option for records already written by an earlier search
+     * @param value
+     * @return
+     * @throws IllegalArgumentException
+     */
+    private static DefaultController.DuplicateRecords parseDuplicateRecords(String value) throws IllegalArgumentException
+    {
+        for (DefaultController.DuplicateRecords duplicateRecords : DefaultController.DuplicateRecords.values())
+        {
+            if (duplicateRecords.name().equalsIgnoreCase(value.trim()))
+            {
+                return duplicateRecords;
+            }
+        }
+
+        throw new IllegalArgumentException("Invalid duplicates option " + value + ": expected include, flag or skip");
+    }
+
+    /**
+     * Parses a comma separated list of editions. An edition without a
+     * collection is taken to be in the WOS collection.
+     * @param value
+     * @return
+     * @throws IllegalArgumentException
+     */
+    private static ArrayList<EditionDesc> parseEditions(String value) throws IllegalArgumentException
+    {
+        ArrayList<EditionDesc> editions = new ArrayList<EditionDesc>();
+
+        for (String item : value.split(","))
+        {
+            item = item.trim();
+
+            if (item.length() == 0)
+            {
+                continue;
+            }
+
+            EditionDesc edition = new EditionDesc();
+            int separator = item.indexOf(':');
+
+            if (separator >= 0)
+            {
+                edition.setCollection(item.substring(0, separator).trim());
+                edition.setEdition(item.substring(separator + 1).trim());
+            }
+            else
+            {
+                edition.setCollection("WOS");
+                edition.setEdition(item);
+            }
+
+            editions.add(edition);
+        }
+
+        if (editions.isEmpty())
+        {
+            throw new IllegalArgumentException("At least one edition must be given");
+        }
+
+        return editions;
+    }
+
+    /**
+     * Parses a comma separated list of sort fields. A field without a sort
+     * direction is sorted in ascending order.
+     * @param value
+     * @return
+     * @throws IllegalArgumentException
+     */
+    private static ArrayList<QueryField> parseSortFields(String value) throws IllegalArgumentException
+    {
+        ArrayList<QueryField> sortFields = new ArrayList<QueryField>();
+
+        for (String item : value.split(","))
+        {
+            item = item.trim();
+
+            if (item.length() == 0)
+            {
+                continue;
+            }
+
+            QueryField sortField = new QueryField();
+            int separator = item.indexOf(':');
+
+            if (separator >= 0)
+            {
+                String sort = item.substring(separator + 1).trim().toUpperCase();
+
+                if (!sort.equals("A") && !sort.equals("D"))
+                {
+                    throw new IllegalArgumentException("Sort direction must be A or D: " + item);
+                }
+
+                sortField.setName(item.substring(0, separator).trim());
+                sortField.setSort(sort);
+            }
+            else
+            {
+                sortField.setName(item);
+                sortField.setSort("A");
+            }
+
+            sortFields.add(sortField);
+        }
+
+        return sortFields;
+    }
+
+    /**
+     * Parses a symbolic time span value such as 4week
+     * @param value
+     * @return
+     * @throws IllegalArgumentException
+     */
+    private static DefaultController.SymbolicTimeSpan parseSymbolicTimeSpan(String value) throws IllegalArgumentException
+    {
+        for (DefaultController.SymbolicTimeSpan symbolicTimeSpan : DefaultController.SymbolicTimeSpan.values())
+        {
+            if (symbolicTimeSpan.getValue().equalsIgnoreCase(value.trim()))
+            {
+                return symbolicTimeSpan;
+            }
+        }
+
+        throw new IllegalArgumentException("Symbolic time span must be 1week, 2week or 4week: " + value);
+    }
+
+    /**
+     * Checks that a date is in the yyyy-mm-dd form expected by the service
+     * @param value
+     * @return
+     * @throws IllegalArgumentException
+     */
+    private static String parseDate(String value) throws IllegalArgumentException
+    {
+        value = value.trim();
+
+        if (!value.matches("\\d{4}-\\d{2}-\\d{2}"))
+        {
+            throw new IllegalArgumentException("Dates must be given as yyyy-mm-dd: " + value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Parses an integer option, returning the default value if it is not set
+     * @param options
+     * @param name
+     * @param defaultValue
+     * @return
+     * @throws IllegalArgumentException
+     */
+    static Integer parseInteger(Properties options, String name, int defaultValue) throws IllegalArgumentException
+    {
+        String value = options.getProperty(name);
+
+        if (value == null)
+        {
+            return defaultValue;
+        }
+
+        try
+        {
+            return Integer.valueOf(value.trim());
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new IllegalArgumentException("Option " + name + " must be a whole number: " + value);
+        }
+    }
+
+    private static boolean contains(String[] names, String name)
+    {
+        for (String item : names)
+        {
+            if (item.equals(name))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the message of an exception and of its cause
+     * @param ex
+     * @return
+     */
+    private static String getMessage(Exception ex)
+    {
+        if (ex.getCause() != null && ex.getCause().getMessage() != null)
+        {
+            return ex.getMessage() + " (" + ex.getCause().getMessage() + ")";
+        }
+
+        return ex.getMessage();
+    }
+}
@@ -29,6 +29,8 @@ import javax.swing.WindowConstants;
 import uk.ac.leedsmet.bibliosight.controller.DefaultController;
 import uk.ac.leedsmet.bibliosight.model.QueryModel;
 import uk.ac.leedsmet.bibliosight.view.QueryViewPanel;
+import uk.ac.leedsmet.bibliosight.wslite.TimeSpanPlanner;
+import uk.ac.leedsmet.bibliosight.wslite.WsLiteServices;
 
 /**
  *
@@ -39,7 +41,20 @@ public class Main
 
     public Main()
     {
-        QueryModel queryModel = new QueryModel();
+        // Build the WS Lite services in the background so that the first
+        // search does not have to wait for the WSDL documents
+        Thread preloadThread = new Thread("WS Lite service preload")
+        {
+            @Override
+            public void run()
+            {
+                WsLiteServices.preload();
+            }
+        };
+        preloadThread.setDaemon(true);
+        preloadThread.start();
+
+        final QueryModel queryModel = new QueryModel();
         DefaultController controller = new DefaultController();
         QueryViewPanel queryViewPanel = new QueryViewPanel(controller);
 
@@ -52,6 +67,16 @@ public class Main
         displayFrame.pack();
         displayFrame.setVisible(true);
 
+        // Close any open Web Services Lite session when the application exits
+        Runtime.getRuntime().addShutdownHook(new Thread()
+        {
+            @Override
+            public void run()
+            {
+                queryModel.closeWsLiteSession();
+            }
+        });
+
         // Set initial database id
         queryModel.setDatabaseId("WOS");
 
@@ -73,6 +98,30 @@ public class Main
         // Set initial maximum result count
         queryModel.setMaxResultCount(100);
 
+        // Set initial harvest mode
+        queryModel.setHarvestAllPages(false);
+
+        // Save harvested pages so that a failed harvest can be resumed
+        queryModel.setCheckpointHarvests(true);
+
+        // Include records that have already been written by an earlier search
+        queryModel.setDuplicateRecords(DefaultController.DuplicateRecords.INCLUDE);
+
+        // Harvest every edition with a single search
+        queryModel.setFanOutEditions(false);
+
+        // Split harvests that find more records than one search can retrieve
+        queryModel.setMaxRecordsPerSearch(TimeSpanPlanner.DEFAULT_MAX_RECORDS);
+
+        // Set initial number of concurrent page requests used when harvesting
+        queryModel.setConcurrentPageRequests(4);
+
+        // Set initial session idle timeout (in seconds)
+        queryModel.setSessionIdleTimeout(600);
+
+        // Show results in the output window rather than writing them to a file
+        queryModel.setOutputPath("");
+
         // Set initial proxy
         //queryModel.setProxyHost("proxy.example.com");
         //queryModel.setProxyPort(8080);
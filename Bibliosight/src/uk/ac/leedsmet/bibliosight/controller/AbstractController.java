@@ -24,8 +24,11 @@ import uk.ac.leedsmet.bibliosight.model.AbstractModel;
 import uk.ac.leedsmet.bibliosight.view.AbstractViewPanel;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 // Based on the general concept found here here: http://java.sun.com/developer/technicalArticles/javase/mvc/
 /**
@@ -47,12 +50,18 @@ public abstract class AbstractController implements PropertyChangeListener
      */
     private ArrayList<AbstractModel> registeredModels;
 
+    /**
+     * Changes waiting to be passed on to the registered views
+     */
+    private final ViewEventQueue viewEventQueue;
+
 
     /** Creates a new instance of Controller */
     public AbstractController()
     {
         registeredViews = new ArrayList<AbstractViewPanel>();
         registeredModels = new ArrayList<AbstractModel>();
+        viewEventQueue = new ViewEventQueue(this);
     }
 
     /**
@@ -97,11 +106,51 @@ public abstract class AbstractController implements PropertyChangeListener
     /**
      * This method is used to implement the PropertyChangeListener interface. Any model
      * changes will be sent to this controller through the use of this method.
+     *
+     * Views are Swing components, so changes are passed on to the views from
+     * the event dispatch thread. Changes made while the views are waiting to
+     * be refreshed are combined, so that views are refreshed no more often
+     * than the display can show.
      * @param evt An object that describes the model's property change.
      */
     public void propertyChange(PropertyChangeEvent evt)
     {
+        viewEventQueue.post(evt);
+    }
+
+    /**
+     * Combines two changes to the same property that have been made before
+     * the views could be refreshed. By default the later value replaces the
+     * earlier one; controllers with properties whose changes must all be
+     * seen should combine them here.
+     * @param pendingEvt The change waiting to be passed on to the views
+     * @param evt The later change
+     * @return The change to pass on to the views instead of both
+     */
+    protected PropertyChangeEvent coalesceEvents(PropertyChangeEvent pendingEvt, PropertyChangeEvent evt)
+    {
+        return new PropertyChangeEvent(evt.getSource(), evt.getPropertyName(), pendingEvt.getOldValue(), evt.getNewValue());
+    }
+
+    /**
+     * Returns true if a change waiting to be passed on to the views is made
+     * obsolete by a later change to another property, and should be dropped.
+     * By default no change is dropped.
+     * @param pendingEvt The change waiting to be passed on to the views
+     * @param evt The later change
+     * @return
+     */
+    protected boolean isSupersededBy(PropertyChangeEvent pendingEvt, PropertyChangeEvent evt)
+    {
+        return false;
+    }
 
+    /**
+     * Sends a model property change to every registered view
+     * @param evt An object that describes the model's property change.
+     */
+    void notifyViews(PropertyChangeEvent evt)
+    {
         for (AbstractViewPanel view: registeredViews)
         {
             view.modelPropertyChange(evt);
@@ -114,34 +163,46 @@ public abstract class AbstractController implements PropertyChangeListener
      * controller.
      *
      * Each registered model is checked to see if it contains a setter for
-     * the specified property name. For any models that have such a setter,
-     * the setter is called with the supplied new property value. Cases where
-     * a setter is not found in a model are ignored.
+     * the specified property name that accepts the supplied value. For any
+     * models that have such a setter, the setter is called with the supplied
+     * new property value. Models without a setter for the property are
+     * skipped, but a setter that does not accept the type of value, a
+     * property that no model has a setter for, and a setter that fails are
+     * all logged.
      *
      * @param propertyName The name of the property
      * @param newValue An object that represents the new value of the property.
      */
     protected void setModelProperty(String propertyName, Object newValue)
     {
+        boolean setterFound = false;
+
         for (AbstractModel model: registeredModels)
         {
-            try
-            {
+            ModelMethodRegistry registry = ModelMethodRegistry.getRegistry(model.getClass());
 
-                Method method = model.getClass().getMethod(
-                    "set"+propertyName,
-                    new Class[] {
-                        newValue.getClass()
-                    }
-                );
+            if (!registry.hasSetter(propertyName))
+            {
+                continue;
+            }
 
-                method.invoke(model, newValue);
+            setterFound = true;
+            Method method = registry.getSetter(propertyName, newValue);
 
-            }
-            catch (Exception ex)
+            if (method == null)
             {
-                //  Handle exception
+                Logger.getLogger(AbstractController.class.getName()).log(Level.WARNING,
+                    "{0} has no set{1} method that accepts a value of type {2}",
+                    new Object[] {model.getClass().getName(), propertyName, newValue == null ? "null" : newValue.getClass().getName()});
+                continue;
             }
+
+            invoke(model, method, newValue);
+        }
+
+        if (!setterFound)
+        {
+            Logger.getLogger(AbstractController.class.getName()).log(Level.WARNING, "No registered model has a set{0} method", propertyName);
         }
     }
 
@@ -151,29 +212,50 @@ public abstract class AbstractController implements PropertyChangeListener
      *
      * Each registered model is checked to see if it contains a method matchign
      * the specified method name. For any models that have such a method,
-     * the method is called. Cases where a method is not found in a model are
-     * ignored.
+     * the method is called. Models without the method are skipped, but a
+     * method that no model has, and a method that fails, are logged.
      *
      * @param methodName The name of the method
      * 
      */
     protected void triggerModelMethod(String methodName)
     {
+        boolean methodFound = false;
+
         for (AbstractModel model: registeredModels)
         {
-            try
-            {
+            Method method = ModelMethodRegistry.getRegistry(model.getClass()).getTrigger(methodName);
 
-                Method method = model.getClass().getMethod("trigger" + methodName);
-                method.invoke(model);
-
-            }
-            catch (Exception ex)
+            if (method != null)
             {
-                //  Handle exception
+                methodFound = true;
+                invoke(model, method);
             }
         }
+
+        if (!methodFound)
+        {
+            Logger.getLogger(AbstractController.class.getName()).log(Level.WARNING, "No registered model has a trigger{0} method", methodName);
+        }
+    }
+
+    /**
+     * Calls a model method, logging any failure
+     */
+    private static void invoke(AbstractModel model, Method method, Object... arguments)
+    {
+        try
+        {
+            method.invoke(model, arguments);
+        }
+        catch (IllegalAccessException ex)
+        {
+            Logger.getLogger(AbstractController.class.getName()).log(Level.SEVERE, "The model method could not be called: " + method, ex);
+        }
+        catch (InvocationTargetException ex)
+        {
+            Logger.getLogger(AbstractController.class.getName()).log(Level.SEVERE, "The model method failed: " + method, ex.getCause());
+        }
     }
     
 }
-
@@ -23,6 +23,7 @@ package uk.ac.leedsmet.bibliosight.controller;
 import com.thomsonreuters.wokmws.cxf.woksearchlite.EditionDesc;
 import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryField;
 import com.thomsonreuters.wokmws.cxf.woksearchlite.TimeSpan;
+import java.beans.PropertyChangeEvent;
 import java.util.List;
 
 
@@ -44,6 +45,16 @@ public class DefaultController extends AbstractController
         RECENT
     }
 
+    /**
+     * Options for records that have already been written by an earlier search
+     */
+    public enum DuplicateRecords
+    {
+        INCLUDE,
+        FLAG,
+        SKIP
+    }
+
     /**
      * Symbolic time span options
      */
@@ -67,23 +78,85 @@ public class DefaultController extends AbstractController
     }
 
     // Properties that are expected to be in one or more of the registered models
+    public static final String WS_LITE_SEARCH_CHECKPOINT_HARVESTS_PROPERTY = "CheckpointHarvests";
+    public static final String WS_LITE_SEARCH_CONCURRENT_PAGE_REQUESTS_PROPERTY = "ConcurrentPageRequests";
     public static final String WS_LITE_SEARCH_DATABASE_ID_PROPERTY = "DatabaseId";
     public static final String WS_LITE_SEARCH_DATE_MODE_PROPERTY = "DateMode";
+    public static final String WS_LITE_SEARCH_DUPLICATE_RECORDS_PROPERTY = "DuplicateRecords";
     public static final String WS_LITE_SEARCH_EDITIONS_PROPERTY = "Editions";
+    public static final String WS_LITE_SEARCH_FAN_OUT_EDITIONS_PROPERTY = "FanOutEditions";
     public static final String WS_LITE_SEARCH_FIRST_RECORD_PROPERTY = "FirstRecord";
+    public static final String WS_LITE_SEARCH_HARVEST_ALL_PAGES_PROPERTY = "HarvestAllPages";
+    public static final String WS_LITE_SEARCH_MAX_RECORDS_PER_SEARCH_PROPERTY = "MaxRecordsPerSearch";
     public static final String WS_LITE_SEARCH_MAX_RESULT_COUNT_PROPERTY = "MaxResultCount";
+    public static final String WS_LITE_SEARCH_OUTPUT_PATH_PROPERTY = "OutputPath";
     public static final String WS_LITE_SEARCH_PROXY_HOST_PROPERTY = "ProxyHost";
     public static final String WS_LITE_SEARCH_PROXY_PORT_PROPERTY = "ProxyPort";
+    public static final String WS_LITE_SEARCH_SEARCH_PROGRESS_PROPERTY = "SearchProgress";
+    public static final String WS_LITE_SEARCH_SESSION_IDLE_TIMEOUT_PROPERTY = "SessionIdleTimeout";
     public static final String WS_LITE_SEARCH_SORT_FIELDS_PROPERTY = "SortFields";
     public static final String WS_LITE_SEARCH_SYMBOLIC_TIME_SPAN_PROPERTY = "SymbolicTimeSpan";
     public static final String WS_LITE_SEARCH_TIME_SPAN_PROPERTY = "TimeSpan";
     public static final String WS_LITE_SEARCH_USER_QUERY_PROPERTY = "UserQuery";
     public static final String WS_LITE_SEARCH_RESULT_OUTPUT_PROPERTY = "ResultOutput";
     public static final String WS_LITE_SEARCH_LOG_PROPERTY = "Log";
+    public static final String WS_LITE_SEARCH_LOG_APPEND_PROPERTY = "LogAppend";
 
     // Method names that are expected to be in one or more of the registered models
+    public static final String WS_LITE_SEARCH_CANCEL_QUERY_METHOD = "CancelWsLiteQuery";
     public static final String WS_LITE_SEARCH_EXECUTE_QUERY_METHOD = "ExecuteWsLiteQuery";
 
+    /**
+     * Combines changes waiting to be passed on to the views. Log appends carry
+     * only the new lines, so they are joined rather than replaced, letting the
+     * views add a burst of lines at once.
+     * @param pendingEvt
+     * @param evt
+     * @return
+     */
+    @Override
+    protected PropertyChangeEvent coalesceEvents(PropertyChangeEvent pendingEvt, PropertyChangeEvent evt)
+    {
+        if (evt.getPropertyName().equals(WS_LITE_SEARCH_LOG_APPEND_PROPERTY))
+        {
+            return new PropertyChangeEvent(evt.getSource(), evt.getPropertyName(), null, pendingEvt.getNewValue() + "\n" + evt.getNewValue());
+        }
+
+        return super.coalesceEvents(pendingEvt, evt);
+    }
+
+    /**
+     * Drops log appends waiting to be passed on to the views when the whole
+     * log is set, as the appends were made to the log that it replaces
+     * @param pendingEvt
+     * @param evt
+     * @return
+     */
+    @Override
+    protected boolean isSupersededBy(PropertyChangeEvent pendingEvt, PropertyChangeEvent evt)
+    {
+        return evt.getPropertyName().equals(WS_LITE_SEARCH_LOG_PROPERTY)
+            && pendingEvt.getPropertyName().equals(WS_LITE_SEARCH_LOG_APPEND_PROPERTY);
+    }
+
+    /**
+     * Change the checkpoint harvests option in the model
+     * @param newCheckpointHarvests
+     */
+    public void changeCheckpointHarvests(Boolean newCheckpointHarvests)
+    {
+        setModelProperty(WS_LITE_SEARCH_CHECKPOINT_HARVESTS_PROPERTY, newCheckpointHarvests);
+    }
+
+    /**
+     * Change the number of concurrent page requests in the model
+     * @param newConcurrentPageRequests
+     */
+    public void changeConcurrentPageRequests(Integer newConcurrentPageRequests)
+    {
+        setModelProperty(WS_LITE_SEARCH_CONCURRENT_PAGE_REQUESTS_PROPERTY, newConcurrentPageRequests);
+    }
+
     /**
      * Change the database Id in the model
      * @param newDatabaseId
@@ -102,6 +175,15 @@ public class DefaultController extends AbstractController
         setModelProperty(WS_LITE_SEARCH_DATE_MODE_PROPERTY, newDateType);
     }
 
+    /**
+     * Change the duplicate records option in the model
+     * @param newDuplicateRecords
+     */
+    public void changeDuplicateRecords(DuplicateRecords newDuplicateRecords)
+    {
+        setModelProperty(WS_LITE_SEARCH_DUPLICATE_RECORDS_PROPERTY, newDuplicateRecords);
+    }
+
     /**
      * Change the editions in the model
      * @param newEditions
@@ -120,6 +202,15 @@ public class DefaultController extends AbstractController
         setModelProperty(WS_LITE_SEARCH_FIRST_RECORD_PROPERTY, newFirstRecord);
     }
 
+    /**
+     * Change the harvest all pages option in the model
+     * @param newHarvestAllPages
+     */
+    public void changeHarvestAllPages(Boolean newHarvestAllPages)
+    {
+        setModelProperty(WS_LITE_SEARCH_HARVEST_ALL_PAGES_PROPERTY, newHarvestAllPages);
+    }
+
     /**
      * Change the log in the model
      * @param newLog
@@ -129,6 +220,24 @@ public class DefaultController extends AbstractController
         setModelProperty(WS_LITE_SEARCH_LOG_PROPERTY, newLog);
     }
 
+    /**
+     * Change the fan out editions option in the model
+     * @param newFanOutEditions
+     */
+    public void changeFanOutEditions(Boolean newFanOutEditions)
+    {
+        setModelProperty(WS_LITE_SEARCH_FAN_OUT_EDITIONS_PROPERTY, newFanOutEditions);
+    }
+
+    /**
+     * Change the maximum records per search in the model
+     * @param newMaxRecordsPerSearch
+     */
+    public void changeMaxRecordsPerSearch(Integer newMaxRecordsPerSearch)
+    {
+        setModelProperty(WS_LITE_SEARCH_MAX_RECORDS_PER_SEARCH_PROPERTY, newMaxRecordsPerSearch);
+    }
+
     /**
      * Change the maximum result count in the model
      * @param newMaxResultCount
@@ -138,6 +247,15 @@ public class DefaultController extends AbstractController
         setModelProperty(WS_LITE_SEARCH_MAX_RESULT_COUNT_PROPERTY, newMaxResultCount);
     }
 
+    /**
+     * Change the output path in the model
+     * @param newOutputPath
+     */
+    public void changeOutputPath(String newOutputPath)
+    {
+        setModelProperty(WS_LITE_SEARCH_OUTPUT_PATH_PROPERTY, newOutputPath);
+    }
+
     /**
      * Change the proxy host name in the model
      * @param newProxyHost
@@ -165,6 +283,15 @@ public class DefaultController extends AbstractController
         setModelProperty(WS_LITE_SEARCH_RESULT_OUTPUT_PROPERTY, newResultOutput);
     }
 
+    /**
+     * Change the session idle timeout (in seconds) in the model
+     * @param newSessionIdleTimeout
+     */
+    public void changeSessionIdleTimeout(Integer newSessionIdleTimeout)
+    {
+        setModelProperty(WS_LITE_SEARCH_SESSION_IDLE_TIMEOUT_PROPERTY, newSessionIdleTimeout);
+    }
+
     /**
      * Change the sort fields in the model
      * @param newSortFields
@@ -208,4 +335,12 @@ public class DefaultController extends AbstractController
     {
         triggerModelMethod(WS_LITE_SEARCH_EXECUTE_QUERY_METHOD);
     }
+
+    /**
+     * Triggers the cancellation of the WS Lite query in progress in the model
+     */
+    public void cancelWsLiteQuery()
+    {
+        triggerModelMethod(WS_LITE_SEARCH_CANCEL_QUERY_METHOD);
+    }
 }
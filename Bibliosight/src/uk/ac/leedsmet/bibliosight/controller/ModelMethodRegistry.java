@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.controller;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The setters and trigger methods of a model class, looked up once so that a
+ * controller can call them without searching the class each time.
+ *
+ * Setters are matched on the type of the new value, so that a value can be
+ * passed to a setter that takes any of its supertypes or interfaces, or the
+ * primitive type it wraps. The setter chosen for each type of value is kept,
+ * so it is only worked out once.
+ *
+ * @author Mike Taylor
+ */
+class ModelMethodRegistry
+{
+    /**
+     * Registries that have been built, by model class
+     */
+    private static final Map<Class<?>, ModelMethodRegistry> registries_ = new HashMap<Class<?>, ModelMethodRegistry>();
+
+    private static final Map<Class<?>, Class<?>> WRAPPER_TYPES = new HashMap<Class<?>, Class<?>>();
+
+    static
+    {
+        WRAPPER_TYPES.put(Boolean.TYPE, Boolean.class);
+        WRAPPER_TYPES.put(Byte.TYPE, Byte.class);
+        WRAPPER_TYPES.put(Character.TYPE, Character.class);
+        WRAPPER_TYPES.put(Short.TYPE, Short.class);
+        WRAPPER_TYPES.put(Integer.TYPE, Integer.class);
+        WRAPPER_TYPES.put(Long.TYPE, Long.class);
+        WRAPPER_TYPES.put(Float.TYPE, Float.class);
+        WRAPPER_TYPES.put(Double.TYPE, Double.class);
+    }
+
+    /**
+     * Public one-argument setters of the class, by property name
+     */
+    private final Map<String, List<Method>> setters_ = new HashMap<String, List<Method>>();
+
+    /**
+     * Public no-argument trigger methods of the class, by method name
+     */
+    private final Map<String, Method> triggers_ = new HashMap<String, Method>();
+
+    /**
+     * Setters chosen for each property and type of value. A null type stands
+     * for a null value, and a null setter for a property that no setter of
+     * the class accepts the value for.
+     */
+    private final Map<String, Map<Class<?>, Method>> resolvedSetters_ = new HashMap<String, Map<Class<?>, Method>>();
+
+    private ModelMethodRegistry(Class<?> modelClass)
+    {
+        for (Method method : modelClass.getMethods())
+        {
+            if (Modifier.isStatic(method.getModifiers()))
+            {
+                continue;
+            }
+
+            String name = method.getName();
+            int parameterCount = method.getParameterTypes().length;
+
+            if (name.startsWith("set") && name.length() > 3 && parameterCount == 1)
+            {
+                String propertyName = name.substring(3);
+                List<Method> setters = setters_.get(propertyName);
+
+                if (setters == null)
+                {
+                    setters = new ArrayList<Method>();
+                    setters_.put(propertyName, setters);
+                }
+
+                setters.add(method);
+            }
+            else if (name.startsWith("trigger") && name.length() > 7 && parameterCount == 0)
+            {
+                triggers_.put(name.substring(7), method);
+            }
+        }
+    }
+
+    /**
+     * Returns the registry of a model class, building it the first time the
+     * class is used
+     * @param modelClass
+     * @return
+     */
+    static ModelMethodRegistry getRegistry(Class<?> modelClass)
+    {
+        synchronized (registries_)
+        {
+            ModelMethodRegistry registry = registries_.get(modelClass);
+
+            if (registry == null)
+            {
+                registry = new ModelMethodRegistry(modelClass);
+                registries_.put(modelClass, registry);
+            }
+
+            return registry;
+        }
+    }
+
+    /**
+     * Returns true if the class has a setter for the property, whatever type
+     * of value it takes
+     * @param propertyName
+     * @return
+     */
+    boolean hasSetter(String propertyName)
+    {
+        return setters_.containsKey(propertyName);
+    }
+
+    /**
+     * Returns the setter of a property that accepts a value, or null if there
+     * is none. Where several setters accept the value, the one taking the most
+     * specific type is returned.
+     * @param propertyName
+     * @param value
+     * @return
+     */
+    synchronized Method getSetter(String propertyName, Object value)
+    {
+        Class<?> valueType = value == null ? null : value.getClass();
+        Map<Class<?>, Method> resolved = resolvedSetters_.get(propertyName);
+
+        if (resolved == null)
+        {
+            resolved = new HashMap<Class<?>, Method>();
+            resolvedSetters_.put(propertyName, resolved);
+        }
+
+        if (resolved.containsKey(valueType))
+        {
+            return resolved.get(valueType);
+        }
+
+        Method setter = findSetter(propertyName, valueType);
+        resolved.put(valueType, setter);
+
+        return setter;
+    }
+
+    /**
+     * Returns the trigger method with the specified name, or null if there is
+     * none
+     * @param methodName The name of the method without its "trigger" prefix
+     * @return
+     */
+    Method getTrigger(String methodName)
+    {
+        return triggers_.get(methodName);
+    }
+
+    private Method findSetter(String propertyName, Class<?> valueType)
+    {
+        List<Method> setters = setters_.get(propertyName);
+        Method bestSetter = null;
+
+        for (Method setter : setters == null ? Collections.<Method>emptyList() : setters)
+        {
+            Class<?> parameterType = setter.getParameterTypes()[0];
+
+            if (valueType == null ? parameterType.isPrimitive() : !getWrapperType(parameterType).isAssignableFrom(valueType))
+            {
+                continue;
+            }
+
+            if (bestSetter == null || getWrapperType(bestSetter.getParameterTypes()[0]).isAssignableFrom(getWrapperType(parameterType)))
+            {
+                bestSetter = setter;
+            }
+        }
+
+        return bestSetter;
+    }
+
+    private static Class<?> getWrapperType(Class<?> type)
+    {
+        Class<?> wrapperType = WRAPPER_TYPES.get(type);
+
+        return wrapperType == null ? type : wrapperType;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.controller;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import uk.ac.leedsmet.bibliosight.BibliosightProperties;
+
+/**
+ * Passes model property changes on to the views of a controller from the
+ * event dispatch thread, at no more than the display rate.
+ *
+ * Changes are held until the next refresh, and a change to a property that
+ * is already waiting is combined with the earlier change, so that a burst of
+ * changes to the same property reaches the views once. Changes are passed on
+ * in the order in which their properties first changed since the last
+ * refresh, and a change may drop waiting changes to other properties that it
+ * makes obsolete, so that no change reaches the views after a change that
+ * was made later and replaces it. A change made on the
+ * event dispatch thread while nothing is waiting is passed on at once, so
+ * that the views keep up with the user.
+ *
+ * @author Mike Taylor
+ */
+class ViewEventQueue
+{
+    public static final String REFRESH_INTERVAL_PROPERTY = "bibliosight.view.refreshInterval";
+
+    /**
+     * Default time in milliseconds between refreshes of the views
+     */
+    private static final int DEFAULT_REFRESH_INTERVAL = 40;
+
+    private final AbstractController controller_;
+
+    /**
+     * Changes waiting to be passed on, by property name
+     */
+    private final Map<String, PropertyChangeEvent> pendingEvents_ = new LinkedHashMap<String, PropertyChangeEvent>();
+
+    private final Timer refreshTimer_;
+
+    /**
+     * Create a queue that passes changes on to the views of a controller
+     * @param controller
+     */
+    ViewEventQueue(AbstractController controller)
+    {
+        this.controller_ = controller;
+        this.refreshTimer_ = new Timer(BibliosightProperties.getInt(REFRESH_INTERVAL_PROPERTY, DEFAULT_REFRESH_INTERVAL), new ActionListener()
+        {
+            public void actionPerformed(ActionEvent evt)
+            {
+                flush();
+            }
+        });
+        this.refreshTimer_.setRepeats(false);
+    }
+
+    /**
+     * Queues a property change to be passed on to the views. This may be
+     * called from any thread.
+     * @param evt
+     */
+    void post(PropertyChangeEvent evt)
+    {
+        boolean eventDispatchThread = SwingUtilities.isEventDispatchThread();
+
+        synchronized (pendingEvents_)
+        {
+            if (!eventDispatchThread || !pendingEvents_.isEmpty())
+            {
+                Iterator<PropertyChangeEvent> iterator = pendingEvents_.values().iterator();
+
+                while (iterator.hasNext())
+                {
+                    if (controller_.isSupersededBy(iterator.next(), evt))
+                    {
+                        iterator.remove();
+                    }
+                }
+
+                // Putting an existing key keeps its place in the order
+                PropertyChangeEvent pendingEvent = pendingEvents_.get(evt.getPropertyName());
+
+                pendingEvents_.put(evt.getPropertyName(), pendingEvent == null ? evt : controller_.coalesceEvents(pendingEvent, evt));
+
+                if (!refreshTimer_.isRunning())
+                {
+                    refreshTimer_.start();
+                }
+
+                return;
+            }
+        }
+
+        // Nothing is waiting, so the change cannot overtake another
+        controller_.notifyViews(evt);
+    }
+
+    /**
+     * Passes every waiting change on to the views
+     */
+    private void flush()
+    {
+        List<PropertyChangeEvent> events;
+
+        synchronized (pendingEvents_)
+        {
+            events = new ArrayList<PropertyChangeEvent>(pendingEvents_.values());
+            pendingEvents_.clear();
+        }
+
+        for (PropertyChangeEvent evt : events)
+        {
+            controller_.notifyViews(evt);
+        }
+    }
+}
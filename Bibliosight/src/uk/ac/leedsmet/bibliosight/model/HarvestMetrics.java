@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.model;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import uk.ac.leedsmet.bibliosight.BibliosightProperties;
+import uk.ac.leedsmet.bibliosight.wslite.LatencyHistogram;
+import uk.ac.leedsmet.bibliosight.wslite.SearchResultsCache;
+import uk.ac.leedsmet.bibliosight.wslite.ServiceStatistics;
+
+/**
+ * Counts the searches run by this process and the pages, records and bytes
+ * they handle, and allows the running searches to be paused or cancelled.
+ *
+ * A single instance is shared by every query model and is published to the
+ * platform MBean server the first time it is used, unless JMX is disabled by
+ * system properties. Request statistics are read from the Web Services Lite
+ * service statistics.
+ *
+ * @author Mike Taylor
+ */
+public class HarvestMetrics implements HarvestMetricsMXBean
+{
+    public static final String JMX_ENABLED_PROPERTY = "bibliosight.jmx.enabled";
+
+    public static final String OBJECT_NAME = "uk.ac.leedsmet.bibliosight:type=HarvestMetrics";
+
+    private static HarvestMetrics defaultMetrics_;
+
+    private final AtomicLong searchesExecuted_ = new AtomicLong();
+    private final AtomicLong searchesCompleted_ = new AtomicLong();
+    private final AtomicLong searchesFailed_ = new AtomicLong();
+    private final AtomicLong searchesCancelled_ = new AtomicLong();
+    private final AtomicLong pagesFetched_ = new AtomicLong();
+    private final AtomicLong recordsTransformed_ = new AtomicLong();
+    private final AtomicLong bytesWritten_ = new AtomicLong();
+
+    /**
+     * Controls of the running searches, guarded by this
+     */
+    private final Set<SearchControl> runningSearches_ = new LinkedHashSet<SearchControl>();
+
+    /**
+     * Output caches of the query models, which are not kept from being
+     * garbage collected, guarded by this
+     */
+    private final Set<ResultOutputCache> resultOutputCaches_ = Collections.newSetFromMap(new WeakHashMap<ResultOutputCache, Boolean>());
+
+    /**
+     * Whether searches are paused, guarded by this
+     */
+    private boolean paused_;
+
+    /**
+     * Returns the metrics shared by every query model, publishing them to the
+     * platform MBean server when they are first created
+     * @return
+     */
+    public static synchronized HarvestMetrics getDefault()
+    {
+        if (defaultMetrics_ == null)
+        {
+            defaultMetrics_ = new HarvestMetrics();
+
+            if (BibliosightProperties.getBoolean(JMX_ENABLED_PROPERTY, true))
+            {
+                try
+                {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(defaultMetrics_, new ObjectName(OBJECT_NAME));
+                }
+                catch (JMException ex)
+                {
+                    Logger.getLogger(HarvestMetrics.class.getName()).log(Level.WARNING, "The harvest metrics could not be published over JMX.", ex);
+                }
+            }
+        }
+
+        return defaultMetrics_;
+    }
+
+    /**
+     * Records the start of a search. A search started while searches are
+     * paused is paused before its first request.
+     * @param searchControl Control of the search
+     */
+    synchronized void searchStarted(SearchControl searchControl)
+    {
+        searchesExecuted_.incrementAndGet();
+        runningSearches_.add(searchControl);
+
+        if (paused_)
+        {
+            searchControl.pause();
+        }
+    }
+
+    /**
+     * Records the end of a search
+     * @param searchControl Control of the search
+     * @param phase The phase the search ended in
+     */
+    synchronized void searchFinished(SearchControl searchControl, SearchProgress.Phase phase)
+    {
+        runningSearches_.remove(searchControl);
+
+        if (searchControl.isCancelled() || SearchProgress.Phase.CANCELLED.equals(phase))
+        {
+            searchesCancelled_.incrementAndGet();
+        }
+        else if (SearchProgress.Phase.COMPLETE.equals(phase))
+        {
+            searchesCompleted_.incrementAndGet();
+        }
+        else
+        {
+            searchesFailed_.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a page of results retrieved from the service
+     */
+    void pageFetched()
+    {
+        pagesFetched_.incrementAndGet();
+    }
+
+    /**
+     * Records the output written for a search
+     * @param records The number of records written
+     * @param bytes The number of bytes written
+     */
+    void outputWritten(int records, long bytes)
+    {
+        recordsTransformed_.addAndGet(records);
+        bytesWritten_.addAndGet(bytes);
+    }
+
+    /**
+     * Adds the output cache of a query model to the caches that are flushed
+     * @param resultOutputCache
+     */
+    synchronized void addResultOutputCache(ResultOutputCache resultOutputCache)
+    {
+        resultOutputCaches_.add(resultOutputCache);
+    }
+
+    public long getSearchesExecuted()
+    {
+        return searchesExecuted_.get();
+    }
+
+    public long getSearchesCompleted()
+    {
+        return searchesCompleted_.get();
+    }
+
+    public long getSearchesFailed()
+    {
+        return searchesFailed_.get();
+    }
+
+    public long getSearchesCancelled()
+    {
+        return searchesCancelled_.get();
+    }
+
+    public synchronized int getSearchesRunning()
+    {
+        return runningSearches_.size();
+    }
+
+    public long getPagesFetched()
+    {
+        return pagesFetched_.get();
+    }
+
+    public long getRecordsTransformed()
+    {
+        return recordsTransformed_.get();
+    }
+
+    public long getBytesWritten()
+    {
+        return bytesWritten_.get();
+    }
+
+    public long getRetries()
+    {
+        return ServiceStatistics.getDefault().getRetryCount();
+    }
+
+    public double getCacheHitRatio()
+    {
+        SearchResultsCache searchResultsCache = SearchResultsCache.getDefaultCache();
+
+        if (searchResultsCache == null)
+        {
+            return 0.0;
+        }
+
+        long hits = searchResultsCache.getHitCount();
+        long lookups = hits + searchResultsCache.getMissCount();
+
+        return lookups > 0 ? (double) hits / lookups : 0.0;
+    }
+
+    public int getActiveSessions()
+    {
+        return ServiceStatistics.getDefault().getOpenSessions();
+    }
+
+    public int getRequestsInFlight()
+    {
+        return ServiceStatistics.getDefault().getRequestsInFlight();
+    }
+
+    public List<LatencyHistogram> getOperationLatencies()
+    {
+        return ServiceStatistics.getDefault().getLatencyHistograms();
+    }
+
+    public synchronized boolean isPaused()
+    {
+        return paused_;
+    }
+
+    public synchronized void pauseSearches()
+    {
+        paused_ = true;
+
+        for (SearchControl searchControl : runningSearches_)
+        {
+            searchControl.pause();
+        }
+
+        Logger.getLogger(HarvestMetrics.class.getName()).log(Level.INFO, "Searches paused over JMX");
+    }
+
+    public synchronized void resumeSearches()
+    {
+        paused_ = false;
+
+        for (SearchControl searchControl : runningSearches_)
+        {
+            searchControl.resume();
+        }
+
+        Logger.getLogger(HarvestMetrics.class.getName()).log(Level.INFO, "Searches resumed over JMX");
+    }
+
+    public int cancelSearches()
+    {
+        List<SearchControl> searchControls = null;
+
+        synchronized (this)
+        {
+            searchControls = new ArrayList<SearchControl>(runningSearches_);
+        }
+
+        // Cancelling aborts requests, which is done without holding the lock
+        for (SearchControl searchControl : searchControls)
+        {
+            searchControl.cancel();
+        }
+
+        Logger.getLogger(HarvestMetrics.class.getName()).log(Level.INFO, searchControls.size() + " search(es) cancelled over JMX");
+
+        return searchControls.size();
+    }
+
+    public void flushCaches()
+    {
+        SearchResultsCache searchResultsCache = SearchResultsCache.getDefaultCache();
+
+        if (searchResultsCache != null)
+        {
+            searchResultsCache.clear();
+        }
+
+        List<ResultOutputCache> resultOutputCaches = null;
+
+        synchronized (this)
+        {
+            resultOutputCaches = new ArrayList<ResultOutputCache>(resultOutputCaches_);
+        }
+
+        for (ResultOutputCache resultOutputCache : resultOutputCaches)
+        {
+            resultOutputCache.clear();
+        }
+
+        Logger.getLogger(HarvestMetrics.class.getName()).log(Level.INFO, "Caches flushed over JMX");
+    }
+}
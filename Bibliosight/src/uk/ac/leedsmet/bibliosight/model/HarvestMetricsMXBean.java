@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.model;
+
+import java.util.List;
+import uk.ac.leedsmet.bibliosight.wslite.LatencyHistogram;
+
+/**
+ * Management interface for the searches run by this process, published over
+ * JMX so that headless deployments can be monitored and controlled
+ *
+ * @author Mike Taylor
+ */
+public interface HarvestMetricsMXBean
+{
+    /**
+     * Returns the number of searches started
+     * @return
+     */
+    long getSearchesExecuted();
+
+    /**
+     * Returns the number of searches that completed
+     * @return
+     */
+    long getSearchesCompleted();
+
+    /**
+     * Returns the number of searches that failed
+     * @return
+     */
+    long getSearchesFailed();
+
+    /**
+     * Returns the number of searches that were cancelled
+     * @return
+     */
+    long getSearchesCancelled();
+
+    /**
+     * Returns the number of searches running now
+     * @return
+     */
+    int getSearchesRunning();
+
+    /**
+     * Returns the number of pages of results retrieved from the service
+     * @return
+     */
+    long getPagesFetched();
+
+    /**
+     * Returns the number of records written to the output
+     * @return
+     */
+    long getRecordsTransformed();
+
+    /**
+     * Returns the number of bytes of output written
+     * @return
+     */
+    long getBytesWritten();
+
+    /**
+     * Returns the number of failed requests that were retried
+     * @return
+     */
+    long getRetries();
+
+    /**
+     * Returns the proportion of search results cache lookups that found
+     * cached results, or 0 if the cache is disabled or has not been used
+     * @return
+     */
+    double getCacheHitRatio();
+
+    /**
+     * Returns the number of Web Services Lite sessions held open
+     * @return
+     */
+    int getActiveSessions();
+
+    /**
+     * Returns the number of requests sent to the service and not yet answered
+     * @return
+     */
+    int getRequestsInFlight();
+
+    /**
+     * Returns the latency histogram of each Web Services Lite operation
+     * @return
+     */
+    List<LatencyHistogram> getOperationLatencies();
+
+    /**
+     * Returns true if running searches are paused
+     * @return
+     */
+    boolean isPaused();
+
+    /**
+     * Pauses the running searches, and any started later, before their next
+     * request
+     */
+    void pauseSearches();
+
+    /**
+     * Resumes paused searches
+     */
+    void resumeSearches();
+
+    /**
+     * Cancels the running searches
+     * @return The number of searches cancelled
+     */
+    int cancelSearches();
+
+    /**
+     * Removes every entry from the search results cache and the output
+     * caches
+     */
+    void flushCaches();
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded log that keeps the most recent lines appended to it.
+ *
+ * Lines are held in a ring buffer, so appending a line takes the same time
+ * however long the log has grown. Once the buffer is full, each new line
+ * replaces the oldest one. The class is not thread safe.
+ *
+ * @author Mike Taylor
+ */
+public class LogBuffer
+{
+    private static final String NEW_LINE = System.getProperty("line.separator");
+
+    /**
+     * The lines of the log, starting at the index of the oldest line
+     */
+    private final String[] lines_;
+
+    /**
+     * Index of the oldest line in the buffer
+     */
+    private int head_;
+
+    /**
+     * Number of lines in the buffer
+     */
+    private int size_;
+
+    /**
+     * Create a log that keeps up to the specified number of lines
+     * @param capacity
+     */
+    public LogBuffer(int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("A log buffer must hold at least one line");
+        }
+
+        lines_ = new String[capacity];
+    }
+
+    /**
+     * Returns the maximum number of lines kept by the log
+     * @return
+     */
+    public int getCapacity()
+    {
+        return lines_.length;
+    }
+
+    /**
+     * Returns the number of lines in the log
+     * @return
+     */
+    public int size()
+    {
+        return size_;
+    }
+
+    /**
+     * Appends a line to the log, discarding the oldest line if the log is full
+     * @param line
+     */
+    public void append(String line)
+    {
+        if (size_ < lines_.length)
+        {
+            lines_[(head_ + size_) % lines_.length] = line;
+            size_++;
+        }
+        else
+        {
+            lines_[head_] = line;
+            head_ = (head_ + 1) % lines_.length;
+        }
+    }
+
+    /**
+     * Removes every line from the log
+     */
+    public void clear()
+    {
+        for (int i = 0; i < lines_.length; i++)
+        {
+            lines_[i] = null;
+        }
+
+        head_ = 0;
+        size_ = 0;
+    }
+
+    /**
+     * Replaces the contents of the log with the lines of the supplied text
+     * @param text
+     */
+    public void setText(String text)
+    {
+        clear();
+
+        if (text != null && text.length() > 0)
+        {
+            for (String line : text.split("\r\n|\r|\n", -1))
+            {
+                append(line);
+            }
+        }
+    }
+
+    /**
+     * Returns the lines of the log, oldest first
+     * @return
+     */
+    public List<String> getLines()
+    {
+        List<String> lines = new ArrayList<String>(size_);
+
+        for (int i = 0; i < size_; i++)
+        {
+            lines.add(lines_[(head_ + i) % lines_.length]);
+        }
+
+        return lines;
+    }
+
+    /**
+     * Returns the lines of the log joined by line separators
+     * @return
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < size_; i++)
+        {
+            if (i > 0)
+            {
+                text.append(NEW_LINE);
+            }
+
+            text.append(lines_[(head_ + i) % lines_.length]);
+        }
+
+        return text.toString();
+    }
+}
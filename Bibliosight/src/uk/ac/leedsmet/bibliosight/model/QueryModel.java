@@ -21,48 +21,68 @@
 package uk.ac.leedsmet.bibliosight.model;
 
 import com.thomsonreuters.wokmws.cxf.auth.WOKMWSAuthenticate;
-import com.thomsonreuters.wokmws.cxf.auth.WOKMWSAuthenticateService;
 import com.thomsonreuters.wokmws.cxf.woksearchlite.EditionDesc;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.LiteRecord;
 import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryField;
 import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryParameters;
 import com.thomsonreuters.wokmws.cxf.woksearchlite.RetrieveParameters;
 import com.thomsonreuters.wokmws.cxf.woksearchlite.SearchResults;
 import com.thomsonreuters.wokmws.cxf.woksearchlite.TimeSpan;
 import com.thomsonreuters.wokmws.cxf.woksearchlite.WokSearchLite;
-import com.thomsonreuters.wokmws.cxf.woksearchlite.WokSearchLiteService;
-import java.io.StringWriter;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.servlet.http.Cookie;
-import javax.xml.namespace.QName;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.ws.BindingProvider;
+import javax.xml.ws.WebServiceException;
 import javax.xml.ws.soap.SOAPFaultException;
-import org.apache.cxf.endpoint.Client;
-import org.apache.cxf.frontend.ClientProxy;
-import org.apache.cxf.transport.http.HTTPConduit;
-import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
+import uk.ac.leedsmet.bibliosight.AtomicFileOutputStream;
 import uk.ac.leedsmet.bibliosight.BibliosightAuthenticationException;
 import uk.ac.leedsmet.bibliosight.BibliosightClientException;
+import uk.ac.leedsmet.bibliosight.BibliosightProperties;
+import uk.ac.leedsmet.bibliosight.BibliosightSearchCancelledException;
 import uk.ac.leedsmet.bibliosight.BibliosightSearchException;
+import uk.ac.leedsmet.bibliosight.BibliosightServiceUnavailableException;
+import uk.ac.leedsmet.bibliosight.BibliosightSessionRejectedException;
 import uk.ac.leedsmet.bibliosight.controller.DefaultController;
 import uk.ac.leedsmet.bibliosight.controller.DefaultController.DateMode;
+import uk.ac.leedsmet.bibliosight.controller.DefaultController.DuplicateRecords;
 import uk.ac.leedsmet.bibliosight.controller.DefaultController.SymbolicTimeSpan;
-import uk.ac.leedsmet.bibliosight.transformer.SearchResultsTransformer;
+import uk.ac.leedsmet.bibliosight.transformer.LiteRecordComparator;
+import uk.ac.leedsmet.bibliosight.transformer.SeenRecordIndex;
+import uk.ac.leedsmet.bibliosight.transformer.StreamingSearchResultsTransformer;
+import uk.ac.leedsmet.bibliosight.wslite.CircuitBreaker;
+import uk.ac.leedsmet.bibliosight.wslite.HarvestJournal;
+import uk.ac.leedsmet.bibliosight.wslite.RateLimiter;
+import uk.ac.leedsmet.bibliosight.wslite.RetryPolicy;
+import uk.ac.leedsmet.bibliosight.wslite.SearchPortPool;
+import uk.ac.leedsmet.bibliosight.wslite.SearchResultsCache;
+import uk.ac.leedsmet.bibliosight.wslite.ServiceStatistics;
+import uk.ac.leedsmet.bibliosight.wslite.SubQuery;
+import uk.ac.leedsmet.bibliosight.wslite.TimeSpanPlanner;
+import uk.ac.leedsmet.bibliosight.wslite.WsLiteServices;
+import uk.ac.leedsmet.bibliosight.wslite.WsLiteSessionManager;
 
 /**
  * The main data model for the Bibliosight client
@@ -72,6 +92,27 @@ public class QueryModel extends AbstractModel {
 
     private static final String NEW_LINE = System.getProperty("line.separator");
 
+    /**
+     * Number of characters of a results file shown in the output window
+     */
+    private static final int RESULTS_FILE_PREVIEW_LENGTH = 16 * 1024;
+
+    /**
+     * Number of lines kept in the log
+     */
+    private static final int LOG_CAPACITY = 10000;
+
+    /**
+     * System property that sets the memory budget in megabytes of the cache
+     * of recent results output
+     */
+    public static final String OUTPUT_CACHE_SIZE_PROPERTY = "bibliosight.outputCache.maxSize";
+
+    /**
+     * Default memory budget in megabytes of the cache of recent results output
+     */
+    private static final long DEFAULT_OUTPUT_CACHE_SIZE = 32;
+
     /**
      * Product code for the database to be searched
      */
@@ -82,6 +123,11 @@ public class QueryModel extends AbstractModel {
      */
     private DateMode dateMode_;
 
+    /**
+     * Number of pages that may be requested concurrently when harvesting
+     */
+    private Integer concurrentPageRequests_;
+
     /**
      * Database editions to be searched
      */
@@ -92,11 +138,46 @@ public class QueryModel extends AbstractModel {
      */
     private Integer firstRecord_;
 
+    /**
+     * Option to retrieve every page of the search result rather than a
+     * single page
+     */
+    private Boolean harvestAllPages_;
+
+    /**
+     * Whether each page of a harvest is saved so that the harvest can be
+     * resumed if it fails
+     */
+    private Boolean checkpointHarvests_;
+
+    /**
+     * Option to harvest each edition with a search of its own, concurrently
+     */
+    private Boolean fanOutEditions_;
+
+    /**
+     * What is done with records that have already been written by an
+     * earlier search
+     */
+    private DuplicateRecords duplicateRecords_;
+
     /**
      * Maximum number of records to be returned in the search result
      */
     private Integer maxResultCount_;
 
+    /**
+     * Number of records above which a harvest is split into searches over
+     * parts of its time span, or zero if harvests are not split
+     */
+    private Integer maxRecordsPerSearch_;
+
+    /**
+     * Path of a file that search results are written to directly, or an
+     * empty string if results are only shown in the output window
+     */
+    private String outputPath_;
+
     /**
      * Proxy host name
      */
@@ -128,15 +209,131 @@ public class QueryModel extends AbstractModel {
     private String userQuery_;
 
     /**
-     * A log of program feedback for the user
+     * A log of program feedback for the user, limited to the most recent lines
      */
-    private String log_;
+    private final LogBuffer log_ = new LogBuffer(LOG_CAPACITY);
 
     /**
      * Stores the results of a query
      */
     private String resultOutput_;
 
+    /**
+     * Maximum time in seconds that a Web Services Lite session is reused for
+     * after its last search
+     */
+    private Integer sessionIdleTimeout_;
+
+    /**
+     * Index of the records that have already been written, or null to use
+     * the index in the default file
+     */
+    private SeenRecordIndex seenRecordIndex_;
+
+    /**
+     * Manager for the Web Services Lite session shared by consecutive queries
+     */
+    private WsLiteSessionManager sessionManager_;
+
+    /**
+     * Pool of search ports shared with other models, or null if the model
+     * uses the pool for its own search settings
+     */
+    private final SearchPortPool sharedSearchPortPool_;
+
+    /**
+     * Whether the session is shared with other models and owned elsewhere
+     */
+    private final boolean sessionShared_;
+
+    /**
+     * Cache of search results on local disk, or null if caching is disabled
+     */
+    private final SearchResultsCache searchResultsCache_ = SearchResultsCache.getDefaultCache();
+
+    /**
+     * Policy for retrying failed requests, replaced at the start of each run
+     * so that each run has its own retry budget
+     */
+    private volatile RetryPolicy retryPolicy_ = RetryPolicy.createDefault();
+
+    /**
+     * Timings of the current or most recent search, replaced at the start of
+     * each search
+     */
+    private volatile SearchTimings searchTimings_ = new SearchTimings();
+
+    /**
+     * Whether the current or most recent search wrote every record it found,
+     * which is false if only some pages were retrieved or a search found more
+     * records than can be retrieved by one search and could not be split
+     */
+    private volatile boolean allRecordsWritten_;
+
+    /**
+     * Transformer of the most recent search whose records have not yet been
+     * added to the seen record index, or null
+     */
+    private volatile StreamingSearchResultsTransformer unindexedResults_;
+
+    /**
+     * Cache of the output of recent searches kept in memory
+     */
+    private final ResultOutputCache resultOutputCache_ = new ResultOutputCache(BibliosightProperties.getLong(OUTPUT_CACHE_SIZE_PROPERTY, DEFAULT_OUTPUT_CACHE_SIZE) * 1024 * 1024);
+
+    /**
+     * Progress of the current or most recent search
+     */
+    private volatile SearchProgress searchProgress_ = SearchProgress.IDLE;
+
+    /**
+     * Control for the current or most recent search
+     */
+    private volatile SearchControl searchControl_;
+
+    /**
+     * The current or most recent search task
+     */
+    private volatile Future<?> searchFuture_;
+
+    /**
+     * Runs searches away from the thread that triggers them, one at a time
+     */
+    private final ExecutorService searchExecutor_ = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "Bibliosight search");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Create a model that manages its own Web Services Lite session
+     */
+    public QueryModel()
+    {
+        this(null, null);
+    }
+
+    /**
+     * Create a model that searches using a session and pool of search ports
+     * shared with other models, so that several searches can run at once
+     * under one session. The shared session is not closed by
+     * closeWsLiteSession() and should be closed by its owner.
+     * @param sessionManager Manager for the shared session
+     * @param searchPortPool Pool of search ports shared between the models
+     */
+    public QueryModel(WsLiteSessionManager sessionManager, SearchPortPool searchPortPool)
+    {
+        sessionManager_ = sessionManager;
+        sharedSearchPortPool_ = searchPortPool;
+        sessionShared_ = sessionManager != null;
+
+        HarvestMetrics.getDefault().addResultOutputCache(resultOutputCache_);
+    }
+
     /**
      * Returns the minimum allowable value for the first record property
      * @return
@@ -164,6 +361,81 @@ public class QueryModel extends AbstractModel {
         return 100;
     }
 
+    /**
+     * Returns the minimum allowable value for the concurrent page requests
+     * property
+     * @return
+     */
+    public static Integer getMinConcurrentPageRequests()
+    {
+        return 1;
+    }
+
+    /**
+     * Returns the maximum allowable value for the concurrent page requests
+     * property
+     * @return
+     */
+    public static Integer getMaxConcurrentPageRequests()
+    {
+        return 8;
+    }
+
+    /**
+     * Returns the current concurrent page requests property
+     * @return
+     */
+    public Integer getConcurrentPageRequests()
+    {
+        return concurrentPageRequests_;
+    }
+
+    /**
+     * Sets the concurrent page requests property
+     * @param concurrentPageRequests
+     */
+    public void setConcurrentPageRequests(Integer concurrentPageRequests)
+    {
+        Integer minConcurrentPageRequests = getMinConcurrentPageRequests();
+        Integer maxConcurrentPageRequests = getMaxConcurrentPageRequests();
+
+        Integer oldConcurrentPageRequests = this.concurrentPageRequests_;
+        this.concurrentPageRequests_ = concurrentPageRequests;
+
+        try
+        {
+            if (!concurrentPageRequests.equals(oldConcurrentPageRequests))
+            {
+                if (concurrentPageRequests.compareTo(minConcurrentPageRequests) < 0)
+                {
+                    // This will force the property to refresh in the view
+                    oldConcurrentPageRequests = null;
+                    concurrentPageRequests = minConcurrentPageRequests;
+                    this.concurrentPageRequests_ = minConcurrentPageRequests;
+
+                    appendToLog("Concurrent page requests cannot be lower than " + minConcurrentPageRequests);
+                }
+                else if (concurrentPageRequests.compareTo(maxConcurrentPageRequests) > 0)
+                {
+                    // This will force the property to refresh in the view
+                    oldConcurrentPageRequests = null;
+                    concurrentPageRequests = maxConcurrentPageRequests;
+                    this.concurrentPageRequests_ = maxConcurrentPageRequests;
+
+                    appendToLog("Concurrent page requests cannot be greater than " + maxConcurrentPageRequests);
+                }
+
+                appendToLog("Setting concurrent page requests to " + this.concurrentPageRequests_);
+            }
+        }
+        catch (NullPointerException ex)
+        {
+            appendToLog("Warning: Concurrent page requests has been given a null value.");
+        }
+
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_CONCURRENT_PAGE_REQUESTS_PROPERTY, oldConcurrentPageRequests, concurrentPageRequests);
+    }
+
     /**
      * Returns the current database Id property
      * @return
@@ -309,523 +581,2294 @@ public class QueryModel extends AbstractModel {
     }
 
     /**
-     * Returns the current maximum result count property
+     * Returns the current harvest all pages property
      * @return
      */
-    public Integer getMaxResultCount()
+    public Boolean getHarvestAllPages()
     {
-        return maxResultCount_;
+        return harvestAllPages_;
     }
 
     /**
-     * Sets the maximum result count property
-     * @param maxResultCount
+     * Sets the harvest all pages property
+     * @param harvestAllPages
      */
-    public void setMaxResultCount(Integer maxResultCount)
+    public void setHarvestAllPages(Boolean harvestAllPages)
     {
-        Integer minMaxResultCount = getMinMaxResultCount();
-        Integer maxMaxResultCount = getMaxMaxResultCount();
-
-        Integer oldMaxResultCount = this.maxResultCount_;
-        this.maxResultCount_ = maxResultCount;
+        Boolean oldHarvestAllPages = this.harvestAllPages_;
+        this.harvestAllPages_ = harvestAllPages;
 
         try
         {
-            if (!maxResultCount.equals(oldMaxResultCount))
+            if (!harvestAllPages.equals(oldHarvestAllPages))
             {
-                if (maxResultCount.compareTo(minMaxResultCount) < 0)
+                if (harvestAllPages)
                 {
-                    // This will force the property to refresh in the view
-                    oldMaxResultCount = null;
-                    maxResultCount = minMaxResultCount;
-                    this.maxResultCount_ = minMaxResultCount;
-
-                    appendToLog("Maximum records to retrieve cannot be lower than " + minMaxResultCount);
+                    appendToLog("Setting search to retrieve all pages of results");
                 }
-                else if (maxResultCount.compareTo(maxMaxResultCount) > 0)
+                else
                 {
-                    // This will force the property to refresh in the view
-                    oldMaxResultCount = null;
-                    this.maxResultCount_ = maxMaxResultCount;
-                    maxResultCount = maxMaxResultCount;
-
-                    appendToLog("Maximum records to retrieve cannot be greater than " + maxMaxResultCount);
+                    appendToLog("Setting search to retrieve a single page of results");
                 }
-
-                appendToLog("Setting maximum records to retrieve to " + this.maxResultCount_);
             }
         }
         catch (NullPointerException ex)
         {
-            appendToLog("Warning: Maximum records has been given a null value.");
+            appendToLog("Warning: Harvest all pages has been given a null value.");
         }
 
-        firePropertyChange(DefaultController.WS_LITE_SEARCH_MAX_RESULT_COUNT_PROPERTY, oldMaxResultCount, maxResultCount);
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_HARVEST_ALL_PAGES_PROPERTY, oldHarvestAllPages, harvestAllPages);
     }
 
     /**
-     * Returns the current proxy host name property
+     * Returns the current checkpoint harvests property
      * @return
      */
-    public String getProxyHost()
+    public Boolean getCheckpointHarvests()
     {
-        return proxyHost_;
+        return checkpointHarvests_;
     }
 
     /**
-     * Sets the proxy host name property
-     * @param proxyHost
+     * Sets the checkpoint harvests property
+     * @param checkpointHarvests
      */
-    public void setProxyHost(String proxyHost)
+    public void setCheckpointHarvests(Boolean checkpointHarvests)
     {
-        String oldProxyHost = this.proxyHost_;
-        this.proxyHost_ = proxyHost;
+        Boolean oldCheckpointHarvests = this.checkpointHarvests_;
+        this.checkpointHarvests_ = checkpointHarvests;
 
         try
         {
-            if (!proxyHost.equals(oldProxyHost))
+            if (!checkpointHarvests.equals(oldCheckpointHarvests))
             {
-                appendToLog("Setting proxy host name to " + this.proxyHost_);
+                if (checkpointHarvests)
+                {
+                    appendToLog("Harvested pages will be saved so that a failed harvest can be resumed");
+                }
+                else
+                {
+                    appendToLog("Harvested pages will not be saved");
+                }
             }
         }
         catch (NullPointerException ex)
         {
-            appendToLog("Warning: Proxy host name has been given a null value.");
+            appendToLog("Warning: Checkpoint harvests has been given a null value.");
         }
 
-        firePropertyChange(DefaultController.WS_LITE_SEARCH_PROXY_HOST_PROPERTY, oldProxyHost, proxyHost);
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_CHECKPOINT_HARVESTS_PROPERTY, oldCheckpointHarvests, checkpointHarvests);
     }
 
     /**
-     * Returns the current proxy host port property
+     * Returns the current fan out editions property
      * @return
      */
-    public Integer getProxyPort()
+    public Boolean getFanOutEditions()
     {
-        return proxyPort_;
+        return fanOutEditions_;
     }
 
     /**
-     * Sets the proxy host port property
-     * @param proxyPort
+     * Sets the fan out editions property
+     * @param fanOutEditions
      */
-    public void setProxyPort(Integer proxyPort)
+    public void setFanOutEditions(Boolean fanOutEditions)
     {
-        Integer oldProxyPort = this.proxyPort_;
-        this.proxyPort_ = proxyPort;
+        Boolean oldFanOutEditions = this.fanOutEditions_;
+        this.fanOutEditions_ = fanOutEditions;
 
         try
         {
-            if (!proxyPort.equals(oldProxyPort))
+            if (!fanOutEditions.equals(oldFanOutEditions))
             {
-                appendToLog("Setting proxy host port to " + this.proxyPort_);
+                if (fanOutEditions)
+                {
+                    appendToLog("Each edition will be harvested with a search of its own");
+                }
+                else
+                {
+                    appendToLog("Every edition will be harvested with a single search");
+                }
             }
         }
         catch (NullPointerException ex)
         {
-            appendToLog("Warning: Proxy host port has been given a null value.");
+            appendToLog("Warning: Fan out editions has been given a null value.");
         }
 
-        firePropertyChange(DefaultController.WS_LITE_SEARCH_PROXY_PORT_PROPERTY, oldProxyPort, proxyPort);
-
-        
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_FAN_OUT_EDITIONS_PROPERTY, oldFanOutEditions, fanOutEditions);
     }
 
     /**
-     * Returns the current sort fields list property
+     * Returns the current duplicate records property
      * @return
      */
-    public List<QueryField> getSortFields()
+    public DuplicateRecords getDuplicateRecords()
     {
-        return sortFields_;
+        return duplicateRecords_;
     }
 
     /**
-     * Sets the sort fields list property
-     * @param sortFields
+     * Sets the duplicate records property
+     * @param duplicateRecords
      */
-    public void setSortFields(ArrayList<QueryField> sortFields)
+    public void setDuplicateRecords(DuplicateRecords duplicateRecords)
     {
-        List<QueryField> oldSortFields = this.sortFields_;
-        this.sortFields_ = sortFields;
+        DuplicateRecords oldDuplicateRecords = this.duplicateRecords_;
+        this.duplicateRecords_ = duplicateRecords;
 
         try
         {
-            if (!sortFields.equals(oldSortFields))
+            if (!duplicateRecords.equals(oldDuplicateRecords))
             {
-                String sortFieldDisplay = "";
-
-                for (QueryField field : this.sortFields_)
+                switch (duplicateRecords)
                 {
-                    if (sortFieldDisplay.length() > 0)
-                    {
-                        sortFieldDisplay += ", ";
-                    }
-                    sortFieldDisplay += field.getName() + "(" + field.getSort() + ")";
-
+                    case INCLUDE:
+                        appendToLog("Records that have already been written will be included again");
+                        break;
+                    case FLAG:
+                        appendToLog("Records that have already been written will be flagged as duplicates");
+                        break;
+                    case SKIP:
+                        appendToLog("Records that have already been written will be skipped");
+                        break;
                 }
-
-                appendToLog("Setting sort fields to " + sortFieldDisplay);
             }
         }
         catch (NullPointerException ex)
         {
-            appendToLog("Warning: Sort fields has been given a null value.");
+            appendToLog("Warning: Duplicate records has been given a null value.");
         }
 
-        firePropertyChange(DefaultController.WS_LITE_SEARCH_SORT_FIELDS_PROPERTY, oldSortFields, sortFields);
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_DUPLICATE_RECORDS_PROPERTY, oldDuplicateRecords, duplicateRecords);
     }
 
     /**
-     * Returns the current symbolic time span property
+     * Returns the index of the records that have already been written, or
+     * null if the index in the default file is used
      * @return
      */
-    public SymbolicTimeSpan getSymbolicTimeSpan()
+    public SeenRecordIndex getSeenRecordIndex()
     {
-        return symbolicTimeSpan_;
+        return seenRecordIndex_;
     }
 
     /**
-     * Sets the symbolic time span property
-     * @param symbolicTimeSpan
+     * Sets the index of the records that have already been written
+     * @param seenRecordIndex The index, or null to use the index in the
+     * default file
      */
-    public void setSymbolicTimeSpan(SymbolicTimeSpan symbolicTimeSpan)
+    public void setSeenRecordIndex(SeenRecordIndex seenRecordIndex)
     {
-        SymbolicTimeSpan oldSymbolicTimeSpan = this.symbolicTimeSpan_;
-        this.symbolicTimeSpan_ = symbolicTimeSpan;
+        this.seenRecordIndex_ = seenRecordIndex;
+    }
+
+    /**
+     * Returns the current maximum records per search property
+     * @return
+     */
+    public Integer getMaxRecordsPerSearch()
+    {
+        return maxRecordsPerSearch_;
+    }
+
+    /**
+     * Sets the maximum records per search property
+     * @param maxRecordsPerSearch
+     */
+    public void setMaxRecordsPerSearch(Integer maxRecordsPerSearch)
+    {
+        Integer oldMaxRecordsPerSearch = this.maxRecordsPerSearch_;
+        this.maxRecordsPerSearch_ = maxRecordsPerSearch;
 
         try
         {
-            if (!symbolicTimeSpan.equals(oldSymbolicTimeSpan))
+            if (!maxRecordsPerSearch.equals(oldMaxRecordsPerSearch))
             {
-                appendToLog("Setting recent date to " + this.symbolicTimeSpan_.getValue());
+                if (maxRecordsPerSearch > 0)
+                {
+                    appendToLog("Harvests that find more than " + maxRecordsPerSearch + " records will be split by time span");
+                }
+                else
+                {
+                    appendToLog("Harvests will not be split by time span");
+                }
             }
         }
         catch (NullPointerException ex)
         {
-            appendToLog("Warning: Recent date has been given a null value.");
+            appendToLog("Warning: Max records per search has been given a null value.");
         }
 
-        firePropertyChange(DefaultController.WS_LITE_SEARCH_SYMBOLIC_TIME_SPAN_PROPERTY, oldSymbolicTimeSpan, symbolicTimeSpan);
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_MAX_RECORDS_PER_SEARCH_PROPERTY, oldMaxRecordsPerSearch, maxRecordsPerSearch);
     }
 
     /**
-     * Returns the current time span property
+     * Returns the current maximum result count property
      * @return
      */
-    public TimeSpan getTimeSpan()
+    public Integer getMaxResultCount()
     {
-        return timeSpan_;
+        return maxResultCount_;
     }
 
     /**
-     * Sets the time span property
-     * @param timeSpan
+     * Sets the maximum result count property
+     * @param maxResultCount
      */
-    public void setTimeSpan(TimeSpan timeSpan)
+    public void setMaxResultCount(Integer maxResultCount)
     {
-        TimeSpan oldTimeSpan = this.timeSpan_;
-        this.timeSpan_ = timeSpan;
+        Integer minMaxResultCount = getMinMaxResultCount();
+        Integer maxMaxResultCount = getMaxMaxResultCount();
+
+        Integer oldMaxResultCount = this.maxResultCount_;
+        this.maxResultCount_ = maxResultCount;
 
         try
         {
-            if (!timeSpan.equals(oldTimeSpan))
+            if (!maxResultCount.equals(oldMaxResultCount))
             {
-                appendToLog("Setting date range to " + this.timeSpan_.getBegin() + " to " + this.timeSpan_.getEnd());
+                if (maxResultCount.compareTo(minMaxResultCount) < 0)
+                {
+                    // This will force the property to refresh in the view
+                    oldMaxResultCount = null;
+                    maxResultCount = minMaxResultCount;
+                    this.maxResultCount_ = minMaxResultCount;
+
+                    appendToLog("Maximum records to retrieve cannot be lower than " + minMaxResultCount);
+                }
+                else if (maxResultCount.compareTo(maxMaxResultCount) > 0)
+                {
+                    // This will force the property to refresh in the view
+                    oldMaxResultCount = null;
+                    this.maxResultCount_ = maxMaxResultCount;
+                    maxResultCount = maxMaxResultCount;
+
+                    appendToLog("Maximum records to retrieve cannot be greater than " + maxMaxResultCount);
+                }
+
+                appendToLog("Setting maximum records to retrieve to " + this.maxResultCount_);
             }
         }
         catch (NullPointerException ex)
         {
-            appendToLog("Warning: Date range has been given a null value.");
+            appendToLog("Warning: Maximum records has been given a null value.");
         }
 
-        firePropertyChange(DefaultController.WS_LITE_SEARCH_TIME_SPAN_PROPERTY, oldTimeSpan, timeSpan);
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_MAX_RESULT_COUNT_PROPERTY, oldMaxResultCount, maxResultCount);
     }
 
     /**
-     * Returns the current user query property
+     * Returns the current output path property
      * @return
      */
-    public String getUserQuery()
+    public String getOutputPath()
     {
-        return userQuery_;
+        return outputPath_;
     }
 
     /**
-     * Sets the user query property
-     * @param userQuery
+     * Sets the output path property. An empty string means that results are
+     * shown in the output window rather than written to a file.
+     * @param outputPath
      */
-    public void setUserQuery(String userQuery)
+    public void setOutputPath(String outputPath)
     {
-        String oldUserQuery = this.userQuery_;
-        this.userQuery_ = userQuery;
+        String oldOutputPath = this.outputPath_;
+        this.outputPath_ = outputPath;
 
         try
         {
-            if (!userQuery.equals(oldUserQuery))
+            if (!outputPath.equals(oldOutputPath))
             {
-                appendToLog("Setting user query to " + this.userQuery_);
+                if (outputPath.length() > 0)
+                {
+                    appendToLog("Search results will be written to " + this.outputPath_);
+                }
+                else
+                {
+                    appendToLog("Search results will be shown in the output window");
+                }
             }
         }
         catch (NullPointerException ex)
         {
-            appendToLog("Warning: User query has been given a null value.");
+            appendToLog("Warning: Output path has been given a null value.");
         }
 
-        firePropertyChange(DefaultController.WS_LITE_SEARCH_USER_QUERY_PROPERTY, oldUserQuery, userQuery);
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_OUTPUT_PATH_PROPERTY, oldOutputPath, outputPath);
     }
 
     /**
-     * Returns the current log property
+     * Returns the current proxy host name property
      * @return
      */
-    public String getLog()
+    public String getProxyHost()
     {
-        return log_;
+        return proxyHost_;
     }
 
     /**
-     * Sets the log property
-     * @param log
+     * Sets the proxy host name property
+     * @param proxyHost
      */
-    public void setLog(String log)
+    public void setProxyHost(String proxyHost)
     {
-        String oldLog = this.log_;
-        this.log_ = log;
-
-        firePropertyChange(DefaultController.WS_LITE_SEARCH_LOG_PROPERTY, oldLog, log);
-    }
+        String oldProxyHost = this.proxyHost_;
+        this.proxyHost_ = proxyHost;
 
-    /**
-     * Appends a string on a new line to the log property
-     * @param string
-     */
-    public void appendToLog(String string)
-    {
-        if(log_ != null)
+        try
         {
-            setLog(log_ + NEW_LINE + string);
+            if (!proxyHost.equals(oldProxyHost))
+            {
+                appendToLog("Setting proxy host name to " + this.proxyHost_);
+            }
         }
-        else
+        catch (NullPointerException ex)
         {
-            setLog(string);
+            appendToLog("Warning: Proxy host name has been given a null value.");
         }
+
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_PROXY_HOST_PROPERTY, oldProxyHost, proxyHost);
     }
 
     /**
-     * Returns the current results output property
+     * Returns the current proxy host port property
      * @return
      */
-    public String getResultOutput()
+    public Integer getProxyPort()
     {
-        return resultOutput_;
+        return proxyPort_;
     }
 
     /**
-     * Sets the results output property
-     * @param resultOutput
+     * Sets the proxy host port property
+     * @param proxyPort
      */
-    public void setResultOutput(String resultOutput)
+    public void setProxyPort(Integer proxyPort)
     {
-        String oldResultOutput = this.resultOutput_;
-        this.resultOutput_ = resultOutput;
+        Integer oldProxyPort = this.proxyPort_;
+        this.proxyPort_ = proxyPort;
 
-        firePropertyChange(DefaultController.WS_LITE_SEARCH_RESULT_OUTPUT_PROPERTY, oldResultOutput, resultOutput);
+        try
+        {
+            if (!proxyPort.equals(oldProxyPort))
+            {
+                appendToLog("Setting proxy host port to " + this.proxyPort_);
+            }
+        }
+        catch (NullPointerException ex)
+        {
+            appendToLog("Warning: Proxy host port has been given a null value.");
+        }
+
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_PROXY_PORT_PROPERTY, oldProxyPort, proxyPort);
+
+        
     }
 
-    private void clearResultOutput()
+    /**
+     * Returns the minimum allowable value for the session idle timeout property
+     * @return
+     */
+    public static Integer getMinSessionIdleTimeout()
     {
-        this.resultOutput_ = "";
-        firePropertyChange(DefaultController.WS_LITE_SEARCH_RESULT_OUTPUT_PROPERTY, null, this.resultOutput_);
+        return 30;
     }
 
     /**
-     * Returns the query data in the form of a QueryParameters object
+     * Returns the current session idle timeout property (in seconds)
      * @return
      */
-    public QueryParameters getQueryParameters()
+    public Integer getSessionIdleTimeout()
     {
-        QueryParameters queryParameters = new QueryParameters();
+        return sessionIdleTimeout_;
+    }
 
-        try
-        {
-            queryParameters.setDatabaseID(databaseId_);
-        }
-        catch (Exception ex)
-        {
-            ex.printStackTrace();
-        }
+    /**
+     * Sets the session idle timeout property (in seconds)
+     * @param sessionIdleTimeout
+     */
+    public void setSessionIdleTimeout(Integer sessionIdleTimeout)
+    {
+        Integer minSessionIdleTimeout = getMinSessionIdleTimeout();
 
-        queryParameters.setQueryLanguage("en");
+        Integer oldSessionIdleTimeout = this.sessionIdleTimeout_;
+        this.sessionIdleTimeout_ = sessionIdleTimeout;
 
         try
         {
-            switch (dateMode_)
+            if (!sessionIdleTimeout.equals(oldSessionIdleTimeout))
             {
-                case RANGE:
-                    queryParameters.setTimeSpan(timeSpan_);
-                    queryParameters.setSymbolicTimeSpan(null);
-                    break;
-
-                case RECENT:
-                    queryParameters.setSymbolicTimeSpan(symbolicTimeSpan_.getValue());
-                    queryParameters.setTimeSpan(null);
-                    break;
+                if (sessionIdleTimeout.compareTo(minSessionIdleTimeout) < 0)
+                {
+                    // This will force the property to refresh in the view
+                    oldSessionIdleTimeout = null;
+                    sessionIdleTimeout = minSessionIdleTimeout;
+                    this.sessionIdleTimeout_ = minSessionIdleTimeout;
 
-                default:
-                    // Nothing
+                    appendToLog("Session idle timeout cannot be lower than " + minSessionIdleTimeout + " seconds");
+                }
 
+                appendToLog("Setting session idle timeout to " + this.sessionIdleTimeout_ + " seconds");
             }
         }
         catch (NullPointerException ex)
         {
-            appendToLog("Error: Date mode is null");
+            appendToLog("Warning: Session idle timeout has been given a null value.");
         }
 
-        try
-        {
-            queryParameters.setUserQuery(userQuery_);
-        }
-        catch (Exception ex)
+        synchronized (this)
         {
-            ex.printStackTrace();
+            if (sessionManager_ != null)
+            {
+                sessionManager_.setIdleTimeToLive(getSessionIdleTimeToLive());
+            }
         }
 
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_SESSION_IDLE_TIMEOUT_PROPERTY, oldSessionIdleTimeout, sessionIdleTimeout);
+    }
+
+    /**
+     * Returns the current sort fields list property
+     * @return
+     */
+    public List<QueryField> getSortFields()
+    {
+        return sortFields_;
+    }
+
+    /**
+     * Sets the sort fields list property
+     * @param sortFields
+     */
+    public void setSortFields(ArrayList<QueryField> sortFields)
+    {
+        List<QueryField> oldSortFields = this.sortFields_;
+        this.sortFields_ = sortFields;
+
         try
         {
-            for (EditionDesc edition : editions_)
+            if (!sortFields.equals(oldSortFields))
             {
-                queryParameters.getEditions().add(edition);
+                String sortFieldDisplay = "";
+
+                for (QueryField field : this.sortFields_)
+                {
+                    if (sortFieldDisplay.length() > 0)
+                    {
+                        sortFieldDisplay += ", ";
+                    }
+                    sortFieldDisplay += field.getName() + "(" + field.getSort() + ")";
+
+                }
+
+                appendToLog("Setting sort fields to " + sortFieldDisplay);
             }
         }
         catch (NullPointerException ex)
         {
-            appendToLog("Error: Editions list is null");
+            appendToLog("Warning: Sort fields has been given a null value.");
         }
 
-        return queryParameters;
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_SORT_FIELDS_PROPERTY, oldSortFields, sortFields);
     }
 
     /**
-     * Returns the retrieve data in the form of a RetrieveParameters object
+     * Returns the current symbolic time span property
      * @return
      */
-    public RetrieveParameters getRetrieveParameters()
+    public SymbolicTimeSpan getSymbolicTimeSpan()
     {
-        RetrieveParameters retrieveParameters = new RetrieveParameters();
+        return symbolicTimeSpan_;
+    }
 
-        try
-        {
-            retrieveParameters.setCount(maxResultCount_);
-        }
-        catch (NullPointerException ex)
-        {
-            appendToLog("Error: Maximum records to retrieve is null");
-        }
-        try
-        {
-            retrieveParameters.setFirstRecord(firstRecord_);
-        }
-        catch (NullPointerException ex)
-        {
-            appendToLog("Error: Start record is null");
-        }
+    /**
+     * Sets the symbolic time span property
+     * @param symbolicTimeSpan
+     */
+    public void setSymbolicTimeSpan(SymbolicTimeSpan symbolicTimeSpan)
+    {
+        SymbolicTimeSpan oldSymbolicTimeSpan = this.symbolicTimeSpan_;
+        this.symbolicTimeSpan_ = symbolicTimeSpan;
 
         try
         {
-            for (QueryField queryField : sortFields_)
+            if (!symbolicTimeSpan.equals(oldSymbolicTimeSpan))
             {
-                retrieveParameters.getFields().add(queryField);
+                appendToLog("Setting recent date to " + this.symbolicTimeSpan_.getValue());
             }
         }
         catch (NullPointerException ex)
         {
-            appendToLog("Error: Sort fields list is null");
+            appendToLog("Warning: Recent date has been given a null value.");
         }
 
-
-        return retrieveParameters;
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_SYMBOLIC_TIME_SPAN_PROPERTY, oldSymbolicTimeSpan, symbolicTimeSpan);
     }
 
     /**
-     * Trigger function for executeWsLiteQuery()
+     * Returns the current time span property
+     * @return
      */
-    public void triggerExecuteWsLiteQuery()
+    public TimeSpan getTimeSpan()
     {
-        executeWsLiteQuery();
+        return timeSpan_;
     }
 
     /**
-     * Query the Web of Science Web Services Lite service with the current
-     * query/retrieve properties. Results are stored in the results output
-     * property
+     * Sets the time span property
+     * @param timeSpan
      */
-    private void executeWsLiteQuery()
+    public void setTimeSpan(TimeSpan timeSpan)
     {
-        appendToLog("Building query...");
-
-        setSystemProxy();
-
-        QName searchServiceName = new QName(
-            "http://woksearchlite.cxf.wokmws.thomsonreuters.com",
-            "WokSearchLiteService"
-        );
+        TimeSpan oldTimeSpan = this.timeSpan_;
+        this.timeSpan_ = timeSpan;
 
-        QName authServiceName = new QName(
-            "http://auth.cxf.wokmws.thomsonreuters.com",
-            "WOKMWSAuthenticateService"
-        );
+        try
+        {
+            if (!timeSpan.equals(oldTimeSpan))
+            {
+                appendToLog("Setting date range to " + this.timeSpan_.getBegin() + " to " + this.timeSpan_.getEnd());
+            }
+        }
+        catch (NullPointerException ex)
+        {
+            appendToLog("Warning: Date range has been given a null value.");
+        }
+
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_TIME_SPAN_PROPERTY, oldTimeSpan, timeSpan);
+    }
+
+    /**
+     * Returns the current user query property
+     * @return
+     */
+    public String getUserQuery()
+    {
+        return userQuery_;
+    }
+
+    /**
+     * Sets the user query property
+     * @param userQuery
+     */
+    public void setUserQuery(String userQuery)
+    {
+        String oldUserQuery = this.userQuery_;
+        this.userQuery_ = userQuery;
+
+        try
+        {
+            if (!userQuery.equals(oldUserQuery))
+            {
+                appendToLog("Setting user query to " + this.userQuery_);
+            }
+        }
+        catch (NullPointerException ex)
+        {
+            appendToLog("Warning: User query has been given a null value.");
+        }
+
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_USER_QUERY_PROPERTY, oldUserQuery, userQuery);
+    }
+
+    /**
+     * Returns the current log property
+     * @return
+     */
+    public synchronized String getLog()
+    {
+        return log_.toString();
+    }
+
+    /**
+     * Sets the log property, replacing every line in the log
+     * @param log
+     */
+    public synchronized void setLog(String log)
+    {
+        log_.setText(log);
+
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_LOG_PROPERTY, null, log);
+    }
+
+    /**
+     * Appends a string on a new line to the log property. Only the new line
+     * is sent to listeners, so the cost of an append does not depend on the
+     * length of the log.
+     * @param string
+     */
+    public void appendToLog(String string)
+    {
+        // The log is appended to by the search thread as well as the user
+        // interface, so lines must reach listeners in the order in which
+        // they were added
+        synchronized (this)
+        {
+            log_.append(string);
+
+            firePropertyChange(DefaultController.WS_LITE_SEARCH_LOG_APPEND_PROPERTY, null, string);
+        }
+    }
+
+    /**
+     * Returns the current search progress property
+     * @return
+     */
+    public SearchProgress getSearchProgress()
+    {
+        return searchProgress_;
+    }
+
+    /**
+     * Sets the search progress property
+     * @param searchProgress
+     */
+    public void setSearchProgress(SearchProgress searchProgress)
+    {
+        SearchProgress oldSearchProgress = this.searchProgress_;
+        this.searchProgress_ = searchProgress;
+
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_SEARCH_PROGRESS_PROPERTY, oldSearchProgress, searchProgress);
+    }
+
+    /**
+     * Returns the current results output property
+     * @return
+     */
+    public String getResultOutput()
+    {
+        return resultOutput_;
+    }
+
+    /**
+     * Sets the results output property
+     * @param resultOutput
+     */
+    public void setResultOutput(String resultOutput)
+    {
+        String oldResultOutput = this.resultOutput_;
+        this.resultOutput_ = resultOutput;
+
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_RESULT_OUTPUT_PROPERTY, oldResultOutput, resultOutput);
+    }
+
+    private void clearResultOutput()
+    {
+        this.resultOutput_ = "";
+        firePropertyChange(DefaultController.WS_LITE_SEARCH_RESULT_OUTPUT_PROPERTY, null, this.resultOutput_);
+    }
+
+    /**
+     * Returns the query data in the form of a QueryParameters object
+     * @return
+     */
+    public QueryParameters getQueryParameters()
+    {
+        QueryParameters queryParameters = new QueryParameters();
+
+        try
+        {
+            queryParameters.setDatabaseID(databaseId_);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+        }
+
+        queryParameters.setQueryLanguage("en");
+
+        try
+        {
+            switch (dateMode_)
+            {
+                case RANGE:
+                    queryParameters.setTimeSpan(timeSpan_);
+                    queryParameters.setSymbolicTimeSpan(null);
+                    break;
+
+                case RECENT:
+                    queryParameters.setSymbolicTimeSpan(symbolicTimeSpan_.getValue());
+                    queryParameters.setTimeSpan(null);
+                    break;
+
+                default:
+                    // Nothing
+
+            }
+        }
+        catch (NullPointerException ex)
+        {
+            appendToLog("Error: Date mode is null");
+        }
+
+        try
+        {
+            queryParameters.setUserQuery(userQuery_);
+        }
+        catch (Exception ex)
+        {
+            ex.printStackTrace();
+        }
+
+        try
+        {
+            for (EditionDesc edition : editions_)
+            {
+                queryParameters.getEditions().add(edition);
+            }
+        }
+        catch (NullPointerException ex)
+        {
+            appendToLog("Error: Editions list is null");
+        }
+
+        return queryParameters;
+    }
+
+    /**
+     * Returns the retrieve data in the form of a RetrieveParameters object
+     * @return
+     */
+    public RetrieveParameters getRetrieveParameters()
+    {
+        RetrieveParameters retrieveParameters = new RetrieveParameters();
+
+        try
+        {
+            retrieveParameters.setCount(maxResultCount_);
+        }
+        catch (NullPointerException ex)
+        {
+            appendToLog("Error: Maximum records to retrieve is null");
+        }
+        try
+        {
+            retrieveParameters.setFirstRecord(firstRecord_);
+        }
+        catch (NullPointerException ex)
+        {
+            appendToLog("Error: Start record is null");
+        }
+
+        try
+        {
+            for (QueryField queryField : sortFields_)
+            {
+                retrieveParameters.getFields().add(queryField);
+            }
+        }
+        catch (NullPointerException ex)
+        {
+            appendToLog("Error: Sort fields list is null");
+        }
+
+
+        return retrieveParameters;
+    }
+
+    /**
+     * Trigger function for executeWsLiteQuery(). The query is built from the
+     * current properties and then run on the search thread so that the
+     * caller is not blocked while the search is in progress.
+     */
+    public void triggerExecuteWsLiteQuery()
+    {
+        if (searchProgress_.isRunning())
+        {
+            appendToLog("A search is already in progress");
+            return;
+        }
+
+        appendToLog("Building query...");
+
+        setSystemProxy();
+
+        final QueryParameters queryParameters = getQueryParameters();
+        final RetrieveParameters retrieveParameters = getRetrieveParameters();
+        final boolean harvestAllPages = Boolean.TRUE.equals(harvestAllPages_);
+        final boolean checkpointHarvest = harvestAllPages && Boolean.TRUE.equals(checkpointHarvests_);
+        final int maxRecordsPerSearch = getMaxRecordsPerSearchLimit();
+        final boolean fanOutEditions = Boolean.TRUE.equals(fanOutEditions_);
+        final DuplicateRecords duplicateRecords = duplicateRecords_;
+        final int searchPortPoolSize = getSearchPortPoolSize();
+        final String outputPath = outputPath_ != null ? outputPath_ : "";
+        final SearchControl searchControl = new SearchControl();
+
+        // Results kept in memory can be shown again straight away if an
+        // identical search has been run recently, unless they depend on the
+        // records written since
+        if (outputPath.length() == 0 && !isCheckingDuplicates(duplicateRecords))
+        {
+            ResultOutputCache.Entry cachedOutput = resultOutputCache_.get(getSearchFingerprint(queryParameters, retrieveParameters, harvestAllPages, maxRecordsPerSearch, fanOutEditions));
+
+            if (cachedOutput != null)
+            {
+                appendToLog("Showing the results of an identical recent search");
+
+                setResultOutput(cachedOutput.getOutput());
+                setSearchProgress(cachedOutput.getSearchProgress());
+                return;
+            }
+        }
+
+        searchControl_ = searchControl;
+
+        setSearchProgress(new SearchProgress(SearchProgress.Phase.AUTHENTICATING, 0, 0, 0, 0));
+
+        searchFuture_ = searchExecutor_.submit(new Runnable()
+        {
+            public void run()
+            {
+                executeWsLiteQuery(queryParameters, retrieveParameters, harvestAllPages, checkpointHarvest, maxRecordsPerSearch, fanOutEditions, duplicateRecords, searchPortPoolSize, outputPath, searchControl);
+            }
+        });
+    }
+
+    /**
+     * Trigger function for cancelling the search in progress. Requests that
+     * have already been sent are aborted and the search session is closed.
+     */
+    public void triggerCancelWsLiteQuery()
+    {
+        SearchControl searchControl = searchControl_;
+        Future<?> searchFuture = searchFuture_;
+
+        if (searchControl == null || !searchProgress_.isRunning())
+        {
+            appendToLog("There is no search in progress to cancel");
+            return;
+        }
+
+        appendToLog("Cancelling search...");
+
+        searchControl.cancel();
+
+        if (searchFuture != null)
+        {
+            searchFuture.cancel(true);
+        }
+    }
+
+    /**
+     * Runs a search with the current properties on the calling thread and
+     * writes the results to an output stream as XML. This is used where there
+     * is no view to show the results, such as from the command line. The
+     * output stream is flushed but not closed. When duplicate records are
+     * checked, the caller adds the records written to the seen record index
+     * with indexWrittenRecords() once the output has been kept.
+     * @param outputStream The stream the XML is written to
+     * @return False if no records were found
+     * @throws BibliosightAuthenticationException
+     * @throws BibliosightSearchException
+     * @throws BibliosightClientException
+     */
+    public boolean runWsLiteQuery(OutputStream outputStream)
+        throws BibliosightAuthenticationException, BibliosightSearchException, BibliosightClientException
+    {
+        appendToLog("Building query...");
+
+        setSystemProxy();
+
+        QueryParameters queryParameters = getQueryParameters();
+        RetrieveParameters retrieveParameters = getRetrieveParameters();
+        SearchControl searchControl = new SearchControl();
+
+        WsLiteSessionManager sessionManager = null;
+        SearchPortPool searchPortPool = null;
+
+        setSearchProgress(new SearchProgress(SearchProgress.Phase.AUTHENTICATING, 0, 0, 0, 0));
+
+        SearchTimings searchTimings = new SearchTimings();
+        searchTimings_ = searchTimings;
+
+        HarvestMetrics harvestMetrics = HarvestMetrics.getDefault();
+        harvestMetrics.searchStarted(searchControl);
+
+        try
+        {
+            long startTime = System.nanoTime();
+
+            try
+            {
+                sessionManager = getSessionManager();
+                searchPortPool = getSearchPortPool(sessionManager, getSearchPortPoolSize());
+            }
+            catch (WebServiceException ex)
+            {
+                throw new BibliosightSearchException("The Web Services Lite services could not be created.", ex);
+            }
+
+            searchControl.setSearchPortPool(searchPortPool);
+
+            searchTimings.record(SearchTimings.Phase.SERVICE_SETUP, startTime, 0, 0);
+
+            appendToLog("Authenticating with Web Services Lite...");
+
+            startTime = System.nanoTime();
+            String sessionId = sessionManager.getSessionId();
+            searchTimings.record(SearchTimings.Phase.AUTHENTICATION, startTime, 0, 0);
+
+            startTime = System.nanoTime();
+
+            if (!initialiseSearchSession(searchPortPool, sessionId))
+            {
+                throw new BibliosightSearchException("The search session could not be initialised.");
+            }
+
+            searchTimings.record(SearchTimings.Phase.SESSION_INITIALISATION, startTime, 0, 0);
+
+            setSearchProgress(getSearchProgress().withPhase(SearchProgress.Phase.SEARCHING));
+
+            boolean recordsWritten = writeSearchResults(sessionManager, searchPortPool, queryParameters, retrieveParameters, Boolean.TRUE.equals(harvestAllPages_), Boolean.TRUE.equals(checkpointHarvests_), getMaxRecordsPerSearchLimit(), Boolean.TRUE.equals(fanOutEditions_), duplicateRecords_, outputStream, searchControl);
+
+            setSearchProgress(getSearchProgress().withPhase(SearchProgress.Phase.COMPLETE));
+
+            return recordsWritten;
+        }
+        catch (BibliosightAuthenticationException ex)
+        {
+            setSearchProgress(getSearchProgress().withPhase(SearchProgress.Phase.FAILED));
+            throw ex;
+        }
+        catch (BibliosightSearchException ex)
+        {
+            setSearchProgress(getSearchProgress().withPhase(SearchProgress.Phase.FAILED));
+            throw ex;
+        }
+        catch (BibliosightClientException ex)
+        {
+            setSearchProgress(getSearchProgress().withPhase(SearchProgress.Phase.FAILED));
+            throw ex;
+        }
+        catch (RuntimeException ex)
+        {
+            setSearchProgress(getSearchProgress().withPhase(SearchProgress.Phase.FAILED));
+            throw new BibliosightSearchException("The search operation could not be completed.", ex);
+        }
+        finally
+        {
+            harvestMetrics.searchFinished(searchControl, getSearchProgress().getPhase());
+            logSearchTimings(searchTimings);
+        }
+    }
+
+    /**
+     * Query the Web of Science Web Services Lite service with the supplied
+     * query/retrieve parameters. Results are stored in the results output
+     * property and progress is reported through the search progress property.
+     * @param queryParameters The query options for the search
+     * @param retrieveParameters The retrieve options for the search
+     * @param harvestAllPages Whether every page of the result should be retrieved
+     * @param checkpointHarvest Whether the pages of a harvest are saved so
+     * that it can be resumed
+     * @param maxRecordsPerSearch The most records a search may find before
+     * a harvest is split by time span, or 0 for no limit
+     * @param fanOutEditions Whether a harvest of several editions is divided
+     * into one search for each edition
+     * @param duplicateRecords How records that have already been written are
+     * treated, or null to include them
+     * @param searchPortPoolSize The number of search ports to use
+     * @param outputPath Path of the file the results are written to, or an
+     * empty string to keep the results in memory
+     * @param searchControl Control used to cancel the search
+     */
+    private void executeWsLiteQuery(
+        QueryParameters queryParameters,
+        RetrieveParameters retrieveParameters,
+        boolean harvestAllPages,
+        boolean checkpointHarvest,
+        int maxRecordsPerSearch,
+        boolean fanOutEditions,
+        DuplicateRecords duplicateRecords,
+        int searchPortPoolSize,
+        String outputPath,
+        SearchControl searchControl)
+    {
+        SearchResults searchResults = null;
+
+        String sessionId = null;
+        WsLiteSessionManager sessionManager = null;
+        SearchPortPool searchPortPool = null;
+
+        SearchTimings searchTimings = new SearchTimings();
+        searchTimings_ = searchTimings;
+
+        HarvestMetrics harvestMetrics = HarvestMetrics.getDefault();
+        harvestMetrics.searchStarted(searchControl);
+
+        try
+        {
+            long startTime = System.nanoTime();
+
+            try
+            {
+                sessionManager = getSessionManager();
+                searchPortPool = getSearchPortPool(sessionManager, searchPortPoolSize);
+            }
+            catch (WebServiceException ex)
+            {
+                failSearch("The Web Services Lite services could not be created. Search operation cannot continue.", ex);
+                return;
+            }
+
+            searchTimings.record(SearchTimings.Phase.SERVICE_SETUP, startTime, 0, 0);
+
+            searchControl.setSearchPortPool(searchPortPool);
+
+            try
+            {
+                if (sessionManager.hasActiveSession())
+                {
+                    appendToLog("Reusing the current Web Services Lite session");
+                }
+                else
+                {
+                    appendToLog("Authenticating with Web Services Lite...");
+                }
+
+                startTime = System.nanoTime();
+                sessionId = sessionManager.getSessionId();
+                searchTimings.record(SearchTimings.Phase.AUTHENTICATION, startTime, 0, 0);
+            }
+            catch (BibliosightAuthenticationException ex)
+            {
+                failSearch("Authentication with the Web Services Lite service has failed. Search operation cannot continue.", ex);
+                return;
+            }
+
+            searchControl.checkCancelled();
+
+            startTime = System.nanoTime();
+
+            if (!initialiseSearchSession(searchPortPool, sessionId))
+            {
+                setSearchProgress(getSearchProgress().withPhase(SearchProgress.Phase.FAILED));
+                return;
+            }
+
+            searchTimings.record(SearchTimings.Phase.SESSION_INITIALISATION, startTime, 0, 0);
+
+            setSearchProgress(getSearchProgress().withPhase(SearchProgress.Phase.SEARCHING));
+
+            String xml = null;
+
+            try
+            {
+                xml = searchAndTransform(sessionManager, searchPortPool, queryParameters, retrieveParameters, harvestAllPages, checkpointHarvest, maxRecordsPerSearch, fanOutEditions, duplicateRecords, outputPath, searchControl);
+            }
+            catch (BibliosightSearchException ex)
+            {
+                if (searchControl.isCancelled())
+                {
+                    throw new BibliosightSearchCancelledException();
+                }
+
+                failSearch("The search operation could not be completed.", ex);
+                return;
+            }
+            catch (BibliosightClientException ex)
+            {
+                // Interrupting the search thread on cancellation closes the
+                // results file, which surfaces as a failure to write it
+                if (searchControl.isCancelled())
+                {
+                    throw new BibliosightSearchCancelledException();
+                }
+
+                failSearch("The search results transformation could not be completed.", ex);
+                return;
+            }
+
+            if (xml != null)
+            {
+                String oldResultOutput = resultOutput_;
+                resultOutput_ = xml;
+
+                firePropertyChange(DefaultController.WS_LITE_SEARCH_RESULT_OUTPUT_PROPERTY, oldResultOutput, xml);
+
+                // Results kept in memory are indexed once they are shown
+                indexWrittenRecords();
+            }
+
+            setSearchProgress(getSearchProgress().withPhase(SearchProgress.Phase.COMPLETE));
+
+            if (xml != null && outputPath.length() == 0 && !isCheckingDuplicates(duplicateRecords))
+            {
+                long timeToLive = SearchResultsCache.isClosedTimeSpan(queryParameters) ? 0L : SearchResultsCache.getDefaultOpenSpanTimeToLive();
+
+                resultOutputCache_.put(getSearchFingerprint(queryParameters, retrieveParameters, harvestAllPages, maxRecordsPerSearch, fanOutEditions), xml, getSearchProgress(), timeToLive);
+            }
+        }
+        catch (BibliosightSearchCancelledException ex)
+        {
+            finishCancelledSearch();
+        }
+        catch (RuntimeException ex)
+        {
+            // Aborting a request on cancellation surfaces as a runtime
+            // exception from the service port
+            if (searchControl.isCancelled())
+            {
+                finishCancelledSearch();
+            }
+            else
+            {
+                failSearch("The search operation could not be completed.", ex);
+            }
+        }
+        finally
+        {
+            harvestMetrics.searchFinished(searchControl, getSearchProgress().getPhase());
+            logSearchTimings(searchTimings);
+        }
+    }
+
+    /**
+     * Queries Web of Science with the supplied parameters and transforms the
+     * results into XML. When an output path is given, the XML is written to
+     * that file and only a summary and preview of it is returned.
+     * @param sessionManager Manager for the Web Services Lite session
+     * @param searchPortPool Pool of Web Services Lite search ports
+     * @param queryParameters The query options for the search
+     * @param retrieveParameters The retrieve options for the search
+     * @param harvestAllPages Whether every page of the result should be retrieved
+     * @param checkpointHarvest Whether the pages of a harvest are saved so
+     * that it can be resumed
+     * @param maxRecordsPerSearch The most records a search may find before
+     * a harvest is split by time span, or 0 for no limit
+     * @param fanOutEditions Whether a harvest of several editions is divided
+     * into one search for each edition
+     * @param duplicateRecords How records that have already been written are
+     * treated, or null to include them
+     * @param outputPath Path of the file the results are written to, or an
+     * empty string to keep the results in memory
+     * @param searchControl Control used to cancel the search
+     * @return The results output, or null if no records were found
+     * @throws BibliosightSearchException
+     * @throws BibliosightClientException
+     */
+    private String searchAndTransform(
+        WsLiteSessionManager sessionManager,
+        SearchPortPool searchPortPool,
+        QueryParameters queryParameters,
+        RetrieveParameters retrieveParameters,
+        boolean harvestAllPages,
+        boolean checkpointHarvest,
+        int maxRecordsPerSearch,
+        boolean fanOutEditions,
+        DuplicateRecords duplicateRecords,
+        String outputPath,
+        SearchControl searchControl)
+        throws BibliosightSearchException, BibliosightClientException
+    {
+        ByteArrayOutputStream byteArrayOutputStream = null;
+        AtomicFileOutputStream fileOutputStream = null;
+
+        try
+        {
+            OutputStream outputStream = null;
+
+            if (outputPath.length() > 0)
+            {
+                fileOutputStream = new AtomicFileOutputStream(new File(outputPath));
+                outputStream = fileOutputStream;
+            }
+            else
+            {
+                byteArrayOutputStream = new ByteArrayOutputStream();
+                outputStream = byteArrayOutputStream;
+            }
+
+            if (!writeSearchResults(sessionManager, searchPortPool, queryParameters, retrieveParameters, harvestAllPages, checkpointHarvest, maxRecordsPerSearch, fanOutEditions, duplicateRecords, outputStream, searchControl))
+            {
+                return null;
+            }
+
+            long startTime = System.nanoTime();
+
+            if (fileOutputStream != null)
+            {
+                fileOutputStream.commit();
+                indexWrittenRecords();
+
+                searchTimings_.record(SearchTimings.Phase.OUTPUT, startTime, 0, fileOutputStream.getBytesWritten());
+
+                appendToLog("Search results written to " + fileOutputStream.getTargetFile());
+
+                return getResultsFileSummary(fileOutputStream.getTargetFile(), getSearchProgress().getRecordsTransformed(), fileOutputStream.getBytesWritten());
+            }
+
+            String xml = byteArrayOutputStream.toString("UTF-8");
+
+            searchTimings_.record(SearchTimings.Phase.OUTPUT, startTime, 0, byteArrayOutputStream.size());
+
+            return xml;
+        }
+        catch (IOException ex)
+        {
+            throw new BibliosightClientException("The search results could not be written to " + outputPath, ex);
+        }
+        finally
+        {
+            if (fileOutputStream != null)
+            {
+                try
+                {
+                    // Discards the partly written file if the output was not committed
+                    fileOutputStream.close();
+                }
+                catch (IOException ex)
+                {
+                    Logger.getLogger(QueryModel.class.getName()).log(Level.WARNING, "The temporary results file could not be removed.", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queries Web of Science with the supplied parameters and writes the
+     * results to an output stream as XML. Each page of results is written as
+     * soon as it arrives, so the records of a harvest are never all held in
+     * memory at once. Nothing is written if no records are found. The output
+     * stream is flushed but not closed. When a harvest is checkpointed, its
+     * journal is kept if the harvest fails so that it can be resumed. When
+     * duplicate records are checked, the records written are only added to
+     * the seen record index by indexWrittenRecords().
+     * @param sessionManager Manager for the Web Services Lite session
+     * @param searchPortPool Pool of Web Services Lite search ports
+     * @param queryParameters The query options for the search
+     * @param retrieveParameters The retrieve options for the search
+     * @param harvestAllPages Whether every page of the result should be retrieved
+     * @param checkpointHarvest Whether the pages of a harvest are saved so
+     * that it can be resumed
+     * @param maxRecordsPerSearch The most records a search may find before
+     * a harvest is split by time span, or 0 for no limit
+     * @param fanOutEditions Whether a harvest of several editions is divided
+     * into one search for each edition
+     * @param duplicateRecords How records that have already been written are
+     * treated, or null to include them
+     * @param outputStream The stream the XML is written to
+     * @param searchControl Control used to cancel the search
+     * @return False if no records were found
+     * @throws BibliosightSearchException
+     * @throws BibliosightClientException
+     */
+    private boolean writeSearchResults(
+        WsLiteSessionManager sessionManager,
+        SearchPortPool searchPortPool,
+        QueryParameters queryParameters,
+        RetrieveParameters retrieveParameters,
+        boolean harvestAllPages,
+        boolean checkpointHarvest,
+        int maxRecordsPerSearch,
+        boolean fanOutEditions,
+        DuplicateRecords duplicateRecords,
+        OutputStream outputStream,
+        SearchControl searchControl)
+        throws BibliosightSearchException, BibliosightClientException
+    {
+        retryPolicy_ = RetryPolicy.createDefault();
+        allRecordsWritten_ = true;
+        unindexedResults_ = null;
+
+        SeenRecordIndex seenRecordIndex = isCheckingDuplicates(duplicateRecords) ? openSeenRecordIndex() : null;
+        boolean skipDuplicates = DuplicateRecords.SKIP.equals(duplicateRecords);
+
+        HarvestJournal harvestJournal = harvestAllPages && checkpointHarvest ? openHarvestJournal(queryParameters, retrieveParameters) : null;
+        boolean completed = false;
+
+        try
+        {
+            boolean recordsWritten = writeSearchResultPages(sessionManager, searchPortPool, queryParameters, retrieveParameters, harvestAllPages, maxRecordsPerSearch, fanOutEditions, harvestJournal, seenRecordIndex, skipDuplicates, outputStream, searchControl);
+            completed = true;
+
+            return recordsWritten;
+        }
+        finally
+        {
+            if (retryPolicy_.getRetryCount() > 0)
+            {
+                appendToLog(retryPolicy_.getRetryCount() + " failed request(s) were retried");
+            }
+
+            if (harvestJournal != null)
+            {
+                if (completed)
+                {
+                    harvestJournal.delete();
+                }
+                else
+                {
+                    appendToLog("The pages retrieved so far have been saved and will be reused when the search is run again");
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the pages of a search and writes them to an output stream as
+     * XML. Pages that have been saved in the harvest journal are read from it
+     * rather than retrieved again, and pages that are retrieved are saved to
+     * it.
+     * @param sessionManager Manager for the Web Services Lite session
+     * @param searchPortPool Pool of Web Services Lite search ports
+     * @param queryParameters The query options for the search
+     * @param retrieveParameters The retrieve options for the search
+     * @param harvestAllPages Whether every page of the result should be retrieved
+     * @param maxRecordsPerSearch The most records a search may find before
+     * a harvest is split by time span, or 0 for no limit
+     * @param fanOutEditions Whether a harvest of several editions is divided
+     * into one search for each edition
+     * @param harvestJournal Journal of the pages of the harvest, or null
+     * @param seenRecordIndex Index of the records already written, or null
+     * @param skipDuplicates Whether records already written are skipped
+     * rather than flagged
+     * @param outputStream The stream the XML is written to
+     * @param searchControl Control used to cancel the search
+     * @return False if no records were found
+     * @throws BibliosightSearchException
+     * @throws BibliosightClientException
+     */
+    private boolean writeSearchResultPages(
+        WsLiteSessionManager sessionManager,
+        SearchPortPool searchPortPool,
+        QueryParameters queryParameters,
+        RetrieveParameters retrieveParameters,
+        boolean harvestAllPages,
+        int maxRecordsPerSearch,
+        boolean fanOutEditions,
+        HarvestJournal harvestJournal,
+        SeenRecordIndex seenRecordIndex,
+        boolean skipDuplicates,
+        OutputStream outputStream,
+        SearchControl searchControl)
+        throws BibliosightSearchException, BibliosightClientException
+    {
+        SearchResults searchResults = null;
+        boolean useCachedResults = false;
+
+        if (harvestJournal != null)
+        {
+            searchResults = harvestJournal.getPage(retrieveParameters.getFirstRecord());
+        }
+
+        if (searchResults == null)
+        {
+            // The rest of a harvest is only read from the cache if the first
+            // page was, so that the pages of a result set are not mixed with
+            // those of an older one
+            searchResults = getCachedSearchResults(queryParameters, retrieveParameters);
+            useCachedResults = searchResults != null;
+
+            if (searchResults == null)
+            {
+                searchResults = retrieveSearchResults(sessionManager, searchPortPool, queryParameters, retrieveParameters, searchControl);
+            }
+
+            if (harvestJournal != null)
+            {
+                harvestJournal.putPage(retrieveParameters.getFirstRecord(), searchResults);
+            }
+        }
+
+        int recordsFound = searchResults.getRecordsFound();
+        List<Integer> pageFirstRecords = new ArrayList<Integer>();
+
+        if (harvestAllPages && isFanOutSearch(queryParameters, retrieveParameters, recordsFound, fanOutEditions))
+        {
+            return writeFanOutSearchResults(sessionManager, searchPortPool, useCachedResults, harvestJournal != null, maxRecordsPerSearch, queryParameters, retrieveParameters, searchResults, seenRecordIndex, skipDuplicates, outputStream, searchControl);
+        }
+
+        if (harvestAllPages && isSplitSearch(queryParameters, retrieveParameters, recordsFound, maxRecordsPerSearch))
+        {
+            return writeSplitSearchResults(sessionManager, searchPortPool, useCachedResults, harvestJournal != null, maxRecordsPerSearch, queryParameters, retrieveParameters, searchResults, seenRecordIndex, skipDuplicates, outputStream, searchControl);
+        }
+
+        if (harvestAllPages)
+        {
+            int firstRecord = retrieveParameters.getFirstRecord();
+
+            appendToLog("Retrieved records " + firstRecord + " to " + (firstRecord + searchResults.getRecords().size() - 1) + " of " + recordsFound);
+
+            pageFirstRecords = getHarvestPageFirstRecords(retrieveParameters, searchResults);
+        }
+
+        setSearchProgress(getSearchProgress().withPages(1, pageFirstRecords.size() + 1, recordsFound));
+
+        if (recordsFound <= 0)
+        {
+            return false;
+        }
+
+        searchControl.checkCancelled();
+
+        appendToLog("Tranforming search results into XML");
+
+        int recordsListed = getRecordsListed(retrieveParameters, searchResults, pageFirstRecords);
+
+        if (retrieveParameters.getFirstRecord() != 1 || recordsListed < recordsFound)
+        {
+            allRecordsWritten_ = false;
+        }
+
+        StreamingSearchResultsTransformer resultsTransformer = createResultsTransformer(outputStream, queryParameters, retrieveParameters, seenRecordIndex, skipDuplicates);
+
+        resultsTransformer.startDocument(searchResults, recordsListed);
+        resultsTransformer.writeItems(searchResults.getRecords());
+
+        setSearchProgress(getSearchProgress().withRecordsTransformed(resultsTransformer.getItemsWritten()));
+
+        if (!pageFirstRecords.isEmpty())
+        {
+            harvestSearchResults(sessionManager, searchPortPool, useCachedResults, harvestJournal, queryParameters, retrieveParameters, pageFirstRecords, recordsFound, resultsTransformer, searchControl);
+        }
+
+        setSearchProgress(getSearchProgress().withPhase(SearchProgress.Phase.TRANSFORMING));
+
+        resultsTransformer.endDocument();
+        unindexedResults_ = resultsTransformer;
+
+        logTransformSummary(resultsTransformer, recordsListed);
+
+        return true;
+    }
+
+    /**
+     * Creates the transformer that a search is written to
+     * @param outputStream The stream the XML is written to
+     * @param queryParameters The query options for the search
+     * @param retrieveParameters The retrieve options for the search
+     * @param seenRecordIndex Index of the records already written, or null
+     * @param skipDuplicates Whether records already written are skipped
+     * rather than flagged
+     * @return
+     * @throws BibliosightClientException
+     */
+    private static StreamingSearchResultsTransformer createResultsTransformer(
+        OutputStream outputStream,
+        QueryParameters queryParameters,
+        RetrieveParameters retrieveParameters,
+        SeenRecordIndex seenRecordIndex,
+        boolean skipDuplicates)
+        throws BibliosightClientException
+    {
+        StreamingSearchResultsTransformer resultsTransformer = new StreamingSearchResultsTransformer(outputStream);
+
+        resultsTransformer.setExecutionDate(getCurrentDateString("yyyy-MM-dd'T'HH:mm:ssZ"));
+        resultsTransformer.setQueryParameters(queryParameters);
+        resultsTransformer.setRetrieveParameters(retrieveParameters);
+        resultsTransformer.setSeenRecordIndex(seenRecordIndex, skipDuplicates);
+
+        return resultsTransformer;
+    }
+
+    /**
+     * Logs the duplicate records found while writing a search and warns if
+     * fewer or more records were retrieved than expected. The time spent
+     * writing the search is added to the search timings.
+     * @param resultsTransformer The transformer the search was written to
+     * @param recordsListed The number of records expected
+     */
+    private void logTransformSummary(StreamingSearchResultsTransformer resultsTransformer, int recordsListed)
+    {
+        int recordsRetrieved = resultsTransformer.getItemsWritten();
+
+        searchTimings_.add(SearchTimings.Phase.TRANSFORM, System.nanoTime() - resultsTransformer.getWriteTime(), resultsTransformer.getWriteTime(), recordsRetrieved, resultsTransformer.getBytesWritten());
+        HarvestMetrics.getDefault().outputWritten(recordsRetrieved, resultsTransformer.getBytesWritten());
+
+        if (resultsTransformer.getRepeatsSkipped() > 0)
+        {
+            appendToLog(resultsTransformer.getRepeatsSkipped() + " record(s) found by more than one search were only written once");
+        }
+
+        if (resultsTransformer.getDuplicatesFound() > 0)
+        {
+            if (resultsTransformer.isSkippingDuplicates())
+            {
+                recordsRetrieved += resultsTransformer.getDuplicatesFound();
+
+                appendToLog(resultsTransformer.getDuplicatesFound() + " record(s) had already been written and were skipped");
+            }
+            else
+            {
+                appendToLog(resultsTransformer.getDuplicatesFound() + " record(s) had already been written and were flagged as duplicates");
+            }
+        }
+
+        if (recordsRetrieved != recordsListed)
+        {
+            appendToLog("Warning: " + recordsListed + " records were expected but " + recordsRetrieved + " were retrieved");
+        }
+    }
+
+    /**
+     * Returns true if a harvest should be divided into one search for each of
+     * its editions. Only harvests of more than one page that start at the
+     * first record are divided.
+     * @param queryParameters The query options for the harvest
+     * @param retrieveParameters The retrieve options for the first page
+     * @param recordsFound The number of records found by the harvest
+     * @param fanOutEditions Whether harvests of several editions are divided
+     * @return
+     */
+    private static boolean isFanOutSearch(QueryParameters queryParameters, RetrieveParameters retrieveParameters, int recordsFound, boolean fanOutEditions)
+    {
+        return fanOutEditions
+            && queryParameters.getEditions().size() > 1
+            && retrieveParameters.getFirstRecord() == 1
+            && recordsFound > retrieveParameters.getCount();
+    }
+
+    /**
+     * Returns a copy of the query parameters that searches a single edition
+     * @param queryParameters
+     * @param edition
+     * @return
+     */
+    private static QueryParameters getEditionQueryParameters(QueryParameters queryParameters, EditionDesc edition)
+    {
+        QueryParameters editionQuery = new QueryParameters();
+
+        editionQuery.setDatabaseID(queryParameters.getDatabaseID());
+        editionQuery.setQueryLanguage(queryParameters.getQueryLanguage());
+        editionQuery.setUserQuery(queryParameters.getUserQuery());
+        editionQuery.setSymbolicTimeSpan(queryParameters.getSymbolicTimeSpan());
+        editionQuery.setTimeSpan(queryParameters.getTimeSpan());
+        editionQuery.getEditions().add(edition);
+
+        return editionQuery;
+    }
+
+    /**
+     * Returns true if a harvest finds too many records to be retrieved by one
+     * search and should be split into searches over parts of its time span.
+     * Only searches with a time span that start at the first record can be
+     * split.
+     * @param queryParameters The query options for the harvest
+     * @param retrieveParameters The retrieve options for the first page
+     * @param recordsFound The number of records found by the harvest
+     * @param maxRecordsPerSearch The most records a search may find before
+     * the harvest is split by time span, or 0 for no limit
+     * @return
+     */
+    private boolean isSplitSearch(QueryParameters queryParameters, RetrieveParameters retrieveParameters, int recordsFound, int maxRecordsPerSearch)
+    {
+        if (maxRecordsPerSearch <= 0 || recordsFound <= maxRecordsPerSearch)
+        {
+            return false;
+        }
+
+        if (queryParameters.getTimeSpan() == null || retrieveParameters.getFirstRecord() != 1)
+        {
+            appendToLog("Warning: The search found more than " + maxRecordsPerSearch + " records but can only be split if it has a date range and starts at the first record");
+            allRecordsWritten_ = false;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Splits a harvest into searches over parts of its time span, harvests
+     * each part and writes the records of the parts to an output stream as
+     * XML, merged in the order given by the sort fields. The pages of the
+     * parts are requested concurrently, one page ahead of the merge for each
+     * part, so that only a few pages of each are held in memory.
+     * @param sessionManager Manager for the Web Services Lite session
+     * @param searchPortPool Pool of Web Services Lite search ports
+     * @param useCachedResults Whether pages may be read from the cache
+     * @param checkpointHarvest Whether the pages of each part are saved so
+     * that the harvest can be resumed
+     * @param maxRecordsPerSearch The most records a search may find before
+     * the harvest is split by time span, or 0 for no limit
+     * @param queryParameters The query options for the harvest
+     * @param retrieveParameters The retrieve options for the first page
+     * @param firstPage The first page of search results for the whole span
+     * @param seenRecordIndex Index of the records already written, or null
+     * @param skipDuplicates Whether records already written are skipped
+     * rather than flagged
+     * @param outputStream The stream the XML is written to
+     * @param searchControl Control used to cancel the harvest
+     * @return False if no records were found
+     * @throws BibliosightSearchException
+     * @throws BibliosightClientException
+     */
+    private boolean writeSplitSearchResults(
+        final WsLiteSessionManager sessionManager,
+        final SearchPortPool searchPortPool,
+        final boolean useCachedResults,
+        boolean checkpointHarvest,
+        int maxRecordsPerSearch,
+        QueryParameters queryParameters,
+        final RetrieveParameters retrieveParameters,
+        SearchResults firstPage,
+        SeenRecordIndex seenRecordIndex,
+        boolean skipDuplicates,
+        OutputStream outputStream,
+        final SearchControl searchControl)
+        throws BibliosightSearchException, BibliosightClientException
+    {
+        int recordsFound = firstPage.getRecordsFound();
+
+        appendToLog("The search found " + recordsFound + " records, more than the " + maxRecordsPerSearch + " allowed for one search. Splitting the time span...");
+
+        List<SubQuery> subQueries = planTimeSpan(sessionManager, searchPortPool, useCachedResults, maxRecordsPerSearch, queryParameters, retrieveParameters, firstPage, searchControl);
+        int recordsListed = 0;
+
+        for (SubQuery subQuery : subQueries)
+        {
+            appendToLog("Searching " + subQuery.getDescription() + ": " + subQuery.getRecordsFound() + " records");
+
+            if (subQuery.getRecordsFound() > maxRecordsPerSearch)
+            {
+                appendToLog("Warning: The search for " + subQuery.getDescription() + " cannot be split further");
+                allRecordsWritten_ = false;
+            }
+
+            recordsListed += subQuery.getRecordsFound();
+        }
+
+        if (subQueries.isEmpty())
+        {
+            return false;
+        }
+
+        appendToLog("The time span has been split into " + subQueries.size() + " searches");
+
+        return writeMergedSearchResults(sessionManager, searchPortPool, useCachedResults, checkpointHarvest, queryParameters, retrieveParameters, firstPage, subQueries, recordsListed, false, seenRecordIndex, skipDuplicates, outputStream, searchControl);
+    }
+
+    /**
+     * Splits a search into searches over parts of its time span that each
+     * find no more than the maximum records per search
+     * @param sessionManager Manager for the Web Services Lite session
+     * @param searchPortPool Pool of Web Services Lite search ports
+     * @param useCachedResults Whether pages may be read from the cache
+     * @param maxRecordsPerSearch The most records each search may find
+     * @param queryParameters The query options for the search
+     * @param retrieveParameters The retrieve options for the first page
+     * @param firstPage The first page of search results for the whole span
+     * @param searchControl Control used to cancel the harvest
+     * @return
+     * @throws BibliosightSearchException
+     */
+    private List<SubQuery> planTimeSpan(
+        final WsLiteSessionManager sessionManager,
+        final SearchPortPool searchPortPool,
+        final boolean useCachedResults,
+        int maxRecordsPerSearch,
+        QueryParameters queryParameters,
+        final RetrieveParameters retrieveParameters,
+        SearchResults firstPage,
+        final SearchControl searchControl)
+        throws BibliosightSearchException
+    {
+        TimeSpanPlanner timeSpanPlanner = new TimeSpanPlanner(new TimeSpanPlanner.PageSearcher()
+        {
+            public SearchResults search(QueryParameters subQueryParameters) throws BibliosightSearchException
+            {
+                searchControl.checkCancelled();
+
+                return retrieveSearchResultsPage(sessionManager, searchPortPool, searchResultsCache_, retryPolicy_, searchTimings_, searchControl, useCachedResults, subQueryParameters, retrieveParameters);
+            }
+        }, maxRecordsPerSearch);
+
+        return timeSpanPlanner.plan(queryParameters, firstPage);
+    }
+
+    /**
+     * Divides a harvest into one search for each of its editions, harvests
+     * the editions concurrently and writes their records to an output stream
+     * as XML, merged in the order given by the sort fields. A record found in
+     * more than one edition is only written once. An edition that finds too
+     * many records to be retrieved by one search is split by time span.
+     * @param sessionManager Manager for the Web Services Lite session
+     * @param searchPortPool Pool of Web Services Lite search ports
+     * @param useCachedResults Whether pages may be read from the cache
+     * @param checkpointHarvest Whether the pages of each edition are saved so
+     * that the harvest can be resumed
+     * @param maxRecordsPerSearch The most records a search may find before
+     * the harvest is split by time span, or 0 for no limit
+     * @param queryParameters The query options for the harvest
+     * @param retrieveParameters The retrieve options for the first page
+     * @param firstPage The first page of search results for every edition
+     * @param seenRecordIndex Index of the records already written, or null
+     * @param skipDuplicates Whether records already written are skipped
+     * rather than flagged
+     * @param outputStream The stream the XML is written to
+     * @param searchControl Control used to cancel the harvest
+     * @return False if no records were found
+     * @throws BibliosightSearchException
+     * @throws BibliosightClientException
+     */
+    private boolean writeFanOutSearchResults(
+        final WsLiteSessionManager sessionManager,
+        final SearchPortPool searchPortPool,
+        final boolean useCachedResults,
+        boolean checkpointHarvest,
+        int maxRecordsPerSearch,
+        QueryParameters queryParameters,
+        final RetrieveParameters retrieveParameters,
+        SearchResults firstPage,
+        SeenRecordIndex seenRecordIndex,
+        boolean skipDuplicates,
+        OutputStream outputStream,
+        final SearchControl searchControl)
+        throws BibliosightSearchException, BibliosightClientException
+    {
+        List<EditionDesc> editions = queryParameters.getEditions();
+
+        appendToLog("Searching each of the " + editions.size() + " editions separately...");
+
+        List<QueryParameters> editionQueries = new ArrayList<QueryParameters>();
+        List<Future<SearchResults>> editionFirstPages = new ArrayList<Future<SearchResults>>();
+        final long[] retrievalTimes = new long[editions.size()];
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(searchPortPool.getSize(), editions.size()));
+
+        try
+        {
+            for (int i = 0; i < editions.size(); i++)
+            {
+                final int editionIndex = i;
+                final QueryParameters editionQuery = getEditionQueryParameters(queryParameters, editions.get(i));
+                editionQueries.add(editionQuery);
+
+                editionFirstPages.add(executor.submit(new Callable<SearchResults>()
+                {
+                    public SearchResults call() throws BibliosightSearchException
+                    {
+                        searchControl.checkCancelled();
+
+                        long startTime = System.currentTimeMillis();
+                        SearchResults page = retrieveSearchResultsPage(sessionManager, searchPortPool, searchResultsCache_, retryPolicy_, searchTimings_, searchControl, useCachedResults, editionQuery, retrieveParameters);
+                        retrievalTimes[editionIndex] = System.currentTimeMillis() - startTime;
+
+                        return page;
+                    }
+                }));
+            }
+
+            List<SubQuery> subQueries = new ArrayList<SubQuery>();
+
+            for (int i = 0; i < editions.size(); i++)
+            {
+                String editionName = editions.get(i).getCollection() + ":" + editions.get(i).getEdition();
+                SearchResults editionFirstPage = getHarvestedPage(editionFirstPages.get(i));
+
+                appendToLog("Edition " + editionName + " found " + editionFirstPage.getRecordsFound() + " records in " + formatSeconds(retrievalTimes[i]) + " seconds");
+
+                if (isSplitSearch(editionQueries.get(i), retrieveParameters, editionFirstPage.getRecordsFound(), maxRecordsPerSearch))
+                {
+                    appendToLog("Splitting the time span of edition " + editionName + "...");
+
+                    for (SubQuery subQuery : planTimeSpan(sessionManager, searchPortPool, useCachedResults, maxRecordsPerSearch, editionQueries.get(i), retrieveParameters, editionFirstPage, searchControl))
+                    {
+                        subQueries.add(new SubQuery(subQuery.getQueryParameters(), subQuery.getFirstPage(), editionName + ", " + subQuery.getDescription()));
+                    }
+                }
+                else if (editionFirstPage.getRecordsFound() > 0)
+                {
+                    subQueries.add(new SubQuery(editionQueries.get(i), editionFirstPage, editionName));
+                }
+            }
+
+            if (subQueries.isEmpty())
+            {
+                return false;
+            }
+
+            // Records found in more than one edition are only listed once, as
+            // in the search of every edition, so the number found by that
+            // search is listed. The number actually written follows the
+            // items.
+            return writeMergedSearchResults(sessionManager, searchPortPool, useCachedResults, checkpointHarvest, queryParameters, retrieveParameters, firstPage, subQueries, firstPage.getRecordsFound(), true, seenRecordIndex, skipDuplicates, outputStream, searchControl);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Harvests a set of searches and writes their records to an output stream
+     * as XML, merged in the order given by the sort fields. The pages of the
+     * searches are requested concurrently, one page ahead of the merge for
+     * each search, so that only a few pages of each are held in memory.
+     * @param sessionManager Manager for the Web Services Lite session
+     * @param searchPortPool Pool of Web Services Lite search ports
+     * @param useCachedResults Whether pages may be read from the cache
+     * @param checkpointHarvest Whether the pages of each search are saved so
+     * that the harvest can be resumed
+     * @param queryParameters The query options for the whole harvest
+     * @param retrieveParameters The retrieve options for the first page
+     * @param firstPage The first page of search results for the whole harvest
+     * @param subQueries The searches to be merged
+     * @param recordsListed The number of records that will be listed
+     * @param skipRepeatedRecords Whether a record found by more than one of
+     * the searches is only written once
+     * @param seenRecordIndex Index of the records already written, or null
+     * @param skipDuplicates Whether records already written are skipped
+     * rather than flagged
+     * @param outputStream The stream the XML is written to
+     * @param searchControl Control used to cancel the harvest
+     * @return True, as the searches have found records
+     * @throws BibliosightSearchException
+     * @throws BibliosightClientException
+     */
+    private boolean writeMergedSearchResults(
+        WsLiteSessionManager sessionManager,
+        SearchPortPool searchPortPool,
+        boolean useCachedResults,
+        boolean checkpointHarvest,
+        QueryParameters queryParameters,
+        RetrieveParameters retrieveParameters,
+        SearchResults firstPage,
+        List<SubQuery> subQueries,
+        int recordsListed,
+        boolean skipRepeatedRecords,
+        SeenRecordIndex seenRecordIndex,
+        boolean skipDuplicates,
+        OutputStream outputStream,
+        SearchControl searchControl)
+        throws BibliosightSearchException, BibliosightClientException
+    {
+        int recordsFound = firstPage.getRecordsFound();
+        int pageSize = retrieveParameters.getCount();
+        int pagesTotal = 0;
+
+        for (SubQuery subQuery : subQueries)
+        {
+            pagesTotal += (subQuery.getRecordsFound() + pageSize - 1) / pageSize;
+        }
+
+        searchControl.checkCancelled();
+
+        appendToLog("Tranforming search results into XML");
+
+        StreamingSearchResultsTransformer resultsTransformer = createResultsTransformer(outputStream, queryParameters, retrieveParameters, seenRecordIndex, skipDuplicates);
+        resultsTransformer.setSkipRepeatedRecords(skipRepeatedRecords);
+        resultsTransformer.startDocument(firstPage, recordsListed);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(searchPortPool.getSize(), subQueries.size()));
+        List<SubQueryCursor> cursors = new ArrayList<SubQueryCursor>();
+        boolean completed = false;
+
+        try
+        {
+            for (int i = 0; i < subQueries.size(); i++)
+            {
+                SubQuery subQuery = subQueries.get(i);
+                HarvestJournal harvestJournal = checkpointHarvest ? openHarvestJournal(subQuery.getQueryParameters(), retrieveParameters) : null;
+
+                cursors.add(new SubQueryCursor(i, subQuery, retrieveParameters, harvestJournal, useCachedResults, sessionManager, searchPortPool, searchResultsCache_, retryPolicy_, searchTimings_, executor, searchControl));
+            }
+
+            final LiteRecordComparator recordComparator = new LiteRecordComparator(retrieveParameters.getFields());
+
+            // Records that sort equally keep the order of the searches
+            PriorityQueue<SubQueryCursor> mergeQueue = new PriorityQueue<SubQueryCursor>(cursors.size(), new Comparator<SubQueryCursor>()
+            {
+                public int compare(SubQueryCursor cursor1, SubQueryCursor cursor2)
+                {
+                    int result = recordComparator.compare(cursor1.getRecord(), cursor2.getRecord());
+
+                    return result != 0 ? result : cursor1.getIndex() - cursor2.getIndex();
+                }
+            });
+
+            int pagesRetrieved = 0;
+
+            for (SubQueryCursor cursor : cursors)
+            {
+                pagesRetrieved++;
+
+                if (cursor.hasRecord())
+                {
+                    mergeQueue.add(cursor);
+                }
+            }
+
+            while (!mergeQueue.isEmpty())
+            {
+                SubQueryCursor cursor = mergeQueue.remove();
+
+                resultsTransformer.writeItem(cursor.getRecord());
+
+                if (cursor.next())
+                {
+                    pagesRetrieved++;
+
+                    setSearchProgress(
+                        getSearchProgress().withPages(pagesRetrieved, pagesTotal, recordsFound).withRecordsTransformed(resultsTransformer.getItemsWritten())
+                    );
+                }
+
+                if (cursor.hasRecord())
+                {
+                    mergeQueue.add(cursor);
+                }
+            }
+
+            setSearchProgress(getSearchProgress().withPhase(SearchProgress.Phase.TRANSFORMING));
+
+            resultsTransformer.endDocument();
+            unindexedResults_ = resultsTransformer;
+            completed = true;
+
+            for (SubQueryCursor cursor : cursors)
+            {
+                appendToLog(cursor.getSubQuery().getDescription() + ": " + cursor.getPagesRetrieved() + " further page(s) retrieved in " + formatSeconds(cursor.getRetrievalTime()) + " seconds");
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+
+            boolean journalKept = false;
+
+            for (SubQueryCursor cursor : cursors)
+            {
+                if (cursor.getHarvestJournal() != null)
+                {
+                    if (completed)
+                    {
+                        cursor.getHarvestJournal().delete();
+                    }
+                    else
+                    {
+                        journalKept = true;
+                    }
+                }
+            }
+
+            if (journalKept)
+            {
+                appendToLog("The pages of each search retrieved so far have been saved and will be reused when the harvest is run again");
+            }
+        }
+
+        logTransformSummary(resultsTransformer, recordsListed);
+
+        return true;
+    }
+
+    /**
+     * Returns the most records a search may find before a harvest is split
+     * by time span, or 0 for no limit
+     * @return
+     */
+    private int getMaxRecordsPerSearchLimit()
+    {
+        Integer maxRecordsPerSearch = maxRecordsPerSearch_;
+
+        return maxRecordsPerSearch != null && maxRecordsPerSearch > 0 ? maxRecordsPerSearch : 0;
+    }
 
-        QueryParameters queryParameters = getQueryParameters();
-        RetrieveParameters retrieveParameters = getRetrieveParameters();
+    /**
+     * Returns true if records that have already been written are flagged or
+     * skipped
+     * @param duplicateRecords How records that have already been written are
+     * treated
+     * @return
+     */
+    private static boolean isCheckingDuplicates(DuplicateRecords duplicateRecords)
+    {
+        return duplicateRecords != null && !DuplicateRecords.INCLUDE.equals(duplicateRecords);
+    }
 
-        SearchResults searchResults = new SearchResults();
+    /**
+     * Opens the index of the records that have already been written
+     * @return
+     * @throws BibliosightClientException
+     */
+    private SeenRecordIndex openSeenRecordIndex() throws BibliosightClientException
+    {
+        if (seenRecordIndex_ != null)
+        {
+            return seenRecordIndex_;
+        }
 
-        URL authWsdlLocation = getDefaultAuthenticationWsdlUrl();
-        URL searchWsdlLocation = getDefaultSearchWsdlUrl();
+        File indexFile = SeenRecordIndex.getDefaultFile();
 
-        String sessionId = null;
+        try
+        {
+            return SeenRecordIndex.getIndex(indexFile);
+        }
+        catch (IOException ex)
+        {
+            throw new BibliosightClientException("The record index could not be read from " + indexFile, ex);
+        }
+    }
+
+    /**
+     * Adds the records written by the most recent search to the index of the
+     * records that have already been written and saves it, if duplicate
+     * records were checked. This is done once the output of the search has
+     * been kept, so that records that never reach the output are not skipped
+     * by later searches. The caller of runWsLiteQuery() calls it once the
+     * output has been committed. Failures are logged, as the output is still
+     * complete.
+     */
+    public void indexWrittenRecords()
+    {
+        StreamingSearchResultsTransformer resultsTransformer = unindexedResults_;
+        unindexedResults_ = null;
 
-        WOKMWSAuthenticateService authService = new WOKMWSAuthenticateService(authWsdlLocation, authServiceName);
-        WOKMWSAuthenticate authPort = authService.getWOKMWSAuthenticatePort();
+        if (resultsTransformer == null || resultsTransformer.getSeenRecordIndex() == null)
+        {
+            return;
+        }
 
-        WokSearchLiteService searchService = new WokSearchLiteService(searchWsdlLocation, searchServiceName);
-        WokSearchLite searchPort = searchService.getWokSearchLitePort();
+        SeenRecordIndex seenRecordIndex = resultsTransformer.getSeenRecordIndex();
+        resultsTransformer.addRecordsToIndex();
 
         try
         {
-            sessionId = authenticateWithWsLite(authPort);
+            seenRecordIndex.save();
         }
-        catch (BibliosightAuthenticationException ex)
+        catch (IOException ex)
         {
-            Logger.getLogger(QueryModel.class.getName()).log(
-                Level.SEVERE, "Authentication with the Web Services Lite service has failed. Search operation cannot continue.", ex
-            );
-            appendToLog("Error: " + ex.getMessage());
-            clearResultOutput();
+            Logger.getLogger(QueryModel.class.getName()).log(Level.WARNING, "The record index could not be saved.", ex);
+            appendToLog("Warning: The record index could not be saved to " + seenRecordIndex.getFile());
+        }
+    }
+
+    /**
+     * Opens the journal used to resume a harvest. Failures are logged and the
+     * harvest continues without a journal.
+     * @param queryParameters The query options for the harvest
+     * @param retrieveParameters The retrieve options for the first page
+     * @return The journal, or null if it could not be opened
+     */
+    private HarvestJournal openHarvestJournal(QueryParameters queryParameters, RetrieveParameters retrieveParameters)
+    {
+        try
+        {
+            HarvestJournal harvestJournal = HarvestJournal.open(HarvestJournal.getDefaultBaseDirectory(), queryParameters, retrieveParameters);
+
+            if (harvestJournal.getResumedPageCount() > 0)
+            {
+                appendToLog("Resuming harvest: " + harvestJournal.getResumedPageCount() + " page(s) were saved by an earlier attempt");
+            }
+
+            return harvestJournal;
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(QueryModel.class.getName()).log(Level.WARNING, "The harvest journal could not be opened.", ex);
+            appendToLog("Warning: The harvest cannot be resumed if it fails: " + ex.getMessage());
+            return null;
         }
+    }
+
+    /**
+     * Returns a fingerprint of a search that identifies its output
+     * @param queryParameters The query options for the search
+     * @param retrieveParameters The retrieve options for the search
+     * @param harvestAllPages Whether every page of the result is retrieved
+     * @param maxRecordsPerSearch The most records a search may find before
+     * it is divided by time span, or 0 for no limit
+     * @param fanOutEditions Whether a harvest of several editions is divided
+     * into one search for each edition
+     * @return
+     */
+    private static String getSearchFingerprint(QueryParameters queryParameters, RetrieveParameters retrieveParameters, boolean harvestAllPages, int maxRecordsPerSearch, boolean fanOutEditions)
+    {
+        return SearchResultsCache.getCanonicalParameters(queryParameters, retrieveParameters)
+            + "\nharvestAllPages=" + harvestAllPages
+            + "\nmaxRecordsPerSearch=" + maxRecordsPerSearch
+            + "\nfanOutEditions=" + fanOutEditions;
+    }
+
+    /**
+     * Returns a summary of a results file followed by the start of its content,
+     * for display in place of the full results
+     * @param resultsFile The file the results were written to
+     * @param recordsWritten The number of records written to the file
+     * @param bytesWritten The size of the file in bytes
+     * @return
+     * @throws IOException
+     */
+    private static String getResultsFileSummary(File resultsFile, int recordsWritten, long bytesWritten) throws IOException
+    {
+        StringBuilder summary = new StringBuilder();
 
-        Boolean isSessionInitialised = initialiseSearchSession(searchPort, sessionId);
+        summary.append("Search results written to ").append(resultsFile).append(NEW_LINE);
+        summary.append(recordsWritten).append(" records, ").append(bytesWritten).append(" bytes").append(NEW_LINE).append(NEW_LINE);
 
-        if (isSessionInitialised)
+        char[] preview = new char[RESULTS_FILE_PREVIEW_LENGTH];
+        int previewLength = 0;
+        Reader reader = new InputStreamReader(new FileInputStream(resultsFile), "UTF-8");
+
+        try
         {
-            try
+            int charsRead = 0;
+
+            while (previewLength < preview.length && (charsRead = reader.read(preview, previewLength, preview.length - previewLength)) != -1)
             {
-                searchResults = retrieveSearchResults(searchPort, queryParameters, retrieveParameters);
+                previewLength += charsRead;
             }
-            catch (BibliosightSearchException ex)
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        if (previewLength == preview.length)
+        {
+            summary.append("The first ").append(RESULTS_FILE_PREVIEW_LENGTH).append(" characters of the file are shown below.").append(NEW_LINE).append(NEW_LINE);
+        }
+
+        summary.append(preview, 0, previewLength);
+
+        return summary.toString();
+    }
+
+    /**
+     * Returns the timings of the current or most recent search. Phases that
+     * have not yet been reached are not included.
+     * @return
+     */
+    public SearchTimings getSearchTimings()
+    {
+        return searchTimings_;
+    }
+
+    /**
+     * Returns true if the current or most recent search wrote every record
+     * it found. Only a harvest of every page that starts at the first record
+     * can do so.
+     * @return
+     */
+    public boolean isAllRecordsWritten()
+    {
+        return allRecordsWritten_;
+    }
+
+    /**
+     * Logs a summary of the time taken by each phase of a search
+     * @param searchTimings
+     */
+    private void logSearchTimings(SearchTimings searchTimings)
+    {
+        if (!searchTimings.isEmpty())
+        {
+            appendToLog("Timings: " + searchTimings.getSummary());
+        }
+    }
+
+    /**
+     * Logs a search failure, clears the results output and marks the search
+     * as failed
+     * @param message Description of the failure for the application log
+     * @param ex The cause of the failure
+     */
+    private void failSearch(String message, Exception ex)
+    {
+        Logger.getLogger(QueryModel.class.getName()).log(Level.SEVERE, message, ex);
+        appendToLog("Error: " + ex.getMessage());
+        clearResultOutput();
+        setSearchProgress(getSearchProgress().withPhase(SearchProgress.Phase.FAILED));
+    }
+
+    /**
+     * Marks the search as cancelled and closes the search session, as the
+     * state of any aborted requests is unknown
+     */
+    private void finishCancelledSearch()
+    {
+        appendToLog("Search cancelled");
+        setSearchProgress(getSearchProgress().withPhase(SearchProgress.Phase.CANCELLED));
+        closeWsLiteSession();
+    }
+
+    /**
+     * Sets the system proxy using the proxy host name/port properties (if set)
+     */
+    private void setSystemProxy()
+    {
+        if (proxyHost_ != null && proxyPort_ != null)
+        {
+            System.setProperty("http.proxyHost", proxyHost_);
+            System.setProperty("http.proxyPort", proxyPort_.toString());
+        }
+    }
+
+    /**
+     * Returns the manager for the Web Services Lite session, creating it on
+     * first use. The authentication port is created outside the model's lock,
+     * as creating it can take some time and the lock is also taken on the
+     * event dispatch thread.
+     * @return
+     */
+    private WsLiteSessionManager getSessionManager()
+    {
+        synchronized (this)
+        {
+            if (sessionManager_ != null)
             {
-                Logger.getLogger(QueryModel.class.getName()).log(
-                    Level.SEVERE, "The search operation could not be completed.", ex
-                );
-                appendToLog("Error: " + ex.getMessage());
-                clearResultOutput();
+                return sessionManager_;
             }
         }
 
+        WOKMWSAuthenticate authPort = WsLiteServices.createAuthenticationPort();
+
+        synchronized (this)
+        {
+            // Another thread may have created the manager in the meantime
+            if (sessionManager_ == null)
+            {
+                sessionManager_ = new WsLiteSessionManager(authPort, getSessionIdleTimeToLive());
+            }
+
+            return sessionManager_;
+        }
+    }
+
+    /**
+     * Returns the session idle timeout property in milliseconds, falling back
+     * to the minimum timeout if the property is not set
+     * @return
+     */
+    private long getSessionIdleTimeToLive()
+    {
+        Integer sessionIdleTimeout = sessionIdleTimeout_ != null ? sessionIdleTimeout_ : getMinSessionIdleTimeout();
+
+        return sessionIdleTimeout * 1000L;
+    }
+
+    /**
+     * Closes the current Web Services Lite session, if there is one. This
+     * should be called before the application exits.
+     */
+    public void closeWsLiteSession()
+    {
+        WsLiteSessionManager sessionManager = null;
+
+        synchronized (this)
+        {
+            sessionManager = sessionManager_;
+        }
+
+        if (sessionManager == null || sessionShared_)
+        {
+            return;
+        }
+
+        long startTime = System.nanoTime();
+
         try
         {
-            closeSearchSession(authPort);
+            if (sessionManager.close())
+            {
+                searchTimings_.record(SearchTimings.Phase.SESSION_CLOSE, startTime, 0, 0);
+
+                appendToLog("Search session closed in " + formatSeconds((System.nanoTime() - startTime) / 1000000) + " seconds");
+            }
         }
         catch (BibliosightAuthenticationException ex)
         {
@@ -834,319 +2877,605 @@ public class QueryModel extends AbstractModel {
             );
             appendToLog("Warning: " + ex.getMessage());
         }
+    }
+
+    /**
+     * Returns the number of search ports needed for the current harvest options
+     * @return
+     */
+    private int getSearchPortPoolSize()
+    {
+        if (Boolean.TRUE.equals(harvestAllPages_) && concurrentPageRequests_ != null)
+        {
+            return concurrentPageRequests_;
+        }
+
+        return 1;
+    }
+
+    /**
+     * Returns the shared pool of search ports, if there is one, or the pool
+     * of the specified size for the model's own session
+     * @param sessionManager Manager for the model's session
+     * @param size
+     * @return
+     */
+    private SearchPortPool getSearchPortPool(WsLiteSessionManager sessionManager, int size)
+    {
+        if (sharedSearchPortPool_ != null)
+        {
+            return sharedSearchPortPool_;
+        }
+
+        return WsLiteServices.getSearchPortPool(sessionManager, size);
+    }
+
+    /**
+     * Initialises a search session with every port in a pool of WS Lite
+     * search ports using the specified session Id.
+     * @param searchPortPool
+     * @param sessionId
+     * @return
+     */
+    private Boolean initialiseSearchSession(SearchPortPool searchPortPool, String sessionId)
+    {
+        Boolean isSessionInitialised = false;
 
         try
         {
-            if (searchResults.getRecordsFound() > 0)
+            if (sessionId != null)
             {
-                // @todo Move some of this out to other method(s)
-                try
-                {
-                    appendToLog("Tranforming search results into XML");
-                    SearchResultsTransformer resultsTransformer = new SearchResultsTransformer();
+                searchPortPool.setSessionId(sessionId);
+
+                appendToLog("Search session initialised successfully");
+
+                isSessionInitialised = true;
+            }
+            else
+            {
+                appendToLog("Search session can not be initialised with a null session id");
+            }
+        }
+        catch (Exception ex)
+        {
+            appendToLog("Search session initialisation failed: " + ex.getMessage());
+        }
 
-                    String searchExecutionDate = getCurrentDateString("yyyy-MM-dd'T'HH:mm:ssZ");
+        return isSessionInitialised;
+    }
 
-                    resultsTransformer.setExecutionDate(searchExecutionDate);
-                    resultsTransformer.setQueryParameters(queryParameters);
-                    resultsTransformer.setRetrieveParameters(retrieveParameters);
-                    resultsTransformer.setSearchResults(searchResults);
+    /**
+     * Queries Web of Science using the Web Services Lite service using the
+     * supplied search parameters and returns a set of search results.
+     * @param sessionManager Manager for the Web Services Lite session
+     * @param searchPortPool Pool of Web Services Lite search ports
+     * @param queryParameters The query options for the search
+     * @param retrieveParameters The retrieve options for the search
+     * @param searchControl Control used to cancel the search
+     * @return
+     */
+    private SearchResults retrieveSearchResults(
+        WsLiteSessionManager sessionManager,
+        SearchPortPool searchPortPool,
+        QueryParameters queryParameters,
+        RetrieveParameters retrieveParameters,
+        SearchControl searchControl)
+        throws BibliosightSearchException
+    {
+        appendToLog("Sending query request...");
 
-                    // Need to transform the generated XML Document into a String
-                    DOMSource domSource = new DOMSource(resultsTransformer.getResultsAsDocument());
+        return retrieveSearchResultsPage(sessionManager, searchPortPool, searchResultsCache_, retryPolicy_, searchTimings_, searchControl, false, queryParameters, retrieveParameters);
+    }
 
-                    TransformerFactory tf = TransformerFactory.newInstance();
+    /**
+     * Returns the cached results of a search, or null if there are none
+     * @param queryParameters The query options for the search
+     * @param retrieveParameters The retrieve options for the search
+     * @return
+     */
+    private SearchResults getCachedSearchResults(QueryParameters queryParameters, RetrieveParameters retrieveParameters)
+    {
+        if (searchResultsCache_ == null)
+        {
+            return null;
+        }
 
-                    try
-                    {
-                        Transformer transformer = tf.newTransformer();
+        SearchResults searchResults = searchResultsCache_.get(queryParameters, retrieveParameters);
 
-                        transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-                        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-                        transformer.setOutputProperty
-                            ("{http://xml.apache.org/xslt}indent-amount", "4");
-                        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        if (searchResults != null)
+        {
+            appendToLog("Using cached search results");
+        }
 
-                        StringWriter sw = new StringWriter();
-                        StreamResult sr = new StreamResult(sw);
+        return searchResults;
+    }
 
-                        try
-                        {
-                            transformer.transform(domSource, sr);
-                            String xml = sw.toString();
+    /**
+     * Queries Web of Science for a single page of search results using a port
+     * borrowed from the supplied pool. If the service rejects the session, a
+     * new session is obtained and the request is sent again. Other transient
+     * failures are retried after a delay, as the retry policy allows, until
+     * the search is cancelled. Results retrieved from the service are stored
+     * in the cache. This method does not write to the log so that it can be
+     * called from harvest worker threads.
+     * @param sessionManager Manager for the Web Services Lite session
+     * @param searchPortPool Pool of Web Services Lite search ports
+     * @param searchResultsCache Cache of search results, or null
+     * @param retryPolicy Policy for retrying failed requests
+     * @param searchTimings Timings the retrieval of the page is added to
+     * @param searchControl Control used to cancel the search
+     * @param useCachedResults Whether cached results may be returned
+     * @param queryParameters The query options for the search
+     * @param retrieveParameters The retrieve options for the page
+     * @return
+     */
+    private static SearchResults retrieveSearchResultsPage(
+        WsLiteSessionManager sessionManager,
+        SearchPortPool searchPortPool,
+        SearchResultsCache searchResultsCache,
+        RetryPolicy retryPolicy,
+        SearchTimings searchTimings,
+        SearchControl searchControl,
+        boolean useCachedResults,
+        QueryParameters queryParameters,
+        RetrieveParameters retrieveParameters)
+        throws BibliosightSearchException
+    {
+        SearchResults searchResults = null;
 
-                            String oldResultOutput = resultOutput_;
-                            resultOutput_ = xml;
+        if (searchResultsCache != null && useCachedResults)
+        {
+            searchResults = searchResultsCache.get(queryParameters, retrieveParameters);
 
-                            firePropertyChange(DefaultController.WS_LITE_SEARCH_RESULT_OUTPUT_PROPERTY, oldResultOutput, xml);
-                        }
-                        catch (TransformerException ex)
-                        {
-                            throw new BibliosightClientException("The search results transformation could not be completed.", ex);
-                        }
+            if (searchResults != null)
+            {
+                return searchResults;
+            }
+        }
 
-                    }
-                    catch (TransformerConfigurationException ex)
-                    {
-                        throw new BibliosightClientException("The search results transformation could not be completed.", ex);
-                    }
+        long startTime = System.nanoTime();
 
+        for (int attempt = 1; searchResults == null; attempt++)
+        {
+            // Checked before every attempt, so that a search cancelled while
+            // waiting to retry does not send the request again
+            searchControl.checkCancelled();
+
+            try
+            {
+                searchResults = searchWithPooledPort(searchPortPool, searchControl, queryParameters, retrieveParameters);
+            }
+            catch (BibliosightSearchCancelledException ex)
+            {
+                throw ex;
+            }
+            catch (BibliosightSessionRejectedException ex)
+            {
+                // The first rejection is always retried, as the session may
+                // simply have expired
+                if (attempt > 1 && !retryPolicy.shouldRetry(ex, attempt))
+                {
+                    throw ex;
                 }
-                catch (BibliosightClientException ex)
+
+                try
                 {
-                    Logger.getLogger(QueryModel.class.getName()).log(
-                        Level.SEVERE, "The search results transformation could not be completed.", ex
-                    );
-                    appendToLog("Error: " + ex.getMessage());
-                    clearResultOutput();
+                    searchPortPool.setSessionId(sessionManager.renewSession(ex.getSessionId()));
                 }
+                catch (BibliosightAuthenticationException authEx)
+                {
+                    throw new BibliosightSearchException("Query execution failed", authEx);
+                }
+            }
+            catch (BibliosightSearchException ex)
+            {
+                waitToRetry(retryPolicy, ex, attempt);
+            }
+            catch (WebServiceException ex)
+            {
+                waitToRetry(retryPolicy, ex, attempt);
             }
         }
-        catch (NullPointerException ex)
+
+        sessionManager.touch();
+        searchTimings.record(SearchTimings.Phase.SEARCH, startTime, searchResults.getRecords().size(), 0);
+        HarvestMetrics.getDefault().pageFetched();
+
+        if (searchResultsCache != null)
         {
-            Logger.getLogger(QueryModel.class.getName()).log(
-                Level.SEVERE, "The search results transformation could not be completed.", ex
-            );
-            appendToLog("Error: " + ex.getMessage());
-            clearResultOutput();
+            searchResultsCache.put(queryParameters, retrieveParameters, searchResults);
         }
+
+        return searchResults;
     }
 
     /**
-     * Returns the default Url for the WS Lite Authentication Wsdl
-     * @return
+     * Waits before retrying a failed request, or rethrows the failure if the
+     * retry policy does not allow it to be retried
+     * @param retryPolicy
+     * @param failure
+     * @param attempt The number of the attempt that failed, starting at 1
+     * @throws BibliosightSearchException
      */
-    private URL getDefaultAuthenticationWsdlUrl()
+    private static void waitToRetry(RetryPolicy retryPolicy, BibliosightSearchException failure, int attempt) throws BibliosightSearchException
     {
-        URL authWsdlLocation = null;
-
-        try
-        {
-            authWsdlLocation = new URL("http://search.isiknowledge.com/esti/wokmws/ws/WOKMWSAuthenticate?wsdl");
-        }
-        catch (MalformedURLException ex)
+        if (!retryPolicy.shouldRetry(failure, attempt))
         {
-            Logger.getLogger(QueryModel.class.getName()).log(Level.SEVERE, "Can not initialize the default wsdl from http://search.isiknowledge.com/esti/wokmws/ws/WOKMWSAuthenticate?wsdl", ex);
+            throw failure;
         }
 
-        return authWsdlLocation;
+        logAndWaitToRetry(retryPolicy, failure, attempt);
     }
 
     /**
-     * Returns the default Url for the WS Lite Search Wsdl
-     * @return
+     * Waits before retrying a request that failed in the transport, or
+     * rethrows the failure if the retry policy does not allow it to be
+     * retried
+     * @param retryPolicy
+     * @param failure
+     * @param attempt The number of the attempt that failed, starting at 1
+     * @throws BibliosightSearchException
      */
-    private URL getDefaultSearchWsdlUrl()
+    private static void waitToRetry(RetryPolicy retryPolicy, WebServiceException failure, int attempt) throws BibliosightSearchException
     {
-        URL searchWsdlLocation = null;
-
-        try
-        {
-            searchWsdlLocation = new URL("http://search.isiknowledge.com/esti/wokmws/ws/WokSearchLite?wsdl");
-        }
-        catch (MalformedURLException ex)
+        if (!retryPolicy.shouldRetry(failure, attempt))
         {
-            Logger.getLogger(QueryModel.class.getName()).log(Level.SEVERE, "Can not initialize the default wsdl from http://search.isiknowledge.com/esti/wokmws/ws/WokSearchLite?wsdl", ex);
+            throw failure;
         }
 
-        return searchWsdlLocation;
+        logAndWaitToRetry(retryPolicy, failure, attempt);
     }
 
-    /**
-     * Sets the system proxy using the proxy host name/port properties (if set)
-     */
-    private void setSystemProxy()
+    private static void logAndWaitToRetry(RetryPolicy retryPolicy, Exception failure, int attempt) throws BibliosightSearchException
     {
-        if (proxyHost_ != null && proxyPort_ != null)
+        Logger.getLogger(QueryModel.class.getName()).log(Level.WARNING, "Search request failed and will be retried (attempt " + attempt + " of " + retryPolicy.getMaxAttempts() + ")", failure);
+
+        try
         {
-            System.setProperty("http.proxyHost", proxyHost_);
-            System.setProperty("http.proxyPort", proxyPort_.toString());
+            retryPolicy.waitToRetry(attempt);
+        }
+        catch (InterruptedException ex)
+        {
+            throw new BibliosightSearchException("Query execution was interrupted", ex);
         }
     }
 
     /**
-     * Sends and authentication request to the WS Lite Authentication service,
-     * returning a session Id if successful.
-     * @param authPort
+     * Sends a single search request using a port borrowed from the supplied
+     * pool
+     * @param searchPortPool Pool of Web Services Lite search ports
+     * @param searchControl Control used to cancel the search, which the port
+     * is lent to
+     * @param queryParameters The query options for the search
+     * @param retrieveParameters The retrieve options for the page
      * @return
      */
-    private String authenticateWithWsLite(WOKMWSAuthenticate authPort)
-        throws BibliosightAuthenticationException
+    private static SearchResults searchWithPooledPort(
+        SearchPortPool searchPortPool,
+        SearchControl searchControl,
+        QueryParameters queryParameters,
+        RetrieveParameters retrieveParameters)
+        throws BibliosightSearchException
     {
-        String sessionId = null;
+        SearchResults searchResults = null;
+        WokSearchLite searchPort = null;
+        CircuitBreaker circuitBreaker = CircuitBreaker.getDefault();
+        RateLimiter rateLimiter = RateLimiter.getDefault();
+
+        if (!circuitBreaker.allowRequest())
+        {
+            throw new BibliosightServiceUnavailableException("Web Services Lite has failed repeatedly and requests are suspended for "
+                + circuitBreaker.getSecondsUntilProbe() + " second(s)");
+        }
 
         try
         {
-            appendToLog("Authenticating with Web Services Lite...");
-            sessionId = authPort.authenticate();
+            searchPort = searchPortPool.borrowPort(searchControl);
+
+            // A search cancelled while the port was being borrowed has
+            // already aborted the ports lent to it
+            if (searchControl.isCancelled())
+            {
+                throw new BibliosightSearchCancelledException();
+            }
+
+            rateLimiter.acquire();
+
+            ServiceStatistics serviceStatistics = ServiceStatistics.getDefault();
+            long startTime = serviceStatistics.startRequest();
+
+            try
+            {
+                searchResults = searchPort.search(queryParameters, retrieveParameters);
+            }
+            finally
+            {
+                serviceStatistics.endRequest(ServiceStatistics.SEARCH_OPERATION, startTime, searchResults != null);
+                rateLimiter.release();
+            }
+
+            circuitBreaker.recordSuccess();
         }
-        catch (com.thomsonreuters.wokmws.cxf.auth.QueryException_Exception ex)
+        catch (InterruptedException ex)
         {
-            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+            throw new BibliosightSearchException("Query execution was interrupted", ex);
         }
-        catch (com.thomsonreuters.wokmws.cxf.auth.SessionException_Exception ex)
+        catch (com.thomsonreuters.wokmws.cxf.woksearchlite.InternalServerException_Exception ex)
         {
-            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+            circuitBreaker.recordFailure();
+            throw new BibliosightSearchException("Query execution failed", ex);
         }
-        catch (com.thomsonreuters.wokmws.cxf.auth.AuthenticationException_Exception ex)
+        catch (com.thomsonreuters.wokmws.cxf.woksearchlite.ESTIWSException_Exception ex)
         {
-            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+            circuitBreaker.recordFailure();
+            throw new BibliosightSearchException("Query execution failed", ex);
         }
-        catch (com.thomsonreuters.wokmws.cxf.auth.InvalidInputException_Exception ex)
+        catch (com.thomsonreuters.wokmws.cxf.woksearchlite.AuthenticationException_Exception ex)
         {
-            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+            // The service answered, so it is not failing
+            circuitBreaker.recordSuccess();
+            throw new BibliosightSearchException("Query execution failed", ex);
         }
-        catch (com.thomsonreuters.wokmws.cxf.auth.ESTIWSException_Exception ex)
+        catch (com.thomsonreuters.wokmws.cxf.woksearchlite.QueryException_Exception ex)
         {
-            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+            // The service answered, so it is not failing
+            circuitBreaker.recordSuccess();
+            throw new BibliosightSearchException("Query execution failed", ex);
         }
-        catch (com.thomsonreuters.wokmws.cxf.auth.InternalServerException_Exception ex)
+        catch (com.thomsonreuters.wokmws.cxf.woksearchlite.SessionException_Exception ex)
         {
-            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+            circuitBreaker.recordSuccess();
+            throw new BibliosightSessionRejectedException(searchPortPool.getPortSessionId(searchPort), ex);
         }
-        catch (SOAPFaultException ex)
+        catch (com.thomsonreuters.wokmws.cxf.woksearchlite.InvalidInputException_Exception ex)
         {
-            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+            // The service answered, so it is not failing
+            circuitBreaker.recordSuccess();
+            throw new BibliosightSearchException("Query execution failed", ex);
         }
-
-        return sessionId;
-    }
-
-    /**
-     * Initialises a search session with a WS Lite search service using the
-     * specified session Id.
-     * @param searchPort
-     * @param sessionId
-     * @return
-     */
-    private Boolean initialiseSearchSession(WokSearchLite searchPort, String sessionId)
-    {
-        Boolean isSessionInitialised = false;
-
-        try
+        catch (WebServiceException ex)
         {
-            if (sessionId != null)
+            // Requests aborted by cancelling the search are not failures of
+            // the service and are not retried
+            if (searchPortPool.isAborted(searchPort))
             {
-                BindingProvider bindingProvider = (BindingProvider)searchPort;
-                Map<String, Object> requestContext = bindingProvider.getRequestContext();
-
-                requestContext.put(BindingProvider.SESSION_MAINTAIN_PROPERTY, true);
-
-                Cookie cookie = new Cookie("SID", sessionId);
-                Client client = ClientProxy.getClient(searchPort);
-                HTTPConduit http = (HTTPConduit) client.getConduit();
-                HTTPClientPolicy httpClientPolicy = new HTTPClientPolicy();
-                httpClientPolicy.setCookie(cookie.getName() + "=" + cookie.getValue());
-                http.setClient(httpClientPolicy);
-
-                appendToLog("Search session initialised successfully");
+                throw new BibliosightSearchCancelledException();
+            }
 
-                isSessionInitialised = true;
+            if (RetryPolicy.isRetryable(ex))
+            {
+                circuitBreaker.recordFailure();
             }
-            else
+            else if (ex instanceof SOAPFaultException)
             {
-                appendToLog("Search session can not be initialised with a null session id");
+                // A fault for an error in the request shows that the service
+                // is answering
+                circuitBreaker.recordSuccess();
             }
+
+            throw ex;
         }
-        catch (Exception ex)
+        finally
         {
-            appendToLog("Search session initialisation failed: " + ex.getMessage());
+            // Lets another probe through at once if this one was aborted or
+            // interrupted before the service answered
+            circuitBreaker.releaseProbe();
+            searchPortPool.returnPort(searchPort);
         }
 
-        return isSessionInitialised;
+        return searchResults;
     }
 
     /**
-     * Closes the session with the specified WS Lite search service
-     * @param authPort
+     * Returns the first record of each further page needed to harvest every
+     * record of a result set after the supplied first page
+     * @param retrieveParameters The retrieve options for the first page
+     * @param searchResults The first page of search results
      * @return
      */
-    private Boolean closeSearchSession(WOKMWSAuthenticate authPort)
-        throws BibliosightAuthenticationException
+    private static List<Integer> getHarvestPageFirstRecords(RetrieveParameters retrieveParameters, SearchResults searchResults)
     {
-        Boolean isSessionClosed = false;
+        List<Integer> pageFirstRecords = new ArrayList<Integer>();
 
-        try
-        {
-            appendToLog("Closing search session...");
-            authPort.closeSession();
-            isSessionClosed = true;
-        }
-        catch (com.thomsonreuters.wokmws.cxf.auth.QueryException_Exception ex)
-        {
-            throw new BibliosightAuthenticationException("Search session closure failed", ex);
-        }
-        catch (com.thomsonreuters.wokmws.cxf.auth.SessionException_Exception ex)
-        {
-            throw new BibliosightAuthenticationException("Search session closure failed", ex);
-        }
-        catch (com.thomsonreuters.wokmws.cxf.auth.AuthenticationException_Exception ex)
-        {
-            throw new BibliosightAuthenticationException("Search session closure failed", ex);
-        }
-        catch (com.thomsonreuters.wokmws.cxf.auth.InvalidInputException_Exception ex)
+        int recordsFound = searchResults.getRecordsFound();
+        int pageSize = retrieveParameters.getCount();
+        int firstRecord = retrieveParameters.getFirstRecord();
+
+        if (searchResults.getRecords().isEmpty())
         {
-            throw new BibliosightAuthenticationException("Search session closure failed", ex);
+            return pageFirstRecords;
         }
-        catch (com.thomsonreuters.wokmws.cxf.auth.ESTIWSException_Exception ex)
+
+        for (int pageFirstRecord = firstRecord + pageSize; pageFirstRecord <= recordsFound; pageFirstRecord += pageSize)
         {
-            throw new BibliosightAuthenticationException("Search session closure failed", ex);
+            pageFirstRecords.add(pageFirstRecord);
         }
-        catch (com.thomsonreuters.wokmws.cxf.auth.InternalServerException_Exception ex)
+
+        return pageFirstRecords;
+    }
+
+    /**
+     * Returns the number of records that a search will list, given its first
+     * page and the first record of each further page to be retrieved
+     * @param retrieveParameters The retrieve options for the first page
+     * @param searchResults The first page of search results
+     * @param pageFirstRecords The first record of each further page
+     * @return
+     */
+    private static int getRecordsListed(RetrieveParameters retrieveParameters, SearchResults searchResults, List<Integer> pageFirstRecords)
+    {
+        int recordsListed = searchResults.getRecords().size();
+        int recordsFound = searchResults.getRecordsFound();
+        int pageSize = retrieveParameters.getCount();
+
+        for (Integer pageFirstRecord : pageFirstRecords)
         {
-            throw new BibliosightAuthenticationException("Search session closure failed", ex);
+            recordsListed += Math.min(pageSize, recordsFound - pageFirstRecord + 1);
         }
 
-        return isSessionClosed;
+        return recordsListed;
     }
 
     /**
-     * Queries Web of Science using the Web Services Lite service using the
-     * supplied search parameters and returns a set of search results.
-     * @param searchPort The Web Services Lite search service
+     * Queries Web of Science for the remaining pages of a result set once the
+     * first page has reported the number of records found. Pages are
+     * requested concurrently using the ports in the pool and written to the
+     * transformer in first record order as they arrive. Only a few pages
+     * beyond the next one to be written are requested at a time, so memory
+     * use does not grow with the size of the result set.
+     * @param sessionManager Manager for the Web Services Lite session
+     * @param searchPortPool Pool of Web Services Lite search ports
+     * @param useCachedResults Whether pages may be read from the cache
+     * @param harvestJournal Journal of the pages of the harvest, or null
      * @param queryParameters The query options for the search
-     * @param retrieveParameters The retrieve options for the search
-     * @return
+     * @param retrieveParameters The retrieve options for the first page
+     * @param pageFirstRecords The first record of each page to be retrieved
+     * @param recordsFound The number of records found by the search
+     * @param resultsTransformer Transformer to which the records are written
+     * @param searchControl Control used to cancel the harvest
      */
-    private SearchResults retrieveSearchResults(
-        WokSearchLite searchPort,
-        QueryParameters queryParameters,
-        RetrieveParameters retrieveParameters)
-        throws BibliosightSearchException
+    private void harvestSearchResults(
+        final WsLiteSessionManager sessionManager,
+        final SearchPortPool searchPortPool,
+        final boolean useCachedResults,
+        final HarvestJournal harvestJournal,
+        final QueryParameters queryParameters,
+        RetrieveParameters retrieveParameters,
+        List<Integer> pageFirstRecords,
+        int recordsFound,
+        StreamingSearchResultsTransformer resultsTransformer,
+        final SearchControl searchControl)
+        throws BibliosightSearchException, BibliosightClientException
     {
-        SearchResults searchResults = null;
+        int pagesTotal = pageFirstRecords.size() + 1;
+        int threadCount = Math.min(searchPortPool.getSize(), pageFirstRecords.size());
+        int pagesInFlight = threadCount * 2;
+
+        appendToLog("Requesting " + pageFirstRecords.size() + " further pages using " + threadCount + " concurrent request(s)...");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        Queue<Future<SearchResults>> pages = new ArrayDeque<Future<SearchResults>>();
+        int pagesSubmitted = 0;
 
         try
         {
-            appendToLog("Sending query request...");
-            searchResults = searchPort.search(queryParameters, retrieveParameters);
+            // Pages are written in the order in which they were submitted so
+            // the records keep the order of the result set
+            for (int i = 0; i < pageFirstRecords.size(); i++)
+            {
+                while (pagesSubmitted < pageFirstRecords.size() && pages.size() < pagesInFlight)
+                {
+                    final RetrieveParameters pageParameters = getPageRetrieveParameters(retrieveParameters, pageFirstRecords.get(pagesSubmitted));
+
+                    pages.add(executor.submit(new Callable<SearchResults>()
+                    {
+                        public SearchResults call() throws BibliosightSearchException
+                        {
+                            searchControl.checkCancelled();
+
+                            SearchResults page = harvestJournal != null ? harvestJournal.getPage(pageParameters.getFirstRecord()) : null;
+
+                            if (page == null)
+                            {
+                                page = retrieveSearchResultsPage(sessionManager, searchPortPool, searchResultsCache_, retryPolicy_, searchTimings_, searchControl, useCachedResults, queryParameters, pageParameters);
+
+                                if (harvestJournal != null)
+                                {
+                                    harvestJournal.putPage(pageParameters.getFirstRecord(), page);
+                                }
+                            }
+
+                            return page;
+                        }
+                    }));
+
+                    pagesSubmitted++;
+                }
+
+                SearchResults page = pages.remove().get();
+                int pageFirstRecord = pageFirstRecords.get(i);
+
+                resultsTransformer.writeItems(page.getRecords());
+
+                appendToLog("Retrieved records " + pageFirstRecord + " to " + (pageFirstRecord + page.getRecords().size() - 1) + " of " + recordsFound);
+
+                setSearchProgress(
+                    getSearchProgress().withPages(i + 2, pagesTotal, recordsFound).withRecordsTransformed(resultsTransformer.getItemsWritten())
+                );
+            }
         }
-        catch (com.thomsonreuters.wokmws.cxf.woksearchlite.InternalServerException_Exception ex)
+        catch (InterruptedException ex)
         {
-            throw new BibliosightSearchException("Query execution failed", ex);
+            throw new BibliosightSearchException("Query execution was interrupted", ex);
         }
-        catch (com.thomsonreuters.wokmws.cxf.woksearchlite.ESTIWSException_Exception ex)
+        catch (ExecutionException ex)
         {
+            if (ex.getCause() instanceof BibliosightSearchException)
+            {
+                throw (BibliosightSearchException) ex.getCause();
+            }
+
             throw new BibliosightSearchException("Query execution failed", ex);
         }
-        catch (com.thomsonreuters.wokmws.cxf.woksearchlite.AuthenticationException_Exception ex)
+        finally
         {
-            throw new BibliosightSearchException("Query execution failed", ex);
+            executor.shutdownNow();
         }
-        catch (com.thomsonreuters.wokmws.cxf.woksearchlite.QueryException_Exception ex)
+    }
+
+    /**
+     * Waits for a page requested by a harvest worker
+     * @param page
+     * @return
+     * @throws BibliosightSearchException
+     */
+    private static SearchResults getHarvestedPage(Future<SearchResults> page) throws BibliosightSearchException
+    {
+        try
         {
-            throw new BibliosightSearchException("Query execution failed", ex);
+            return page.get();
         }
-        catch (com.thomsonreuters.wokmws.cxf.woksearchlite.SessionException_Exception ex)
+        catch (InterruptedException ex)
         {
-            throw new BibliosightSearchException("Query execution failed", ex);
+            throw new BibliosightSearchException("Query execution was interrupted", ex);
         }
-        catch (com.thomsonreuters.wokmws.cxf.woksearchlite.InvalidInputException_Exception ex)
+        catch (ExecutionException ex)
         {
+            if (ex.getCause() instanceof BibliosightSearchException)
+            {
+                throw (BibliosightSearchException) ex.getCause();
+            }
+
             throw new BibliosightSearchException("Query execution failed", ex);
         }
+    }
 
-        return searchResults;
+    /**
+     * Returns a time in milliseconds as seconds, for the log
+     * @param milliseconds
+     * @return
+     */
+    private static String formatSeconds(long milliseconds)
+    {
+        return String.format("%.1f", milliseconds / 1000.0);
+    }
+
+    /**
+     * Returns a copy of the supplied retrieve parameters that starts at the
+     * specified record
+     * @param retrieveParameters The retrieve options to copy
+     * @param firstRecord The index of the first record of the page
+     * @return
+     */
+    private static RetrieveParameters getPageRetrieveParameters(RetrieveParameters retrieveParameters, int firstRecord)
+    {
+        RetrieveParameters pageParameters = new RetrieveParameters();
+
+        pageParameters.setCount(retrieveParameters.getCount());
+        pageParameters.setFirstRecord(firstRecord);
+        pageParameters.getFields().addAll(retrieveParameters.getFields());
+
+        return pageParameters;
     }
 
     /**
@@ -1165,4 +3494,215 @@ public class QueryModel extends AbstractModel {
         searchExecutionDateFormat.applyPattern(pattern);
         return searchExecutionDateFormat.format(searchExecutionDate);
     }
+
+    /**
+     * A cursor over the records of one part of a split harvest. The next page
+     * of the part is requested as soon as the current page is read, so that it
+     * is usually ready by the time the merge reaches it.
+     */
+    private static class SubQueryCursor
+    {
+        /**
+         * Position of the search in the merge order
+         */
+        private final int index_;
+
+        private final SubQuery subQuery_;
+
+        private final QueryParameters queryParameters_;
+
+        private final RetrieveParameters retrieveParameters_;
+
+        private final HarvestJournal harvestJournal_;
+
+        private final boolean useCachedResults_;
+
+        private final WsLiteSessionManager sessionManager_;
+
+        private final SearchPortPool searchPortPool_;
+
+        private final SearchResultsCache searchResultsCache_;
+
+        private final RetryPolicy retryPolicy_;
+
+        private final SearchTimings searchTimings_;
+
+        private final ExecutorService executor_;
+
+        private final SearchControl searchControl_;
+
+        /**
+         * The first record of each page after the first
+         */
+        private final List<Integer> pageFirstRecords_;
+
+        private int pagesRequested_;
+
+        /**
+         * The next page of the part, or null if every page has been read
+         */
+        private Future<SearchResults> nextPage_;
+
+        /**
+         * Records of the current page
+         */
+        private List<LiteRecord> records_;
+
+        /**
+         * Position of the current record in the current page
+         */
+        private int position_;
+
+        /**
+         * Number of pages retrieved after the first
+         */
+        private final AtomicInteger pagesRetrieved_ = new AtomicInteger();
+
+        /**
+         * Time in milliseconds spent retrieving pages after the first
+         */
+        private final AtomicLong retrievalTime_ = new AtomicLong();
+
+        SubQueryCursor(
+            int index,
+            SubQuery subQuery,
+            RetrieveParameters retrieveParameters,
+            HarvestJournal harvestJournal,
+            boolean useCachedResults,
+            WsLiteSessionManager sessionManager,
+            SearchPortPool searchPortPool,
+            SearchResultsCache searchResultsCache,
+            RetryPolicy retryPolicy,
+            SearchTimings searchTimings,
+            ExecutorService executor,
+            SearchControl searchControl)
+            throws BibliosightSearchException
+        {
+            this.index_ = index;
+            this.subQuery_ = subQuery;
+            this.queryParameters_ = subQuery.getQueryParameters();
+            this.retrieveParameters_ = retrieveParameters;
+            this.harvestJournal_ = harvestJournal;
+            this.useCachedResults_ = useCachedResults;
+            this.sessionManager_ = sessionManager;
+            this.searchPortPool_ = searchPortPool;
+            this.searchResultsCache_ = searchResultsCache;
+            this.retryPolicy_ = retryPolicy;
+            this.searchTimings_ = searchTimings;
+            this.executor_ = executor;
+            this.searchControl_ = searchControl;
+
+            pageFirstRecords_ = getHarvestPageFirstRecords(retrieveParameters, subQuery.getFirstPage());
+            records_ = subQuery.getFirstPage().getRecords();
+
+            requestNextPage();
+            readPages();
+        }
+
+        int getIndex()
+        {
+            return index_;
+        }
+
+        SubQuery getSubQuery()
+        {
+            return subQuery_;
+        }
+
+        int getPagesRetrieved()
+        {
+            return pagesRetrieved_.get();
+        }
+
+        long getRetrievalTime()
+        {
+            return retrievalTime_.get();
+        }
+
+        HarvestJournal getHarvestJournal()
+        {
+            return harvestJournal_;
+        }
+
+        boolean hasRecord()
+        {
+            return position_ < records_.size();
+        }
+
+        LiteRecord getRecord()
+        {
+            return records_.get(position_);
+        }
+
+        /**
+         * Moves to the next record, reading the next page if the current page
+         * has been used up
+         * @return True if a page was read
+         * @throws BibliosightSearchException
+         */
+        boolean next() throws BibliosightSearchException
+        {
+            position_++;
+
+            return readPages();
+        }
+
+        /**
+         * Reads pages until there is a current record or every page has been
+         * read
+         */
+        private boolean readPages() throws BibliosightSearchException
+        {
+            boolean pageRead = false;
+
+            while (position_ >= records_.size() && nextPage_ != null)
+            {
+                records_ = getHarvestedPage(nextPage_).getRecords();
+                position_ = 0;
+                pageRead = true;
+
+                requestNextPage();
+            }
+
+            return pageRead;
+        }
+
+        private void requestNextPage()
+        {
+            if (pagesRequested_ >= pageFirstRecords_.size())
+            {
+                nextPage_ = null;
+                return;
+            }
+
+            final RetrieveParameters pageParameters = getPageRetrieveParameters(retrieveParameters_, pageFirstRecords_.get(pagesRequested_));
+            pagesRequested_++;
+
+            nextPage_ = executor_.submit(new Callable<SearchResults>()
+            {
+                public SearchResults call() throws BibliosightSearchException
+                {
+                    searchControl_.checkCancelled();
+
+                    long startTime = System.currentTimeMillis();
+                    SearchResults page = harvestJournal_ != null ? harvestJournal_.getPage(pageParameters.getFirstRecord()) : null;
+
+                    if (page == null)
+                    {
+                        page = retrieveSearchResultsPage(sessionManager_, searchPortPool_, searchResultsCache_, retryPolicy_, searchTimings_, searchControl_, useCachedResults_, queryParameters_, pageParameters);
+
+                        if (harvestJournal_ != null)
+                        {
+                            harvestJournal_.putPage(pageParameters.getFirstRecord(), page);
+                        }
+                    }
+
+                    retrievalTime_.addAndGet(System.currentTimeMillis() - startTime);
+                    pagesRetrieved_.incrementAndGet();
+
+                    return page;
+                }
+            });
+        }
+    }
 }
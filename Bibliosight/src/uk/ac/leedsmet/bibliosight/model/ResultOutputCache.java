@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.model;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded in-memory cache of the XML output of recent searches.
+ *
+ * Entries are keyed by a fingerprint of the search parameters and hold the
+ * output as UTF-8 bytes. When the total size of the entries exceeds the
+ * memory budget, the least recently used entries are removed. Entries can be
+ * given a time to live for searches whose results change over time.
+ *
+ * @author Mike Taylor
+ */
+public class ResultOutputCache
+{
+    /**
+     * Approximate memory used by an entry in addition to its output
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    /**
+     * Entries in least recently used order
+     */
+    private final LinkedHashMap<String, Entry> entries_ = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * Maximum total size of the entries in bytes
+     */
+    private final long maxSize_;
+
+    /**
+     * Total size of the entries in bytes
+     */
+    private long size_;
+
+    /**
+     * Create a cache that holds up to the specified number of bytes
+     * @param maxSize
+     */
+    public ResultOutputCache(long maxSize)
+    {
+        this.maxSize_ = maxSize;
+    }
+
+    /**
+     * Returns the maximum total size of the entries in bytes
+     * @return
+     */
+    public long getMaxSize()
+    {
+        return maxSize_;
+    }
+
+    /**
+     * Returns the total size of the entries in bytes
+     * @return
+     */
+    public synchronized long getSize()
+    {
+        return size_;
+    }
+
+    /**
+     * Returns the cached entry for a search, or null if there is none or it
+     * has expired
+     * @param fingerprint
+     * @return
+     */
+    public synchronized Entry get(String fingerprint)
+    {
+        Entry entry = entries_.get(fingerprint);
+
+        if (entry != null && entry.isExpired())
+        {
+            remove(fingerprint);
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Stores the output of a search, removing the least recently used entries
+     * if the cache is over budget. Output larger than the whole budget is not
+     * stored.
+     * @param fingerprint
+     * @param output
+     * @param searchProgress The progress of the search when it completed
+     * @param timeToLive Time to live of the entry in milliseconds, or zero if
+     * it does not expire
+     */
+    public synchronized void put(String fingerprint, String output, SearchProgress searchProgress, long timeToLive)
+    {
+        remove(fingerprint);
+
+        Entry entry = new Entry(output, searchProgress, timeToLive);
+
+        if (entry.getSize() > maxSize_)
+        {
+            return;
+        }
+
+        entries_.put(fingerprint, entry);
+        size_ += entry.getSize();
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries_.entrySet().iterator();
+
+        while (size_ > maxSize_ && iterator.hasNext())
+        {
+            size_ -= iterator.next().getValue().getSize();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes every entry from the cache
+     */
+    public synchronized void clear()
+    {
+        entries_.clear();
+        size_ = 0;
+    }
+
+    private void remove(String fingerprint)
+    {
+        Entry entry = entries_.remove(fingerprint);
+
+        if (entry != null)
+        {
+            size_ -= entry.getSize();
+        }
+    }
+
+    /**
+     * The output of a search held by the cache
+     */
+    public static class Entry
+    {
+        private final byte[] output_;
+
+        private final SearchProgress searchProgress_;
+
+        /**
+         * Time in milliseconds at which the entry expires, or zero
+         */
+        private final long expiryTime_;
+
+        Entry(String output, SearchProgress searchProgress, long timeToLive)
+        {
+            try
+            {
+                this.output_ = output.getBytes("UTF-8");
+            }
+            catch (UnsupportedEncodingException ex)
+            {
+                // Every Java platform is required to support UTF-8
+                throw new IllegalStateException(ex);
+            }
+
+            this.searchProgress_ = searchProgress;
+            this.expiryTime_ = timeToLive > 0 ? System.currentTimeMillis() + timeToLive : 0L;
+        }
+
+        /**
+         * Returns the XML output of the search
+         * @return
+         */
+        public String getOutput()
+        {
+            try
+            {
+                return new String(output_, "UTF-8");
+            }
+            catch (UnsupportedEncodingException ex)
+            {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        /**
+         * Returns the progress of the search when it completed
+         * @return
+         */
+        public SearchProgress getSearchProgress()
+        {
+            return searchProgress_;
+        }
+
+        long getSize()
+        {
+            return output_.length + ENTRY_OVERHEAD;
+        }
+
+        boolean isExpired()
+        {
+            return expiryTime_ != 0L && System.currentTimeMillis() > expiryTime_;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.model;
+
+import uk.ac.leedsmet.bibliosight.BibliosightSearchCancelledException;
+import uk.ac.leedsmet.bibliosight.wslite.SearchPortPool;
+
+/**
+ * Allows a running search to be paused or cancelled from another thread.
+ * A paused search finishes the requests it has in flight but does not start
+ * any more until it is resumed.
+ *
+ * @author Mike Taylor
+ */
+public class SearchControl
+{
+    /**
+     * Set once the search has been cancelled
+     */
+    private volatile boolean cancelled_;
+
+    /**
+     * Whether the search is paused, guarded by this
+     */
+    private boolean paused_;
+
+    /**
+     * Pool of ports used by the search, if it has started sending requests
+     */
+    private volatile SearchPortPool searchPortPool_;
+
+    /**
+     * Records the pool of ports used by the search so that its requests can be
+     * aborted on cancellation. Only the ports the pool has lent to this
+     * control are aborted, as the pool may be shared with other searches.
+     * @param searchPortPool
+     */
+    public void setSearchPortPool(SearchPortPool searchPortPool)
+    {
+        this.searchPortPool_ = searchPortPool;
+
+        if (cancelled_ && searchPortPool != null)
+        {
+            searchPortPool.abortLentPorts(this);
+        }
+    }
+
+    /**
+     * Cancels the search and aborts any requests it has in flight
+     */
+    public void cancel()
+    {
+        cancelled_ = true;
+
+        synchronized (this)
+        {
+            notifyAll();
+        }
+
+        SearchPortPool searchPortPool = searchPortPool_;
+
+        if (searchPortPool != null)
+        {
+            searchPortPool.abortLentPorts(this);
+        }
+    }
+
+    /**
+     * Pauses the search before its next request
+     */
+    public synchronized void pause()
+    {
+        paused_ = true;
+    }
+
+    /**
+     * Resumes a paused search
+     */
+    public synchronized void resume()
+    {
+        paused_ = false;
+        notifyAll();
+    }
+
+    /**
+     * Returns true if the search is paused
+     * @return
+     */
+    public synchronized boolean isPaused()
+    {
+        return paused_;
+    }
+
+    /**
+     * Returns true if the search has been cancelled
+     * @return
+     */
+    public boolean isCancelled()
+    {
+        return cancelled_;
+    }
+
+    /**
+     * Waits while the search is paused, then throws an exception if the
+     * search has been cancelled. An interrupted wait is treated as a
+     * cancellation.
+     * @throws BibliosightSearchCancelledException
+     */
+    public void checkCancelled() throws BibliosightSearchCancelledException
+    {
+        synchronized (this)
+        {
+            try
+            {
+                while (paused_ && !cancelled_)
+                {
+                    wait();
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new BibliosightSearchCancelledException();
+            }
+        }
+
+        if (cancelled_)
+        {
+            throw new BibliosightSearchCancelledException();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.model;
+
+/**
+ * An immutable snapshot of the progress of a search
+ *
+ * @author Mike Taylor
+ */
+public class SearchProgress
+{
+    /**
+     * Stages of a search
+     */
+    public enum Phase
+    {
+        IDLE ("Idle"),
+        AUTHENTICATING ("Authenticating"),
+        SEARCHING ("Searching"),
+        TRANSFORMING ("Transforming results"),
+        COMPLETE ("Complete"),
+        CANCELLED ("Cancelled"),
+        FAILED ("Failed");
+
+        private final String description;
+
+        Phase(String description)
+        {
+            this.description = description;
+        }
+
+        public String getDescription()
+        {
+            return description;
+        }
+    }
+
+    /**
+     * Progress of a search that has not been started
+     */
+    public static final SearchProgress IDLE = new SearchProgress(Phase.IDLE, 0, 0, 0, 0);
+
+    private final Phase phase_;
+    private final int pagesFetched_;
+    private final int pagesTotal_;
+    private final int recordsFound_;
+    private final int recordsTransformed_;
+
+    /**
+     * Create a new progress snapshot
+     * @param phase The current stage of the search
+     * @param pagesFetched The number of pages of results retrieved so far
+     * @param pagesTotal The number of pages to be retrieved, or 0 if not yet known
+     * @param recordsFound The number of records found by the search
+     * @param recordsTransformed The number of records written to the output so far
+     */
+    public SearchProgress(Phase phase, int pagesFetched, int pagesTotal, int recordsFound, int recordsTransformed)
+    {
+        this.phase_ = phase;
+        this.pagesFetched_ = pagesFetched;
+        this.pagesTotal_ = pagesTotal;
+        this.recordsFound_ = recordsFound;
+        this.recordsTransformed_ = recordsTransformed;
+    }
+
+    public Phase getPhase()
+    {
+        return phase_;
+    }
+
+    public int getPagesFetched()
+    {
+        return pagesFetched_;
+    }
+
+    public int getPagesTotal()
+    {
+        return pagesTotal_;
+    }
+
+    public int getRecordsFound()
+    {
+        return recordsFound_;
+    }
+
+    public int getRecordsTransformed()
+    {
+        return recordsTransformed_;
+    }
+
+    /**
+     * Returns true while the search has not yet finished
+     * @return
+     */
+    public boolean isRunning()
+    {
+        return phase_ == Phase.AUTHENTICATING || phase_ == Phase.SEARCHING || phase_ == Phase.TRANSFORMING;
+    }
+
+    /**
+     * Returns a copy of this snapshot in a different phase
+     * @param phase
+     * @return
+     */
+    public SearchProgress withPhase(Phase phase)
+    {
+        return new SearchProgress(phase, pagesFetched_, pagesTotal_, recordsFound_, recordsTransformed_);
+    }
+
+    /**
+     * Returns a copy of this snapshot with different page and record counts
+     * @param pagesFetched
+     * @param pagesTotal
+     * @param recordsFound
+     * @return
+     */
+    public SearchProgress withPages(int pagesFetched, int pagesTotal, int recordsFound)
+    {
+        return new SearchProgress(phase_, pagesFetched, pagesTotal, recordsFound, recordsTransformed_);
+    }
+
+    /**
+     * Returns a copy of this snapshot with a different transformed record count
+     * @param recordsTransformed
+     * @return
+     */
+    public SearchProgress withRecordsTransformed(int recordsTransformed)
+    {
+        return new SearchProgress(phase_, pagesFetched_, pagesTotal_, recordsFound_, recordsTransformed);
+    }
+
+    /**
+     * Returns a short description of the progress for display
+     * @return
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder description = new StringBuilder(phase_.getDescription());
+
+        if (pagesTotal_ > 0)
+        {
+            description.append(" - ").append(pagesFetched_).append(" of ").append(pagesTotal_).append(" pages retrieved");
+        }
+
+        if (recordsTransformed_ > 0)
+        {
+            description.append(", ").append(recordsTransformed_).append(" records transformed");
+        }
+
+        return description.toString();
+    }
+}
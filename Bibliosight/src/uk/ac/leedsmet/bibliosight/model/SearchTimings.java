@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The time taken by each phase of a search.
+ *
+ * Each timed step of a search is recorded as a span, with the number of
+ * records and bytes it handled, and the spans are totalled by phase. Spans
+ * may be recorded from any thread, as pages of a harvest are retrieved by
+ * worker threads. Only the first spans of a search are kept individually, so
+ * that a large harvest does not hold a span for every page.
+ *
+ * @author Mike Taylor
+ */
+public class SearchTimings
+{
+    /**
+     * Timed phases of a search
+     */
+    public enum Phase
+    {
+        SERVICE_SETUP ("Service setup"),
+        AUTHENTICATION ("Authentication"),
+        SESSION_INITIALISATION ("Session initialisation"),
+        SEARCH ("Search"),
+        TRANSFORM ("XML writing"),
+        OUTPUT ("Output"),
+        SESSION_CLOSE ("Session close");
+
+        private final String description;
+
+        Phase(String description)
+        {
+            this.description = description;
+        }
+
+        public String getDescription()
+        {
+            return description;
+        }
+    }
+
+    /**
+     * A single timed step of a search
+     */
+    public static class Span
+    {
+        private final Phase phase_;
+        private final long startOffset_;
+        private final long duration_;
+        private final int records_;
+        private final long bytes_;
+
+        Span(Phase phase, long startOffset, long duration, int records, long bytes)
+        {
+            this.phase_ = phase;
+            this.startOffset_ = startOffset;
+            this.duration_ = duration;
+            this.records_ = records;
+            this.bytes_ = bytes;
+        }
+
+        /**
+         * Returns the phase the step belongs to
+         * @return
+         */
+        public Phase getPhase()
+        {
+            return phase_;
+        }
+
+        /**
+         * Returns the time in nanoseconds from the start of the search to
+         * the start of the step
+         * @return
+         */
+        public long getStartOffset()
+        {
+            return startOffset_;
+        }
+
+        /**
+         * Returns the time the step took in nanoseconds
+         * @return
+         */
+        public long getDuration()
+        {
+            return duration_;
+        }
+
+        /**
+         * Returns the number of records handled by the step
+         * @return
+         */
+        public int getRecords()
+        {
+            return records_;
+        }
+
+        /**
+         * Returns the number of bytes handled by the step
+         * @return
+         */
+        public long getBytes()
+        {
+            return bytes_;
+        }
+    }
+
+    /**
+     * The spans of a phase totalled together
+     */
+    public static class PhaseTotal
+    {
+        private final Phase phase_;
+        private int count_;
+        private long duration_;
+        private long maxDuration_;
+        private long records_;
+        private long bytes_;
+
+        PhaseTotal(Phase phase)
+        {
+            this.phase_ = phase;
+        }
+
+        PhaseTotal(PhaseTotal total)
+        {
+            this.phase_ = total.phase_;
+            this.count_ = total.count_;
+            this.duration_ = total.duration_;
+            this.maxDuration_ = total.maxDuration_;
+            this.records_ = total.records_;
+            this.bytes_ = total.bytes_;
+        }
+
+        void add(long duration, int records, long bytes)
+        {
+            count_++;
+            duration_ += duration;
+            maxDuration_ = Math.max(maxDuration_, duration);
+            records_ += records;
+            bytes_ += bytes;
+        }
+
+        /**
+         * Returns the phase
+         * @return
+         */
+        public Phase getPhase()
+        {
+            return phase_;
+        }
+
+        /**
+         * Returns the number of spans recorded for the phase
+         * @return
+         */
+        public int getCount()
+        {
+            return count_;
+        }
+
+        /**
+         * Returns the total time of the spans in nanoseconds. Spans that
+         * overlap, such as pages retrieved at the same time, are each counted
+         * in full.
+         * @return
+         */
+        public long getDuration()
+        {
+            return duration_;
+        }
+
+        /**
+         * Returns the time of the longest span in nanoseconds
+         * @return
+         */
+        public long getMaxDuration()
+        {
+            return maxDuration_;
+        }
+
+        /**
+         * Returns the number of records handled by the phase
+         * @return
+         */
+        public long getRecords()
+        {
+            return records_;
+        }
+
+        /**
+         * Returns the number of bytes handled by the phase
+         * @return
+         */
+        public long getBytes()
+        {
+            return bytes_;
+        }
+    }
+
+    /**
+     * Maximum number of spans that are kept individually
+     */
+    private static final int MAX_SPANS = 1000;
+
+    /**
+     * Time the search started, from System.nanoTime()
+     */
+    private final long startTime_ = System.nanoTime();
+
+    private final List<Span> spans_ = new ArrayList<Span>();
+
+    private final Map<Phase, PhaseTotal> totals_ = new EnumMap<Phase, PhaseTotal>(Phase.class);
+
+    /**
+     * Records a step that started at the specified time and has just ended
+     * @param phase The phase the step belongs to
+     * @param startTime The time the step started, from System.nanoTime()
+     * @param records The number of records handled by the step
+     * @param bytes The number of bytes handled by the step
+     */
+    public void record(Phase phase, long startTime, int records, long bytes)
+    {
+        add(phase, startTime, System.nanoTime() - startTime, records, bytes);
+    }
+
+    /**
+     * Records a step that took the specified time
+     * @param phase The phase the step belongs to
+     * @param startTime The time the step started, from System.nanoTime()
+     * @param duration The time the step took in nanoseconds
+     * @param records The number of records handled by the step
+     * @param bytes The number of bytes handled by the step
+     */
+    public synchronized void add(Phase phase, long startTime, long duration, int records, long bytes)
+    {
+        if (spans_.size() < MAX_SPANS)
+        {
+            spans_.add(new Span(phase, startTime - startTime_, duration, records, bytes));
+        }
+
+        PhaseTotal total = totals_.get(phase);
+
+        if (total == null)
+        {
+            total = new PhaseTotal(phase);
+            totals_.put(phase, total);
+        }
+
+        total.add(duration, records, bytes);
+    }
+
+    /**
+     * Returns the spans recorded so far, in the order they ended
+     * @return
+     */
+    public synchronized List<Span> getSpans()
+    {
+        return Collections.unmodifiableList(new ArrayList<Span>(spans_));
+    }
+
+    /**
+     * Returns the totals of the phases recorded so far, in phase order
+     * @return
+     */
+    public synchronized List<PhaseTotal> getPhaseTotals()
+    {
+        List<PhaseTotal> totals = new ArrayList<PhaseTotal>();
+
+        for (PhaseTotal total : totals_.values())
+        {
+            totals.add(new PhaseTotal(total));
+        }
+
+        return Collections.unmodifiableList(totals);
+    }
+
+    /**
+     * Returns the total of a phase, or null if it has not been recorded
+     * @param phase
+     * @return
+     */
+    public synchronized PhaseTotal getPhaseTotal(Phase phase)
+    {
+        PhaseTotal total = totals_.get(phase);
+
+        return total != null ? new PhaseTotal(total) : null;
+    }
+
+    /**
+     * Returns the time in nanoseconds since the search started
+     * @return
+     */
+    public long getElapsedTime()
+    {
+        return System.nanoTime() - startTime_;
+    }
+
+    /**
+     * Returns true if nothing has been recorded
+     * @return
+     */
+    public synchronized boolean isEmpty()
+    {
+        return totals_.isEmpty();
+    }
+
+    /**
+     * Returns a one line summary of the phases, for the log
+     * @return
+     */
+    public String getSummary()
+    {
+        StringBuilder summary = new StringBuilder();
+
+        for (PhaseTotal total : getPhaseTotals())
+        {
+            if (summary.length() > 0)
+            {
+                summary.append("; ");
+            }
+
+            summary.append(total.getPhase().getDescription()).append(' ').append(formatSeconds(total.getDuration()));
+
+            if (total.getCount() > 1)
+            {
+                summary.append(" over ").append(total.getCount()).append(" steps, longest ").append(formatSeconds(total.getMaxDuration()));
+            }
+
+            if (total.getRecords() > 0)
+            {
+                summary.append(", ").append(total.getRecords()).append(" records");
+            }
+
+            if (total.getBytes() > 0)
+            {
+                summary.append(", ").append(formatBytes(total.getBytes()));
+            }
+        }
+
+        return summary.toString();
+    }
+
+    private static String formatSeconds(long nanoseconds)
+    {
+        return String.format("%.2f s", nanoseconds / 1e9);
+    }
+
+    private static String formatBytes(long bytes)
+    {
+        if (bytes < 1024)
+        {
+            return bytes + " bytes";
+        }
+
+        if (bytes < 1024 * 1024)
+        {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.transformer;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.LabelValuesPair;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.LiteRecord;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryField;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares search result records in the order given by a list of sort
+ * fields, so that the results of several searches can be merged in the
+ * order that one search would have returned them.
+ *
+ * Only the fields that can be read from a record are compared: the
+ * publication date (Date or PY), first author (AU), source title (SO),
+ * volume (VL) and first page (PG). Other sort fields, such as relevance, are
+ * ignored.
+ *
+ * @author Mike Taylor
+ */
+public class LiteRecordComparator implements Comparator<LiteRecord>
+{
+    private static final String[] MONTHS =
+    {
+        "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"
+    };
+
+    private final List<String> fieldNames_ = new ArrayList<String>();
+
+    /**
+     * Whether each field is sorted in descending order
+     */
+    private final List<Boolean> descending_ = new ArrayList<Boolean>();
+
+    /**
+     * Create a comparator for a list of sort fields
+     * @param sortFields
+     */
+    public LiteRecordComparator(List<QueryField> sortFields)
+    {
+        for (QueryField sortField : sortFields)
+        {
+            String name = sortField.getName() != null ? sortField.getName().trim().toUpperCase(Locale.ENGLISH) : "";
+
+            if (name.equals("DATE") || name.equals("PY") || name.equals("AU") || name.equals("SO") || name.equals("VL") || name.equals("PG"))
+            {
+                fieldNames_.add(name);
+                descending_.add("D".equalsIgnoreCase(sortField.getSort()));
+            }
+        }
+    }
+
+    /**
+     * Returns true if none of the sort fields can be compared, so that every
+     * record compares equal
+     * @return
+     */
+    public boolean isEmpty()
+    {
+        return fieldNames_.isEmpty();
+    }
+
+    public int compare(LiteRecord record1, LiteRecord record2)
+    {
+        for (int i = 0; i < fieldNames_.size(); i++)
+        {
+            String name = fieldNames_.get(i);
+            int result = 0;
+
+            if (name.equals("DATE") || name.equals("PY"))
+            {
+                result = compareLongs(getPublishedDate(record1), getPublishedDate(record2));
+            }
+            else if (name.equals("AU"))
+            {
+                result = compareStrings(getFirstValue(record1.getAuthors(), null), getFirstValue(record2.getAuthors(), null));
+            }
+            else if (name.equals("SO"))
+            {
+                result = compareStrings(getFirstValue(record1.getSource(), "SourceTitle"), getFirstValue(record2.getSource(), "SourceTitle"));
+            }
+            else if (name.equals("VL"))
+            {
+                result = compareLongs(getLeadingNumber(getFirstValue(record1.getSource(), "Volume")), getLeadingNumber(getFirstValue(record2.getSource(), "Volume")));
+            }
+            else if (name.equals("PG"))
+            {
+                result = compareLongs(getLeadingNumber(getFirstValue(record1.getSource(), "Pages")), getLeadingNumber(getFirstValue(record2.getSource(), "Pages")));
+            }
+
+            if (result != 0)
+            {
+                return descending_.get(i) ? -result : result;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns the publication date of a record as yyyymm, where the month is
+     * zero if it is not known
+     */
+    private static long getPublishedDate(LiteRecord liteRecord)
+    {
+        long year = getLeadingNumber(getFirstValue(liteRecord.getSource(), "Published.BiblioYear"));
+        String date = getFirstValue(liteRecord.getSource(), "Published.BiblioDate");
+        int month = 0;
+
+        if (date != null && date.trim().length() >= 3)
+        {
+            String monthName = date.trim().substring(0, 3).toUpperCase(Locale.ENGLISH);
+
+            for (int i = 0; i < MONTHS.length; i++)
+            {
+                if (MONTHS[i].equals(monthName))
+                {
+                    month = i + 1;
+                    break;
+                }
+            }
+        }
+
+        return year * 100 + month;
+    }
+
+    /**
+     * Returns the first value of the first pair with the label, or of the
+     * first pair if the label is null
+     */
+    private static String getFirstValue(List<LabelValuesPair> pairs, String label)
+    {
+        for (LabelValuesPair pair : pairs)
+        {
+            if ((label == null || label.equalsIgnoreCase(pair.getLabel())) && !pair.getValues().isEmpty())
+            {
+                return pair.getValues().get(0);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the number at the start of a value, or zero if there is none
+     */
+    private static long getLeadingNumber(String value)
+    {
+        long number = 0;
+
+        if (value != null)
+        {
+            String trimmedValue = value.trim();
+
+            for (int i = 0; i < trimmedValue.length() && i < 18; i++)
+            {
+                char c = trimmedValue.charAt(i);
+
+                if (c < '0' || c > '9')
+                {
+                    break;
+                }
+
+                number = number * 10 + (c - '0');
+            }
+        }
+
+        return number;
+    }
+
+    private static int compareLongs(long value1, long value2)
+    {
+        return value1 < value2 ? -1 : (value1 == value2 ? 0 : 1);
+    }
+
+    /**
+     * Compares values ignoring case, with missing values last
+     */
+    private static int compareStrings(String value1, String value2)
+    {
+        if (value1 == null || value2 == null)
+        {
+            return value1 == null ? (value2 == null ? 0 : 1) : -1;
+        }
+
+        return value1.compareToIgnoreCase(value2);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.transformer;
+
+import java.util.Arrays;
+
+/**
+ * A set of long values held in an open addressing hash table, which avoids
+ * the memory used by boxing each value.
+ *
+ * @author Mike Taylor
+ */
+class LongHashSet
+{
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Values in the table, where zero marks an empty slot
+     */
+    private long[] table_ = new long[INITIAL_CAPACITY];
+
+    /**
+     * Whether the set contains zero, which cannot be held in the table
+     */
+    private boolean containsZero_;
+
+    private int size_;
+
+    /**
+     * Returns the number of values in the set
+     * @return
+     */
+    int size()
+    {
+        return size_;
+    }
+
+    /**
+     * Returns true if the set contains the value
+     * @param value
+     * @return
+     */
+    boolean contains(long value)
+    {
+        if (value == 0L)
+        {
+            return containsZero_;
+        }
+
+        int mask = table_.length - 1;
+
+        for (int i = getSlot(value, mask); table_[i] != 0L; i = (i + 1) & mask)
+        {
+            if (table_[i] == value)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds a value to the set
+     * @param value
+     * @return False if the set already contained the value
+     */
+    boolean add(long value)
+    {
+        if (value == 0L)
+        {
+            if (containsZero_)
+            {
+                return false;
+            }
+
+            containsZero_ = true;
+            size_++;
+            return true;
+        }
+
+        int mask = table_.length - 1;
+        int i = getSlot(value, mask);
+
+        while (table_[i] != 0L)
+        {
+            if (table_[i] == value)
+            {
+                return false;
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        table_[i] = value;
+        size_++;
+
+        // Keep the table no more than half full so that probes stay short
+        if (size_ * 2 > table_.length)
+        {
+            resize();
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds every value in another set to the set
+     * @param values
+     */
+    void addAll(LongHashSet values)
+    {
+        if (values.containsZero_)
+        {
+            add(0L);
+        }
+
+        for (long value : values.table_)
+        {
+            if (value != 0L)
+            {
+                add(value);
+            }
+        }
+    }
+
+    /**
+     * Removes every value from the set
+     */
+    void clear()
+    {
+        table_ = new long[INITIAL_CAPACITY];
+        containsZero_ = false;
+        size_ = 0;
+    }
+
+    /**
+     * Returns the values in the set in ascending order
+     * @return
+     */
+    long[] toSortedArray()
+    {
+        long[] values = new long[size_];
+        int i = 0;
+
+        if (containsZero_)
+        {
+            values[i++] = 0L;
+        }
+
+        for (long value : table_)
+        {
+            if (value != 0L)
+            {
+                values[i++] = value;
+            }
+        }
+
+        Arrays.sort(values);
+        return values;
+    }
+
+    private void resize()
+    {
+        long[] oldTable = table_;
+        table_ = new long[oldTable.length * 2];
+        int mask = table_.length - 1;
+
+        for (long value : oldTable)
+        {
+            if (value != 0L)
+            {
+                int i = getSlot(value, mask);
+
+                while (table_[i] != 0L)
+                {
+                    i = (i + 1) & mask;
+                }
+
+                table_[i] = value;
+            }
+        }
+    }
+
+    private static int getSlot(long value, int mask)
+    {
+        // Mix the bits so that sequential values spread across the table
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
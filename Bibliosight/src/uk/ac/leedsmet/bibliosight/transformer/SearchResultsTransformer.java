@@ -414,11 +414,13 @@ public class SearchResultsTransformer
     }
 
     /**
-     * Returns a DOM element containing the data in a given search result record
+     * Returns a DOM element containing the data in a given search result record.
+     * The element is not added to the document. This is package-private so
+     * that the cost of each record can be benchmarked.
      * @param liteRecord A single search result record
      * @return
      */
-    private Element getItemElement(LiteRecord liteRecord)
+    Element getItemElement(LiteRecord liteRecord)
     {
         Element itemElement     = outputDocument_.createElementNS(BIBLIOSIGHT_NAMESPACE_URI, BIBLIOSIGHT_NAMESPACE_PREFIX + ":item");
         Element titlesElement   = outputDocument_.createElementNS(BIBLIOSIGHT_NAMESPACE_URI, BIBLIOSIGHT_NAMESPACE_PREFIX + ":titles");
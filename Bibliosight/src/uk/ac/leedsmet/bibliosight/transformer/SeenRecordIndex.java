@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.transformer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import uk.ac.leedsmet.bibliosight.AtomicFileOutputStream;
+import uk.ac.leedsmet.bibliosight.BibliosightProperties;
+
+/**
+ * A persistent index of the UTs of the records that have already been
+ * written, so that records found again by overlapping queries or by later
+ * runs can be skipped or flagged.
+ *
+ * Each UT is held as a 64-bit key. Web of Science UTs are numeric and are
+ * held as their value; any other UT is held as a hash with the top bit set
+ * so that the two cannot meet. The keys are kept in a sorted array, which is
+ * searched by bisection, together with a hash set of the keys added since
+ * the index was last saved. The index file holds the sorted keys, so that it
+ * takes eight bytes for each record and loads with a single read.
+ *
+ * @author Mike Taylor
+ */
+public class SeenRecordIndex
+{
+    public static final String FILE_PROPERTY = "bibliosight.recordIndex.file";
+
+    /**
+     * Identifies an index file, "BSRI"
+     */
+    private static final int FILE_MAGIC = 0x42535249;
+
+    private static final int FILE_VERSION = 1;
+
+    private static final int HEADER_SIZE = 12;
+
+    private static final String WOS_PREFIX = "WOS:";
+
+    /**
+     * Longest UT that is held as its numeric value
+     */
+    private static final int MAX_NUMERIC_LENGTH = 18;
+
+    /**
+     * Indexes that have been opened, so that every query using a file shares
+     * the same index
+     */
+    private static final Map<File, SeenRecordIndex> indexes_ = new HashMap<File, SeenRecordIndex>();
+
+    /**
+     * The file the index is kept in
+     */
+    private final File file_;
+
+    /**
+     * Keys saved in the index file, in ascending order
+     */
+    private long[] savedKeys_;
+
+    /**
+     * Keys added since the index was last saved
+     */
+    private final LongHashSet addedKeys_ = new LongHashSet();
+
+    private SeenRecordIndex(File file, long[] savedKeys)
+    {
+        this.file_ = file;
+        this.savedKeys_ = savedKeys;
+    }
+
+    /**
+     * Returns the file that the index is kept in by default, as configured by
+     * system properties
+     * @return
+     */
+    public static File getDefaultFile()
+    {
+        return BibliosightProperties.getFile(FILE_PROPERTY, "records.idx");
+    }
+
+    /**
+     * Returns the index kept in a file, reading it the first time it is used.
+     * The file is created when the index is first saved.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static SeenRecordIndex getIndex(File file) throws IOException
+    {
+        File key = file.getAbsoluteFile();
+
+        synchronized (indexes_)
+        {
+            SeenRecordIndex index = indexes_.get(key);
+
+            if (index == null)
+            {
+                index = new SeenRecordIndex(key, readKeys(key));
+                indexes_.put(key, index);
+            }
+
+            return index;
+        }
+    }
+
+    /**
+     * Returns the file the index is kept in
+     * @return
+     */
+    public File getFile()
+    {
+        return file_;
+    }
+
+    /**
+     * Returns the number of records in the index
+     * @return
+     */
+    public synchronized int size()
+    {
+        return savedKeys_.length + addedKeys_.size();
+    }
+
+    /**
+     * Returns true if a record with the UT has been added to the index
+     * @param ut
+     * @return
+     */
+    public boolean contains(String ut)
+    {
+        return containsKey(getKey(ut));
+    }
+
+    /**
+     * Writes the records added since the index was last saved to the index
+     * file. The file is read again first, so that records saved by another
+     * process are kept.
+     * @throws IOException
+     */
+    public synchronized void save() throws IOException
+    {
+        if (addedKeys_.size() == 0)
+        {
+            return;
+        }
+
+        long[] keys = merge(merge(readKeys(file_), savedKeys_), addedKeys_.toSortedArray());
+
+        File parent = file_.getParentFile();
+
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+        {
+            throw new IOException("The directory could not be created: " + parent);
+        }
+
+        AtomicFileOutputStream outputStream = new AtomicFileOutputStream(file_);
+
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            buffer.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(keys.length);
+
+            for (long key : keys)
+            {
+                if (buffer.remaining() < 8)
+                {
+                    outputStream.write(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+
+                buffer.putLong(key);
+            }
+
+            outputStream.write(buffer.array(), 0, buffer.position());
+            outputStream.commit();
+        }
+        finally
+        {
+            outputStream.close();
+        }
+
+        savedKeys_ = keys;
+        addedKeys_.clear();
+    }
+
+    /**
+     * Returns the key of a UT
+     * @param ut
+     * @return
+     */
+    static long getKey(String ut)
+    {
+        String normalisedUt = ut == null ? "" : ut.trim().toUpperCase(Locale.ENGLISH);
+
+        if (normalisedUt.startsWith(WOS_PREFIX))
+        {
+            normalisedUt = normalisedUt.substring(WOS_PREFIX.length());
+        }
+
+        if (normalisedUt.length() > 0 && normalisedUt.length() <= MAX_NUMERIC_LENGTH && isDigits(normalisedUt))
+        {
+            return Long.parseLong(normalisedUt);
+        }
+
+        // 64-bit FNV-1a hash
+        long hash = 0xCBF29CE484222325L;
+
+        for (int i = 0; i < normalisedUt.length(); i++)
+        {
+            hash ^= normalisedUt.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+
+        return hash | Long.MIN_VALUE;
+    }
+
+    synchronized boolean containsKey(long key)
+    {
+        return addedKeys_.contains(key) || Arrays.binarySearch(savedKeys_, key) >= 0;
+    }
+
+    /**
+     * Adds the keys of records that have been written
+     * @param keys
+     */
+    synchronized void addKeys(LongHashSet keys)
+    {
+        addedKeys_.addAll(keys);
+    }
+
+    private static boolean isDigits(String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9')
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long[] readKeys(File file) throws IOException
+    {
+        if (!file.isFile())
+        {
+            return new long[0];
+        }
+
+        FileInputStream inputStream = new FileInputStream(file);
+
+        try
+        {
+            FileChannel channel = inputStream.getChannel();
+
+            if (channel.size() < HEADER_SIZE || (channel.size() - HEADER_SIZE) % 8 != 0)
+            {
+                throw new IOException("The record index is not valid: " + file);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+
+            while (buffer.hasRemaining())
+            {
+                if (channel.read(buffer) == -1)
+                {
+                    throw new IOException("The record index could not be read: " + file);
+                }
+            }
+
+            buffer.flip();
+
+            if (buffer.getInt() != FILE_MAGIC || buffer.getInt() != FILE_VERSION || buffer.getInt() != buffer.remaining() / 8)
+            {
+                throw new IOException("The record index is not valid: " + file);
+            }
+
+            long[] keys = new long[buffer.remaining() / 8];
+            buffer.asLongBuffer().get(keys);
+
+            return keys;
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Merges two sorted arrays of keys, leaving out duplicates
+     */
+    static long[] merge(long[] a, long[] b)
+    {
+        long[] merged = new long[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+
+        while (i < a.length || j < b.length)
+        {
+            long key = (j >= b.length || (i < a.length && a[i] <= b[j])) ? a[i++] : b[j++];
+
+            if (n == 0 || merged[n - 1] != key)
+            {
+                merged[n++] = key;
+            }
+        }
+
+        return n == merged.length ? merged : Arrays.copyOf(merged, n);
+    }
+}
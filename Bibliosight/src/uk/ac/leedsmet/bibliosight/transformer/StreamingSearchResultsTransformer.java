@@ -0,0 +1,877 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.transformer;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.EditionDesc;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.LabelValuesPair;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.LiteRecord;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryField;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.RetrieveParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.SearchResults;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.TimeSpan;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import uk.ac.leedsmet.bibliosight.BibliosightClientException;
+
+/**
+ * A class to transform WS Lite query data and search results into an XML
+ * document that is written directly to an output stream.
+ *
+ * The output is the same as the document built by SearchResultsTransformer,
+ * but no DOM is held in memory: the header is written by startDocument(),
+ * each record is written as soon as it is passed to writeItem() and the
+ * search request is written by endDocument(). This allows the pages of a
+ * harvest to be written as they arrive. As the number of records listed
+ * precedes the records in the output, it must be supplied up front, and is
+ * the number of records retrieved before any are left out.
+ *
+ * If a seen record index is set, records whose UT has already been written,
+ * whether earlier in the same document or by an earlier search, are either
+ * skipped or written with a duplicate attribute. The UTs of the records
+ * written are only added to the index once the document is complete. When
+ * records can be left out, the number actually written follows the items.
+ *
+ * @author Mike Taylor
+ */
+public class StreamingSearchResultsTransformer
+{
+    /**
+     * Namespace URI for XML output
+     */
+    private static final String BIBLIOSIGHT_NAMESPACE_URI = "http://www.leedsmet.ac.uk/inn/repository/bibliosight/";
+
+    /**
+     * Namespace prefix for XML output
+     */
+    private static final String BIBLIOSIGHT_NAMESPACE_PREFIX = "bibliosight";
+
+    /**
+     * Character encoding of the XML output
+     */
+    private static final String OUTPUT_ENCODING = "UTF-8";
+
+    /**
+     * Number of spaces used for each level of indentation
+     */
+    private static final int INDENT_AMOUNT = 4;
+
+    /**
+     * Spaces used to indent lines, enough for the deepest element
+     */
+    private static final char[] INDENT = "                                                ".toCharArray();
+
+    private static final String NEW_LINE = System.getProperty("line.separator");
+
+    /**
+     * Date/time of query execution
+     */
+    private String executionDate_;
+
+    /**
+     * Query parameters used in query execution
+     */
+    private QueryParameters queryParameters_;
+
+    /**
+     * Retrieve parameters used in query execution
+     */
+    private RetrieveParameters retrieveParameters_;
+
+    /**
+     * Writer used to generate output
+     */
+    private XMLStreamWriter writer_;
+
+    /**
+     * Depth of the element currently being written
+     */
+    private int depth_;
+
+    /**
+     * Number of records written to the output
+     */
+    private int itemsWritten_;
+
+    /**
+     * Index of the records written by earlier searches, or null
+     */
+    private SeenRecordIndex seenRecordIndex_;
+
+    /**
+     * Whether records already in the index are left out of the output rather
+     * than flagged
+     */
+    private boolean skipDuplicates_;
+
+    /**
+     * Whether a record that has already been written to this document is
+     * left out when it is found again
+     */
+    private boolean skipRepeatedRecords_;
+
+    /**
+     * Number of records left out because they had already been written to
+     * this document
+     */
+    private int repeatsSkipped_;
+
+    /**
+     * Keys of the records written to this document
+     */
+    private final LongHashSet recordKeys_ = new LongHashSet();
+
+    /**
+     * Number of records found to have been written already
+     */
+    private int duplicatesFound_;
+
+    /**
+     * Stream the output is written to, which counts the bytes written
+     */
+    private final ByteCountingOutputStream outputStream_;
+
+    /**
+     * Time spent writing the output in nanoseconds
+     */
+    private long writeTime_;
+
+    /**
+     * Create a new instance of the class that writes to the specified stream.
+     * The stream is not closed by the transformer.
+     * @param outputStream
+     * @throws BibliosightClientException
+     */
+    public StreamingSearchResultsTransformer(OutputStream outputStream) throws BibliosightClientException
+    {
+        outputStream_ = new ByteCountingOutputStream(outputStream);
+
+        try
+        {
+            writer_ = XMLOutputFactory.newInstance().createXMLStreamWriter(outputStream_, OUTPUT_ENCODING);
+        }
+        catch (XMLStreamException ex)
+        {
+            throw new BibliosightClientException("Could not create the output document", ex);
+        }
+    }
+
+    /**
+     * Returns execution date property
+     * @return
+     */
+    public String getExecutionDate()
+    {
+        return executionDate_;
+    }
+
+    /**
+     * Sets execution date property
+     * @param executionDate
+     */
+    public void setExecutionDate(String executionDate)
+    {
+        this.executionDate_ = executionDate;
+    }
+
+    /**
+     * Returns query parameters property
+     * @return
+     */
+    public QueryParameters getQueryParameters()
+    {
+        return queryParameters_;
+    }
+
+    /**
+     * Sets query parameters property
+     * @param queryParameters
+     */
+    public void setQueryParameters(QueryParameters queryParameters)
+    {
+        this.queryParameters_ = queryParameters;
+    }
+
+    /**
+     * Returns retrieve parameters property
+     * @return
+     */
+    public RetrieveParameters getRetrieveParameters()
+    {
+        return retrieveParameters_;
+    }
+
+    /**
+     * Sets retrieve parameters property
+     * @param retrieveParameters
+     */
+    public void setRetrieveParameters(RetrieveParameters retrieveParameters)
+    {
+        this.retrieveParameters_ = retrieveParameters;
+    }
+
+    /**
+     * Returns the number of records written to the output so far
+     * @return
+     */
+    public int getItemsWritten()
+    {
+        return itemsWritten_;
+    }
+
+    /**
+     * Returns the number of bytes passed to the output stream so far. Output
+     * is buffered until the document is ended, so this is only exact once
+     * endDocument() has been called.
+     * @return
+     */
+    public long getBytesWritten()
+    {
+        return outputStream_.getCount();
+    }
+
+    /**
+     * Returns the time spent writing the document so far in nanoseconds,
+     * which includes the time taken by the output stream
+     * @return
+     */
+    public long getWriteTime()
+    {
+        return writeTime_;
+    }
+
+    /**
+     * Sets the index consulted for records that have already been written
+     * @param seenRecordIndex The index, or null to write every record
+     * @param skipDuplicates True to leave records that have already been
+     * written out of the output, false to flag them
+     */
+    public void setSeenRecordIndex(SeenRecordIndex seenRecordIndex, boolean skipDuplicates)
+    {
+        this.seenRecordIndex_ = seenRecordIndex;
+        this.skipDuplicates_ = skipDuplicates;
+    }
+
+    /**
+     * Returns the index consulted for records that have already been written
+     * @return The index, or null if every record is written
+     */
+    public SeenRecordIndex getSeenRecordIndex()
+    {
+        return seenRecordIndex_;
+    }
+
+    /**
+     * Adds the records written to this document to the seen record index, if
+     * there is one. This is left until the output has been kept, so that
+     * records are not taken to have been written if the output is lost.
+     */
+    public void addRecordsToIndex()
+    {
+        if (seenRecordIndex_ != null)
+        {
+            seenRecordIndex_.addKeys(recordKeys_);
+        }
+    }
+
+    /**
+     * Sets whether a record that has already been written to this document is
+     * left out when it is found again, as when the results of several
+     * searches that overlap are merged
+     * @param skipRepeatedRecords
+     */
+    public void setSkipRepeatedRecords(boolean skipRepeatedRecords)
+    {
+        this.skipRepeatedRecords_ = skipRepeatedRecords;
+    }
+
+    /**
+     * Returns the number of records left out because they had already been
+     * written to this document
+     * @return
+     */
+    public int getRepeatsSkipped()
+    {
+        return repeatsSkipped_;
+    }
+
+    /**
+     * Returns the number of records found to have been written already, which
+     * have been skipped or flagged
+     * @return
+     */
+    public int getDuplicatesFound()
+    {
+        return duplicatesFound_;
+    }
+
+    /**
+     * Returns true if records that have already been written are left out of
+     * the output
+     * @return
+     */
+    public boolean isSkippingDuplicates()
+    {
+        return seenRecordIndex_ != null && skipDuplicates_;
+    }
+
+    /**
+     * Writes a complete document for a set of search results
+     * @param searchResults
+     * @throws BibliosightClientException
+     */
+    public void writeSearchResults(SearchResults searchResults) throws BibliosightClientException
+    {
+        startDocument(searchResults, searchResults.getRecords().size());
+        writeItems(searchResults.getRecords());
+        endDocument();
+    }
+
+    /**
+     * Writes the start of the document, up to and including the opening items
+     * element
+     * @param searchResults The first page of search results, which supplies
+     * the number of records searched and found
+     * @param recordsListed The number of records that will be retrieved,
+     * including any that are left out as duplicates or repeats
+     * @throws BibliosightClientException
+     */
+    public void startDocument(SearchResults searchResults, int recordsListed) throws BibliosightClientException
+    {
+        long startTime = System.nanoTime();
+
+        try
+        {
+            writer_.writeStartDocument(OUTPUT_ENCODING, "1.0");
+            writer_.setPrefix(BIBLIOSIGHT_NAMESPACE_PREFIX, BIBLIOSIGHT_NAMESPACE_URI);
+
+            startElement("bibliosight");
+            writer_.writeNamespace(BIBLIOSIGHT_NAMESPACE_PREFIX, BIBLIOSIGHT_NAMESPACE_URI);
+
+            startElement("searchResponse");
+            textElement("numberOfItemsSearched", String.valueOf(searchResults.getRecordsSearched()));
+            textElement("numberOfItemsFound", String.valueOf(searchResults.getRecordsFound()));
+            textElement("numberOfItemsListed", String.valueOf(recordsListed));
+            textElement("dateCreated", executionDate_);
+            startElement("items");
+        }
+        catch (XMLStreamException ex)
+        {
+            throw new BibliosightClientException("Document could not be generated from search results", ex);
+        }
+        finally
+        {
+            writeTime_ += System.nanoTime() - startTime;
+        }
+    }
+
+    /**
+     * Writes a list of search result records
+     * @param liteRecords
+     * @throws BibliosightClientException
+     */
+    public void writeItems(List<LiteRecord> liteRecords) throws BibliosightClientException
+    {
+        long startTime = System.nanoTime();
+
+        try
+        {
+            for (LiteRecord liteRecord : liteRecords)
+            {
+                writeRecord(liteRecord);
+            }
+        }
+        finally
+        {
+            writeTime_ += System.nanoTime() - startTime;
+        }
+    }
+
+    /**
+     * Writes a single search result record
+     * @param liteRecord
+     * @throws BibliosightClientException
+     */
+    public void writeItem(LiteRecord liteRecord) throws BibliosightClientException
+    {
+        long startTime = System.nanoTime();
+
+        try
+        {
+            writeRecord(liteRecord);
+        }
+        finally
+        {
+            writeTime_ += System.nanoTime() - startTime;
+        }
+    }
+
+    private void writeRecord(LiteRecord liteRecord) throws BibliosightClientException
+    {
+        boolean duplicate = false;
+
+        if (seenRecordIndex_ != null || skipRepeatedRecords_)
+        {
+            long key = SeenRecordIndex.getKey(liteRecord.getUT());
+            boolean repeated = !recordKeys_.add(key);
+
+            if (repeated && skipRepeatedRecords_)
+            {
+                repeatsSkipped_++;
+                return;
+            }
+
+            duplicate = seenRecordIndex_ != null && (repeated || seenRecordIndex_.containsKey(key));
+
+            if (duplicate)
+            {
+                duplicatesFound_++;
+
+                if (skipDuplicates_)
+                {
+                    return;
+                }
+            }
+        }
+
+        try
+        {
+            startElement("item");
+
+            if (duplicate)
+            {
+                writer_.writeAttribute(BIBLIOSIGHT_NAMESPACE_PREFIX, BIBLIOSIGHT_NAMESPACE_URI, "duplicate", "true");
+            }
+
+            writeValuesElement("titles", "title", liteRecord.getTitle());
+            writeValuesElement("authors", "author", liteRecord.getAuthors());
+            writeSourceElement(liteRecord.getSource());
+            writeValuesElement("keywords", "keyword", liteRecord.getKeywords());
+            textElement("ut", liteRecord.getUT());
+
+            endElement();
+
+            itemsWritten_++;
+        }
+        catch (XMLStreamException ex)
+        {
+            throw new BibliosightClientException("Document could not be generated from search results", ex);
+        }
+    }
+
+    /**
+     * Writes the end of the document, including the search request, and
+     * flushes the output
+     * @throws BibliosightClientException
+     */
+    public void endDocument() throws BibliosightClientException
+    {
+        long startTime = System.nanoTime();
+
+        try
+        {
+            // Close the items element
+            endElement();
+
+            // The number listed up front includes the records left out
+            if (isSkippingDuplicates() || skipRepeatedRecords_)
+            {
+                textElement("numberOfItemsWritten", String.valueOf(itemsWritten_));
+            }
+
+            if (isSkippingDuplicates())
+            {
+                textElement("numberOfDuplicatesSkipped", String.valueOf(duplicatesFound_));
+            }
+
+            startElement("searchRequest");
+            writeQueryParametersElement();
+            writeRetrieveParametersElement();
+            endElement();
+
+            // Close the searchResponse and bibliosight elements
+            endElement();
+            endElement();
+
+            writer_.writeEndDocument();
+            writer_.writeCharacters(NEW_LINE);
+            writer_.flush();
+        }
+        catch (XMLStreamException ex)
+        {
+            throw new BibliosightClientException("Document could not be generated from search results", ex);
+        }
+        finally
+        {
+            writeTime_ += System.nanoTime() - startTime;
+        }
+    }
+
+    /**
+     * Writes an element containing one child element for each value in a list
+     * of label/values pairs
+     * @param listName Name of the containing element
+     * @param valueName Name of each child element
+     * @param pairs
+     * @throws XMLStreamException
+     */
+    private void writeValuesElement(String listName, String valueName, List<LabelValuesPair> pairs) throws XMLStreamException
+    {
+        Integer valueCount = 0;
+
+        for (LabelValuesPair pair : pairs)
+        {
+            valueCount += pair.getValues().size();
+        }
+
+        if (valueCount == 0)
+        {
+            emptyElement(listName);
+            writeCountAttribute(valueCount);
+            return;
+        }
+
+        startElement(listName);
+        writeCountAttribute(valueCount);
+
+        for (LabelValuesPair pair : pairs)
+        {
+            for (String value : pair.getValues())
+            {
+                textElement(valueName, value);
+            }
+        }
+
+        endElement();
+    }
+
+    /**
+     * Writes an element containing the source data of a search result record
+     * @param sourceData
+     * @throws XMLStreamException
+     */
+    private void writeSourceElement(List<LabelValuesPair> sourceData) throws XMLStreamException
+    {
+        String sourceBookSeriesTitle    = null;
+        String sourceTitle              = null;
+        String sourceVolume             = null;
+        String sourceIssue              = null;
+        String sourcePages              = null;
+        String sourcePublishedDate      = null;
+        String sourcePublishedYear      = null;
+
+        for (LabelValuesPair pair : sourceData)
+        {
+            String label = pair.getLabel();
+            String value = pair.getValues().get(0);
+
+            if (label.equalsIgnoreCase("BookSeriesTitle"))
+            {
+                sourceBookSeriesTitle = value;
+            }
+            else if (label.equalsIgnoreCase("Issue"))
+            {
+                sourceIssue = value;
+            }
+            else if (label.equalsIgnoreCase("Pages"))
+            {
+                sourcePages = value;
+            }
+            else if (label.equalsIgnoreCase("Published.BiblioDate"))
+            {
+                sourcePublishedDate = value;
+            }
+            else if (label.equalsIgnoreCase("Published.BiblioYear"))
+            {
+                sourcePublishedYear = value;
+            }
+            else if (label.equalsIgnoreCase("SourceTitle"))
+            {
+                sourceTitle = value;
+            }
+            else if (label.equalsIgnoreCase("Volume"))
+            {
+                sourceVolume = value;
+            }
+        }
+
+        if (sourceBookSeriesTitle == null && sourceTitle == null && sourceVolume == null && sourceIssue == null
+            && sourcePages == null && sourcePublishedDate == null && sourcePublishedYear == null)
+        {
+            emptyElement("source");
+            return;
+        }
+
+        startElement("source");
+
+        if (sourceBookSeriesTitle != null)
+        {
+            textElement("bookSeriesTitle", sourceBookSeriesTitle);
+        }
+
+        if (sourceTitle != null)
+        {
+            textElement("title", sourceTitle);
+        }
+
+        if (sourceVolume != null)
+        {
+            textElement("volume", sourceVolume);
+        }
+
+        if (sourceIssue != null)
+        {
+            textElement("issue", sourceIssue);
+        }
+
+        if (sourcePages != null)
+        {
+            textElement("pages", sourcePages);
+        }
+
+        if (sourcePublishedDate != null || sourcePublishedYear != null)
+        {
+            startElement("published");
+
+            if (sourcePublishedDate != null)
+            {
+                textElement("date", sourcePublishedDate);
+            }
+
+            if (sourcePublishedYear != null)
+            {
+                textElement("year", sourcePublishedYear);
+            }
+
+            endElement();
+        }
+
+        endElement();
+    }
+
+    /**
+     * Writes an element containing the data in the query parameters property
+     * @throws XMLStreamException
+     */
+    private void writeQueryParametersElement() throws XMLStreamException
+    {
+        List<EditionDesc> editions = queryParameters_.getEditions();
+        TimeSpan timeSpan = queryParameters_.getTimeSpan();
+
+        startElement("queryParameters");
+
+        textElement("databaseId", String.valueOf(queryParameters_.getDatabaseID()));
+
+        if (editions.isEmpty())
+        {
+            emptyElement("editions");
+            writeCountAttribute(0);
+        }
+        else
+        {
+            startElement("editions");
+            writeCountAttribute(editions.size());
+
+            for (EditionDesc edition : editions)
+            {
+                newLine();
+                writer_.writeStartElement(BIBLIOSIGHT_NAMESPACE_PREFIX, "edition", BIBLIOSIGHT_NAMESPACE_URI);
+                writer_.writeAttribute(BIBLIOSIGHT_NAMESPACE_PREFIX, BIBLIOSIGHT_NAMESPACE_URI, "collection", String.valueOf(edition.getCollection()));
+                writer_.writeCharacters(String.valueOf(edition.getEdition()));
+                writer_.writeEndElement();
+            }
+
+            endElement();
+        }
+
+        textElement("symbolicTimeSpan", String.valueOf(queryParameters_.getSymbolicTimeSpan()));
+
+        if (timeSpan != null)
+        {
+            startElement("timeSpan");
+            textElement("begin", String.valueOf(timeSpan.getBegin()));
+            textElement("end", String.valueOf(timeSpan.getEnd()));
+            endElement();
+        }
+        else
+        {
+            emptyElement("timeSpan");
+        }
+
+        newLine();
+        writer_.writeStartElement(BIBLIOSIGHT_NAMESPACE_PREFIX, "userQuery", BIBLIOSIGHT_NAMESPACE_URI);
+        writer_.writeAttribute(BIBLIOSIGHT_NAMESPACE_PREFIX, BIBLIOSIGHT_NAMESPACE_URI, "language", String.valueOf(queryParameters_.getQueryLanguage()));
+        writer_.writeCharacters(String.valueOf(queryParameters_.getUserQuery()));
+        writer_.writeEndElement();
+
+        endElement();
+    }
+
+    /**
+     * Writes an element containing the data in the retrieve parameters
+     * property
+     * @throws XMLStreamException
+     */
+    private void writeRetrieveParametersElement() throws XMLStreamException
+    {
+        List<QueryField> queryFields = retrieveParameters_.getFields();
+
+        startElement("retrieveParameters");
+
+        if (queryFields.isEmpty())
+        {
+            emptyElement("fields");
+            writeCountAttribute(0);
+        }
+        else
+        {
+            startElement("fields");
+            writeCountAttribute(queryFields.size());
+
+            for (QueryField queryField : queryFields)
+            {
+                startElement("field");
+                textElement("name", queryField.getName());
+                textElement("sort", queryField.getSort());
+                endElement();
+            }
+
+            endElement();
+        }
+
+        textElement("count", String.valueOf(retrieveParameters_.getCount()));
+        textElement("firstRecord", String.valueOf(retrieveParameters_.getFirstRecord()));
+
+        endElement();
+    }
+
+    /**
+     * Writes a count attribute on the element that has just been started
+     * @param count
+     * @throws XMLStreamException
+     */
+    private void writeCountAttribute(Integer count) throws XMLStreamException
+    {
+        writer_.writeAttribute(BIBLIOSIGHT_NAMESPACE_PREFIX, BIBLIOSIGHT_NAMESPACE_URI, "count", count.toString());
+    }
+
+    /**
+     * Starts an element with child elements on a new indented line
+     * @param localName
+     * @throws XMLStreamException
+     */
+    private void startElement(String localName) throws XMLStreamException
+    {
+        newLine();
+        writer_.writeStartElement(BIBLIOSIGHT_NAMESPACE_PREFIX, localName, BIBLIOSIGHT_NAMESPACE_URI);
+        depth_++;
+    }
+
+    /**
+     * Ends an element with child elements on a new indented line
+     * @throws XMLStreamException
+     */
+    private void endElement() throws XMLStreamException
+    {
+        depth_--;
+        newLine();
+        writer_.writeEndElement();
+    }
+
+    /**
+     * Writes an element containing only text on a new indented line. An
+     * element with no text is written as an empty element.
+     * @param localName
+     * @param text
+     * @throws XMLStreamException
+     */
+    private void textElement(String localName, String text) throws XMLStreamException
+    {
+        if (text == null || text.length() == 0)
+        {
+            emptyElement(localName);
+            return;
+        }
+
+        newLine();
+        writer_.writeStartElement(BIBLIOSIGHT_NAMESPACE_PREFIX, localName, BIBLIOSIGHT_NAMESPACE_URI);
+        writer_.writeCharacters(text);
+        writer_.writeEndElement();
+    }
+
+    /**
+     * Writes an empty element on a new indented line
+     * @param localName
+     * @throws XMLStreamException
+     */
+    private void emptyElement(String localName) throws XMLStreamException
+    {
+        newLine();
+        writer_.writeEmptyElement(BIBLIOSIGHT_NAMESPACE_PREFIX, localName, BIBLIOSIGHT_NAMESPACE_URI);
+    }
+
+    /**
+     * Starts a new line indented to the current depth
+     * @throws XMLStreamException
+     */
+    private void newLine() throws XMLStreamException
+    {
+        writer_.writeCharacters(NEW_LINE);
+        writer_.writeCharacters(INDENT, 0, Math.min(depth_ * INDENT_AMOUNT, INDENT.length));
+    }
+
+    /**
+     * An output stream that counts the bytes passed through it
+     */
+    private static class ByteCountingOutputStream extends FilterOutputStream
+    {
+        private long count_;
+
+        ByteCountingOutputStream(OutputStream outputStream)
+        {
+            super(outputStream);
+        }
+
+        long getCount()
+        {
+            return count_;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            count_++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            count_ += len;
+        }
+    }
+}
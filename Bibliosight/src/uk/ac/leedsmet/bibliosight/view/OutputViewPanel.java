@@ -28,9 +28,14 @@ package uk.ac.leedsmet.bibliosight.view;
 
 import java.awt.BorderLayout;
 import java.beans.PropertyChangeEvent;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.swing.JFrame;
 import javax.swing.WindowConstants;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 import uk.ac.leedsmet.bibliosight.controller.DefaultController;
+import uk.ac.leedsmet.bibliosight.model.SearchProgress;
 
 /**
  * A view panel for displaying output from the Bibliosight client
@@ -38,7 +43,6 @@ import uk.ac.leedsmet.bibliosight.controller.DefaultController;
  * @author Mike Taylor
  */
 public class OutputViewPanel extends AbstractViewPanel {
-    private static final String NEW_LINE = System.getProperty("line.separator");
 
     // Controller used by the view
     private DefaultController controller;
@@ -46,6 +50,11 @@ public class OutputViewPanel extends AbstractViewPanel {
     public static final Integer TAB_INDEX_LOG = 0;
     public static final Integer TAB_INDEX_RESULTS = 1;
 
+    /**
+     * Number of lines kept in the log text area
+     */
+    private static final int MAX_LOG_LINES = 10000;
+
     /** Creates new form OutputViewPanel */
     public OutputViewPanel(DefaultController controller) {
         this.controller = controller;
@@ -63,18 +72,77 @@ public class OutputViewPanel extends AbstractViewPanel {
     }
 
     /**
-     * Appends a string (on a new line) to the log text area
+     * Appends a string (on a new line) to the log text area. The string is
+     * inserted at the end of the document rather than replacing the text, and
+     * the oldest lines are removed once the log reaches its maximum length.
      * @param string
      */
     public void appendToLogText(String string)
     {
-        if(logTextArea.getText() != null)
+        Document logDocument = logTextArea.getDocument();
+
+        try
         {
-            setLogText(logTextArea.getText() + NEW_LINE + string);
+            // Text components always use a line feed to separate lines
+            // within their documents
+            if (logDocument.getLength() > 0)
+            {
+                logDocument.insertString(logDocument.getLength(), "\n" + string, null);
+            }
+            else
+            {
+                logDocument.insertString(0, string, null);
+            }
+
+            int excessLines = logTextArea.getLineCount() - MAX_LOG_LINES;
+
+            if (excessLines > 0)
+            {
+                logDocument.remove(0, logTextArea.getLineEndOffset(excessLines - 1));
+            }
+        }
+        catch (BadLocationException ex)
+        {
+            Logger.getLogger(OutputViewPanel.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Shows the progress of a search in the progress bar
+     * @param searchProgress
+     */
+    public void setSearchProgress(SearchProgress searchProgress)
+    {
+        searchProgressLabel.setText(searchProgress.toString());
+
+        SearchProgress.Phase phase = searchProgress.getPhase();
+
+        // The amount of work is unknown until the first page has arrived
+        if (phase == SearchProgress.Phase.AUTHENTICATING
+            || phase == SearchProgress.Phase.TRANSFORMING
+            || (phase == SearchProgress.Phase.SEARCHING && searchProgress.getPagesTotal() == 0))
+        {
+            searchProgressBar.setIndeterminate(true);
         }
         else
         {
-            setLogText(string);
+            int pagesTotal = Math.max(searchProgress.getPagesTotal(), 1);
+
+            searchProgressBar.setIndeterminate(false);
+            searchProgressBar.setMaximum(pagesTotal);
+
+            if (phase == SearchProgress.Phase.COMPLETE)
+            {
+                searchProgressBar.setValue(pagesTotal);
+            }
+            else if (phase == SearchProgress.Phase.IDLE)
+            {
+                searchProgressBar.setValue(0);
+            }
+            else
+            {
+                searchProgressBar.setValue(searchProgress.getPagesFetched());
+            }
         }
     }
 
@@ -117,6 +185,8 @@ public class OutputViewPanel extends AbstractViewPanel {
         logTextArea = new javax.swing.JTextArea();
         jScrollPane2 = new javax.swing.JScrollPane();
         resultsOutputTextArea = new javax.swing.JTextArea();
+        searchProgressLabel = new javax.swing.JLabel();
+        searchProgressBar = new javax.swing.JProgressBar();
 
         logTextArea.setColumns(20);
         logTextArea.setRows(5);
@@ -135,15 +205,28 @@ public class OutputViewPanel extends AbstractViewPanel {
 
         outputTabbedPane.addTab("Results XML", jScrollPane2);
 
+        searchProgressLabel.setText("Idle");
+
+        searchProgressBar.setStringPainted(true);
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
             layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
             .addComponent(outputTabbedPane, javax.swing.GroupLayout.DEFAULT_SIZE, 400, Short.MAX_VALUE)
+            .addGroup(layout.createSequentialGroup()
+                .addComponent(searchProgressLabel)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(searchProgressBar, javax.swing.GroupLayout.DEFAULT_SIZE, 369, Short.MAX_VALUE))
         );
         layout.setVerticalGroup(
             layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-            .addComponent(outputTabbedPane, javax.swing.GroupLayout.DEFAULT_SIZE, 300, Short.MAX_VALUE)
+            .addGroup(layout.createSequentialGroup()
+                .addComponent(outputTabbedPane, javax.swing.GroupLayout.DEFAULT_SIZE, 274, Short.MAX_VALUE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.CENTER)
+                    .addComponent(searchProgressLabel)
+                    .addComponent(searchProgressBar, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
         );
     }// </editor-fold>//GEN-END:initComponents
 
@@ -163,7 +246,11 @@ public class OutputViewPanel extends AbstractViewPanel {
     @Override
     public void modelPropertyChange(PropertyChangeEvent evt)
     {
-        if (evt.getPropertyName().equals(DefaultController.WS_LITE_SEARCH_LOG_PROPERTY))
+        if (evt.getPropertyName().equals(DefaultController.WS_LITE_SEARCH_LOG_APPEND_PROPERTY))
+        {
+            appendToLogText(evt.getNewValue().toString());
+        }
+        else if (evt.getPropertyName().equals(DefaultController.WS_LITE_SEARCH_LOG_PROPERTY))
         {
             String newStringValue = evt.getNewValue().toString();
 
@@ -183,6 +270,10 @@ public class OutputViewPanel extends AbstractViewPanel {
                 resultsOutputTextArea.setText(newStringValue);
             }
         }
+        else if (evt.getPropertyName().equals(DefaultController.WS_LITE_SEARCH_SEARCH_PROGRESS_PROPERTY))
+        {
+            setSearchProgress((SearchProgress) evt.getNewValue());
+        }
     }
 
 
@@ -192,6 +283,8 @@ public class OutputViewPanel extends AbstractViewPanel {
     private javax.swing.JTextArea logTextArea;
     private javax.swing.JTabbedPane outputTabbedPane;
     private javax.swing.JTextArea resultsOutputTextArea;
+    private javax.swing.JProgressBar searchProgressBar;
+    private javax.swing.JLabel searchProgressLabel;
     // End of variables declaration//GEN-END:variables
 
     public static void main(String args[])
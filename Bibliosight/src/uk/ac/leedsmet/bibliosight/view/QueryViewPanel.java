@@ -34,9 +34,12 @@ import java.awt.Frame;
 import java.awt.event.ItemEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyVetoException;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -52,6 +55,7 @@ import javax.swing.WindowConstants;
 import uk.ac.leedsmet.bibliosight.controller.DefaultController;
 import uk.ac.leedsmet.bibliosight.controller.DefaultController.DateMode;
 import uk.ac.leedsmet.bibliosight.controller.DefaultController.SymbolicTimeSpan;
+import uk.ac.leedsmet.bibliosight.model.SearchProgress;
 import uk.ac.leedsmet.bibliosight.utilities.ProxyOptionsDialog;
 
 /**
@@ -61,6 +65,7 @@ import uk.ac.leedsmet.bibliosight.utilities.ProxyOptionsDialog;
 public class QueryViewPanel extends AbstractViewPanel {
 
     private static final String MSG_RESULTS_XML_IS_EMPTY = "The results XML is currently empty.";
+    private static final String MSG_RESULTS_WRITTEN_TO_FILE = "Search results are being written directly to ";
 
     /**
      * Controller used by the view to communicate changes
@@ -87,6 +92,12 @@ public class QueryViewPanel extends AbstractViewPanel {
      */
     private Integer currentProxyPort_;
 
+    /**
+     * Local copy of the path that search results are written to, or an empty
+     * string if results are only shown in the output window
+     */
+    private String currentOutputPath_ = "";
+
     /**
      * Create a new query view panel
      * @param controller Controller to connect the view panel with the data model
@@ -223,6 +234,45 @@ public class QueryViewPanel extends AbstractViewPanel {
         return timeSpan;
     }
 
+    /**
+     * Returns a default file name for saved results, using a date/timestamp
+     * @return
+     */
+    private String getDefaultResultsFileName()
+    {
+        // A date/timestamp is a reasonably useful default for the filename
+        Date saveDate = new Date();
+        SimpleDateFormat saveDateFormat = new SimpleDateFormat();
+        Calendar saveCalendar = Calendar.getInstance();
+        String saveDateValue = null;
+
+        saveDateFormat.setCalendar(saveCalendar);
+        saveDateFormat.applyPattern("yyyy-MM-dd_HHmm");
+        saveDateValue = saveDateFormat.format(saveDate);
+
+        return "query_" + saveDateValue + ".xml";
+    }
+
+    /**
+     * Asks the user to choose a file for search results
+     * @return the chosen file or null if no file was chosen
+     */
+    private File chooseResultsFile()
+    {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File(getDefaultResultsFileName()));
+        Integer fileChooserResult = fileChooser.showSaveDialog(this);
+
+        switch (fileChooserResult)
+        {
+            case JFileChooser.APPROVE_OPTION:
+                return fileChooser.getSelectedFile();
+
+            default:
+                return null;
+        }
+    }
+
     /**
      * Saves the current contents of the results output to a file
      */
@@ -232,27 +282,22 @@ public class QueryViewPanel extends AbstractViewPanel {
 
         try
         {
-            // A date/timestamp is a reasonably useful default for the filename
-            Date saveDate = new Date();
-            SimpleDateFormat saveDateFormat = new SimpleDateFormat();
-            Calendar saveCalendar = Calendar.getInstance();
-            String saveDateValue = null;
-
-            saveDateFormat.setCalendar(saveCalendar);
-            saveDateFormat.applyPattern("yyyy-MM-dd_HHmm");
-            saveDateValue = saveDateFormat.format(saveDate);
+            File file = chooseResultsFile();
 
-            JFileChooser fileChooser = new JFileChooser();
-            fileChooser.setSelectedFile(new File("query_" + saveDateValue + ".xml"));
-            Integer fileChooserResult = fileChooser.showSaveDialog(this);
-
-            switch (fileChooserResult)
+            if (file != null)
             {
-                case JFileChooser.APPROVE_OPTION:
-                    File file = fileChooser.getSelectedFile();
-                    FileWriter fileWriter = new FileWriter(file);
+                // The results XML declares UTF-8, so it must not be written
+                // in the platform default encoding
+                Writer fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+
+                try
+                {
                     fileWriter.write(outputViewPanel_.getResultsOutputText());
+                }
+                finally
+                {
                     fileWriter.close();
+                }
             }
         }
         catch (IOException ex)
@@ -308,6 +353,9 @@ public class QueryViewPanel extends AbstractViewPanel {
         saveResultsButton = new javax.swing.JButton();
         performSearchButton = new javax.swing.JButton();
         viewResultsButton = new javax.swing.JButton();
+        harvestAllPagesCheckBox = new javax.swing.JCheckBox();
+        cancelSearchButton = new javax.swing.JButton();
+        writeResultsToFileCheckBox = new javax.swing.JCheckBox();
 
         queryOptionsPanel.setBorder(javax.swing.BorderFactory.createTitledBorder("Query options"));
 
@@ -695,6 +743,28 @@ public class QueryViewPanel extends AbstractViewPanel {
             }
         });
 
+        harvestAllPagesCheckBox.setText("Retrieve all pages");
+        harvestAllPagesCheckBox.addItemListener(new java.awt.event.ItemListener() {
+            public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                harvestAllPagesCheckBoxItemStateChanged(evt);
+            }
+        });
+
+        cancelSearchButton.setText("Cancel search");
+        cancelSearchButton.setEnabled(false);
+        cancelSearchButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                cancelSearchButtonActionPerformed(evt);
+            }
+        });
+
+        writeResultsToFileCheckBox.setText("Write results to file…");
+        writeResultsToFileCheckBox.addItemListener(new java.awt.event.ItemListener() {
+            public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                writeResultsToFileCheckBoxItemStateChanged(evt);
+            }
+        });
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -708,8 +778,15 @@ public class QueryViewPanel extends AbstractViewPanel {
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(viewResultsButton)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                        .addComponent(saveResultsButton))
-                    .addComponent(performSearchButton)
+                        .addComponent(saveResultsButton)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(writeResultsToFileCheckBox))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(performSearchButton)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(cancelSearchButton)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(harvestAllPagesCheckBox))
                     .addComponent(queryOptionsPanel, javax.swing.GroupLayout.Alignment.TRAILING, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
                 .addContainerGap())
         );
@@ -724,9 +801,13 @@ public class QueryViewPanel extends AbstractViewPanel {
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(proxySettingsButton)
                     .addComponent(viewResultsButton)
-                    .addComponent(saveResultsButton))
+                    .addComponent(saveResultsButton)
+                    .addComponent(writeResultsToFileCheckBox))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                .addComponent(performSearchButton)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(performSearchButton)
+                    .addComponent(cancelSearchButton)
+                    .addComponent(harvestAllPagesCheckBox))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
     }// </editor-fold>//GEN-END:initComponents
@@ -1069,7 +1150,11 @@ public class QueryViewPanel extends AbstractViewPanel {
 
     private void saveResultsButtonActionPerformed(java.awt.event.ActionEvent evt)//GEN-FIRST:event_saveResultsButtonActionPerformed
     {//GEN-HEADEREND:event_saveResultsButtonActionPerformed
-        if (outputViewPanel_.getResultsOutputText().length() > 0)
+        if (currentOutputPath_.length() > 0)
+        {
+            JOptionPane.showMessageDialog(this, MSG_RESULTS_WRITTEN_TO_FILE + currentOutputPath_, "Message", JOptionPane.INFORMATION_MESSAGE);
+        }
+        else if (outputViewPanel_.getResultsOutputText().length() > 0)
         {
             saveResultsOutputToFile();
         }
@@ -1079,6 +1164,52 @@ public class QueryViewPanel extends AbstractViewPanel {
         }
     }//GEN-LAST:event_saveResultsButtonActionPerformed
 
+    private void harvestAllPagesCheckBoxItemStateChanged(java.awt.event.ItemEvent evt)//GEN-FIRST:event_harvestAllPagesCheckBoxItemStateChanged
+    {//GEN-HEADEREND:event_harvestAllPagesCheckBoxItemStateChanged
+        try {
+            controller_.changeHarvestAllPages(harvestAllPagesCheckBox.isSelected());
+        } catch (Exception ex) {
+            //  Handle exception
+        }
+    }//GEN-LAST:event_harvestAllPagesCheckBoxItemStateChanged
+
+    private void cancelSearchButtonActionPerformed(java.awt.event.ActionEvent evt)//GEN-FIRST:event_cancelSearchButtonActionPerformed
+    {//GEN-HEADEREND:event_cancelSearchButtonActionPerformed
+        try {
+            controller_.cancelWsLiteQuery();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }//GEN-LAST:event_cancelSearchButtonActionPerformed
+
+    private void writeResultsToFileCheckBoxItemStateChanged(java.awt.event.ItemEvent evt)//GEN-FIRST:event_writeResultsToFileCheckBoxItemStateChanged
+    {//GEN-HEADEREND:event_writeResultsToFileCheckBoxItemStateChanged
+        switch (evt.getStateChange())
+        {
+            case ItemEvent.SELECTED:
+                // The path is only chosen when the option is switched on by
+                // the user rather than by a change in the model
+                if (currentOutputPath_.length() == 0)
+                {
+                    File file = chooseResultsFile();
+
+                    if (file != null)
+                    {
+                        controller_.changeOutputPath(file.getAbsolutePath());
+                    }
+                    else
+                    {
+                        writeResultsToFileCheckBox.setSelected(false);
+                    }
+                }
+                break;
+
+            case ItemEvent.DESELECTED:
+                controller_.changeOutputPath("");
+                break;
+        }
+    }//GEN-LAST:event_writeResultsToFileCheckBoxItemStateChanged
+
     /**
      * Updates the view with value changes from model properties
      * @param evt
@@ -1172,6 +1303,35 @@ public class QueryViewPanel extends AbstractViewPanel {
                     startRecordFormattedTextField.setText(newIntegerValue.toString());
                 }
             }
+            else if (evt.getPropertyName().equals(DefaultController.WS_LITE_SEARCH_HARVEST_ALL_PAGES_PROPERTY))
+            {
+                Boolean newBooleanValue = (Boolean)evt.getNewValue();
+
+                if (harvestAllPagesCheckBox.isSelected() != newBooleanValue)
+                {
+                    harvestAllPagesCheckBox.setSelected(newBooleanValue);
+                }
+            }
+            else if (evt.getPropertyName().equals(DefaultController.WS_LITE_SEARCH_OUTPUT_PATH_PROPERTY))
+            {
+                String newStringValue = evt.getNewValue().toString();
+
+                currentOutputPath_ = newStringValue;
+
+                if (writeResultsToFileCheckBox.isSelected() != (newStringValue.length() > 0))
+                {
+                    writeResultsToFileCheckBox.setSelected(newStringValue.length() > 0);
+                }
+
+                writeResultsToFileCheckBox.setToolTipText(newStringValue.length() > 0 ? newStringValue : null);
+            }
+            else if (evt.getPropertyName().equals(DefaultController.WS_LITE_SEARCH_SEARCH_PROGRESS_PROPERTY))
+            {
+                Boolean isSearchRunning = ((SearchProgress)evt.getNewValue()).isRunning();
+
+                performSearchButton.setEnabled(!isSearchRunning);
+                cancelSearchButton.setEnabled(isSearchRunning);
+            }
             else if (evt.getPropertyName().equals(DefaultController.WS_LITE_SEARCH_MAX_RESULT_COUNT_PROPERTY))
             {
                 Integer newIntegerValue = (Integer)evt.getNewValue();
@@ -1320,6 +1480,7 @@ public class QueryViewPanel extends AbstractViewPanel {
 
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JButton cancelSearchButton;
     private javax.swing.JLabel databaseIdLabel;
     private javax.swing.JTextField databaseIdTextField;
     private javax.swing.JRadioButton dateModeRangeRadioButton;
@@ -1329,6 +1490,7 @@ public class QueryViewPanel extends AbstractViewPanel {
     private javax.swing.JLabel editionsLabel;
     private javax.swing.JCheckBox editionsSciCheckbox;
     private javax.swing.JCheckBox editionsSsciCheckbox;
+    private javax.swing.JCheckBox harvestAllPagesCheckBox;
     private javax.swing.JFormattedTextField maxRecordsFormattedTextField;
     private javax.swing.JLabel maxRecordsLabel;
     private javax.swing.JButton performSearchButton;
@@ -1356,6 +1518,7 @@ public class QueryViewPanel extends AbstractViewPanel {
     private javax.swing.JFormattedTextField timeSpanEndFormattedTextField;
     private javax.swing.JLabel timeSpanEndLabel;
     private javax.swing.JButton viewResultsButton;
+    private javax.swing.JCheckBox writeResultsToFileCheckBox;
     // End of variables declaration//GEN-END:variables
 
     public static void main(String args[])
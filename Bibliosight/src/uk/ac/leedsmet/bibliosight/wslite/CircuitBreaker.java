@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import uk.ac.leedsmet.bibliosight.BibliosightProperties;
+
+/**
+ * Stops requests being sent to Web Services Lite while it is failing.
+ *
+ * After a number of consecutive failures the breaker opens and requests are
+ * refused without being sent. Once the open time has passed, a single request
+ * is let through as a probe: if it succeeds the breaker closes again, and if
+ * it fails the breaker stays open for another period. Only failures of the
+ * service count, not errors in the request itself, and a fault returned for
+ * such an error shows that the service is answering. A probe whose outcome
+ * says nothing about the service, such as one that is aborted, releases its
+ * place so that another probe can be sent at once. Every caller shares the
+ * default breaker.
+ *
+ * @author Mike Taylor
+ */
+public class CircuitBreaker
+{
+    public static final String FAILURE_THRESHOLD_PROPERTY = "bibliosight.circuitBreaker.failureThreshold";
+    public static final String OPEN_TIME_PROPERTY = "bibliosight.circuitBreaker.openTime";
+
+    /**
+     * Default number of consecutive failures that open the breaker
+     */
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Default time in seconds that the breaker stays open before a probe
+     */
+    private static final long DEFAULT_OPEN_TIME = 30L;
+
+    private static CircuitBreaker defaultBreaker_;
+
+    private final int failureThreshold_;
+
+    /**
+     * Time in milliseconds that the breaker stays open before a probe
+     */
+    private final long openTime_;
+
+    private int consecutiveFailures_;
+
+    /**
+     * Time in milliseconds at which the breaker opened, or zero if it is
+     * closed
+     */
+    private long openedTime_;
+
+    /**
+     * Time in milliseconds at which the current probe was let through, or
+     * zero if there is none
+     */
+    private long probeTime_;
+
+    /**
+     * The thread that sent the current probe, or null if there is none
+     */
+    private Thread probeThread_;
+
+    /**
+     * Create a circuit breaker
+     * @param failureThreshold Number of consecutive failures that open the
+     * breaker
+     * @param openTime Time in milliseconds that the breaker stays open before
+     * a probe
+     */
+    public CircuitBreaker(int failureThreshold, long openTime)
+    {
+        this.failureThreshold_ = Math.max(1, failureThreshold);
+        this.openTime_ = openTime;
+    }
+
+    /**
+     * Returns the breaker shared by every request, as configured by system
+     * properties
+     * @return
+     */
+    public static synchronized CircuitBreaker getDefault()
+    {
+        if (defaultBreaker_ == null)
+        {
+            defaultBreaker_ = new CircuitBreaker(
+                BibliosightProperties.getInt(FAILURE_THRESHOLD_PROPERTY, DEFAULT_FAILURE_THRESHOLD),
+                BibliosightProperties.getLong(OPEN_TIME_PROPERTY, DEFAULT_OPEN_TIME) * 1000
+            );
+        }
+
+        return defaultBreaker_;
+    }
+
+    /**
+     * Returns true if the breaker is open
+     * @return
+     */
+    public synchronized boolean isOpen()
+    {
+        return openedTime_ != 0L;
+    }
+
+    /**
+     * Returns true if a request may be sent. When the breaker is open, only
+     * one probe is let through each open period.
+     * @return
+     */
+    public synchronized boolean allowRequest()
+    {
+        if (openedTime_ == 0L)
+        {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+
+        // A probe whose outcome is never recorded is replaced after a period
+        if (now - openedTime_ >= openTime_ && (probeTime_ == 0L || now - probeTime_ >= openTime_))
+        {
+            probeTime_ = now;
+            probeThread_ = Thread.currentThread();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the time in seconds until the next probe may be sent
+     * @return
+     */
+    public synchronized long getSecondsUntilProbe()
+    {
+        if (openedTime_ == 0L)
+        {
+            return 0L;
+        }
+
+        long probeDue = Math.max(openedTime_, probeTime_) + openTime_;
+
+        return Math.max(0L, (probeDue - System.currentTimeMillis() + 999) / 1000);
+    }
+
+    /**
+     * Records a request that the service answered, closing the breaker
+     */
+    public synchronized void recordSuccess()
+    {
+        consecutiveFailures_ = 0;
+        openedTime_ = 0L;
+        probeTime_ = 0L;
+        probeThread_ = null;
+    }
+
+    /**
+     * Records a failure of the service, opening the breaker if there have been
+     * too many in a row or if the request was a probe
+     */
+    public synchronized void recordFailure()
+    {
+        consecutiveFailures_++;
+
+        if (openedTime_ != 0L || consecutiveFailures_ >= failureThreshold_)
+        {
+            openedTime_ = System.currentTimeMillis();
+            probeTime_ = 0L;
+            probeThread_ = null;
+        }
+    }
+
+    /**
+     * Ends a request whose outcome has not been recorded. If the request was
+     * the probe sent by the calling thread, another probe may be sent at once
+     * rather than after the open time. This does nothing once the outcome has
+     * been recorded, so it can be called whenever a request ends.
+     */
+    public synchronized void releaseProbe()
+    {
+        if (probeThread_ == Thread.currentThread())
+        {
+            probeTime_ = 0L;
+            probeThread_ = null;
+        }
+    }
+}
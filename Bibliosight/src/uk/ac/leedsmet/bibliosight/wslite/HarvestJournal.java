@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.RetrieveParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.SearchResults;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.bind.JAXBException;
+import uk.ac.leedsmet.bibliosight.AtomicFileOutputStream;
+import uk.ac.leedsmet.bibliosight.BibliosightProperties;
+
+/**
+ * A journal of the pages retrieved by a harvest, kept on local disk so that a
+ * harvest that fails part way through can be resumed.
+ *
+ * Each harvest has its own directory, named after a hash of its search
+ * parameters, in which every page is saved as soon as it is retrieved. When
+ * the same harvest is run again, the pages that were saved are read from the
+ * journal and only the rest are requested from the service. The journal is
+ * deleted once the harvest completes.
+ *
+ * @author Mike Taylor
+ */
+public class HarvestJournal
+{
+    public static final String DIRECTORY_PROPERTY = "bibliosight.journal.dir";
+    public static final String MAX_AGE_PROPERTY = "bibliosight.journal.maxAge";
+
+    /**
+     * Default age in seconds after which a journal is no longer resumed
+     */
+    private static final long DEFAULT_MAX_AGE = 24L * 60 * 60;
+
+    private static final String PARAMETERS_FILE_NAME = "parameters.txt";
+
+    private static final String PAGE_FILE_PREFIX = "page-";
+
+    private static final String PAGE_FILE_SUFFIX = ".xml.gz";
+
+    /**
+     * The directory the pages are saved in
+     */
+    private final File directory_;
+
+    /**
+     * Number of pages saved by earlier attempts at the harvest
+     */
+    private final int resumedPageCount_;
+
+    private HarvestJournal(File directory, int resumedPageCount)
+    {
+        this.directory_ = directory;
+        this.resumedPageCount_ = resumedPageCount;
+    }
+
+    /**
+     * Returns the directory that journals are kept in, as configured by
+     * system properties
+     * @return
+     */
+    public static File getDefaultBaseDirectory()
+    {
+        return BibliosightProperties.getFile(DIRECTORY_PROPERTY, "journal");
+    }
+
+    /**
+     * Opens the journal of a harvest, creating it if necessary. A journal
+     * that is older than the maximum age set by system properties is started
+     * again, as the results of the search may have changed since.
+     * @param baseDirectory The directory that journals are kept in
+     * @param queryParameters The query options for the harvest
+     * @param retrieveParameters The retrieve options for the first page
+     * @return
+     * @throws IOException
+     */
+    public static HarvestJournal open(File baseDirectory, QueryParameters queryParameters, RetrieveParameters retrieveParameters) throws IOException
+    {
+        String parameters = SearchResultsCache.getCanonicalParameters(queryParameters, retrieveParameters);
+        File directory = new File(baseDirectory, SearchResultsCache.getHash(parameters));
+        File parametersFile = new File(directory, PARAMETERS_FILE_NAME);
+
+        long maxAge = BibliosightProperties.getLong(MAX_AGE_PROPERTY, DEFAULT_MAX_AGE) * 1000;
+
+        if (parametersFile.isFile())
+        {
+            if (System.currentTimeMillis() - parametersFile.lastModified() <= maxAge && parameters.equals(readText(parametersFile)))
+            {
+                return new HarvestJournal(directory, countPages(directory));
+            }
+
+            deleteDirectory(directory);
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("The harvest journal directory could not be created: " + directory);
+        }
+
+        writeText(parametersFile, parameters);
+
+        return new HarvestJournal(directory, 0);
+    }
+
+    /**
+     * Returns the directory the pages are saved in
+     * @return
+     */
+    public File getDirectory()
+    {
+        return directory_;
+    }
+
+    /**
+     * Returns the number of pages saved by earlier attempts at the harvest
+     * @return
+     */
+    public int getResumedPageCount()
+    {
+        return resumedPageCount_;
+    }
+
+    /**
+     * Returns a saved page, or null if the page has not been saved
+     * @param firstRecord The first record of the page
+     * @return
+     */
+    public SearchResults getPage(int firstRecord)
+    {
+        File pageFile = getPageFile(firstRecord);
+
+        if (!pageFile.isFile())
+        {
+            return null;
+        }
+
+        try
+        {
+            return SearchResultsCache.readSearchResults(pageFile);
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(HarvestJournal.class.getName()).log(Level.WARNING, "A saved page could not be read and will be retrieved again: " + pageFile, ex);
+        }
+        catch (JAXBException ex)
+        {
+            Logger.getLogger(HarvestJournal.class.getName()).log(Level.WARNING, "A saved page could not be read and will be retrieved again: " + pageFile, ex);
+        }
+
+        pageFile.delete();
+        return null;
+    }
+
+    /**
+     * Saves a page. Failures are logged and otherwise ignored, so that the
+     * harvest can continue without the page being saved.
+     * @param firstRecord The first record of the page
+     * @param page
+     */
+    public void putPage(int firstRecord, SearchResults page)
+    {
+        File pageFile = getPageFile(firstRecord);
+
+        try
+        {
+            SearchResultsCache.writeSearchResults(pageFile, page);
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(HarvestJournal.class.getName()).log(Level.WARNING, "A page could not be saved to the harvest journal: " + pageFile, ex);
+        }
+        catch (JAXBException ex)
+        {
+            Logger.getLogger(HarvestJournal.class.getName()).log(Level.WARNING, "A page could not be saved to the harvest journal: " + pageFile, ex);
+        }
+    }
+
+    /**
+     * Deletes the journal and its saved pages
+     */
+    public void delete()
+    {
+        deleteDirectory(directory_);
+    }
+
+    private File getPageFile(int firstRecord)
+    {
+        return new File(directory_, PAGE_FILE_PREFIX + firstRecord + PAGE_FILE_SUFFIX);
+    }
+
+    private static int countPages(File directory)
+    {
+        int pageCount = 0;
+        File[] files = directory.listFiles();
+
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                if (file.getName().startsWith(PAGE_FILE_PREFIX) && file.getName().endsWith(PAGE_FILE_SUFFIX))
+                {
+                    pageCount++;
+                }
+            }
+        }
+
+        return pageCount;
+    }
+
+    private static void deleteDirectory(File directory)
+    {
+        File[] files = directory.listFiles();
+
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    private static String readText(File file) throws IOException
+    {
+        InputStream inputStream = new FileInputStream(file);
+
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int length = 0;
+
+            while ((length = inputStream.read(buffer)) != -1)
+            {
+                bytes.write(buffer, 0, length);
+            }
+
+            return bytes.toString("UTF-8");
+        }
+        finally
+        {
+            SearchResultsCache.close(inputStream);
+        }
+    }
+
+    private static void writeText(File file, String text) throws IOException
+    {
+        AtomicFileOutputStream fileOutputStream = new AtomicFileOutputStream(file);
+
+        try
+        {
+            Writer writer = new OutputStreamWriter(fileOutputStream, "UTF-8");
+            writer.write(text);
+            writer.flush();
+
+            fileOutputStream.commit();
+        }
+        finally
+        {
+            fileOutputStream.close();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.RetrieveParameters;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import uk.ac.leedsmet.bibliosight.AtomicFileOutputStream;
+import uk.ac.leedsmet.bibliosight.BibliosightProperties;
+
+/**
+ * Records the date of the last successful run of each query, so that the next
+ * run only needs to search the records added since.
+ *
+ * Dates are kept in a properties file keyed by a hash of the query, its
+ * database and its editions. The time span is left out of the key, as it is
+ * what changes from one run to the next. The file is read again before each
+ * change so that several queries can share it.
+ *
+ * @author Mike Taylor
+ */
+public class HighWaterMarkStore
+{
+    /**
+     * Lock shared by every store, as stores for the same file may be used
+     * from several threads
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * The file the dates are kept in
+     */
+    private final File file_;
+
+    /**
+     * Create a store that keeps its dates in the specified file
+     * @param file
+     */
+    public HighWaterMarkStore(File file)
+    {
+        this.file_ = file;
+    }
+
+    /**
+     * Returns the file that dates are kept in by default
+     * @return
+     */
+    public static File getDefaultFile()
+    {
+        return new File(BibliosightProperties.getUserDirectory(), "highwatermarks.properties");
+    }
+
+    /**
+     * Returns the file the dates are kept in
+     * @return
+     */
+    public File getFile()
+    {
+        return file_;
+    }
+
+    /**
+     * Returns the date of the last successful run of a query in yyyy-mm-dd
+     * form, or null if it has not been run
+     * @param queryParameters
+     * @return
+     * @throws IOException
+     */
+    public String getLastRunDate(QueryParameters queryParameters) throws IOException
+    {
+        synchronized (LOCK)
+        {
+            return load().getProperty(getQueryKey(queryParameters));
+        }
+    }
+
+    /**
+     * Records the date of a successful run of a query
+     * @param queryParameters
+     * @param date The date the run started, in yyyy-mm-dd form
+     * @throws IOException
+     */
+    public void setLastRunDate(QueryParameters queryParameters, String date) throws IOException
+    {
+        synchronized (LOCK)
+        {
+            Properties marks = load();
+            marks.setProperty(getQueryKey(queryParameters), date);
+
+            File parent = file_.getAbsoluteFile().getParentFile();
+
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+            {
+                throw new IOException("The directory could not be created: " + parent);
+            }
+
+            AtomicFileOutputStream outputStream = new AtomicFileOutputStream(file_);
+
+            try
+            {
+                marks.store(outputStream, "Bibliosight last run dates");
+                outputStream.commit();
+            }
+            finally
+            {
+                outputStream.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the file that the records written by the runs of a query are
+     * kept in, so that the records found again by a run that overlaps the
+     * last one can be recognised without those written by other queries.
+     * The files are kept in a directory next to the file the dates are kept
+     * in.
+     * @param queryParameters
+     * @return
+     */
+    public File getRecordIndexFile(QueryParameters queryParameters)
+    {
+        File directory = new File(file_.getAbsoluteFile().getParentFile(), "records");
+
+        return new File(directory, getQueryKey(queryParameters) + ".idx");
+    }
+
+    /**
+     * Returns the key of a query, which leaves out its time span
+     * @param queryParameters
+     * @return
+     */
+    public static String getQueryKey(QueryParameters queryParameters)
+    {
+        QueryParameters query = new QueryParameters();
+        query.setDatabaseID(queryParameters.getDatabaseID());
+        query.setQueryLanguage(queryParameters.getQueryLanguage());
+        query.setUserQuery(queryParameters.getUserQuery());
+        query.getEditions().addAll(queryParameters.getEditions());
+
+        return SearchResultsCache.getHash(SearchResultsCache.getCanonicalParameters(query, new RetrieveParameters()));
+    }
+
+    private Properties load() throws IOException
+    {
+        Properties marks = new Properties();
+
+        if (file_.isFile())
+        {
+            InputStream inputStream = new FileInputStream(file_);
+
+            try
+            {
+                marks.load(inputStream);
+            }
+            finally
+            {
+                SearchResultsCache.close(inputStream);
+            }
+        }
+
+        return marks;
+    }
+}
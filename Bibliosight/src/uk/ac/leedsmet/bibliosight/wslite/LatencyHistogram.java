@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import java.util.Arrays;
+
+/**
+ * Counts the requests to a Web Services Lite operation by how long they took.
+ *
+ * Each bucket counts the requests that took no longer than its limit and
+ * longer than the limit of the bucket before it. The last bucket counts the
+ * requests that took longer than every limit.
+ *
+ * @author Mike Taylor
+ */
+public class LatencyHistogram
+{
+    /**
+     * Upper limits of the buckets in milliseconds
+     */
+    private static final long[] BUCKET_LIMITS = { 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000 };
+
+    private final String operation_;
+
+    private final long[] bucketCounts_ = new long[BUCKET_LIMITS.length + 1];
+
+    private long count_;
+
+    private long failureCount_;
+
+    /**
+     * Total time of the requests in nanoseconds
+     */
+    private long totalTime_;
+
+    /**
+     * Time of the longest request in nanoseconds
+     */
+    private long maxTime_;
+
+    /**
+     * Create an empty histogram for an operation
+     * @param operation
+     */
+    public LatencyHistogram(String operation)
+    {
+        this.operation_ = operation;
+    }
+
+    /**
+     * Records a request
+     * @param time The time the request took in nanoseconds
+     * @param succeeded Whether the request succeeded
+     */
+    public synchronized void record(long time, boolean succeeded)
+    {
+        long milliseconds = time / 1000000;
+        int bucket = 0;
+
+        while (bucket < BUCKET_LIMITS.length && milliseconds > BUCKET_LIMITS[bucket])
+        {
+            bucket++;
+        }
+
+        bucketCounts_[bucket]++;
+        count_++;
+        totalTime_ += time;
+        maxTime_ = Math.max(maxTime_, time);
+
+        if (!succeeded)
+        {
+            failureCount_++;
+        }
+    }
+
+    /**
+     * Returns a copy of the histogram as it is now
+     * @return
+     */
+    public synchronized LatencyHistogram copy()
+    {
+        LatencyHistogram histogram = new LatencyHistogram(operation_);
+
+        System.arraycopy(bucketCounts_, 0, histogram.bucketCounts_, 0, bucketCounts_.length);
+        histogram.count_ = count_;
+        histogram.failureCount_ = failureCount_;
+        histogram.totalTime_ = totalTime_;
+        histogram.maxTime_ = maxTime_;
+
+        return histogram;
+    }
+
+    /**
+     * Returns the name of the operation
+     * @return
+     */
+    public String getOperation()
+    {
+        return operation_;
+    }
+
+    /**
+     * Returns the number of requests recorded
+     * @return
+     */
+    public synchronized long getCount()
+    {
+        return count_;
+    }
+
+    /**
+     * Returns the number of requests that failed
+     * @return
+     */
+    public synchronized long getFailureCount()
+    {
+        return failureCount_;
+    }
+
+    /**
+     * Returns the mean time of the requests in milliseconds
+     * @return
+     */
+    public synchronized double getMeanMillis()
+    {
+        return count_ > 0 ? totalTime_ / 1e6 / count_ : 0.0;
+    }
+
+    /**
+     * Returns the time of the longest request in milliseconds
+     * @return
+     */
+    public synchronized double getMaxMillis()
+    {
+        return maxTime_ / 1e6;
+    }
+
+    /**
+     * Returns the upper limits of the buckets in milliseconds, which has one
+     * fewer element than the bucket counts
+     * @return
+     */
+    public long[] getBucketLimitsMillis()
+    {
+        return Arrays.copyOf(BUCKET_LIMITS, BUCKET_LIMITS.length);
+    }
+
+    /**
+     * Returns the number of requests in each bucket
+     * @return
+     */
+    public synchronized long[] getBucketCounts()
+    {
+        return Arrays.copyOf(bucketCounts_, bucketCounts_.length);
+    }
+}
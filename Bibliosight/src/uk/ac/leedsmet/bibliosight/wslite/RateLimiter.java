@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import java.util.concurrent.Semaphore;
+import uk.ac.leedsmet.bibliosight.BibliosightProperties;
+
+/**
+ * Limits the rate and concurrency of the requests sent to Web Services Lite,
+ * so that several harvests running at once are not throttled by the service.
+ *
+ * The rate is limited by a token bucket: tokens are added at the configured
+ * rate up to a small burst, and each request takes one, waiting if none are
+ * left. The number of requests in progress at once is limited separately.
+ * Every caller shares the default limiter, as the service limits the client
+ * as a whole.
+ *
+ * @author Mike Taylor
+ */
+public class RateLimiter
+{
+    public static final String REQUESTS_PER_SECOND_PROPERTY = "bibliosight.rateLimit.requestsPerSecond";
+    public static final String BURST_PROPERTY = "bibliosight.rateLimit.burst";
+    public static final String MAX_CONCURRENT_REQUESTS_PROPERTY = "bibliosight.rateLimit.maxConcurrentRequests";
+
+    /**
+     * Default number of requests per second, or zero for no limit
+     */
+    private static final double DEFAULT_REQUESTS_PER_SECOND = 5.0;
+
+    /**
+     * Default number of requests that may be sent at once after a pause
+     */
+    private static final int DEFAULT_BURST = 5;
+
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
+
+    private static final long NANOSECONDS_PER_SECOND = 1000000000L;
+
+    private static RateLimiter defaultLimiter_;
+
+    /**
+     * Tokens added per nanosecond, or zero if the rate is not limited
+     */
+    private final double tokensPerNanosecond_;
+
+    private final double burst_;
+
+    private final Semaphore concurrentRequests_;
+
+    /**
+     * Tokens in the bucket, which is negative when tokens have been reserved
+     * by waiting requests
+     */
+    private double tokens_;
+
+    /**
+     * Time in nanoseconds at which tokens were last added
+     */
+    private long lastRefillTime_;
+
+    /**
+     * Create a rate limiter
+     * @param requestsPerSecond Number of requests allowed per second, or zero
+     * for no limit
+     * @param burst Number of requests that may be sent at once after a pause
+     * @param maxConcurrentRequests Number of requests allowed in progress at
+     * once
+     */
+    public RateLimiter(double requestsPerSecond, int burst, int maxConcurrentRequests)
+    {
+        this.tokensPerNanosecond_ = requestsPerSecond / NANOSECONDS_PER_SECOND;
+        this.burst_ = Math.max(1, burst);
+        this.concurrentRequests_ = new Semaphore(Math.max(1, maxConcurrentRequests), true);
+        this.tokens_ = burst_;
+        this.lastRefillTime_ = System.nanoTime();
+    }
+
+    /**
+     * Returns the limiter shared by every request, as configured by system
+     * properties
+     * @return
+     */
+    public static synchronized RateLimiter getDefault()
+    {
+        if (defaultLimiter_ == null)
+        {
+            defaultLimiter_ = new RateLimiter(
+                BibliosightProperties.getDouble(REQUESTS_PER_SECOND_PROPERTY, DEFAULT_REQUESTS_PER_SECOND),
+                BibliosightProperties.getInt(BURST_PROPERTY, DEFAULT_BURST),
+                BibliosightProperties.getInt(MAX_CONCURRENT_REQUESTS_PROPERTY, DEFAULT_MAX_CONCURRENT_REQUESTS)
+            );
+        }
+
+        return defaultLimiter_;
+    }
+
+    /**
+     * Waits until a request may be sent. Every call must be followed by a call
+     * to release() once the request has completed.
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException
+    {
+        concurrentRequests_.acquire();
+
+        try
+        {
+            long waitTime = reserveToken();
+
+            if (waitTime > 0)
+            {
+                Thread.sleep(waitTime / 1000000, (int) (waitTime % 1000000));
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            concurrentRequests_.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Records that a request has completed
+     */
+    public void release()
+    {
+        concurrentRequests_.release();
+    }
+
+    /**
+     * Takes a token from the bucket, returning the time in nanoseconds to wait
+     * until it is available
+     */
+    private synchronized long reserveToken()
+    {
+        if (tokensPerNanosecond_ <= 0)
+        {
+            return 0L;
+        }
+
+        long now = System.nanoTime();
+
+        tokens_ = Math.min(burst_, tokens_ + (now - lastRefillTime_) * tokensPerNanosecond_);
+        lastRefillTime_ = now;
+        tokens_ -= 1;
+
+        return tokens_ >= 0 ? 0L : (long) (-tokens_ / tokensPerNanosecond_);
+    }
+}
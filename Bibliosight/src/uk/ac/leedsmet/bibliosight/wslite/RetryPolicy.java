@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.namespace.QName;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+import uk.ac.leedsmet.bibliosight.BibliosightProperties;
+import uk.ac.leedsmet.bibliosight.BibliosightSearchCancelledException;
+import uk.ac.leedsmet.bibliosight.BibliosightServiceUnavailableException;
+import uk.ac.leedsmet.bibliosight.BibliosightSessionRejectedException;
+
+/**
+ * Decides whether a failed request to Web Services Lite should be retried,
+ * and how long to wait before retrying it.
+ *
+ * Failures that are likely to be transient, such as internal server errors,
+ * SOAP faults raised by the server and transport failures, are retried with
+ * an exponential backoff and random jitter, so that concurrent requests do
+ * not retry in step. Failures caused by the request itself, such as invalid
+ * queries or failed authentication, are not retried. A rejected session is
+ * retried once it has been renewed.
+ *
+ * Each policy has a budget of retries shared by every request that uses it,
+ * so that a service that is down does not stall a harvest indefinitely.
+ *
+ * @author Mike Taylor
+ */
+public class RetryPolicy
+{
+    public static final String MAX_ATTEMPTS_PROPERTY = "bibliosight.retry.maxAttempts";
+    public static final String INITIAL_DELAY_PROPERTY = "bibliosight.retry.initialDelay";
+    public static final String MAX_DELAY_PROPERTY = "bibliosight.retry.maxDelay";
+    public static final String BUDGET_PROPERTY = "bibliosight.retry.budget";
+
+    /**
+     * Default number of attempts made at each request, including the first
+     */
+    private static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+    /**
+     * Default delay in milliseconds before the first retry
+     */
+    private static final long DEFAULT_INITIAL_DELAY = 1000L;
+
+    /**
+     * Default longest delay in milliseconds between retries
+     */
+    private static final long DEFAULT_MAX_DELAY = 30000L;
+
+    /**
+     * Default number of retries allowed for each run
+     */
+    private static final int DEFAULT_BUDGET = 50;
+
+    private static final Random random_ = new Random();
+
+    private final int maxAttempts_;
+
+    private final long initialDelay_;
+
+    private final long maxDelay_;
+
+    /**
+     * Number of retries left, or a negative number if retries are unlimited
+     */
+    private final AtomicInteger retriesRemaining_;
+
+    /**
+     * Number of retries made
+     */
+    private final AtomicInteger retryCount_ = new AtomicInteger();
+
+    /**
+     * Create a retry policy
+     * @param maxAttempts Number of attempts made at each request, including
+     * the first
+     * @param initialDelay Delay in milliseconds before the first retry
+     * @param maxDelay Longest delay in milliseconds between retries
+     * @param budget Number of retries allowed in total, or a negative number
+     * for no limit
+     */
+    public RetryPolicy(int maxAttempts, long initialDelay, long maxDelay, int budget)
+    {
+        this.maxAttempts_ = maxAttempts;
+        this.initialDelay_ = initialDelay;
+        this.maxDelay_ = maxDelay;
+        this.retriesRemaining_ = new AtomicInteger(budget);
+    }
+
+    /**
+     * Creates a retry policy for one run, as configured by system properties
+     * @return
+     */
+    public static RetryPolicy createDefault()
+    {
+        return new RetryPolicy(
+            BibliosightProperties.getInt(MAX_ATTEMPTS_PROPERTY, DEFAULT_MAX_ATTEMPTS),
+            BibliosightProperties.getLong(INITIAL_DELAY_PROPERTY, DEFAULT_INITIAL_DELAY),
+            BibliosightProperties.getLong(MAX_DELAY_PROPERTY, DEFAULT_MAX_DELAY),
+            BibliosightProperties.getInt(BUDGET_PROPERTY, DEFAULT_BUDGET)
+        );
+    }
+
+    /**
+     * Returns the number of attempts made at each request, including the
+     * first
+     * @return
+     */
+    public int getMaxAttempts()
+    {
+        return maxAttempts_;
+    }
+
+    /**
+     * Returns the number of retries made
+     * @return
+     */
+    public int getRetryCount()
+    {
+        return retryCount_.get();
+    }
+
+    /**
+     * Returns true if a failed attempt at a request should be retried, taking
+     * a retry from the budget if so
+     * @param failure The exception thrown by the attempt
+     * @param attempt The number of the attempt that failed, starting at 1
+     * @return
+     */
+    public boolean shouldRetry(Throwable failure, int attempt)
+    {
+        if (attempt >= maxAttempts_ || !isRetryable(failure))
+        {
+            return false;
+        }
+
+        while (true)
+        {
+            int retriesRemaining = retriesRemaining_.get();
+
+            if (retriesRemaining == 0)
+            {
+                return false;
+            }
+
+            if (retriesRemaining < 0 || retriesRemaining_.compareAndSet(retriesRemaining, retriesRemaining - 1))
+            {
+                retryCount_.incrementAndGet();
+                ServiceStatistics.getDefault().recordRetry();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the delay in milliseconds before retrying a failed attempt. The
+     * delay doubles with each attempt up to the maximum, and a random part of
+     * up to half of it is taken off.
+     * @param attempt The number of the attempt that failed, starting at 1
+     * @return
+     */
+    public long getDelay(int attempt)
+    {
+        long delay = initialDelay_;
+
+        for (int i = 1; i < attempt && delay < maxDelay_; i++)
+        {
+            delay *= 2;
+        }
+
+        delay = Math.min(delay, maxDelay_);
+
+        synchronized (random_)
+        {
+            return delay - (long) (random_.nextDouble() * delay / 2);
+        }
+    }
+
+    /**
+     * Waits before retrying a failed attempt
+     * @param attempt The number of the attempt that failed, starting at 1
+     * @throws InterruptedException
+     */
+    public void waitToRetry(int attempt) throws InterruptedException
+    {
+        Thread.sleep(getDelay(attempt));
+    }
+
+    /**
+     * Returns true if a failure is likely to be transient. The cause of each
+     * exception is examined in turn, as failures are usually wrapped.
+     * @param failure
+     * @return
+     */
+    public static boolean isRetryable(Throwable failure)
+    {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof BibliosightServiceUnavailableException
+                || cause instanceof BibliosightSearchCancelledException)
+            {
+                return false;
+            }
+
+            if (cause instanceof BibliosightSessionRejectedException)
+            {
+                return true;
+            }
+
+            if (cause instanceof com.thomsonreuters.wokmws.cxf.woksearchlite.InternalServerException_Exception
+                || cause instanceof com.thomsonreuters.wokmws.cxf.woksearchlite.ESTIWSException_Exception
+                || cause instanceof com.thomsonreuters.wokmws.cxf.auth.InternalServerException_Exception
+                || cause instanceof com.thomsonreuters.wokmws.cxf.auth.ESTIWSException_Exception)
+            {
+                return true;
+            }
+
+            if (cause instanceof com.thomsonreuters.wokmws.cxf.woksearchlite.AuthenticationException_Exception
+                || cause instanceof com.thomsonreuters.wokmws.cxf.woksearchlite.QueryException_Exception
+                || cause instanceof com.thomsonreuters.wokmws.cxf.woksearchlite.InvalidInputException_Exception
+                || cause instanceof com.thomsonreuters.wokmws.cxf.auth.AuthenticationException_Exception
+                || cause instanceof com.thomsonreuters.wokmws.cxf.auth.QueryException_Exception
+                || cause instanceof com.thomsonreuters.wokmws.cxf.auth.InvalidInputException_Exception)
+            {
+                return false;
+            }
+
+            if (cause instanceof SOAPFaultException)
+            {
+                return isServerFault((SOAPFaultException) cause);
+            }
+
+            // Transport failures such as timeouts and refused connections
+            if (cause instanceof WebServiceException || cause instanceof IOException)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if a SOAP fault was raised by the server rather than
+     * caused by the request
+     */
+    private static boolean isServerFault(SOAPFaultException fault)
+    {
+        if (fault.getFault() == null)
+        {
+            return true;
+        }
+
+        QName faultCode = fault.getFault().getFaultCodeAsQName();
+
+        // SOAP 1.1 uses Server and SOAP 1.2 uses Receiver
+        return faultCode == null || faultCode.getLocalPart().startsWith("Server") || faultCode.getLocalPart().equals("Receiver");
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.WokSearchLite;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.WokSearchLiteService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.cxf.frontend.ClientProxy;
+
+/**
+ * A bounded pool of WS Lite search ports that share a single search session.
+ *
+ * A CXF port is not safe for concurrent use, so each port is lent to one
+ * thread at a time. All ports carry the same SID cookie, which allows pages of
+ * a result set to be requested concurrently within one session. When the
+ * session Id changes, each port picks up the new cookie the next time it is
+ * borrowed.
+ *
+ * Each port is lent to a borrower, such as the search it is used for, so
+ * that the requests of the ports lent to one borrower can be aborted when
+ * that search is cancelled without disturbing the other searches sharing the
+ * pool. An aborted port is discarded when it is returned and replaced with a
+ * new one.
+ *
+ * @author Mike Taylor
+ */
+public class SearchPortPool
+{
+    /**
+     * The service used to create ports
+     */
+    private final WokSearchLiteService searchService_;
+
+    /**
+     * The endpoint address of the ports, or null to use the WSDL address
+     */
+    private final String address_;
+
+    /**
+     * The number of ports in the pool
+     */
+    private final int size_;
+
+    /**
+     * Ports that are not currently lent out
+     */
+    private final BlockingQueue<WokSearchLite> availablePorts_;
+
+    /**
+     * The session Id that should be attached to every port
+     */
+    private volatile String sessionId_;
+
+    /**
+     * The session Id currently attached to each port
+     */
+    private final Map<WokSearchLite, String> portSessionIds_;
+
+    /**
+     * Ports that are currently lent out, with the borrower of each
+     */
+    private final Map<WokSearchLite, Object> lentPorts_;
+
+    /**
+     * Lent ports whose requests have been aborted
+     */
+    private final Set<WokSearchLite> abortedPorts_;
+
+    /**
+     * Create a pool of the specified number of ports from a search service
+     * @param searchService The WS Lite search service used to create ports
+     * @param size The number of ports in the pool
+     */
+    public SearchPortPool(WokSearchLiteService searchService, int size)
+    {
+        this(searchService, size, null);
+    }
+
+    /**
+     * Create a pool of the specified number of ports from a search service,
+     * sending requests to the specified endpoint address
+     * @param searchService The WS Lite search service used to create ports
+     * @param size The number of ports in the pool
+     * @param address The endpoint address, or null to use the WSDL address
+     */
+    public SearchPortPool(WokSearchLiteService searchService, int size, String address)
+    {
+        if (size < 1)
+        {
+            throw new IllegalArgumentException("A search port pool must contain at least one port");
+        }
+
+        searchService_ = searchService;
+        address_ = address;
+        size_ = size;
+
+        List<WokSearchLite> ports = new ArrayList<WokSearchLite>(size);
+
+        for (int i = 0; i < size; i++)
+        {
+            ports.add(createPort());
+        }
+
+        availablePorts_ = new ArrayBlockingQueue<WokSearchLite>(size, false, ports);
+        portSessionIds_ = Collections.synchronizedMap(new IdentityHashMap<WokSearchLite, String>());
+        lentPorts_ = Collections.synchronizedMap(new IdentityHashMap<WokSearchLite, Object>());
+        abortedPorts_ = Collections.newSetFromMap(Collections.synchronizedMap(new IdentityHashMap<WokSearchLite, Boolean>()));
+    }
+
+    /**
+     * Returns the number of ports in the pool
+     * @return
+     */
+    public int getSize()
+    {
+        return size_;
+    }
+
+    /**
+     * Returns the session Id attached to the ports in the pool
+     * @return
+     */
+    public String getSessionId()
+    {
+        return sessionId_;
+    }
+
+    /**
+     * Sets the session Id to be attached to every port in the pool
+     * @param sessionId
+     */
+    public void setSessionId(String sessionId)
+    {
+        this.sessionId_ = sessionId;
+    }
+
+    /**
+     * Returns the session Id currently attached to the specified port
+     * @param port
+     * @return
+     */
+    public String getPortSessionId(WokSearchLite port)
+    {
+        return portSessionIds_.get(port);
+    }
+
+    /**
+     * Takes a port from the pool, waiting until one becomes available. The
+     * port is given the current session cookie if it does not already have it.
+     * @param borrower The search the port is used for, whose ports can be
+     * aborted with abortLentPorts()
+     * @return
+     * @throws InterruptedException
+     */
+    public WokSearchLite borrowPort(Object borrower) throws InterruptedException
+    {
+        WokSearchLite port = availablePorts_.take();
+        String sessionId = sessionId_;
+
+        if (sessionId != null && !sessionId.equals(portSessionIds_.get(port)))
+        {
+            WsLiteSessionManager.setSessionCookie(port, sessionId);
+            portSessionIds_.put(port, sessionId);
+        }
+
+        lentPorts_.put(port, borrower);
+
+        return port;
+    }
+
+    /**
+     * Returns a previously borrowed port to the pool
+     * @param port
+     */
+    public void returnPort(WokSearchLite port)
+    {
+        if (port != null)
+        {
+            lentPorts_.remove(port);
+
+            if (abortedPorts_.remove(port))
+            {
+                portSessionIds_.remove(port);
+                port = createPort();
+            }
+
+            availablePorts_.offer(port);
+        }
+    }
+
+    /**
+     * Returns true if the request of a lent port has been aborted
+     * @param port
+     * @return
+     */
+    public boolean isAborted(WokSearchLite port)
+    {
+        return abortedPorts_.contains(port);
+    }
+
+    /**
+     * Aborts the requests of the ports currently lent to a borrower. This is
+     * done on a best effort basis by shutting down each port's client, so a
+     * request that is blocked reading a response may still run to completion.
+     * @param borrower
+     */
+    public void abortLentPorts(Object borrower)
+    {
+        List<WokSearchLite> lentPorts = new ArrayList<WokSearchLite>();
+
+        synchronized (lentPorts_)
+        {
+            for (Map.Entry<WokSearchLite, Object> lentPort : lentPorts_.entrySet())
+            {
+                if (lentPort.getValue() == borrower)
+                {
+                    lentPorts.add(lentPort.getKey());
+                }
+            }
+        }
+
+        for (WokSearchLite port : lentPorts)
+        {
+            abortedPorts_.add(port);
+
+            try
+            {
+                ClientProxy.getClient(port).destroy();
+            }
+            catch (RuntimeException ex)
+            {
+                Logger.getLogger(SearchPortPool.class.getName()).log(Level.WARNING, "A search request could not be aborted", ex);
+            }
+        }
+    }
+
+    /**
+     * Creates a new port from the search service
+     * @return
+     */
+    private WokSearchLite createPort()
+    {
+        WokSearchLite port = searchService_.getWokSearchLitePort();
+        WsLiteServices.setEndpointAddress(port, address_);
+
+        return port;
+    }
+}
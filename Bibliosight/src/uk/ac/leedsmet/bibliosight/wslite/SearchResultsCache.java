@@ -0,0 +1,643 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.EditionDesc;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryField;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.RetrieveParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.SearchResults;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.TimeSpan;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import uk.ac.leedsmet.bibliosight.AtomicFileOutputStream;
+import uk.ac.leedsmet.bibliosight.BibliosightProperties;
+
+/**
+ * A cache of WS Lite search results on local disk.
+ *
+ * Each page of search results is stored as a compressed XML file named after
+ * a hash of its query and retrieve parameters. The parameters are normalised
+ * first, so searches that differ only in the order of their editions or in
+ * the spacing of their user query share an entry.
+ *
+ * Results for a time span that has ended are kept for much longer than those
+ * for a symbolic or open time span, which change as new records are added.
+ * When the cache grows beyond its maximum size, the oldest entries are
+ * removed. The size of the cache is tracked as entries are stored, so the
+ * directory is only scanned when the cache has grown too large or has not
+ * been scanned for a while, which also picks up entries stored by other
+ * processes.
+ *
+ * @author Mike Taylor
+ */
+public class SearchResultsCache
+{
+    public static final String ENABLED_PROPERTY = "bibliosight.cache.enabled";
+    public static final String DIRECTORY_PROPERTY = "bibliosight.cache.dir";
+    public static final String MAX_SIZE_PROPERTY = "bibliosight.cache.maxSize";
+    public static final String CLOSED_SPAN_TTL_PROPERTY = "bibliosight.cache.closedSpanTtl";
+    public static final String OPEN_SPAN_TTL_PROPERTY = "bibliosight.cache.openSpanTtl";
+
+    /**
+     * Default maximum size of the cache in megabytes
+     */
+    private static final long DEFAULT_MAX_SIZE = 256;
+
+    /**
+     * Default time to live in seconds of results for a time span that has ended
+     */
+    private static final long DEFAULT_CLOSED_SPAN_TTL = 30L * 24 * 60 * 60;
+
+    /**
+     * Default time to live in seconds of results for a symbolic or open time span
+     */
+    private static final long DEFAULT_OPEN_SPAN_TTL = 60L * 60;
+
+    /**
+     * Longest time in milliseconds between scans of the cache directory
+     */
+    private static final long EVICT_INTERVAL = 10L * 60 * 1000;
+
+    private static final String FILE_SUFFIX = ".xml.gz";
+
+    private static final QName ELEMENT_NAME = new QName("searchResults");
+
+    private static final FileFilter ENTRY_FILTER = new FileFilter()
+    {
+        public boolean accept(File file)
+        {
+            return file.isFile() && file.getName().endsWith(FILE_SUFFIX);
+        }
+    };
+
+    private static JAXBContext jaxbContext_;
+
+    private static SearchResultsCache defaultCache_;
+
+    private static boolean defaultCacheCreated_;
+
+    /**
+     * The directory the entries are stored in
+     */
+    private final File directory_;
+
+    /**
+     * Maximum total size of the entries in bytes
+     */
+    private final long maxSize_;
+
+    /**
+     * Time to live in milliseconds of results for a time span that has ended
+     */
+    private final long closedSpanTimeToLive_;
+
+    /**
+     * Time to live in milliseconds of results for a symbolic or open time span
+     */
+    private final long openSpanTimeToLive_;
+
+    /**
+     * Number of lookups that found cached results
+     */
+    private final AtomicLong hitCount_ = new AtomicLong();
+
+    /**
+     * Number of lookups that found no cached results
+     */
+    private final AtomicLong missCount_ = new AtomicLong();
+
+    /**
+     * Total size of the entries in bytes as of the last scan plus the entries
+     * stored since, or -1 if the directory has not been scanned, guarded by
+     * this
+     */
+    private long estimatedSize_ = -1;
+
+    /**
+     * Time of the last scan of the directory, guarded by this
+     */
+    private long lastEvictTime_;
+
+    /**
+     * Create a cache that stores its entries in the specified directory
+     * @param directory The directory the entries are stored in
+     * @param maxSize Maximum total size of the entries in bytes
+     * @param closedSpanTimeToLive Time to live in milliseconds of results for
+     * a time span that has ended
+     * @param openSpanTimeToLive Time to live in milliseconds of results for
+     * a symbolic or open time span
+     */
+    public SearchResultsCache(File directory, long maxSize, long closedSpanTimeToLive, long openSpanTimeToLive)
+    {
+        this.directory_ = directory;
+        this.maxSize_ = maxSize;
+        this.closedSpanTimeToLive_ = closedSpanTimeToLive;
+        this.openSpanTimeToLive_ = openSpanTimeToLive;
+    }
+
+    /**
+     * Returns the cache configured by system properties, or null if caching
+     * has been disabled or the cache directory cannot be created
+     * @return
+     */
+    public static synchronized SearchResultsCache getDefaultCache()
+    {
+        if (!defaultCacheCreated_)
+        {
+            defaultCacheCreated_ = true;
+
+            if (BibliosightProperties.getBoolean(ENABLED_PROPERTY, true))
+            {
+                File cacheDirectory = BibliosightProperties.getFile(DIRECTORY_PROPERTY, "cache");
+
+                if (cacheDirectory.isDirectory() || cacheDirectory.mkdirs())
+                {
+                    defaultCache_ = new SearchResultsCache(
+                        cacheDirectory,
+                        BibliosightProperties.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE) * 1024 * 1024,
+                        BibliosightProperties.getLong(CLOSED_SPAN_TTL_PROPERTY, DEFAULT_CLOSED_SPAN_TTL) * 1000,
+                        getDefaultOpenSpanTimeToLive()
+                    );
+                }
+                else
+                {
+                    Logger.getLogger(SearchResultsCache.class.getName()).log(Level.WARNING, "The search results cache directory could not be created: " + cacheDirectory);
+                }
+            }
+        }
+
+        return defaultCache_;
+    }
+
+    /**
+     * Returns the time to live in milliseconds of results for a symbolic or
+     * open time span, as configured by system properties
+     * @return
+     */
+    public static long getDefaultOpenSpanTimeToLive()
+    {
+        return BibliosightProperties.getLong(OPEN_SPAN_TTL_PROPERTY, DEFAULT_OPEN_SPAN_TTL) * 1000;
+    }
+
+    /**
+     * Returns the directory the entries are stored in
+     * @return
+     */
+    public File getDirectory()
+    {
+        return directory_;
+    }
+
+    /**
+     * Returns the cached results of a search, or null if there are none or
+     * they have expired
+     * @param queryParameters
+     * @param retrieveParameters
+     * @return
+     */
+    public SearchResults get(QueryParameters queryParameters, RetrieveParameters retrieveParameters)
+    {
+        SearchResults searchResults = read(queryParameters, retrieveParameters);
+
+        if (searchResults != null)
+        {
+            hitCount_.incrementAndGet();
+        }
+        else
+        {
+            missCount_.incrementAndGet();
+        }
+
+        return searchResults;
+    }
+
+    /**
+     * Returns the number of lookups that found cached results
+     * @return
+     */
+    public long getHitCount()
+    {
+        return hitCount_.get();
+    }
+
+    /**
+     * Returns the number of lookups that found no cached results
+     * @return
+     */
+    public long getMissCount()
+    {
+        return missCount_.get();
+    }
+
+    private SearchResults read(QueryParameters queryParameters, RetrieveParameters retrieveParameters)
+    {
+        File entryFile = getEntryFile(queryParameters, retrieveParameters);
+        long lastModified = entryFile.lastModified();
+
+        if (lastModified == 0L)
+        {
+            return null;
+        }
+
+        if (System.currentTimeMillis() - lastModified > getTimeToLive(queryParameters))
+        {
+            entryFile.delete();
+            return null;
+        }
+
+        try
+        {
+            return readSearchResults(entryFile);
+        }
+        catch (IOException ex)
+        {
+            // The entry may have been removed since it was found
+            return null;
+        }
+        catch (JAXBException ex)
+        {
+            Logger.getLogger(SearchResultsCache.class.getName()).log(Level.WARNING, "A search results cache entry could not be read and has been removed: " + entryFile, ex);
+            entryFile.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the results of a search. Failures are logged and otherwise
+     * ignored, as the results can always be retrieved again.
+     * @param queryParameters
+     * @param retrieveParameters
+     * @param searchResults
+     */
+    public void put(QueryParameters queryParameters, RetrieveParameters retrieveParameters, SearchResults searchResults)
+    {
+        File entryFile = getEntryFile(queryParameters, retrieveParameters);
+        long oldSize = entryFile.length();
+
+        try
+        {
+            writeSearchResults(entryFile, searchResults);
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(SearchResultsCache.class.getName()).log(Level.WARNING, "Search results could not be written to the cache: " + entryFile, ex);
+        }
+        catch (JAXBException ex)
+        {
+            Logger.getLogger(SearchResultsCache.class.getName()).log(Level.WARNING, "Search results could not be written to the cache: " + entryFile, ex);
+        }
+
+        boolean evictionDue;
+
+        synchronized (this)
+        {
+            if (estimatedSize_ >= 0)
+            {
+                estimatedSize_ += entryFile.length() - oldSize;
+            }
+
+            evictionDue = estimatedSize_ < 0 || estimatedSize_ > maxSize_ || System.currentTimeMillis() - lastEvictTime_ > EVICT_INTERVAL;
+        }
+
+        if (evictionDue)
+        {
+            evict();
+        }
+    }
+
+    /**
+     * Removes every entry from the cache
+     */
+    public synchronized void clear()
+    {
+        File[] entryFiles = directory_.listFiles(ENTRY_FILTER);
+
+        if (entryFiles != null)
+        {
+            for (File entryFile : entryFiles)
+            {
+                entryFile.delete();
+            }
+        }
+
+        estimatedSize_ = -1;
+    }
+
+    /**
+     * Removes the entries that have outlived the longest time to live and
+     * then, if the cache is still too large, the oldest remaining entries
+     */
+    public synchronized void evict()
+    {
+        long now = System.currentTimeMillis();
+        lastEvictTime_ = now;
+
+        File[] entryFiles = directory_.listFiles(ENTRY_FILTER);
+
+        if (entryFiles == null)
+        {
+            estimatedSize_ = -1;
+            return;
+        }
+
+        long maxTimeToLive = Math.max(closedSpanTimeToLive_, openSpanTimeToLive_);
+        long totalSize = 0;
+
+        List<File> entries = new ArrayList<File>(entryFiles.length);
+        final Map<File, Long> lastModified = new HashMap<File, Long>();
+
+        for (File entryFile : entryFiles)
+        {
+            long modified = entryFile.lastModified();
+
+            if (now - modified > maxTimeToLive)
+            {
+                entryFile.delete();
+            }
+            else
+            {
+                entries.add(entryFile);
+                lastModified.put(entryFile, modified);
+                totalSize += entryFile.length();
+            }
+        }
+
+        if (totalSize <= maxSize_)
+        {
+            estimatedSize_ = totalSize;
+            return;
+        }
+
+        // Remove the oldest entries first
+        Collections.sort(entries, new Comparator<File>()
+        {
+            public int compare(File a, File b)
+            {
+                return lastModified.get(a).compareTo(lastModified.get(b));
+            }
+        });
+
+        for (int i = 0; i < entries.size() && totalSize > maxSize_; i++)
+        {
+            File entryFile = entries.get(i);
+            long size = entryFile.length();
+
+            if (entryFile.delete())
+            {
+                totalSize -= size;
+            }
+        }
+
+        estimatedSize_ = totalSize;
+    }
+
+    /**
+     * Returns the normalised form of a set of search parameters, from which
+     * the cache key is made. Editions are sorted, as their order does not
+     * affect the results, but sort fields keep their order.
+     * @param queryParameters
+     * @param retrieveParameters
+     * @return
+     */
+    public static String getCanonicalParameters(QueryParameters queryParameters, RetrieveParameters retrieveParameters)
+    {
+        StringBuilder key = new StringBuilder();
+
+        key.append("database=").append(normalise(queryParameters.getDatabaseID())).append('\n');
+        key.append("language=").append(normalise(queryParameters.getQueryLanguage())).append('\n');
+        key.append("query=").append(normalise(queryParameters.getUserQuery())).append('\n');
+
+        List<String> editions = new ArrayList<String>();
+
+        for (EditionDesc edition : queryParameters.getEditions())
+        {
+            editions.add(normalise(edition.getCollection()).toUpperCase() + ":" + normalise(edition.getEdition()).toUpperCase());
+        }
+
+        Collections.sort(editions);
+
+        key.append("editions=").append(editions).append('\n');
+
+        TimeSpan timeSpan = queryParameters.getTimeSpan();
+
+        if (timeSpan != null)
+        {
+            key.append("timeSpan=").append(normalise(timeSpan.getBegin())).append("..").append(normalise(timeSpan.getEnd())).append('\n');
+        }
+
+        key.append("symbolicTimeSpan=").append(normalise(queryParameters.getSymbolicTimeSpan())).append('\n');
+        key.append("firstRecord=").append(retrieveParameters.getFirstRecord()).append('\n');
+        key.append("count=").append(retrieveParameters.getCount()).append('\n');
+        key.append("sort=");
+
+        for (QueryField field : retrieveParameters.getFields())
+        {
+            key.append(normalise(field.getName())).append(':').append(normalise(field.getSort()).toUpperCase()).append(',');
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Returns true if the results of the query can no longer change because
+     * its time span has ended
+     * @param queryParameters
+     * @return
+     */
+    public static boolean isClosedTimeSpan(QueryParameters queryParameters)
+    {
+        TimeSpan timeSpan = queryParameters.getTimeSpan();
+
+        if (timeSpan == null || timeSpan.getEnd() == null || normalise(queryParameters.getSymbolicTimeSpan()).length() > 0)
+        {
+            return false;
+        }
+
+        // Dates are in yyyy-mm-dd form, so they sort in date order
+        String today = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+
+        return timeSpan.getEnd().trim().compareTo(today) < 0;
+    }
+
+    /**
+     * Returns the time to live in milliseconds of the results of a query
+     * @param queryParameters
+     * @return
+     */
+    private long getTimeToLive(QueryParameters queryParameters)
+    {
+        return isClosedTimeSpan(queryParameters) ? closedSpanTimeToLive_ : openSpanTimeToLive_;
+    }
+
+    private File getEntryFile(QueryParameters queryParameters, RetrieveParameters retrieveParameters)
+    {
+        return new File(directory_, getHash(getCanonicalParameters(queryParameters, retrieveParameters)) + FILE_SUFFIX);
+    }
+
+    /**
+     * Reads search results from a compressed XML file
+     * @param file
+     * @return
+     * @throws IOException
+     * @throws JAXBException
+     */
+    static SearchResults readSearchResults(File file) throws IOException, JAXBException
+    {
+        InputStream inputStream = null;
+
+        try
+        {
+            inputStream = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            return getJaxbContext().createUnmarshaller().unmarshal(new StreamSource(inputStream), SearchResults.class).getValue();
+        }
+        finally
+        {
+            close(inputStream);
+        }
+    }
+
+    /**
+     * Writes search results to a compressed XML file. The file is only
+     * replaced once all of the results have been written.
+     * @param file
+     * @param searchResults
+     * @throws IOException
+     * @throws JAXBException
+     */
+    static void writeSearchResults(File file, SearchResults searchResults) throws IOException, JAXBException
+    {
+        AtomicFileOutputStream fileOutputStream = null;
+
+        try
+        {
+            fileOutputStream = new AtomicFileOutputStream(file);
+
+            GZIPOutputStream outputStream = new GZIPOutputStream(fileOutputStream);
+            Marshaller marshaller = getJaxbContext().createMarshaller();
+
+            marshaller.marshal(new JAXBElement<SearchResults>(ELEMENT_NAME, SearchResults.class, searchResults), outputStream);
+
+            outputStream.finish();
+            fileOutputStream.commit();
+        }
+        finally
+        {
+            // Discards the partly written file if it was not committed
+            close(fileOutputStream);
+        }
+    }
+
+    /**
+     * Returns the hexadecimal SHA-1 hash of a string
+     * @param value
+     * @return
+     */
+    static String getHash(String value)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes("UTF-8"));
+            StringBuilder hash = new StringBuilder(digest.length * 2);
+
+            for (byte b : digest)
+            {
+                hash.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hash.append(Character.forDigit(b & 0xf, 16));
+            }
+
+            return hash.toString();
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            // Every Java platform is required to support SHA-1
+            throw new IllegalStateException(ex);
+        }
+        catch (UnsupportedEncodingException ex)
+        {
+            // Every Java platform is required to support UTF-8
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Trims a value and collapses runs of white space, treating null as empty
+     * @param value
+     * @return
+     */
+    private static String normalise(String value)
+    {
+        return value != null ? value.trim().replaceAll("\\s+", " ") : "";
+    }
+
+    private static synchronized JAXBContext getJaxbContext() throws JAXBException
+    {
+        if (jaxbContext_ == null)
+        {
+            jaxbContext_ = JAXBContext.newInstance(SearchResults.class);
+        }
+
+        return jaxbContext_;
+    }
+
+    static void close(Closeable closeable)
+    {
+        if (closeable != null)
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch (IOException ex)
+            {
+                // Nothing
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of the requests sent to Web Services Lite by this process: the
+ * requests in flight, the time taken by each operation, the retries made and
+ * the sessions held open.
+ *
+ * A single instance is shared by every search, as the requests of all of
+ * them go to the same service.
+ *
+ * @author Mike Taylor
+ */
+public class ServiceStatistics
+{
+    public static final String AUTHENTICATE_OPERATION = "authenticate";
+    public static final String CLOSE_SESSION_OPERATION = "closeSession";
+    public static final String SEARCH_OPERATION = "search";
+
+    private static ServiceStatistics defaultStatistics_;
+
+    private final AtomicInteger requestsInFlight_ = new AtomicInteger();
+
+    private final AtomicInteger openSessions_ = new AtomicInteger();
+
+    private final AtomicLong retryCount_ = new AtomicLong();
+
+    /**
+     * Histogram of each operation, by operation name
+     */
+    private final Map<String, LatencyHistogram> histograms_ = new TreeMap<String, LatencyHistogram>();
+
+    /**
+     * Returns the statistics shared by every search
+     * @return
+     */
+    public static synchronized ServiceStatistics getDefault()
+    {
+        if (defaultStatistics_ == null)
+        {
+            defaultStatistics_ = new ServiceStatistics();
+        }
+
+        return defaultStatistics_;
+    }
+
+    /**
+     * Records the start of a request
+     * @return The time the request started, to be passed to endRequest()
+     */
+    public long startRequest()
+    {
+        requestsInFlight_.incrementAndGet();
+
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the end of a request
+     * @param operation The name of the operation
+     * @param startTime The time returned by startRequest()
+     * @param succeeded Whether the request succeeded
+     */
+    public void endRequest(String operation, long startTime, boolean succeeded)
+    {
+        long time = System.nanoTime() - startTime;
+
+        requestsInFlight_.decrementAndGet();
+
+        LatencyHistogram histogram = null;
+
+        synchronized (histograms_)
+        {
+            histogram = histograms_.get(operation);
+
+            if (histogram == null)
+            {
+                histogram = new LatencyHistogram(operation);
+                histograms_.put(operation, histogram);
+            }
+        }
+
+        histogram.record(time, succeeded);
+    }
+
+    /**
+     * Returns the number of requests that have been sent and not yet answered
+     * @return
+     */
+    public int getRequestsInFlight()
+    {
+        return requestsInFlight_.get();
+    }
+
+    /**
+     * Returns a copy of the histogram of each operation that has been used,
+     * in order of operation name
+     * @return
+     */
+    public List<LatencyHistogram> getLatencyHistograms()
+    {
+        List<LatencyHistogram> histograms = new ArrayList<LatencyHistogram>();
+
+        synchronized (histograms_)
+        {
+            for (LatencyHistogram histogram : histograms_.values())
+            {
+                histograms.add(histogram.copy());
+            }
+        }
+
+        return histograms;
+    }
+
+    /**
+     * Records that a failed request is to be retried
+     */
+    void recordRetry()
+    {
+        retryCount_.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of failed requests that have been retried
+     * @return
+     */
+    public long getRetryCount()
+    {
+        return retryCount_.get();
+    }
+
+    void sessionOpened()
+    {
+        openSessions_.incrementAndGet();
+    }
+
+    void sessionEnded()
+    {
+        openSessions_.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of sessions held open by session managers
+     * @return
+     */
+    public int getOpenSessions()
+    {
+        return openSessions_.get();
+    }
+}
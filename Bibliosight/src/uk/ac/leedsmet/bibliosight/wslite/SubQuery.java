@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.SearchResults;
+
+/**
+ * One of the searches that a large harvest is divided into, together with
+ * its first page of search results, which has already been retrieved.
+ *
+ * @author Mike Taylor
+ */
+public class SubQuery
+{
+    private final QueryParameters queryParameters_;
+
+    private final SearchResults firstPage_;
+
+    /**
+     * Description of the part of the harvest covered, used in the log
+     */
+    private final String description_;
+
+    /**
+     * Create a sub-query
+     * @param queryParameters The query options for the search
+     * @param firstPage The first page of search results
+     * @param description Description of the part of the harvest covered
+     */
+    public SubQuery(QueryParameters queryParameters, SearchResults firstPage, String description)
+    {
+        this.queryParameters_ = queryParameters;
+        this.firstPage_ = firstPage;
+        this.description_ = description;
+    }
+
+    /**
+     * Returns the query options for the search
+     * @return
+     */
+    public QueryParameters getQueryParameters()
+    {
+        return queryParameters_;
+    }
+
+    /**
+     * Returns the first page of search results
+     * @return
+     */
+    public SearchResults getFirstPage()
+    {
+        return firstPage_;
+    }
+
+    /**
+     * Returns the number of records found by the search
+     * @return
+     */
+    public int getRecordsFound()
+    {
+        return firstPage_.getRecordsFound();
+    }
+
+    /**
+     * Returns the description of the part of the harvest covered
+     * @return
+     */
+    public String getDescription()
+    {
+        return description_;
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.SearchResults;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.TimeSpan;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import uk.ac.leedsmet.bibliosight.BibliosightSearchException;
+
+/**
+ * Splits a search whose result set is too large to be retrieved by one search
+ * into searches over parts of its time span.
+ *
+ * The time span is bisected until each part finds no more than the maximum
+ * number of records. Each split is made on the year boundary nearest the
+ * middle of the span if there is one, then on the nearest month boundary,
+ * and otherwise on the middle day, so that broad searches are split into
+ * years, then months, then weeks and days. The first page of each part is
+ * retrieved to count its records and is kept, so that it need not be
+ * retrieved again when the part is harvested.
+ *
+ * @author Mike Taylor
+ */
+public class TimeSpanPlanner
+{
+    /**
+     * Largest number of records that can be retrieved by one search
+     */
+    public static final int DEFAULT_MAX_RECORDS = 100000;
+
+    private static final String DATE_PATTERN = "yyyy-MM-dd";
+
+    private static final long MILLISECONDS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Retrieves the first page of a search
+     */
+    public interface PageSearcher
+    {
+        /**
+         * Returns the first page of search results for a search
+         * @param queryParameters
+         * @return
+         * @throws BibliosightSearchException
+         */
+        SearchResults search(QueryParameters queryParameters) throws BibliosightSearchException;
+    }
+
+    private final PageSearcher pageSearcher_;
+
+    /**
+     * Maximum number of records that each part of the time span may find
+     */
+    private final int maxRecords_;
+
+    /**
+     * Create a planner that splits time spans until each part finds no more
+     * than the specified number of records
+     * @param pageSearcher Used to retrieve the first page of each part
+     * @param maxRecords
+     */
+    public TimeSpanPlanner(PageSearcher pageSearcher, int maxRecords)
+    {
+        this.pageSearcher_ = pageSearcher;
+        this.maxRecords_ = maxRecords;
+    }
+
+    /**
+     * Returns the maximum number of records that each part of the time span
+     * may find
+     * @return
+     */
+    public int getMaxRecords()
+    {
+        return maxRecords_;
+    }
+
+    /**
+     * Splits a search into searches over parts of its time span, in
+     * chronological order. Parts that find no records are left out. A part
+     * of a single day is not split further, even if it finds too many
+     * records.
+     * @param queryParameters The query options for the search, which must
+     * have a time span
+     * @param firstPage The first page of search results for the whole span
+     * @return
+     * @throws BibliosightSearchException
+     */
+    public List<SubQuery> plan(QueryParameters queryParameters, SearchResults firstPage) throws BibliosightSearchException
+    {
+        if (queryParameters.getTimeSpan() == null)
+        {
+            throw new IllegalArgumentException("Only searches with a time span can be split");
+        }
+
+        List<SubQuery> subQueries = new ArrayList<SubQuery>();
+        plan(queryParameters, firstPage, subQueries);
+
+        return subQueries;
+    }
+
+    private void plan(QueryParameters queryParameters, SearchResults firstPage, List<SubQuery> subQueries) throws BibliosightSearchException
+    {
+        if (firstPage.getRecordsFound() <= 0)
+        {
+            return;
+        }
+
+        Calendar begin = parseDate(queryParameters.getTimeSpan().getBegin());
+        Calendar end = parseDate(queryParameters.getTimeSpan().getEnd());
+
+        if (firstPage.getRecordsFound() <= maxRecords_ || !begin.before(end))
+        {
+            subQueries.add(new SubQuery(queryParameters, firstPage, queryParameters.getTimeSpan().getBegin() + " to " + queryParameters.getTimeSpan().getEnd()));
+            return;
+        }
+
+        Calendar split = getSplitDate(begin, end);
+        Calendar lastDayBeforeSplit = (Calendar) split.clone();
+        lastDayBeforeSplit.add(Calendar.DAY_OF_MONTH, -1);
+
+        QueryParameters earlier = withTimeSpan(queryParameters, formatDate(begin), formatDate(lastDayBeforeSplit));
+        plan(earlier, pageSearcher_.search(earlier), subQueries);
+
+        QueryParameters later = withTimeSpan(queryParameters, formatDate(split), formatDate(end));
+        plan(later, pageSearcher_.search(later), subQueries);
+    }
+
+    /**
+     * Returns a copy of the query parameters with a different time span
+     * @param queryParameters
+     * @param begin The first day of the time span, in yyyy-mm-dd form
+     * @param end The last day of the time span, in yyyy-mm-dd form
+     * @return
+     */
+    public static QueryParameters withTimeSpan(QueryParameters queryParameters, String begin, String end)
+    {
+        QueryParameters query = new QueryParameters();
+        query.setDatabaseID(queryParameters.getDatabaseID());
+        query.setQueryLanguage(queryParameters.getQueryLanguage());
+        query.setUserQuery(queryParameters.getUserQuery());
+        query.getEditions().addAll(queryParameters.getEditions());
+
+        TimeSpan timeSpan = new TimeSpan();
+        timeSpan.setBegin(begin);
+        timeSpan.setEnd(end);
+        query.setTimeSpan(timeSpan);
+
+        return query;
+    }
+
+    /**
+     * Returns the first day of the later part of a time span of more than one
+     * day
+     */
+    private static Calendar getSplitDate(Calendar begin, Calendar end)
+    {
+        long days = (end.getTimeInMillis() - begin.getTimeInMillis()) / MILLISECONDS_PER_DAY;
+
+        Calendar middle = (Calendar) begin.clone();
+        middle.add(Calendar.DAY_OF_MONTH, (int) ((days + 1) / 2));
+
+        Calendar yearBoundary = getNearestBoundary(begin, end, middle, Calendar.YEAR);
+
+        if (yearBoundary != null)
+        {
+            return yearBoundary;
+        }
+
+        Calendar monthBoundary = getNearestBoundary(begin, end, middle, Calendar.MONTH);
+
+        if (monthBoundary != null)
+        {
+            return monthBoundary;
+        }
+
+        return middle;
+    }
+
+    /**
+     * Returns the start of the year or month nearest the middle of a time
+     * span, or null if the span does not cross a boundary
+     */
+    static Calendar getNearestBoundary(Calendar begin, Calendar end, Calendar middle, int field)
+    {
+        Calendar before = (Calendar) middle.clone();
+        before.set(Calendar.DAY_OF_MONTH, 1);
+
+        if (field == Calendar.YEAR)
+        {
+            before.set(Calendar.MONTH, Calendar.JANUARY);
+        }
+
+        Calendar after = (Calendar) before.clone();
+        after.add(field, 1);
+
+        boolean beforeInside = before.after(begin);
+        boolean afterInside = !after.after(end);
+
+        if (beforeInside && afterInside)
+        {
+            long beforeDistance = middle.getTimeInMillis() - before.getTimeInMillis();
+            long afterDistance = after.getTimeInMillis() - middle.getTimeInMillis();
+
+            return beforeDistance <= afterDistance ? before : after;
+        }
+
+        if (beforeInside)
+        {
+            return before;
+        }
+
+        if (afterInside)
+        {
+            return after;
+        }
+
+        return null;
+    }
+
+    private static Calendar parseDate(String date) throws IllegalArgumentException
+    {
+        try
+        {
+            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            calendar.setTime(getDateFormat().parse(date));
+
+            return calendar;
+        }
+        catch (ParseException ex)
+        {
+            throw new IllegalArgumentException("Invalid date in time span: " + date);
+        }
+    }
+
+    private static String formatDate(Calendar date)
+    {
+        return getDateFormat().format(date.getTime());
+    }
+
+    private static SimpleDateFormat getDateFormat()
+    {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_PATTERN);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        dateFormat.setLenient(false);
+
+        return dateFormat;
+    }
+}
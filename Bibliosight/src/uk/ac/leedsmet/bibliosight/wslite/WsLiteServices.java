@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import com.thomsonreuters.wokmws.cxf.auth.WOKMWSAuthenticate;
+import com.thomsonreuters.wokmws.cxf.auth.WOKMWSAuthenticateService;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.WokSearchLiteService;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.namespace.QName;
+import javax.xml.ws.BindingProvider;
+import uk.ac.leedsmet.bibliosight.BibliosightProperties;
+
+/**
+ * Builds and caches the WS Lite service and port objects.
+ *
+ * Creating a service parses its WSDL and builds the CXF service model, which is
+ * far more expensive than a search request, so each service is created once
+ * per WSDL location and reused. WSDL documents are loaded from the classpath
+ * when they have been bundled with the application and only fetched from the
+ * remote host otherwise.
+ *
+ * Search ports carry the SID cookie of a session, so pools of search ports are
+ * cached for each session manager and are never shared between sessions.
+ *
+ * The following system properties can be used to change the endpoint
+ * configuration:
+ * <ul>
+ * <li>bibliosight.wslite.authWsdl - location of the authentication WSDL</li>
+ * <li>bibliosight.wslite.searchWsdl - location of the search WSDL</li>
+ * <li>bibliosight.wslite.authAddress - authentication endpoint address</li>
+ * <li>bibliosight.wslite.searchAddress - search endpoint address</li>
+ * </ul>
+ *
+ * @author Mike Taylor
+ */
+public final class WsLiteServices
+{
+    public static final String AUTH_WSDL_PROPERTY = "bibliosight.wslite.authWsdl";
+    public static final String SEARCH_WSDL_PROPERTY = "bibliosight.wslite.searchWsdl";
+    public static final String AUTH_ADDRESS_PROPERTY = "bibliosight.wslite.authAddress";
+    public static final String SEARCH_ADDRESS_PROPERTY = "bibliosight.wslite.searchAddress";
+
+    private static final String DEFAULT_AUTH_WSDL = "http://search.isiknowledge.com/esti/wokmws/ws/WOKMWSAuthenticate?wsdl";
+    private static final String DEFAULT_SEARCH_WSDL = "http://search.isiknowledge.com/esti/wokmws/ws/WokSearchLite?wsdl";
+
+    private static final String BUNDLED_AUTH_WSDL = "wsdl/WOKMWSAuthenticate.wsdl";
+    private static final String BUNDLED_SEARCH_WSDL = "wsdl/WokSearchLite.wsdl";
+
+    private static final QName AUTH_SERVICE_NAME = new QName(
+        "http://auth.cxf.wokmws.thomsonreuters.com",
+        "WOKMWSAuthenticateService"
+    );
+
+    private static final QName SEARCH_SERVICE_NAME = new QName(
+        "http://woksearchlite.cxf.wokmws.thomsonreuters.com",
+        "WokSearchLiteService"
+    );
+
+    /**
+     * Authentication services keyed by WSDL location
+     */
+    private static final Map<String, WOKMWSAuthenticateService> authServices_ = new HashMap<String, WOKMWSAuthenticateService>();
+
+    /**
+     * Search services keyed by WSDL location
+     */
+    private static final Map<String, WokSearchLiteService> searchServices_ = new HashMap<String, WokSearchLiteService>();
+
+    /**
+     * Search port pools of each session manager, keyed by search endpoint
+     * configuration and pool size. A pool is dropped along with its session
+     * manager.
+     */
+    private static final Map<WsLiteSessionManager, Map<String, SearchPortPool>> searchPortPools_ = new WeakHashMap<WsLiteSessionManager, Map<String, SearchPortPool>>();
+
+    private WsLiteServices()
+    {
+    }
+
+    /**
+     * Returns the location of the authentication WSDL
+     * @return
+     */
+    public static URL getAuthenticationWsdlUrl()
+    {
+        return getWsdlUrl(AUTH_WSDL_PROPERTY, BUNDLED_AUTH_WSDL, DEFAULT_AUTH_WSDL);
+    }
+
+    /**
+     * Returns the location of the search WSDL
+     * @return
+     */
+    public static URL getSearchWsdlUrl()
+    {
+        return getWsdlUrl(SEARCH_WSDL_PROPERTY, BUNDLED_SEARCH_WSDL, DEFAULT_SEARCH_WSDL);
+    }
+
+    /**
+     * Returns the cached authentication service for the current endpoint
+     * configuration, creating it if necessary
+     * @return
+     */
+    public static synchronized WOKMWSAuthenticateService getAuthenticationService()
+    {
+        URL wsdlUrl = getAuthenticationWsdlUrl();
+        String key = String.valueOf(wsdlUrl);
+        WOKMWSAuthenticateService authService = authServices_.get(key);
+
+        if (authService == null)
+        {
+            authService = new WOKMWSAuthenticateService(wsdlUrl, AUTH_SERVICE_NAME);
+            authServices_.put(key, authService);
+        }
+
+        return authService;
+    }
+
+    /**
+     * Returns the cached search service for the current endpoint
+     * configuration, creating it if necessary
+     * @return
+     */
+    public static synchronized WokSearchLiteService getSearchService()
+    {
+        URL wsdlUrl = getSearchWsdlUrl();
+        String key = String.valueOf(wsdlUrl);
+        WokSearchLiteService searchService = searchServices_.get(key);
+
+        if (searchService == null)
+        {
+            searchService = new WokSearchLiteService(wsdlUrl, SEARCH_SERVICE_NAME);
+            searchServices_.put(key, searchService);
+        }
+
+        return searchService;
+    }
+
+    /**
+     * Returns a new port for the authentication service. A port holds the
+     * session cookie, so each session manager should have its own port.
+     * @return
+     */
+    public static WOKMWSAuthenticate createAuthenticationPort()
+    {
+        WOKMWSAuthenticate authPort = getAuthenticationService().getWOKMWSAuthenticatePort();
+
+        setEndpointAddress(authPort, BibliosightProperties.getString(AUTH_ADDRESS_PROPERTY));
+
+        return authPort;
+    }
+
+    /**
+     * Returns the cached pool of search ports of the specified size for a
+     * session manager and the current endpoint configuration, creating it if
+     * necessary. The ports of the pool carry the SID of the manager's session,
+     * so the pool is only used with that manager.
+     * @param sessionManager The manager of the session the pool is used for
+     * @param size The number of ports in the pool
+     * @return
+     */
+    public static synchronized SearchPortPool getSearchPortPool(WsLiteSessionManager sessionManager, int size)
+    {
+        Map<String, SearchPortPool> sessionPortPools = searchPortPools_.get(sessionManager);
+
+        if (sessionPortPools == null)
+        {
+            sessionPortPools = new HashMap<String, SearchPortPool>();
+            searchPortPools_.put(sessionManager, sessionPortPools);
+        }
+
+        String searchAddress = BibliosightProperties.getString(SEARCH_ADDRESS_PROPERTY);
+        String key = getSearchWsdlUrl() + " " + searchAddress + " " + size;
+        SearchPortPool searchPortPool = sessionPortPools.get(key);
+
+        if (searchPortPool == null)
+        {
+            searchPortPool = new SearchPortPool(getSearchService(), size, searchAddress);
+            sessionPortPools.put(key, searchPortPool);
+        }
+
+        return searchPortPool;
+    }
+
+    /**
+     * Builds the services for the current endpoint configuration so that the
+     * first search does not have to wait for them. Failures are logged and
+     * the services will be built again when they are first needed.
+     */
+    public static void preload()
+    {
+        try
+        {
+            getAuthenticationService();
+            getSearchService();
+        }
+        catch (RuntimeException ex)
+        {
+            Logger.getLogger(WsLiteServices.class.getName()).log(Level.WARNING, "The Web Services Lite services could not be preloaded", ex);
+        }
+    }
+
+    /**
+     * Overrides the endpoint address of a port, if an address is specified
+     * @param port A WS Lite service port
+     * @param address The endpoint address, or null to use the WSDL address
+     */
+    static void setEndpointAddress(Object port, String address)
+    {
+        if (address != null && address.length() > 0)
+        {
+            ((BindingProvider) port).getRequestContext().put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, address);
+        }
+    }
+
+    /**
+     * Resolves a WSDL location from a system property, a bundled classpath
+     * resource or a default remote location, in that order
+     * @param propertyName The system property that may hold the location
+     * @param resourceName The name of the bundled WSDL resource
+     * @param defaultLocation The remote location of the WSDL
+     * @return
+     */
+    private static URL getWsdlUrl(String propertyName, String resourceName, String defaultLocation)
+    {
+        String location = BibliosightProperties.getString(propertyName);
+
+        if (location == null)
+        {
+            URL bundledWsdl = WsLiteServices.class.getResource(resourceName);
+
+            if (bundledWsdl != null)
+            {
+                return bundledWsdl;
+            }
+
+            location = defaultLocation;
+        }
+
+        try
+        {
+            return new URL(location);
+        }
+        catch (MalformedURLException ex)
+        {
+            Logger.getLogger(WsLiteServices.class.getName()).log(Level.SEVERE, "Can not initialize the wsdl from " + location, ex);
+            return null;
+        }
+    }
+}
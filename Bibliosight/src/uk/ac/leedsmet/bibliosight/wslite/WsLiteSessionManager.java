@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import com.thomsonreuters.wokmws.cxf.auth.WOKMWSAuthenticate;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.http.Cookie;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+import org.apache.cxf.endpoint.Client;
+import org.apache.cxf.frontend.ClientProxy;
+import org.apache.cxf.transport.http.HTTPConduit;
+import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
+import uk.ac.leedsmet.bibliosight.BibliosightAuthenticationException;
+
+/**
+ * Keeps a WS Lite session open so that it can be shared by consecutive
+ * searches.
+ *
+ * A new session is only requested from the authentication service when there
+ * is no current session, when the current session has been idle for longer
+ * than the idle time to live, or when a caller reports that the service has
+ * rejected the session. The idle time is counted from the last request that
+ * used the session, as reported by touch(). A session that is replaced is
+ * closed first, as the service limits the number of open sessions.
+ *
+ * @author Mike Taylor
+ */
+public class WsLiteSessionManager
+{
+    /**
+     * Port for the WS Lite authentication service
+     */
+    private final WOKMWSAuthenticate authPort_;
+
+    /**
+     * Maximum time in milliseconds that a session may be left idle before it is
+     * replaced
+     */
+    private long idleTimeToLive_;
+
+    /**
+     * The current session Id, or null if there is no open session
+     */
+    private String sessionId_;
+
+    /**
+     * Time in milliseconds at which the current session was last used
+     */
+    private long lastUsedTime_;
+
+    /**
+     * Create a session manager that authenticates using the supplied port
+     * @param authPort Port for the WS Lite authentication service
+     * @param idleTimeToLive Maximum idle time of a session in milliseconds
+     */
+    public WsLiteSessionManager(WOKMWSAuthenticate authPort, long idleTimeToLive)
+    {
+        this.authPort_ = authPort;
+        this.idleTimeToLive_ = idleTimeToLive;
+    }
+
+    /**
+     * Returns the idle time to live in milliseconds
+     * @return
+     */
+    public synchronized long getIdleTimeToLive()
+    {
+        return idleTimeToLive_;
+    }
+
+    /**
+     * Sets the idle time to live in milliseconds
+     * @param idleTimeToLive
+     */
+    public synchronized void setIdleTimeToLive(long idleTimeToLive)
+    {
+        this.idleTimeToLive_ = idleTimeToLive;
+    }
+
+    /**
+     * Returns true if there is a session that can be reused without
+     * authenticating again
+     * @return
+     */
+    public synchronized boolean hasActiveSession()
+    {
+        return sessionId_ != null && System.currentTimeMillis() - lastUsedTime_ < idleTimeToLive_;
+    }
+
+    /**
+     * Returns the Id of the current session, authenticating with the service
+     * first if there is no active session
+     * @return
+     * @throws BibliosightAuthenticationException
+     */
+    public synchronized String getSessionId() throws BibliosightAuthenticationException
+    {
+        if (!hasActiveSession())
+        {
+            // An idle session is closed as well as it can be, although the
+            // service has probably expired it already, so that it does not
+            // count against the limit on open sessions
+            replaceSession();
+            sessionId_ = authenticate();
+            ServiceStatistics.getDefault().sessionOpened();
+        }
+
+        lastUsedTime_ = System.currentTimeMillis();
+
+        return sessionId_;
+    }
+
+    /**
+     * Records that the current session has just been used by a successful
+     * request, so that its idle time is counted from the last request rather
+     * than from the start of the search
+     */
+    public synchronized void touch()
+    {
+        if (sessionId_ != null)
+        {
+            lastUsedTime_ = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Replaces a session that the service has rejected. If the session has
+     * already been replaced by another caller the current session is returned
+     * without authenticating again.
+     * @param rejectedSessionId The session Id rejected by the service
+     * @return
+     * @throws BibliosightAuthenticationException
+     */
+    public synchronized String renewSession(String rejectedSessionId) throws BibliosightAuthenticationException
+    {
+        if (rejectedSessionId != null && rejectedSessionId.equals(sessionId_))
+        {
+            replaceSession();
+        }
+
+        return getSessionId();
+    }
+
+    /**
+     * Closes the current session, if there is one
+     * @return true if a session was closed
+     * @throws BibliosightAuthenticationException
+     */
+    public synchronized boolean close() throws BibliosightAuthenticationException
+    {
+        if (sessionId_ == null)
+        {
+            return false;
+        }
+
+        String sessionId = sessionId_;
+        abandonSession();
+        sendCloseRequest(sessionId);
+
+        return true;
+    }
+
+    /**
+     * Closes the current session, if there is one, so that a new one can
+     * take its place. Failures are logged and otherwise ignored, as the
+     * service may already have ended the session.
+     */
+    private void replaceSession()
+    {
+        String sessionId = sessionId_;
+
+        if (sessionId == null)
+        {
+            return;
+        }
+
+        abandonSession();
+
+        try
+        {
+            sendCloseRequest(sessionId);
+        }
+        catch (BibliosightAuthenticationException ex)
+        {
+            Logger.getLogger(WsLiteSessionManager.class.getName()).log(Level.WARNING, "The replaced Web Services Lite session could not be closed.", ex);
+        }
+        catch (WebServiceException ex)
+        {
+            Logger.getLogger(WsLiteSessionManager.class.getName()).log(Level.WARNING, "The replaced Web Services Lite session could not be closed.", ex);
+        }
+    }
+
+    /**
+     * Sends a request to close a session to the WS Lite authentication
+     * service
+     * @param sessionId
+     * @throws BibliosightAuthenticationException
+     */
+    private void sendCloseRequest(String sessionId) throws BibliosightAuthenticationException
+    {
+        ServiceStatistics serviceStatistics = ServiceStatistics.getDefault();
+        long startTime = serviceStatistics.startRequest();
+        boolean succeeded = false;
+
+        try
+        {
+            setSessionCookie(authPort_, sessionId);
+            authPort_.closeSession();
+            succeeded = true;
+        }
+        catch (com.thomsonreuters.wokmws.cxf.auth.QueryException_Exception ex)
+        {
+            throw new BibliosightAuthenticationException("Search session closure failed", ex);
+        }
+        catch (com.thomsonreuters.wokmws.cxf.auth.SessionException_Exception ex)
+        {
+            throw new BibliosightAuthenticationException("Search session closure failed", ex);
+        }
+        catch (com.thomsonreuters.wokmws.cxf.auth.AuthenticationException_Exception ex)
+        {
+            throw new BibliosightAuthenticationException("Search session closure failed", ex);
+        }
+        catch (com.thomsonreuters.wokmws.cxf.auth.InvalidInputException_Exception ex)
+        {
+            throw new BibliosightAuthenticationException("Search session closure failed", ex);
+        }
+        catch (com.thomsonreuters.wokmws.cxf.auth.ESTIWSException_Exception ex)
+        {
+            throw new BibliosightAuthenticationException("Search session closure failed", ex);
+        }
+        catch (com.thomsonreuters.wokmws.cxf.auth.InternalServerException_Exception ex)
+        {
+            throw new BibliosightAuthenticationException("Search session closure failed", ex);
+        }
+        finally
+        {
+            serviceStatistics.endRequest(ServiceStatistics.CLOSE_SESSION_OPERATION, startTime, succeeded);
+        }
+    }
+
+    /**
+     * Forgets the current session, if there is one, without closing it
+     */
+    private void abandonSession()
+    {
+        if (sessionId_ != null)
+        {
+            sessionId_ = null;
+            ServiceStatistics.getDefault().sessionEnded();
+        }
+    }
+
+    /**
+     * Authenticates with the WS Lite authentication service, returning a
+     * session Id if successful. Transient failures are retried after a delay,
+     * as the default retry policy allows.
+     * @return
+     * @throws BibliosightAuthenticationException
+     */
+    private String authenticate() throws BibliosightAuthenticationException
+    {
+        RetryPolicy retryPolicy = RetryPolicy.createDefault();
+
+        for (int attempt = 1; ; attempt++)
+        {
+            try
+            {
+                return sendAuthenticationRequest();
+            }
+            catch (BibliosightAuthenticationException ex)
+            {
+                if (!retryPolicy.shouldRetry(ex, attempt))
+                {
+                    throw ex;
+                }
+
+                waitToRetry(retryPolicy, ex, attempt);
+            }
+            catch (WebServiceException ex)
+            {
+                if (!retryPolicy.shouldRetry(ex, attempt))
+                {
+                    throw ex;
+                }
+
+                waitToRetry(retryPolicy, ex, attempt);
+            }
+        }
+    }
+
+    private static void waitToRetry(RetryPolicy retryPolicy, Exception failure, int attempt) throws BibliosightAuthenticationException
+    {
+        Logger.getLogger(WsLiteSessionManager.class.getName()).log(Level.WARNING, "Authentication request failed and will be retried (attempt " + attempt + " of " + retryPolicy.getMaxAttempts() + ")", failure);
+
+        try
+        {
+            retryPolicy.waitToRetry(attempt);
+        }
+        catch (InterruptedException ex)
+        {
+            throw new BibliosightAuthenticationException("Authentication with Web Services Lite was interrupted", ex);
+        }
+    }
+
+    /**
+     * Sends an authentication request to the WS Lite authentication service,
+     * returning a session Id if successful.
+     * @return
+     * @throws BibliosightAuthenticationException
+     */
+    private String sendAuthenticationRequest() throws BibliosightAuthenticationException
+    {
+        CircuitBreaker circuitBreaker = CircuitBreaker.getDefault();
+        RateLimiter rateLimiter = RateLimiter.getDefault();
+
+        if (!circuitBreaker.allowRequest())
+        {
+            throw new BibliosightAuthenticationException("Web Services Lite has failed repeatedly and requests are suspended for "
+                + circuitBreaker.getSecondsUntilProbe() + " second(s)");
+        }
+
+        try
+        {
+            rateLimiter.acquire();
+        }
+        catch (InterruptedException ex)
+        {
+            circuitBreaker.releaseProbe();
+            throw new BibliosightAuthenticationException("Authentication with Web Services Lite was interrupted", ex);
+        }
+
+        ServiceStatistics serviceStatistics = ServiceStatistics.getDefault();
+        long startTime = serviceStatistics.startRequest();
+        boolean succeeded = false;
+
+        try
+        {
+            String sessionId = authPort_.authenticate();
+            circuitBreaker.recordSuccess();
+            succeeded = true;
+
+            return sessionId;
+        }
+        catch (com.thomsonreuters.wokmws.cxf.auth.QueryException_Exception ex)
+        {
+            // The service answered, so it is not failing
+            circuitBreaker.recordSuccess();
+            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+        }
+        catch (com.thomsonreuters.wokmws.cxf.auth.SessionException_Exception ex)
+        {
+            circuitBreaker.recordSuccess();
+            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+        }
+        catch (com.thomsonreuters.wokmws.cxf.auth.AuthenticationException_Exception ex)
+        {
+            circuitBreaker.recordSuccess();
+            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+        }
+        catch (com.thomsonreuters.wokmws.cxf.auth.InvalidInputException_Exception ex)
+        {
+            circuitBreaker.recordSuccess();
+            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+        }
+        catch (com.thomsonreuters.wokmws.cxf.auth.ESTIWSException_Exception ex)
+        {
+            circuitBreaker.recordFailure();
+            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+        }
+        catch (com.thomsonreuters.wokmws.cxf.auth.InternalServerException_Exception ex)
+        {
+            circuitBreaker.recordFailure();
+            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+        }
+        catch (SOAPFaultException ex)
+        {
+            if (RetryPolicy.isRetryable(ex))
+            {
+                circuitBreaker.recordFailure();
+            }
+            else
+            {
+                circuitBreaker.recordSuccess();
+            }
+
+            throw new BibliosightAuthenticationException("Authentication with Web Services Lite failed", ex);
+        }
+        catch (WebServiceException ex)
+        {
+            circuitBreaker.recordFailure();
+            throw ex;
+        }
+        finally
+        {
+            serviceStatistics.endRequest(ServiceStatistics.AUTHENTICATE_OPERATION, startTime, succeeded);
+            circuitBreaker.releaseProbe();
+            rateLimiter.release();
+        }
+    }
+
+    /**
+     * Configures a WS Lite port to send the specified session Id as a cookie
+     * with every request
+     * @param port A WS Lite service port
+     * @param sessionId
+     */
+    public static void setSessionCookie(Object port, String sessionId)
+    {
+        BindingProvider bindingProvider = (BindingProvider)port;
+        Map<String, Object> requestContext = bindingProvider.getRequestContext();
+
+        requestContext.put(BindingProvider.SESSION_MAINTAIN_PROPERTY, true);
+
+        Cookie cookie = new Cookie("SID", sessionId);
+        Client client = ClientProxy.getClient(port);
+        HTTPConduit http = (HTTPConduit) client.getConduit();
+        HTTPClientPolicy httpClientPolicy = new HTTPClientPolicy();
+        httpClientPolicy.setCookie(cookie.getName() + "=" + cookie.getValue());
+        http.setClient(httpClientPolicy);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.transformer;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.LabelValuesPair;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.LiteRecord;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryField;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for LiteRecordComparator
+ *
+ * @author Mike Taylor
+ */
+public class LiteRecordComparatorTest
+{
+    @Test
+    public void testComparesYears()
+    {
+        LiteRecordComparator comparator = new LiteRecordComparator(getSortFields("PY", "A"));
+
+        assertTrue(comparator.compare(getRecord("2008", null), getRecord("2009", null)) < 0);
+        assertTrue(comparator.compare(getRecord("2010", null), getRecord("2009", null)) > 0);
+        assertEquals(0, comparator.compare(getRecord("2009", null), getRecord("2009", null)));
+    }
+
+    @Test
+    public void testComparesMonthsWithinAYear()
+    {
+        LiteRecordComparator comparator = new LiteRecordComparator(getSortFields("Date", "A"));
+
+        assertTrue(comparator.compare(getRecord("2009", "MAR 2009"), getRecord("2009", "NOV 12 2009")) < 0);
+        assertTrue(comparator.compare(getRecord("2009", "dec"), getRecord("2009", "Jan 2009")) > 0);
+        assertTrue(comparator.compare(getRecord("2008", "DEC 2008"), getRecord("2009", "JAN 2009")) < 0);
+    }
+
+    @Test
+    public void testUnknownMonthsSortBeforeKnownMonths()
+    {
+        LiteRecordComparator comparator = new LiteRecordComparator(getSortFields("PY", "A"));
+
+        assertTrue(comparator.compare(getRecord("2009", null), getRecord("2009", "JAN 2009")) < 0);
+        assertTrue(comparator.compare(getRecord("2009", "SPR 2009"), getRecord("2009", "JAN 2009")) < 0);
+        assertEquals(0, comparator.compare(getRecord("2009", "SPR 2009"), getRecord("2009", null)));
+    }
+
+    @Test
+    public void testMissingYearsSortFirst()
+    {
+        LiteRecordComparator comparator = new LiteRecordComparator(getSortFields("PY", "A"));
+
+        assertTrue(comparator.compare(getRecord(null, null), getRecord("1990", null)) < 0);
+    }
+
+    @Test
+    public void testSortsDescending()
+    {
+        LiteRecordComparator comparator = new LiteRecordComparator(getSortFields("PY", "D"));
+
+        assertTrue(comparator.compare(getRecord("2010", "FEB 2010"), getRecord("2010", "JAN 2010")) < 0);
+        assertTrue(comparator.compare(getRecord("2008", null), getRecord("2009", null)) > 0);
+    }
+
+    @Test
+    public void testMissingAuthorsSortLast()
+    {
+        LiteRecord withAuthor = getRecord("2009", null);
+        addPair(withAuthor.getAuthors(), "Authors", "Smith, J");
+        LiteRecord withoutAuthor = getRecord("2009", null);
+
+        LiteRecordComparator ascending = new LiteRecordComparator(getSortFields("AU", "A"));
+
+        assertTrue(ascending.compare(withAuthor, withoutAuthor) < 0);
+        assertTrue(ascending.compare(withoutAuthor, withAuthor) > 0);
+        assertEquals(0, ascending.compare(withoutAuthor, getRecord("2010", null)));
+
+        // Descending order reverses the whole comparison, so missing values
+        // come first
+        LiteRecordComparator descending = new LiteRecordComparator(getSortFields("AU", "D"));
+
+        assertTrue(descending.compare(withAuthor, withoutAuthor) > 0);
+    }
+
+    @Test
+    public void testComparesAuthorsIgnoringCase()
+    {
+        LiteRecord record1 = getRecord("2009", null);
+        addPair(record1.getAuthors(), "Authors", "adams, a");
+        LiteRecord record2 = getRecord("2009", null);
+        addPair(record2.getAuthors(), "Authors", "Baker, B");
+
+        assertTrue(new LiteRecordComparator(getSortFields("AU", "A")).compare(record1, record2) < 0);
+    }
+
+    @Test
+    public void testComparesVolumesAsNumbers()
+    {
+        LiteRecord record1 = getRecord("2009", null);
+        addPair(record1.getSource(), "Volume", "9");
+        LiteRecord record2 = getRecord("2009", null);
+        addPair(record2.getSource(), "Volume", "12A");
+
+        assertTrue(new LiteRecordComparator(getSortFields("VL", "A")).compare(record1, record2) < 0);
+    }
+
+    @Test
+    public void testLaterFieldsBreakTies()
+    {
+        LiteRecord record1 = getRecord("2009", null);
+        addPair(record1.getSource(), "Pages", "120-130");
+        LiteRecord record2 = getRecord("2009", null);
+        addPair(record2.getSource(), "Pages", "15-20");
+
+        List<QueryField> sortFields = new ArrayList<QueryField>();
+        sortFields.addAll(getSortFields("PY", "D"));
+        sortFields.addAll(getSortFields("PG", "A"));
+
+        assertTrue(new LiteRecordComparator(sortFields).compare(record1, record2) > 0);
+    }
+
+    @Test
+    public void testIgnoresFieldsThatCannotBeCompared()
+    {
+        LiteRecordComparator comparator = new LiteRecordComparator(getSortFields("RS", "D"));
+
+        assertTrue(comparator.isEmpty());
+        assertEquals(0, comparator.compare(getRecord("2008", null), getRecord("2009", null)));
+        assertFalse(new LiteRecordComparator(getSortFields(" py ", "A")).isEmpty());
+    }
+
+    @Test
+    public void testSortsRecordsIntoOrder()
+    {
+        LiteRecord record1 = getRecord("2010", "MAR 2010");
+        LiteRecord record2 = getRecord("2010", null);
+        LiteRecord record3 = getRecord("2009", "DEC 2009");
+        List<LiteRecord> records = new ArrayList<LiteRecord>(Arrays.asList(record1, record2, record3));
+
+        Collections.sort(records, new LiteRecordComparator(getSortFields("PY", "A")));
+
+        assertEquals(Arrays.asList(record3, record2, record1), records);
+    }
+
+    private static List<QueryField> getSortFields(String name, String sort)
+    {
+        QueryField sortField = new QueryField();
+        sortField.setName(name);
+        sortField.setSort(sort);
+
+        return Collections.singletonList(sortField);
+    }
+
+    private static LiteRecord getRecord(String year, String date)
+    {
+        LiteRecord liteRecord = new LiteRecord();
+
+        if (year != null)
+        {
+            addPair(liteRecord.getSource(), "Published.BiblioYear", year);
+        }
+
+        if (date != null)
+        {
+            addPair(liteRecord.getSource(), "Published.BiblioDate", date);
+        }
+
+        return liteRecord;
+    }
+
+    private static void addPair(List<LabelValuesPair> pairs, String label, String value)
+    {
+        LabelValuesPair pair = new LabelValuesPair();
+        pair.setLabel(label);
+        pair.getValues().add(value);
+        pairs.add(pair);
+    }
+}
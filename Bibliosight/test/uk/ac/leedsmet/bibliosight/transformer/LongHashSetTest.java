@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.transformer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for LongHashSet
+ *
+ * @author Mike Taylor
+ */
+public class LongHashSetTest
+{
+    @Test
+    public void testAddsValuesOnce()
+    {
+        LongHashSet set = new LongHashSet();
+
+        assertTrue(set.add(42L));
+        assertFalse(set.add(42L));
+        assertTrue(set.add(-42L));
+
+        assertEquals(2, set.size());
+        assertTrue(set.contains(42L));
+        assertTrue(set.contains(-42L));
+        assertFalse(set.contains(43L));
+    }
+
+    @Test
+    public void testHoldsZero()
+    {
+        LongHashSet set = new LongHashSet();
+
+        assertFalse(set.contains(0L));
+        assertTrue(set.add(0L));
+        assertFalse(set.add(0L));
+
+        assertTrue(set.contains(0L));
+        assertEquals(1, set.size());
+        assertArrayEquals(new long[] { 0L }, set.toSortedArray());
+    }
+
+    @Test
+    public void testGrowsBeyondItsInitialCapacity()
+    {
+        LongHashSet set = new LongHashSet();
+
+        for (long value = 1; value <= 10000; value++)
+        {
+            set.add(value);
+        }
+
+        assertEquals(10000, set.size());
+
+        for (long value = 1; value <= 10000; value++)
+        {
+            assertTrue(set.contains(value));
+        }
+
+        assertFalse(set.contains(10001L));
+    }
+
+    @Test
+    public void testAddsAllValuesOfAnotherSet()
+    {
+        LongHashSet set = new LongHashSet();
+        set.add(1L);
+
+        LongHashSet other = new LongHashSet();
+        other.add(0L);
+        other.add(1L);
+        other.add(Long.MIN_VALUE);
+
+        set.addAll(other);
+
+        assertEquals(3, set.size());
+        assertTrue(set.contains(0L));
+        assertTrue(set.contains(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testReturnsValuesInAscendingOrder()
+    {
+        LongHashSet set = new LongHashSet();
+        set.add(5L);
+        set.add(Long.MIN_VALUE | 7L);
+        set.add(0L);
+        set.add(-1L);
+        set.add(3L);
+
+        assertArrayEquals(new long[] { Long.MIN_VALUE | 7L, -1L, 0L, 3L, 5L }, set.toSortedArray());
+    }
+
+    @Test
+    public void testClears()
+    {
+        LongHashSet set = new LongHashSet();
+        set.add(0L);
+        set.add(1L);
+
+        set.clear();
+
+        assertEquals(0, set.size());
+        assertFalse(set.contains(0L));
+        assertFalse(set.contains(1L));
+        assertEquals(0, set.toSortedArray().length);
+    }
+}
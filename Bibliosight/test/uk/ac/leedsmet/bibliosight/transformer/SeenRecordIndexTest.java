@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.transformer;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for SeenRecordIndex. Indexes are shared by file for the life of the
+ * process, so each test uses files of its own and reloads an index by
+ * opening a copy of its file.
+ *
+ * @author Mike Taylor
+ */
+public class SeenRecordIndexTest
+{
+    private static final String NUMERIC_UT = "000264418700012";
+
+    private static final String OTHER_UT = "A1990CX12300001";
+
+    private File directory_;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        directory_ = File.createTempFile("records", "");
+        directory_.delete();
+        directory_.mkdir();
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = directory_.listFiles();
+
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+
+        directory_.delete();
+    }
+
+    @Test
+    public void testNumericUtIsHeldAsItsValue()
+    {
+        assertEquals(264418700012L, SeenRecordIndex.getKey(NUMERIC_UT));
+        assertEquals(264418700012L, SeenRecordIndex.getKey("WOS:" + NUMERIC_UT));
+        assertEquals(264418700012L, SeenRecordIndex.getKey(" wos:" + NUMERIC_UT + " "));
+    }
+
+    @Test
+    public void testOtherUtIsHeldAsAHashWithTheTopBitSet()
+    {
+        long key = SeenRecordIndex.getKey(OTHER_UT);
+
+        assertTrue(key < 0);
+        assertEquals(key, SeenRecordIndex.getKey("WOS:" + OTHER_UT.toLowerCase()));
+        assertFalse(key == SeenRecordIndex.getKey("A1990CX12300002"));
+    }
+
+    @Test
+    public void testLongNumericUtIsHashed()
+    {
+        assertTrue(SeenRecordIndex.getKey("123456789012345678") > 0);
+        assertTrue(SeenRecordIndex.getKey("1234567890123456789") < 0);
+    }
+
+    @Test
+    public void testMissingUtIsHashed()
+    {
+        assertTrue(SeenRecordIndex.getKey(null) < 0);
+        assertEquals(SeenRecordIndex.getKey(null), SeenRecordIndex.getKey(""));
+        assertEquals(SeenRecordIndex.getKey(""), SeenRecordIndex.getKey("WOS:"));
+    }
+
+    @Test
+    public void testZeroUtIsHeldAsZero() throws IOException
+    {
+        assertEquals(0L, SeenRecordIndex.getKey("WOS:000000000000000"));
+
+        SeenRecordIndex index = SeenRecordIndex.getIndex(new File(directory_, "zero.idx"));
+        assertFalse(index.contains("0"));
+
+        addRecords(index, "0");
+        assertTrue(index.contains("WOS:000000000000000"));
+
+        index.save();
+
+        SeenRecordIndex reloaded = reload(index, "zero-copy.idx");
+        assertEquals(1, reloaded.size());
+        assertTrue(reloaded.contains("0"));
+    }
+
+    @Test
+    public void testMergesSortedKeys()
+    {
+        assertArrayEquals(new long[] { -5L, 1L, 2L, 3L, 5L, 6L }, SeenRecordIndex.merge(new long[] { 1L, 3L, 5L }, new long[] { -5L, 2L, 3L, 6L }));
+        assertArrayEquals(new long[] { 1L, 2L }, SeenRecordIndex.merge(new long[0], new long[] { 1L, 2L }));
+        assertArrayEquals(new long[] { 1L, 2L }, SeenRecordIndex.merge(new long[] { 1L, 2L }, new long[0]));
+        assertArrayEquals(new long[] { 4L }, SeenRecordIndex.merge(new long[] { 4L }, new long[] { 4L }));
+    }
+
+    @Test
+    public void testSavesAndReloads() throws IOException
+    {
+        File file = new File(directory_, "records.idx");
+        SeenRecordIndex index = SeenRecordIndex.getIndex(file);
+
+        assertSame(index, SeenRecordIndex.getIndex(file));
+        assertEquals(0, index.size());
+
+        addRecords(index, NUMERIC_UT, OTHER_UT);
+        assertTrue(index.contains(NUMERIC_UT));
+        assertFalse(file.exists());
+
+        index.save();
+
+        assertEquals(12 + 2 * 8, file.length());
+        assertEquals(2, index.size());
+        assertTrue(index.contains(OTHER_UT));
+
+        SeenRecordIndex reloaded = reload(index, "records-copy.idx");
+
+        assertEquals(2, reloaded.size());
+        assertTrue(reloaded.contains("WOS:" + NUMERIC_UT));
+        assertTrue(reloaded.contains(OTHER_UT));
+        assertFalse(reloaded.contains("000264418700013"));
+    }
+
+    @Test
+    public void testSaveWithNothingAddedWritesNothing() throws IOException
+    {
+        File file = new File(directory_, "empty.idx");
+
+        SeenRecordIndex.getIndex(file).save();
+
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testSaveKeepsRecordsSavedByAnotherProcess() throws IOException
+    {
+        File file = new File(directory_, "shared.idx");
+        SeenRecordIndex index = SeenRecordIndex.getIndex(file);
+        addRecords(index, "1");
+        index.save();
+
+        // Another process saves its own records to the same file
+        SeenRecordIndex otherIndex = SeenRecordIndex.getIndex(new File(directory_, "other.idx"));
+        addRecords(otherIndex, "2");
+        otherIndex.save();
+        copy(otherIndex.getFile(), file);
+
+        addRecords(index, "3");
+        index.save();
+
+        SeenRecordIndex reloaded = reload(index, "shared-copy.idx");
+
+        assertEquals(3, reloaded.size());
+        assertTrue(reloaded.contains("1"));
+        assertTrue(reloaded.contains("2"));
+        assertTrue(reloaded.contains("3"));
+    }
+
+    @Test
+    public void testRejectsAFileWithTheWrongMagicNumber() throws IOException
+    {
+        assertNotValid("magic.idx", 0x12345678, 1, 0, new long[0]);
+    }
+
+    @Test
+    public void testRejectsAFileWithTheWrongVersion() throws IOException
+    {
+        assertNotValid("version.idx", 0x42535249, 2, 0, new long[0]);
+    }
+
+    @Test
+    public void testRejectsAFileWithTheWrongCount() throws IOException
+    {
+        assertNotValid("count.idx", 0x42535249, 1, 3, new long[] { 1L, 2L });
+    }
+
+    @Test
+    public void testRejectsATruncatedFile() throws IOException
+    {
+        File file = new File(directory_, "truncated.idx");
+        OutputStream outputStream = new FileOutputStream(file);
+
+        try
+        {
+            outputStream.write(new byte[] { 0x42, 0x53, 0x52, 0x49, 0, 0 });
+        }
+        finally
+        {
+            outputStream.close();
+        }
+
+        assertNotValid(file);
+    }
+
+    private static void addRecords(SeenRecordIndex index, String... uts)
+    {
+        LongHashSet keys = new LongHashSet();
+
+        for (String ut : uts)
+        {
+            keys.add(SeenRecordIndex.getKey(ut));
+        }
+
+        index.addKeys(keys);
+    }
+
+    /**
+     * Opens a copy of the file of an index, so that it is read again
+     */
+    private SeenRecordIndex reload(SeenRecordIndex index, String copyName) throws IOException
+    {
+        File copy = new File(directory_, copyName);
+        copy(index.getFile(), copy);
+
+        return SeenRecordIndex.getIndex(copy);
+    }
+
+    private void assertNotValid(String name, int magic, int version, int count, long[] keys) throws IOException
+    {
+        File file = new File(directory_, name);
+        DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(file));
+
+        try
+        {
+            outputStream.writeInt(magic);
+            outputStream.writeInt(version);
+            outputStream.writeInt(count);
+
+            for (long key : keys)
+            {
+                outputStream.writeLong(key);
+            }
+        }
+        finally
+        {
+            outputStream.close();
+        }
+
+        assertNotValid(file);
+    }
+
+    private static void assertNotValid(File file)
+    {
+        try
+        {
+            SeenRecordIndex.getIndex(file);
+            fail("The index should not be valid: " + file);
+        }
+        catch (IOException ex)
+        {
+            // Expected
+        }
+    }
+
+    private static void copy(File source, File target) throws IOException
+    {
+        InputStream inputStream = new FileInputStream(source);
+
+        try
+        {
+            OutputStream outputStream = new FileOutputStream(target);
+
+            try
+            {
+                byte[] buffer = new byte[8192];
+                int length;
+
+                while ((length = inputStream.read(buffer)) != -1)
+                {
+                    outputStream.write(buffer, 0, length);
+                }
+            }
+            finally
+            {
+                outputStream.close();
+            }
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+}
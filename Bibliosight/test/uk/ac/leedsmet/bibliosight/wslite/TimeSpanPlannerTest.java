@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2010, Leeds Metropolitan University
+ *
+ * This file is part of Bibliosight.
+ *
+ * Bibliosight is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bibliosight is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Bibliosight. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package uk.ac.leedsmet.bibliosight.wslite;
+
+import com.thomsonreuters.wokmws.cxf.woksearchlite.QueryParameters;
+import com.thomsonreuters.wokmws.cxf.woksearchlite.SearchResults;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import org.junit.Test;
+import uk.ac.leedsmet.bibliosight.BibliosightSearchException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for TimeSpanPlanner. Searches are answered by a page searcher that
+ * finds a fixed number of records for each day of the time span searched.
+ *
+ * @author Mike Taylor
+ */
+public class TimeSpanPlannerTest
+{
+    private static final long MILLISECONDS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Finds a fixed number of records for each day of a time span and records
+     * the time spans searched
+     */
+    private static class DailyRecordsSearcher implements TimeSpanPlanner.PageSearcher
+    {
+        private final int recordsPerDay_;
+
+        private final List<String> timeSpansSearched_ = new ArrayList<String>();
+
+        DailyRecordsSearcher(int recordsPerDay)
+        {
+            this.recordsPerDay_ = recordsPerDay;
+        }
+
+        public SearchResults search(QueryParameters queryParameters)
+        {
+            timeSpansSearched_.add(queryParameters.getTimeSpan().getBegin() + " to " + queryParameters.getTimeSpan().getEnd());
+
+            return getFirstPage(queryParameters, recordsPerDay_);
+        }
+
+        List<String> getTimeSpansSearched()
+        {
+            return timeSpansSearched_;
+        }
+    }
+
+    @Test
+    public void testSplitsOnYearBoundaries() throws BibliosightSearchException
+    {
+        DailyRecordsSearcher searcher = new DailyRecordsSearcher(10);
+        QueryParameters query = getQuery("2008-01-01", "2010-12-31");
+
+        List<SubQuery> subQueries = new TimeSpanPlanner(searcher, 4000).plan(query, getFirstPage(query, 10));
+
+        assertEquals(3, subQueries.size());
+        assertEquals("2008-01-01 to 2008-12-31", subQueries.get(0).getDescription());
+        assertEquals("2009-01-01 to 2009-12-31", subQueries.get(1).getDescription());
+        assertEquals("2010-01-01 to 2010-12-31", subQueries.get(2).getDescription());
+        assertEquals(3660, subQueries.get(0).getRecordsFound());
+    }
+
+    @Test
+    public void testSplitsOnMonthBoundaries() throws BibliosightSearchException
+    {
+        DailyRecordsSearcher searcher = new DailyRecordsSearcher(1);
+        QueryParameters query = getQuery("2010-01-01", "2010-03-31");
+
+        List<SubQuery> subQueries = new TimeSpanPlanner(searcher, 40).plan(query, getFirstPage(query, 1));
+
+        assertEquals(3, subQueries.size());
+        assertEquals("2010-01-01 to 2010-01-31", subQueries.get(0).getDescription());
+        assertEquals("2010-02-01 to 2010-02-28", subQueries.get(1).getDescription());
+        assertEquals("2010-03-01 to 2010-03-31", subQueries.get(2).getDescription());
+    }
+
+    @Test
+    public void testSplitsAcrossTheEndOfAYearOnTheYearBoundary() throws BibliosightSearchException
+    {
+        DailyRecordsSearcher searcher = new DailyRecordsSearcher(1);
+        QueryParameters query = getQuery("2009-12-20", "2010-01-10");
+
+        List<SubQuery> subQueries = new TimeSpanPlanner(searcher, 15).plan(query, getFirstPage(query, 1));
+
+        assertEquals(2, subQueries.size());
+        assertEquals("2009-12-20 to 2009-12-31", subQueries.get(0).getDescription());
+        assertEquals("2010-01-01 to 2010-01-10", subQueries.get(1).getDescription());
+    }
+
+    @Test
+    public void testSplitsWithinAMonthOnTheMiddleDay() throws BibliosightSearchException
+    {
+        DailyRecordsSearcher searcher = new DailyRecordsSearcher(1);
+        QueryParameters query = getQuery("2010-06-01", "2010-06-10");
+
+        List<SubQuery> subQueries = new TimeSpanPlanner(searcher, 5).plan(query, getFirstPage(query, 1));
+
+        assertEquals(2, subQueries.size());
+        assertEquals("2010-06-01 to 2010-06-05", subQueries.get(0).getDescription());
+        assertEquals("2010-06-06 to 2010-06-10", subQueries.get(1).getDescription());
+    }
+
+    @Test
+    public void testStopsSplittingAtASingleDay() throws BibliosightSearchException
+    {
+        DailyRecordsSearcher searcher = new DailyRecordsSearcher(100);
+        QueryParameters query = getQuery("2010-05-05", "2010-05-06");
+
+        List<SubQuery> subQueries = new TimeSpanPlanner(searcher, 10).plan(query, getFirstPage(query, 100));
+
+        assertEquals(2, subQueries.size());
+        assertEquals("2010-05-05 to 2010-05-05", subQueries.get(0).getDescription());
+        assertEquals("2010-05-06 to 2010-05-06", subQueries.get(1).getDescription());
+        assertTrue(subQueries.get(0).getRecordsFound() > 10);
+        assertEquals(2, searcher.getTimeSpansSearched().size());
+    }
+
+    @Test
+    public void testDoesNotSplitASingleDay() throws BibliosightSearchException
+    {
+        DailyRecordsSearcher searcher = new DailyRecordsSearcher(100);
+        QueryParameters query = getQuery("2010-05-05", "2010-05-05");
+
+        List<SubQuery> subQueries = new TimeSpanPlanner(searcher, 10).plan(query, getFirstPage(query, 100));
+
+        assertEquals(1, subQueries.size());
+        assertEquals(0, searcher.getTimeSpansSearched().size());
+    }
+
+    @Test
+    public void testLeavesOutPartsWithNoRecords() throws BibliosightSearchException
+    {
+        TimeSpanPlanner.PageSearcher searcher = new TimeSpanPlanner.PageSearcher()
+        {
+            public SearchResults search(QueryParameters queryParameters)
+            {
+                // Only the later half of the span has records
+                boolean later = queryParameters.getTimeSpan().getBegin().compareTo("2010-06-06") >= 0;
+
+                return getFirstPage(queryParameters, later ? 1 : 0);
+            }
+        };
+
+        QueryParameters query = getQuery("2010-06-01", "2010-06-10");
+        SearchResults firstPage = new SearchResults();
+        firstPage.setRecordsFound(20);
+
+        List<SubQuery> subQueries = new TimeSpanPlanner(searcher, 5).plan(query, firstPage);
+
+        assertEquals(1, subQueries.size());
+        assertEquals("2010-06-06 to 2010-06-10", subQueries.get(0).getDescription());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsASearchWithoutATimeSpan() throws BibliosightSearchException
+    {
+        QueryParameters query = new QueryParameters();
+        SearchResults firstPage = new SearchResults();
+        firstPage.setRecordsFound(20);
+
+        new TimeSpanPlanner(new DailyRecordsSearcher(1), 5).plan(query, firstPage);
+    }
+
+    @Test
+    public void testNearestBoundaryAfterTheMiddle()
+    {
+        Calendar boundary = TimeSpanPlanner.getNearestBoundary(getDate("2009-11-01"), getDate("2010-02-28"), getDate("2009-12-30"), Calendar.YEAR);
+
+        assertEquals(getDate("2010-01-01"), boundary);
+    }
+
+    @Test
+    public void testNearestBoundaryChoosesTheCloserOfTwo()
+    {
+        Calendar begin = getDate("2010-01-10");
+        Calendar end = getDate("2010-03-20");
+
+        assertEquals(getDate("2010-02-01"), TimeSpanPlanner.getNearestBoundary(begin, end, getDate("2010-02-12"), Calendar.MONTH));
+        assertEquals(getDate("2010-03-01"), TimeSpanPlanner.getNearestBoundary(begin, end, getDate("2010-02-20"), Calendar.MONTH));
+    }
+
+    @Test
+    public void testNearestBoundaryIgnoresTheFirstDay()
+    {
+        // A boundary on the first day of the span would leave nothing before it
+        Calendar boundary = TimeSpanPlanner.getNearestBoundary(getDate("2010-01-01"), getDate("2010-06-30"), getDate("2010-03-31"), Calendar.YEAR);
+
+        assertNull(boundary);
+    }
+
+    @Test
+    public void testNearestBoundaryAllowsTheLastDay()
+    {
+        Calendar boundary = TimeSpanPlanner.getNearestBoundary(getDate("2010-12-30"), getDate("2011-01-01"), getDate("2010-12-31"), Calendar.YEAR);
+
+        assertEquals(getDate("2011-01-01"), boundary);
+    }
+
+    @Test
+    public void testNoBoundaryWithinAMonth()
+    {
+        assertNull(TimeSpanPlanner.getNearestBoundary(getDate("2010-06-02"), getDate("2010-06-20"), getDate("2010-06-11"), Calendar.MONTH));
+    }
+
+    private static QueryParameters getQuery(String begin, String end)
+    {
+        QueryParameters query = new QueryParameters();
+        query.setDatabaseID("WOS");
+        query.setQueryLanguage("en");
+        query.setUserQuery("TS=test");
+
+        return TimeSpanPlanner.withTimeSpan(query, begin, end);
+    }
+
+    private static SearchResults getFirstPage(QueryParameters queryParameters, int recordsPerDay)
+    {
+        long days = (getDate(queryParameters.getTimeSpan().getEnd()).getTimeInMillis() - getDate(queryParameters.getTimeSpan().getBegin()).getTimeInMillis()) / MILLISECONDS_PER_DAY + 1;
+
+        SearchResults searchResults = new SearchResults();
+        searchResults.setRecordsFound((int) days * recordsPerDay);
+
+        return searchResults;
+    }
+
+    private static Calendar getDate(String date)
+    {
+        try
+        {
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+            dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            calendar.setTime(dateFormat.parse(date));
+
+            return calendar;
+        }
+        catch (ParseException ex)
+        {
+            throw new IllegalArgumentException(date);
+        }
+    }
+}